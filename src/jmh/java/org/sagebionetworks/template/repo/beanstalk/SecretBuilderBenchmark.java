@@ -0,0 +1,50 @@
+package org.sagebionetworks.template.repo.beanstalk;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing the encrypted secrets that are uploaded to S3 for each
+ * environment.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecretBuilderBenchmark {
+
+	@Param({ "20", "1000" })
+	int secretCount;
+
+	Properties secrets;
+
+	@Setup
+	public void setup() {
+		secrets = new Properties();
+		for (int i = 0; i < secretCount; i++) {
+			// a base 64 KMS cipher text is about 250 characters
+			secrets.setProperty("org.sagebionetworks.secret." + i, "AQICAHh" + "x".repeat(250));
+		}
+	}
+
+	@Benchmark
+	public byte[] getPropertiesBytes() {
+		return SecretBuilderImpl.getPropertiesBytes(secrets);
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.sagebionetworks.template.repo.queues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching the queues to their topics with many more topics and queues than
+ * the current configuration. Processing adds the topics to the queue
+ * descriptors, so a new configuration is created for each invocation.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnsAndSqsConfigBenchmark {
+
+	@Param({ "100", "1000" })
+	int queueCount;
+
+	@Param({ "10" })
+	int topicsPerQueue;
+
+	List<String> topicNames;
+	List<String> globalTopicNames;
+	SnsAndSqsConfig config;
+
+	@Setup
+	public void setup() {
+		topicNames = new ArrayList<>();
+		globalTopicNames = new ArrayList<>();
+		for (int i = 0; i < queueCount; i++) {
+			topicNames.add("TOPIC_" + i);
+			globalTopicNames.add("GLOBAL_TOPIC_" + i);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void createConfig() {
+		List<SqsQueueDescriptor> queues = new ArrayList<>(queueCount);
+		for (int i = 0; i < queueCount; i++) {
+			List<String> subscribedTopicNames = new ArrayList<>(topicsPerQueue);
+			for (int t = 0; t < topicsPerQueue; t++) {
+				// every other subscription is to a global topic
+				List<String> names = t % 2 == 0 ? topicNames : globalTopicNames;
+				subscribedTopicNames.add(names.get((i + t) % queueCount));
+			}
+			queues.add(new SqsQueueDescriptor("QUEUE_" + i, subscribedTopicNames, 60, 5, 3600, 1209600));
+		}
+		config = new SnsAndSqsConfig(topicNames, globalTopicNames, queues);
+	}
+
+	@Benchmark
+	public List<SnsTopicDescriptor> processSnsTopicDescriptors() {
+		return config.processSnsTopicDescriptors();
+	}
+
+}
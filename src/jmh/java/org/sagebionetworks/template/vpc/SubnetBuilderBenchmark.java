@@ -0,0 +1,40 @@
+package org.sagebionetworks.template.vpc;
+
+import static org.sagebionetworks.template.Constants.VPC_COLOR_GROUP_NETWORK_MASK;
+import static org.sagebionetworks.template.Constants.VPC_SUBNET_NETWORK_MASK;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the subnets of every color in six availability zones.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubnetBuilderBenchmark {
+
+	static final String[] AVAILABILITY_ZONES = { "us-east-1a", "us-east-1b", "us-east-1c", "us-east-1d",
+			"us-east-1e", "us-east-1f" };
+
+	@Benchmark
+	public Subnets build() {
+		return new SubnetBuilder().withCidrPrefix("10.21").withColors(Color.values())
+				.withSubnetMask(VPC_SUBNET_NETWORK_MASK).withColorGroupNetMaskSubnetMask(VPC_COLOR_GROUP_NETWORK_MASK)
+				.withAvailabilityZones(AVAILABILITY_ZONES).build();
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.sagebionetworks.template.vpc;
+
+import static org.sagebionetworks.template.Constants.AVAILABILITY_ZONES;
+import static org.sagebionetworks.template.Constants.JSON_INDENT;
+import static org.sagebionetworks.template.Constants.PEERING_ROLE_ARN_PREFIX;
+import static org.sagebionetworks.template.Constants.PEER_ROLE_ARN;
+import static org.sagebionetworks.template.Constants.PRIVATE_SUBNET_IDX;
+import static org.sagebionetworks.template.Constants.STACK;
+import static org.sagebionetworks.template.Constants.SUBNETS;
+import static org.sagebionetworks.template.Constants.VPC_CIDR;
+import static org.sagebionetworks.template.Constants.VPC_COLOR_GROUP_NETWORK_MASK;
+import static org.sagebionetworks.template.Constants.VPC_STACKNAME;
+import static org.sagebionetworks.template.Constants.VPC_STACK_NAME_FORMAT;
+import static org.sagebionetworks.template.Constants.VPC_SUBNET_NETWORK_MASK;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
+
+/**
+ * Rendering of the VPC templates with the widest subnet layout: the velocity
+ * merge alone, the merge followed by the org.json round-trip the builders used
+ * to do, and the {@link TemplateRendererImpl} that replaced it.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VpcTemplateRenderingBenchmark {
+
+	@Param({ "templates/vpc/main-vpc.json.vtp", "templates/vpc/public-subnets-resources.json.vtp",
+			"templates/vpc/private-subnet-resources.json.vtp" })
+	String templatePath;
+
+	VelocityEngine velocityEngine;
+	VelocityContext context;
+	Template template;
+	TemplateRendererImpl renderer;
+
+	@Setup
+	public void setup() {
+		velocityEngine = new TemplateGuiceModule().velocityEngineProvider();
+		template = velocityEngine.getTemplate(templatePath);
+		String availabilityZones = "us-east-1a,us-east-1b,us-east-1c,us-east-1d,us-east-1e,us-east-1f";
+		Subnets subnets = new SubnetBuilder().withCidrPrefix("10.21").withColors(Color.values())
+				.withSubnetMask(VPC_SUBNET_NETWORK_MASK).withColorGroupNetMaskSubnetMask(VPC_COLOR_GROUP_NETWORK_MASK)
+				.withAvailabilityZones(availabilityZones.split(",")).build();
+		context = new VelocityContext();
+		context.put(VPC_CIDR, "10.21.0.0/16");
+		context.put(PEER_ROLE_ARN, PEERING_ROLE_ARN_PREFIX + "/benchmark");
+		context.put(AVAILABILITY_ZONES, availabilityZones);
+		context.put(STACK, "dev");
+		context.put(VPC_STACKNAME, String.format(VPC_STACK_NAME_FORMAT, "dev"));
+		context.put(SUBNETS, subnets);
+		context.put(PRIVATE_SUBNET_IDX, 0);
+	}
+
+	/**
+	 * A new renderer for each iteration so that its metrics do not pile up.
+	 */
+	@Setup(Level.Iteration)
+	public void createRenderer() {
+		renderer = new TemplateRendererImpl(velocityEngine, new ThreadProviderImp());
+	}
+
+	@Benchmark
+	public String velocityMerge() {
+		StringWriter writer = new StringWriter();
+		template.merge(context, writer);
+		return writer.toString();
+	}
+
+	@Benchmark
+	public String jsonObjectRoundTrip() {
+		return new JSONObject(velocityMerge()).toString(JSON_INDENT);
+	}
+
+	@Benchmark
+	public String renderJson() {
+		return renderer.renderJson(templatePath, context);
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.sagebionetworks.war;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.LoggerFactoryImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
+import org.sagebionetworks.template.report.RunReportImpl;
+
+/**
+ * Packaging of a synthetic WAR made of incompressible jars and compressible
+ * text files, like the repository WARs. Compares the unzip and zip round-trip
+ * with appending the .ebextensions to a copy of the WAR.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WarPackagingBenchmark {
+
+	static final int JAR_SIZE = 1024 * 1024;
+	static final int TEXT_FILES_PER_JAR = 20;
+
+	@Param({ "200" })
+	int warSizeMb;
+
+	File war;
+	File unzipped;
+	File output;
+	WarAppender warAppender;
+
+	@Setup
+	public void setup() throws IOException {
+		war = File.createTempFile("benchmark", ".war");
+		Random random = new Random(42);
+		byte[] jar = new byte[JAR_SIZE];
+		byte[] text = "<bean id=\"benchmark\" class=\"org.sagebionetworks.Benchmark\"/>\n".repeat(100)
+				.getBytes(StandardCharsets.UTF_8);
+		try (ZipOutputStream zipOut = new ZipOutputStream(Files.newOutputStream(war.toPath()))) {
+			for (int i = 0; i < warSizeMb; i++) {
+				random.nextBytes(jar);
+				zipOut.putNextEntry(new ZipEntry("WEB-INF/lib/library-" + i + ".jar"));
+				zipOut.write(jar);
+				zipOut.closeEntry();
+				for (int t = 0; t < TEXT_FILES_PER_JAR; t++) {
+					zipOut.putNextEntry(new ZipEntry("WEB-INF/classes/context-" + i + "-" + t + ".xml"));
+					zipOut.write(text);
+					zipOut.closeEntry();
+				}
+			}
+		}
+		unzipped = Files.createTempDirectory("benchmark-unzipped").toFile();
+		WarUtilities.unzipWarToDirectory(war, unzipped);
+		LoggerFactory loggerFactory = new LoggerFactoryImpl();
+		warAppender = new WarAppenderImpl(loggerFactory,
+				new RunReportImpl(new ThreadProviderImp(), null, (Path) null, loggerFactory));
+	}
+
+	@Setup(Level.Iteration)
+	public void createOutput() throws IOException {
+		output = Files.createTempDirectory("benchmark-output").toFile();
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteOutput() throws IOException {
+		FileUtils.deleteDirectory(output);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		war.delete();
+		FileUtils.deleteDirectory(unzipped);
+	}
+
+	@Benchmark
+	public void unzipWarToDirectory() throws IOException {
+		WarUtilities.unzipWarToDirectory(war, output);
+	}
+
+	@Benchmark
+	public void zipDirectoryToWar() throws IOException {
+		WarUtilities.zipDirectoryToWar(unzipped, new File(output, "copy.war"));
+	}
+
+	@Benchmark
+	public void appendFilesCopyOfWar() {
+		File copy = warAppender.appendFilesCopyOfWar(war, directory -> {
+			File config = new File(directory, ".ebextensions/benchmark.config");
+			config.getParentFile().mkdirs();
+			try (OutputStream out = Files.newOutputStream(config.toPath())) {
+				out.write("option_settings: []\n".getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		copy.delete();
+	}
+
+}
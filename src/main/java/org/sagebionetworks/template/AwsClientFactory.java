@@ -0,0 +1,99 @@
+package org.sagebionetworks.template;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.template.dryrun.DryRunMode;
+import org.sagebionetworks.template.report.ApiCallRequestHandler;
+import org.sagebionetworks.template.report.RunReport;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.RetryMode;
+
+/**
+ * Builds AWS clients that share a single credentials provider and a single
+ * tuned {@link ClientConfiguration}, and reports each client created so that
+ * the number of clients and connections is visible at startup. Every call made
+ * by the clients is counted in the {@link RunReport}. During a dry run the
+ * clients are wrapped so that no call reaches AWS.
+ *
+ */
+public class AwsClientFactory {
+
+	public static final int MAX_CONNECTIONS = 50;
+	public static final long CONNECTION_TTL_MS = 60 * 1000;
+	public static final String CLIENT_BUILDER_SUFFIX = "ClientBuilder";
+
+	private final AWSCredentialsProvider credentialsProvider;
+	private final ClientConfiguration clientConfiguration;
+	private final DryRunMode dryRunMode;
+	private final RunReport runReport;
+	private final Logger logger;
+	private final AtomicInteger clientCount;
+
+	public AwsClientFactory(AWSCredentialsProvider credentialsProvider, ClientConfiguration clientConfiguration,
+			DryRunMode dryRunMode, RunReport runReport, LoggerFactory loggerFactory) {
+		this.credentialsProvider = credentialsProvider;
+		this.clientConfiguration = clientConfiguration;
+		this.dryRunMode = dryRunMode;
+		this.runReport = runReport;
+		this.logger = loggerFactory.getLogger(AwsClientFactory.class);
+		this.clientCount = new AtomicInteger();
+	}
+
+	/**
+	 * The configuration shared by all the clients: a bounded connection pool with
+	 * TCP keep-alive and the adaptive retry mode, which backs off when throttled.
+	 * 
+	 * @return
+	 */
+	public static ClientConfiguration createClientConfiguration() {
+		return new ClientConfiguration().withMaxConnections(MAX_CONNECTIONS).withTcpKeepAlive(true)
+				.withConnectionTTL(CONNECTION_TTL_MS).withRetryMode(RetryMode.ADAPTIVE);
+	}
+
+	/**
+	 * Build a client in us-east-1 with the shared credentials and configuration.
+	 * 
+	 * @param <T>
+	 * @param builder
+	 * @return
+	 */
+	public <T> T build(AwsClientBuilder<?, T> builder) {
+		builder.withCredentials(credentialsProvider);
+		builder.withClientConfiguration(clientConfiguration);
+		builder.withRegion(Regions.US_EAST_1);
+		builder.withRequestHandlers(new ApiCallRequestHandler(runReport, getServiceName(builder)));
+		T client = builder.build();
+		int count = clientCount.incrementAndGet();
+		logger.info("Created AWS client: " + client.getClass().getSimpleName() + " (" + count
+				+ " clients with up to " + count * clientConfiguration.getMaxConnections() + " pooled connections)");
+		return dryRunMode.isEnabled() ? dryRunMode.createClientProxy(client) : client;
+	}
+
+	/**
+	 * The name of the service of the given builder, e.g. AmazonS3 for the
+	 * AmazonS3ClientBuilder.
+	 * 
+	 * @param builder
+	 * @return
+	 */
+	static String getServiceName(AwsClientBuilder<?, ?> builder) {
+		String name = builder.getClass().getSimpleName();
+		return name.endsWith(CLIENT_BUILDER_SUFFIX) ? name.substring(0, name.length() - CLIENT_BUILDER_SUFFIX.length())
+				: name;
+	}
+
+	/**
+	 * The number of clients built by this factory.
+	 * 
+	 * @return
+	 */
+	public int getClientCount() {
+		return clientCount.get();
+	}
+
+}
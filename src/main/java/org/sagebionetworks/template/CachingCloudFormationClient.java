@@ -0,0 +1,103 @@
+package org.sagebionetworks.template;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.google.inject.Inject;
+
+/**
+ * CloudFormationClient that caches the description and outputs of each stack
+ * for the run. The cached results of a stack are invalidated whenever the stack
+ * is changed or waited on through this client.
+ *
+ */
+public class CachingCloudFormationClient implements CloudFormationClient {
+
+	public static final String DESCRIBE_STACK = "CloudFormation.describeStack";
+	public static final String GET_OUTPUT = "CloudFormation.getOutput";
+
+	private final CloudFormationClient delegate;
+	private final LookupCache cache;
+
+	@Inject
+	public CachingCloudFormationClient(CloudFormationClientImpl delegate, LookupCache cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public boolean doesStackNameExist(String stackName) {
+		return describeStack(stackName).isPresent();
+	}
+
+	@Override
+	public Optional<Stack> describeStack(String stackName) {
+		return cache.get(DESCRIBE_STACK, stackName, Collections.emptyList(), () -> delegate.describeStack(stackName));
+	}
+
+	@Override
+	public void updateStack(CreateOrUpdateStackRequest request) {
+		try {
+			delegate.updateStack(request);
+		} finally {
+			cache.invalidate(request.getStackName());
+		}
+	}
+
+	@Override
+	public void createStack(CreateOrUpdateStackRequest request) {
+		try {
+			delegate.createStack(request);
+		} finally {
+			cache.invalidate(request.getStackName());
+		}
+	}
+
+	@Override
+	public void createOrUpdateStack(CreateOrUpdateStackRequest request) {
+		try {
+			delegate.createOrUpdateStack(request);
+		} finally {
+			cache.invalidate(request.getStackName());
+		}
+	}
+
+	@Override
+	public Optional<Stack> waitForStackToComplete(String stackName) throws InterruptedException {
+		try {
+			return delegate.waitForStackToComplete(stackName);
+		} finally {
+			cache.invalidate(stackName);
+		}
+	}
+
+	@Override
+	public CompletableFuture<Stack> waitForStackToCompleteAsync(String stackName) {
+		return delegate.waitForStackToCompleteAsync(stackName).whenComplete((stack, error) -> cache.invalidate(stackName));
+	}
+
+	@Override
+	public String getOutput(String stackName, String outputKey) {
+		List<String> arguments = Collections.singletonList(outputKey);
+		return cache.get(GET_OUTPUT, stackName, arguments, () -> delegate.getOutput(stackName, outputKey));
+	}
+
+	@Override
+	public Stream<Stack> streamOverAllStacks() {
+		return delegate.streamOverAllStacks();
+	}
+
+	@Override
+	public void deleteStack(String stackName) {
+		try {
+			delegate.deleteStack(stackName);
+		} finally {
+			cache.invalidate(stackName);
+		}
+	}
+
+}
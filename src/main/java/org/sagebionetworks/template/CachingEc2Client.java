@@ -0,0 +1,48 @@
+package org.sagebionetworks.template;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+/**
+ * Ec2Client that caches the instance type offerings and subnet lookups for the
+ * run.
+ *
+ */
+public class CachingEc2Client implements Ec2Client {
+
+	public static final String AVAILABILITY_ZONES_FOR_INSTANCE_TYPE = "EC2.getAvailabilityZonesForInstanceType";
+	public static final String AVAILABILITY_ZONE_TO_SUBNET_MAP = "EC2.getAvailabityZoneToSubnetMap";
+	public static final String AVAILABLE_SUBNETS_FOR_INSTANCE_TYPE = "EC2.getAvailableSubnetsForInstanceType";
+
+	private final Ec2Client delegate;
+	private final LookupCache cache;
+
+	@Inject
+	public CachingEc2Client(Ec2ClientImpl delegate, LookupCache cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public List<String> getAvailabilityZonesForInstanceType(String instanceType) {
+		return cache.get(AVAILABILITY_ZONES_FOR_INSTANCE_TYPE, null, Collections.singletonList(instanceType),
+				() -> delegate.getAvailabilityZonesForInstanceType(instanceType));
+	}
+
+	@Override
+	public Map<String, String> getAvailabityZoneToSubnetMap(List<String> subnetIds) {
+		return cache.get(AVAILABILITY_ZONE_TO_SUBNET_MAP, null, Collections.singletonList(subnetIds),
+				() -> delegate.getAvailabityZoneToSubnetMap(subnetIds));
+	}
+
+	@Override
+	public List<String> getAvailableSubnetsForInstanceType(String instanceType, List<String> subnets) {
+		return cache.get(AVAILABLE_SUBNETS_FOR_INSTANCE_TYPE, null, Arrays.asList(instanceType, subnets),
+				() -> delegate.getAvailableSubnetsForInstanceType(instanceType, subnets));
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.sagebionetworks.template;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import com.amazonaws.services.cloudformation.model.AmazonCloudFormationException;
@@ -67,6 +68,17 @@ public interface CloudFormationClient {
 	 */
 	public Optional<Stack> waitForStackToComplete(String stackName) throws InterruptedException;
 
+	/**
+	 * Wait for the given stack to complete without blocking. The status checks
+	 * are shared with all other stacks being waited on, so this should be used
+	 * when many stacks are deployed concurrently.
+	 * 
+	 * @param stackName
+	 * @return A future that completes with the final state of the stack, or with
+	 *         null if the stack does not exist.
+	 */
+	public CompletableFuture<Stack> waitForStackToCompleteAsync(String stackName);
+
 	/**
 	 *
 	 * @param stackName
@@ -1,37 +1,63 @@
 package org.sagebionetworks.template;
 
 import java.io.ByteArrayInputStream;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.repo.beanstalk.SourceBundle;
+import org.sagebionetworks.template.report.RunReport;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cloudformation.AmazonCloudFormation;
 import com.amazonaws.services.cloudformation.model.AmazonCloudFormationException;
+import com.amazonaws.services.cloudformation.model.Change;
+import com.amazonaws.services.cloudformation.model.ChangeSetStatus;
+import com.amazonaws.services.cloudformation.model.ChangeSetType;
+import com.amazonaws.services.cloudformation.model.CreateChangeSetRequest;
 import com.amazonaws.services.cloudformation.model.CreateStackRequest;
 import com.amazonaws.services.cloudformation.model.CreateStackResult;
+import com.amazonaws.services.cloudformation.model.DeleteChangeSetRequest;
 import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
 import com.amazonaws.services.cloudformation.model.DeleteStackResult;
+import com.amazonaws.services.cloudformation.model.DescribeChangeSetRequest;
+import com.amazonaws.services.cloudformation.model.DescribeChangeSetResult;
 import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
 import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.ExecuteChangeSetRequest;
 import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.ResourceChange;
 import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackEvent;
 import com.amazonaws.services.cloudformation.model.StackStatus;
 import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
 import com.amazonaws.services.cloudformation.model.UpdateStackResult;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
+import com.amazonaws.services.s3.model.BucketLifecycleConfiguration.Rule;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.lifecycle.LifecycleFilterPredicate;
+import com.amazonaws.services.s3.model.lifecycle.LifecyclePrefixPredicate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.inject.Inject;
 
 /**
@@ -44,23 +70,58 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 
 	public static final long TIMEOUT_MS = 60 * 60 * 1000; // one hour.
 
+	/**
+	 * The first sleep while waiting for a stack, grown after every poll without
+	 * progress.
+	 */
+	public static final int INITIAL_SLEEP_TIME = 1000;
+	/**
+	 * The maximum sleep while waiting for a stack.
+	 */
 	public static final int SLEEP_TIME = 10 * 1000;
+	/**
+	 * The maximum sleep while a long running resource (e.g. a database) is in
+	 * progress.
+	 */
+	public static final int LONG_RUNNING_SLEEP_TIME = 30 * 1000;
 	public static final String NO_UPDATES_ARE_TO_BE_PERFORMED = "No updates are to be performed";
+	public static final String NO_CHANGES_IN_CHANGE_SET = "The submitted information didn't contain changes";
+	public static final String CHANGE_SET_NAME_PREFIX = "deploy-";
+	public static final String TEMPLATES_PREFIX = "templates/";
+	/**
+	 * Templates older than this are uploaded again so they do not expire while
+	 * in use. The expiration of the templates is set on the configuration bucket
+	 * in s3-buckets-config.json and must be longer.
+	 */
+	public static final int TEMPLATE_REUSE_DAYS = 23;
+	public static final String TEMPLATE_EXPIRATION_LOOKUP = "S3.templateExpiration";
+	/**
+	 * Template output holding the hash of the last deployment of a stack.
+	 */
+	public static final String DEPLOYMENT_HASH_OUTPUT_KEY = "DeploymentHash";
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 	AmazonCloudFormation cloudFormationClient;
 	AmazonS3 s3Client;
 	Configuration configuration;
 	Logger logger;
 	ThreadProvider threadProvider;
+	StackStatusWatcher stackStatusWatcher;
+	RunReport runReport;
+	LookupCache lookupCache;
 
 	@Inject
 	public CloudFormationClientImpl(AmazonCloudFormation cloudFormationClient, AmazonS3 s3Client,
-			Configuration configuration, LoggerFactory loggerFactory, ThreadProvider threadProvider) {
+			Configuration configuration, LoggerFactory loggerFactory, ThreadProvider threadProvider,
+			StackStatusWatcher stackStatusWatcher, RunReport runReport, LookupCache lookupCache) {
 		super();
 		this.cloudFormationClient = cloudFormationClient;
 		this.s3Client = s3Client;
 		this.configuration = configuration;
 		this.logger = loggerFactory.getLogger(CloudFormationClientImpl.class);
 		this.threadProvider = threadProvider;
+		this.stackStatusWatcher = stackStatusWatcher;
+		this.runReport = runReport;
+		this.lookupCache = lookupCache;
 	}
 
 	@Override
@@ -75,24 +136,35 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 
 			@Override
 			public String apply(String templateUrl) {
-				UpdateStackRequest request = new UpdateStackRequest();
-				request.setStackName(requestInput.getStackName());
-				request.setTemplateURL(templateUrl);
-				if (requestInput.getParameters() != null) {
-					request.withParameters(requestInput.getParameters());
-				}
-				if (requestInput.getCapabilities() != null) {
-					request.withCapabilities(requestInput.getCapabilities());
-				}
-				if (requestInput.getTags() != null) {
-					request.withTags(requestInput.getTags());
-				}
-				UpdateStackResult results = cloudFormationClient.updateStack(request);
-				return results.getStackId();
+				return updateStack(requestInput, templateUrl);
 			}
 		});
 	}
 
+	/**
+	 * Update a stack directly with the template at the given url.
+	 * 
+	 * @param requestInput
+	 * @param templateUrl
+	 * @return The id of the stack
+	 */
+	String updateStack(CreateOrUpdateStackRequest requestInput, String templateUrl) {
+		UpdateStackRequest request = new UpdateStackRequest();
+		request.setStackName(requestInput.getStackName());
+		request.setTemplateURL(templateUrl);
+		if (requestInput.getParameters() != null) {
+			request.withParameters(requestInput.getParameters());
+		}
+		if (requestInput.getCapabilities() != null) {
+			request.withCapabilities(requestInput.getCapabilities());
+		}
+		if (requestInput.getTags() != null) {
+			request.withTags(requestInput.getTags());
+		}
+		UpdateStackResult results = cloudFormationClient.updateStack(request);
+		return results.getStackId();
+	}
+
 	@Override
 	public void createStack(final CreateOrUpdateStackRequest requestInput) {
 		// Temporarily upload the template to S3.
@@ -122,15 +194,22 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 	}
 
 	/**
-	 * Execute a create or update using a template that is temporarily uploaded to
-	 * S3.
+	 * Execute a create or update using a template that is uploaded to S3. The
+	 * template is kept under a content addressed key so unchanged templates are
+	 * reused, and is expired by the lifecycle of the configuration bucket. If the
+	 * bucket does not expire the templates, an uploaded template is deleted after
+	 * use.
 	 * 
 	 * @param function
 	 * @return
 	 */
 	void executeWithS3Template(final CreateOrUpdateStackRequest requestInput, Function<String, String> function) {
+		String bucket = configuration.getConfigurationBucket();
+		SourceBundle bundle = new SourceBundle(bucket,
+				createTemplateKey(requestInput.getStackName(), requestInput.getTemplateBody()));
 		// save the template file to S3
-		SourceBundle bundle = saveTempalteToS3(requestInput.getStackName(), requestInput.getTemplateBody());
+		boolean uploaded = saveTempalteToS3(bundle, requestInput.getTemplateBody());
+		boolean delete = uploaded && !isTemplateExpirationConfigured(bucket);
 		try {
 			// provide an pre-signed URL to the template in S3
 			String templateUrl = createS3Url(bundle);
@@ -145,18 +224,231 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 				}
 			}
 		} finally {
-			// Delete the template from S3
-			deleteTemplate(bundle);
+			if (delete) {
+				deleteTemplate(bundle);
+			}
 		}
 	}
 
 	@Override
 	public void createOrUpdateStack(CreateOrUpdateStackRequest request) {
-		if (doesStackNameExist(request.getStackName())) {
-			updateStack(request);
-		} else {
-			createStack(request);
+		try (Span span = runReport.startSpan(SpanCategory.STACK_UPDATE, request.getStackName())) {
+			span.addBytes(request.getTemplateBody().getBytes(StandardCharsets.UTF_8).length);
+			Optional<Stack> existing = describeStack(request.getStackName());
+			String deploymentHash = calculateDeploymentHash(request);
+			if (existing.isPresent() && isUnchanged(existing.get(), deploymentHash)) {
+				logger.info("Stack: '" + request.getStackName() + "' is unchanged since its last deployment, skipping update");
+				return;
+			}
+			CreateOrUpdateStackRequest hashedRequest = withDeploymentHash(request, deploymentHash);
+			if (existing.isPresent()) {
+				updateStackWithChangeSet(hashedRequest);
+			} else {
+				createStack(hashedRequest);
+			}
+		}
+	}
+
+	/**
+	 * Update a stack by creating a change set, logging its changes and then
+	 * executing it. A change set without resource changes is deleted and the
+	 * stack is updated directly instead, so that the new deployment hash output
+	 * is recorded and the stack is skipped on the next run. A change set that
+	 * fails is deleted before the error is thrown.
+	 * 
+	 * @param requestInput
+	 */
+	void updateStackWithChangeSet(final CreateOrUpdateStackRequest requestInput) {
+		executeWithS3Template(requestInput, templateUrl -> {
+			String stackName = requestInput.getStackName();
+			String changeSetName = CHANGE_SET_NAME_PREFIX + threadProvider.currentTimeMillis();
+			CreateChangeSetRequest request = new CreateChangeSetRequest().withStackName(stackName)
+					.withChangeSetName(changeSetName).withChangeSetType(ChangeSetType.UPDATE).withTemplateURL(templateUrl);
+			if (requestInput.getParameters() != null) {
+				request.withParameters(requestInput.getParameters());
+			}
+			if (requestInput.getCapabilities() != null) {
+				request.withCapabilities(requestInput.getCapabilities());
+			}
+			if (requestInput.getTags() != null) {
+				request.withTags(requestInput.getTags());
+			}
+			String changeSetId = cloudFormationClient.createChangeSet(request).getId();
+			boolean ready;
+			try {
+				ready = waitForChangeSet(stackName, changeSetId);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				deleteChangeSet(stackName, changeSetId, e);
+				throw new RuntimeException(e);
+			} catch (RuntimeException e) {
+				deleteChangeSet(stackName, changeSetId, e);
+				throw e;
+			}
+			if (ready) {
+				cloudFormationClient
+						.executeChangeSet(new ExecuteChangeSetRequest().withStackName(stackName).withChangeSetName(changeSetId));
+			} else {
+				deleteChangeSet(stackName, changeSetId, null);
+				// only the outputs changed, which a change set does not report.
+				logger.info("Recording the deployment of stack: " + stackName);
+				updateStack(requestInput, templateUrl);
+			}
+			return changeSetId;
+		});
+	}
+
+	/**
+	 * Delete the given change set.
+	 * 
+	 * @param stackName
+	 * @param changeSetId
+	 * @param cause       When not null a failure to delete is added to this
+	 *                    exception rather than thrown.
+	 */
+	void deleteChangeSet(String stackName, String changeSetId, Exception cause) {
+		try {
+			cloudFormationClient
+					.deleteChangeSet(new DeleteChangeSetRequest().withStackName(stackName).withChangeSetName(changeSetId));
+		} catch (RuntimeException e) {
+			if (cause == null) {
+				throw e;
+			}
+			cause.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Wait for a change set to be created and log its changes.
+	 * 
+	 * @param stackName
+	 * @param changeSetId
+	 * @return True if the change set is ready to be executed, false if it does not
+	 *         contain any changes.
+	 * @throws InterruptedException
+	 */
+	boolean waitForChangeSet(String stackName, String changeSetId) throws InterruptedException {
+		long start = threadProvider.currentTimeMillis();
+		while (true) {
+			if (threadProvider.currentTimeMillis() - start > TIMEOUT_MS) {
+				throw new RuntimeException("Timed out waiting for the change set of stack: '" + stackName + "'");
+			}
+			DescribeChangeSetResult result = cloudFormationClient
+					.describeChangeSet(new DescribeChangeSetRequest().withStackName(stackName).withChangeSetName(changeSetId));
+			ChangeSetStatus status = ChangeSetStatus.fromValue(result.getStatus());
+			switch (status) {
+			case CREATE_PENDING:
+			case CREATE_IN_PROGRESS:
+				threadProvider.sleep(INITIAL_SLEEP_TIME);
+				break;
+			case CREATE_COMPLETE:
+				logChanges(stackName, changeSetId, result);
+				return true;
+			default:
+				String reason = result.getStatusReason();
+				if (reason != null && (reason.contains(NO_CHANGES_IN_CHANGE_SET) || reason.contains(NO_UPDATES_ARE_TO_BE_PERFORMED))) {
+					logger.info("There were no updates for stack: " + stackName);
+					return false;
+				}
+				throw new RuntimeException("Change set for stack: '" + stackName + "' failed.  Status: " + status.name()
+						+ " with reason: " + reason);
+			}
+		}
+	}
+
+	/**
+	 * Log every resource change of a change set, following its pages.
+	 * 
+	 * @param stackName
+	 * @param changeSetId
+	 * @param result
+	 */
+	void logChanges(String stackName, String changeSetId, DescribeChangeSetResult result) {
+		while (true) {
+			for (Change change : result.getChanges()) {
+				ResourceChange resourceChange = change.getResourceChange();
+				StringBuilder message = new StringBuilder("Stack: '").append(stackName).append("' change: ")
+						.append(resourceChange.getAction()).append(" '").append(resourceChange.getLogicalResourceId())
+						.append("' (").append(resourceChange.getResourceType()).append(")");
+				if (resourceChange.getReplacement() != null) {
+					message.append(" replacement: ").append(resourceChange.getReplacement());
+				}
+				logger.info(message.toString());
+			}
+			if (result.getNextToken() == null) {
+				return;
+			}
+			result = cloudFormationClient.describeChangeSet(new DescribeChangeSetRequest().withStackName(stackName)
+					.withChangeSetName(changeSetId).withNextToken(result.getNextToken()));
+		}
+	}
+
+	/**
+	 * Is the given stack stable and was it last deployed with the given hash?
+	 * 
+	 * @param stack
+	 * @param deploymentHash
+	 * @return
+	 */
+	static boolean isUnchanged(Stack stack, String deploymentHash) {
+		String status = stack.getStackStatus();
+		if (!StackStatus.CREATE_COMPLETE.toString().equals(status)
+				&& !StackStatus.UPDATE_COMPLETE.toString().equals(status)) {
+			return false;
 		}
+		return stack.getOutputs().stream().anyMatch(o -> DEPLOYMENT_HASH_OUTPUT_KEY.equals(o.getOutputKey())
+				&& deploymentHash.equals(o.getOutputValue()));
+	}
+
+	/**
+	 * Calculate a hash over everything that is deployed with a stack: the
+	 * template, parameters, capabilities and tags. The order of the parameters,
+	 * capabilities and tags does not change the hash.
+	 * 
+	 * @param request
+	 * @return
+	 */
+	static String calculateDeploymentHash(CreateOrUpdateStackRequest request) {
+		StringBuilder builder = new StringBuilder(request.getTemplateBody());
+		if (request.getParameters() != null) {
+			Arrays.stream(request.getParameters()).map(p -> "parameter:" + p.getParameterKey() + "=" + p.getParameterValue())
+					.sorted().forEach(p -> builder.append('\n').append(p));
+		}
+		if (request.getCapabilities() != null) {
+			Arrays.stream(request.getCapabilities()).sorted().forEach(c -> builder.append("\ncapability:").append(c));
+		}
+		if (request.getTags() != null) {
+			request.getTags().stream().map(t -> "tag:" + t.getKey() + "=" + t.getValue()).sorted()
+					.forEach(t -> builder.append('\n').append(t));
+		}
+		return DigestUtils.sha256Hex(builder.toString());
+	}
+
+	/**
+	 * Create a copy of the given request with the deployment hash added as an
+	 * output of the template. The hash is kept as an output rather than a tag
+	 * since stack tags are propagated to, and would update, every resource. A
+	 * template that is not a JSON object is left as is and will always be
+	 * deployed.
+	 * 
+	 * @param request
+	 * @param deploymentHash
+	 * @return
+	 */
+	static CreateOrUpdateStackRequest withDeploymentHash(CreateOrUpdateStackRequest request, String deploymentHash) {
+		String templateBody = request.getTemplateBody();
+		try {
+			JsonNode template = OBJECT_MAPPER.readTree(templateBody);
+			if (template instanceof ObjectNode) {
+				((ObjectNode) template).with("Outputs").putObject(DEPLOYMENT_HASH_OUTPUT_KEY).put("Value", deploymentHash);
+				templateBody = OBJECT_MAPPER.writeValueAsString(template);
+			}
+		} catch (JsonProcessingException | UnsupportedOperationException e) {
+			// not JSON, or the outputs are not an object, the template is left as is
+		}
+		return new CreateOrUpdateStackRequest().withStackName(request.getStackName()).withTemplateBody(templateBody)
+				.withParameters(request.getParameters()).withCapabilities(request.getCapabilities())
+				.withTags(request.getTags()).withEnableTerminationProtection(request.getEnableTerminationProtection());
 	}
 
 	/**
@@ -178,34 +470,111 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 	}
 
 	/**
-	 * Save the given template to to S3.
+	 * The key of a template is derived from its content.
 	 * 
+	 * @param stackName
 	 * @param tempalte
 	 * @return
 	 */
-	SourceBundle saveTempalteToS3(String stackName, String tempalte) {
+	static String createTemplateKey(String stackName, String tempalte) {
+		return TEMPLATES_PREFIX + stackName + "-" + DigestUtils.sha256Hex(tempalte.getBytes(StandardCharsets.UTF_8))
+				+ ".json";
+	}
+
+	/**
+	 * Save the given template to to S3. A template that was already uploaded is
+	 * reused unless it is close to being expired by the bucket lifecycle.
+	 * 
+	 * @param bundle
+	 * @param tempalte
+	 * @return True if the template was uploaded, false if it was reused.
+	 */
+	boolean saveTempalteToS3(SourceBundle bundle, String tempalte) {
+		if (isTemplateReusable(bundle.getBucket(), bundle.getKey())) {
+			logger.info("Reusing the unchanged template: " + bundle.getKey());
+			return false;
+		}
+		byte[] bytes = tempalte.getBytes(StandardCharsets.UTF_8);
+		ByteArrayInputStream input = new ByteArrayInputStream(bytes);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(bytes.length);
+		s3Client.putObject(new PutObjectRequest(bundle.getBucket(), bundle.getKey(), input, metadata));
+		return true;
+	}
+
+	/**
+	 * Is there a template with the given key that will not expire before it is
+	 * used?
+	 * 
+	 * @param bucket
+	 * @param key
+	 * @return
+	 */
+	boolean isTemplateReusable(String bucket, String key) {
+		ObjectMetadata metadata;
 		try {
-			String bucket = configuration.getConfigurationBucket();
-			String key = "templates/" + stackName + "-" + UUID.randomUUID() + ".json";
-			byte[] bytes = tempalte.getBytes("UTF-8");
-			ByteArrayInputStream input = new ByteArrayInputStream(bytes);
-			ObjectMetadata metadata = new ObjectMetadata();
-			metadata.setContentLength(bytes.length);
-			s3Client.putObject(new PutObjectRequest(bucket, key, input, metadata));
-			return new SourceBundle(bucket, key);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			metadata = s3Client.getObjectMetadata(bucket, key);
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404) {
+				return false;
+			}
+			throw e;
 		}
+		if (metadata == null || metadata.getLastModified() == null) {
+			return false;
+		}
+		long ageMs = threadProvider.currentTimeMillis() - metadata.getLastModified().getTime();
+		return ageMs < TimeUnit.DAYS.toMillis(TEMPLATE_REUSE_DAYS);
 	}
 
 	/**
-	 * Create a pre-signed URL for the given file.
+	 * Does the lifecycle of the given bucket expire the templates? The rule is
+	 * defined with the configuration bucket in s3-buckets-config.json, this only
+	 * checks that it was applied. Checked once per run.
 	 * 
-	 * @param bundle
+	 * @param bucket
 	 * @return
 	 */
-	String createS3Url(SourceBundle bundle) {
-		return String.format(S3_URL_TEMPLATE, bundle.getBucket(), bundle.getKey());
+	boolean isTemplateExpirationConfigured(String bucket) {
+		return lookupCache.get(TEMPLATE_EXPIRATION_LOOKUP, null, Collections.singletonList(bucket), () -> {
+			BucketLifecycleConfiguration config;
+			try {
+				config = s3Client.getBucketLifecycleConfiguration(bucket);
+			} catch (AmazonServiceException e) {
+				logger.warn("Could not read the lifecycle of bucket: " + bucket + ", templates will be deleted after use: "
+						+ e.getMessage());
+				return false;
+			}
+			if (config == null || config.getRules() == null
+					|| config.getRules().stream().noneMatch(CloudFormationClientImpl::isTemplateExpirationRule)) {
+				logger.warn("The bucket: " + bucket + " does not expire the templates, they will be deleted after use");
+				return false;
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * Does the given rule expire the templates, after they are no longer reused?
+	 * 
+	 * @param rule
+	 * @return
+	 */
+	static boolean isTemplateExpirationRule(Rule rule) {
+		if (!BucketLifecycleConfiguration.ENABLED.equals(rule.getStatus())
+				|| rule.getExpirationInDays() <= TEMPLATE_REUSE_DAYS || rule.getFilter() == null) {
+			return false;
+		}
+		LifecycleFilterPredicate predicate = rule.getFilter().getPredicate();
+		if (predicate == null) {
+			// the whole bucket
+			return true;
+		}
+		if (predicate instanceof LifecyclePrefixPredicate) {
+			String prefix = ((LifecyclePrefixPredicate) predicate).getPrefix();
+			return prefix == null || TEMPLATES_PREFIX.startsWith(prefix);
+		}
+		return false;
 	}
 
 	/**
@@ -217,6 +586,16 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 		s3Client.deleteObject(bundle.getBucket(), bundle.getKey());
 	}
 
+	/**
+	 * Create a pre-signed URL for the given file.
+	 * 
+	 * @param bundle
+	 * @return
+	 */
+	String createS3Url(SourceBundle bundle) {
+		return String.format(S3_URL_TEMPLATE, bundle.getBucket(), bundle.getKey());
+	}
+
 	public boolean isStartedInUpdateRollbackComplete(String stackName) {
 		return describeStack(stackName)
 				.map(s -> StackStatus.UPDATE_ROLLBACK_COMPLETE.equals(StackStatus.fromValue(s.getStackStatus())))
@@ -225,8 +604,23 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 
 	@Override
 	public Optional<Stack> waitForStackToComplete(String stackName) throws InterruptedException {
+		try (Span span = runReport.startSpan(SpanCategory.STACK_WAIT, stackName)) {
+			return pollForStackToComplete(stackName);
+		}
+	}
+
+	/**
+	 * Poll the status of the given stack until it completes.
+	 * 
+	 * @param stackName
+	 * @return
+	 * @throws InterruptedException
+	 */
+	Optional<Stack> pollForStackToComplete(String stackName) throws InterruptedException {
 		boolean startedInUpdateRollbackComplete = isStartedInUpdateRollbackComplete(stackName); // Initial state
 		long start = threadProvider.currentTimeMillis();
+		StackEventTail eventTail = new StackEventTail(cloudFormationClient, stackName);
+		long sleepTime = INITIAL_SLEEP_TIME;
 		while (true) {
 			long elapse = threadProvider.currentTimeMillis() - start;
 			if (elapse > TIMEOUT_MS) {
@@ -250,7 +644,14 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 			case UPDATE_COMPLETE_CLEANUP_IN_PROGRESS:
 				logger.info("Waiting for stack: '" + stackName + "' to complete.  Current status: " + status.name()
 						+ "...");
-				threadProvider.sleep(SLEEP_TIME);
+				List<StackEvent> events = eventTail.nextEvents();
+				events.forEach(this::logStackEvent);
+				if (eventTail.isTerminalEventSeen()) {
+					// The stack published its final event, check its status right away.
+					break;
+				}
+				threadProvider.sleep(sleepTime);
+				sleepTime = nextSleepTime(sleepTime, !events.isEmpty(), eventTail.isLongRunningResourceInProgress());
 				break;
 			case UPDATE_ROLLBACK_COMPLETE:
 				if (startedInUpdateRollbackComplete) { // There was nothing to do, state unchanged
@@ -263,6 +664,48 @@ public class CloudFormationClientImpl implements CloudFormationClient {
 		}
 	}
 
+	@Override
+	public CompletableFuture<Stack> waitForStackToCompleteAsync(String stackName) {
+		// the span is ended by the thread that completes the watch, so it must not
+		// collect the calls made on this thread in the meantime.
+		Span span = runReport.startDetachedSpan(SpanCategory.STACK_WAIT, stackName);
+		return stackStatusWatcher.watch(stackName).whenComplete((stack, error) -> span.close());
+	}
+
+	/**
+	 * Calculate the next sleep while waiting on a stack. The sleep stays short
+	 * while the stack is making progress and backs off when it is not, up to a
+	 * longer limit when a long running resource is in progress.
+	 * 
+	 * @param previousSleepTime
+	 * @param progressed        Did the stack publish any new events since the
+	 *                          last poll?
+	 * @param longRunning       Is a long running resource in progress?
+	 * @return
+	 */
+	static long nextSleepTime(long previousSleepTime, boolean progressed, boolean longRunning) {
+		long max = longRunning ? LONG_RUNNING_SLEEP_TIME : SLEEP_TIME;
+		if (progressed) {
+			return Math.min(previousSleepTime, max);
+		}
+		return Math.min(previousSleepTime * 2, max);
+	}
+
+	/**
+	 * Log the progress of a single resource of a stack.
+	 * 
+	 * @param event
+	 */
+	void logStackEvent(StackEvent event) {
+		StringBuilder message = new StringBuilder("Stack: '").append(event.getStackName()).append("' resource: '")
+				.append(event.getLogicalResourceId()).append("' (").append(event.getResourceType()).append(") ")
+				.append(event.getResourceStatus());
+		if (event.getResourceStatusReason() != null) {
+			message.append(" reason: ").append(event.getResourceStatusReason());
+		}
+		logger.info(message.toString());
+	}
+
 	@Override
 	public String getOutput(String stackName, String outputKey) {
 		String res = null;
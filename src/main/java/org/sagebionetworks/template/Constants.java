@@ -28,6 +28,7 @@ public class Constants {
 	public static final String ROUTE53_PROD_PORTALS_DNS_CONFIG_FILE = "templates/dns/prod_portals_dns.json";
 	public static final String ROUTE53_PROD_DOCS_CLIENT_DNS_CONFIG_FILE = "templates/dns/prod_docs_clients_dns.json";
 	public static final String TEMPLATE_RESOURCE_PATH = "templates/dns/%s_dns.json";
+	public static final String PROPERTY_KEY_ROUTE53_WAIT_FOR_SYNC = "org.sagebionetworks.route53.wait.for.sync";
 
 	public static final String DATAWAREHOUSE_CONFIG_FILE = "templates/datawarehouse/datawarehouse-config.json";
 	public static final String GITHUB_CONFIG_FILE = "templates/repo/github-path-config.json";
@@ -109,6 +110,33 @@ public class Constants {
 	public static final String PROPERTY_KEY_EC2_INSTANCE_MEMORY = "org.sagebionetworks.beanstalk.instance.memory";
 	public static final String PROPERTY_KEY_TIME_TO_LIVE_HOURS = "org.sagebionetworks.repo.time.to.live.hours";
 
+	// stack deployment scheduling
+	public static final String PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM = "org.sagebionetworks.stack.deployment.max.parallelism";
+	public static final String PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND = "org.sagebionetworks.stack.deployment.max.requests.per.second";
+
+	// secret resolution
+	public static final String PROPERTY_KEY_SECRETS_MAX_PARALLELISM = "org.sagebionetworks.secrets.max.parallelism";
+	public static final String PROPERTY_KEY_SECRETS_MAX_REQUESTS_PER_SECOND = "org.sagebionetworks.secrets.max.requests.per.second";
+	public static final String PROPERTY_KEY_SECRETS_ENVELOPE_ENCRYPTION = "org.sagebionetworks.secrets.envelope.encryption";
+	public static final String PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID = "org.sagebionetworks.secrets.hash.key.secret.id";
+
+	// bucket configuration
+	public static final String PROPERTY_KEY_S3_BUCKETS_MAX_PARALLELISM = "org.sagebionetworks.s3.buckets.max.parallelism";
+
+	// local artifact cache
+	public static final String PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY = "org.sagebionetworks.artifact.cache.directory";
+	public static final String PROPERTY_KEY_ARTIFACT_CACHE_MAX_SIZE_MB = "org.sagebionetworks.artifact.cache.max.size.mb";
+
+	// template rendering
+	public static final String PROPERTY_KEY_TEMPLATE_PRECOMPILE = "org.sagebionetworks.template.precompile";
+
+	// dry run: render all the templates to a local directory without changing anything in AWS
+	public static final String PROPERTY_KEY_DRY_RUN_DIRECTORY = "org.sagebionetworks.dry.run.directory";
+	public static final String PROPERTY_KEY_DRY_RUN_INPUTS = "org.sagebionetworks.dry.run.inputs";
+
+	// timing report written at the end of each run
+	public static final String PROPERTY_KEY_RUN_REPORT_FILE = "org.sagebionetworks.run.report.file";
+
 	public static final String PROPERTY_KEY_ELASTICBEANSTALK_IMAGE_VERSION_PREFIX = "org.sagebionetworks.beanstalk.image.version.";
 	public static final String PROPERTY_KEY_ELASTICBEANSTALK_IMAGE_VERSION_JAVA = PROPERTY_KEY_ELASTICBEANSTALK_IMAGE_VERSION_PREFIX + "java";
 	public static final String PROPERTY_KEY_ELASTICBEANSTALK_IMAGE_VERSION_TOMCAT = PROPERTY_KEY_ELASTICBEANSTALK_IMAGE_VERSION_PREFIX + "tomcat";
@@ -271,9 +299,11 @@ public class Constants {
 	
 	// docs deployment
 	public static final String DOCS_STACK_INSTANCE_JSON_FILE = "instance.json";
+	public static final String DOCS_STACK_MANIFEST_FILE = "manifest.json.gz";
 	public static final String PROPERTY_KEY_DOCS_DEPLOYMENT_FLAG = "org.sagebionetworks.docs.deploy";
 	public static final String PROPERTY_KEY_DOCS_SOURCE_BUCKET = "org.sagebionetworks.docs.source";
 	public static final String PROPERTY_KEY_DOCS_DESTINATION_BUCKET = "org.sagebionetworks.docs.destination";
+	public static final String PROPERTY_KEY_DOCS_MAX_COPIES_IN_FLIGHT = "org.sagebionetworks.docs.max.copies.in.flight";
 	public static final String MACHINE_TYPES = "machineTypes";
 	public static final String POOL_TYPES = "poolTypes";
 
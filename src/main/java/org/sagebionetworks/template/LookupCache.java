@@ -0,0 +1,63 @@
+package org.sagebionetworks.template;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cache for the read-only AWS lookups done during a single run of the builder.
+ *
+ */
+public interface LookupCache {
+
+	/**
+	 * Get the result of a lookup, loading it only if the same lookup was not
+	 * already done in this run. Concurrent calls for the same lookup wait for the
+	 * first one to complete. Failed lookups are not cached.
+	 *
+	 * @param lookup    The name of the lookup, used to report the statistics
+	 * @param stackName The name of the stack the result depends on, or null
+	 * @param arguments The arguments that identify the lookup
+	 * @param loader    Loads the result on a miss
+	 * @return
+	 */
+	<T> T get(String lookup, String stackName, List<?> arguments, Supplier<T> loader);
+
+	/**
+	 * Invalidate all the results that depend on the given stack, called when the
+	 * stack is changed.
+	 *
+	 * @param stackName
+	 */
+	void invalidate(String stackName);
+
+	/**
+	 * Wrap the given client so that calls to the given methods are cached, keyed
+	 * by the method and its arguments. All the other methods are passed through.
+	 *
+	 * @param type
+	 * @param delegate
+	 * @param methodNames
+	 * @return
+	 */
+	<T> T createCachingProxy(Class<T> type, T delegate, Set<String> methodNames);
+
+	/**
+	 * @param lookup
+	 * @return The number of calls for the given lookup that were served from the
+	 *         cache
+	 */
+	long getHitCount(String lookup);
+
+	/**
+	 * @param lookup
+	 * @return The number of calls for the given lookup that were loaded
+	 */
+	long getMissCount(String lookup);
+
+	/**
+	 * Log the hit and miss counts of each lookup.
+	 */
+	void logStatistics();
+
+}
@@ -0,0 +1,157 @@
+package org.sagebionetworks.template;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.Logger;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Lookup cache shared by the whole run. Each entry is a future so that
+ * concurrent callers of the same lookup wait on a single request. The
+ * statistics are logged by {@link MainRunner} at the end of the run.
+ *
+ */
+@Singleton
+public class LookupCacheImpl implements LookupCache {
+
+	private final Map<Key, CompletableFuture<Object>> entries;
+	private final Map<String, Counts> counts;
+	private final Logger logger;
+
+	@Inject
+	public LookupCacheImpl(LoggerFactory loggerFactory) {
+		this.entries = new ConcurrentHashMap<>();
+		this.counts = new ConcurrentHashMap<>();
+		this.logger = loggerFactory.getLogger(LookupCacheImpl.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(String lookup, String stackName, List<?> arguments, Supplier<T> loader) {
+		Key key = new Key(lookup, stackName, arguments);
+		Counts lookupCounts = counts.computeIfAbsent(lookup, k -> new Counts());
+		CompletableFuture<Object> created = new CompletableFuture<>();
+		CompletableFuture<Object> existing = entries.putIfAbsent(key, created);
+		if (existing != null) {
+			lookupCounts.hits.increment();
+			try {
+				return (T) existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+		lookupCounts.misses.increment();
+		try {
+			T result = loader.get();
+			created.complete(result);
+			return result;
+		} catch (RuntimeException e) {
+			entries.remove(key, created);
+			created.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void invalidate(String stackName) {
+		entries.keySet().removeIf(key -> stackName.equals(key.stackName));
+	}
+
+	@Override
+	public <T> T createCachingProxy(Class<T> type, T delegate, Set<String> methodNames) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					if (!methodNames.contains(method.getName())) {
+						return invoke(delegate, method, args);
+					}
+					List<Object> arguments = args == null ? Collections.emptyList() : Arrays.asList(args);
+					return get(type.getSimpleName() + "." + method.getName(), null, arguments,
+							() -> invoke(delegate, method, args));
+				}));
+	}
+
+	static Object invoke(Object target, Method method, Object[] args) {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public long getHitCount(String lookup) {
+		Counts lookupCounts = counts.get(lookup);
+		return lookupCounts == null ? 0 : lookupCounts.hits.sum();
+	}
+
+	@Override
+	public long getMissCount(String lookup) {
+		Counts lookupCounts = counts.get(lookup);
+		return lookupCounts == null ? 0 : lookupCounts.misses.sum();
+	}
+
+	@Override
+	public void logStatistics() {
+		new TreeMap<>(counts).forEach((lookup, lookupCounts) -> {
+			logger.info(String.format("Lookup cache %s: %d hits, %d misses", lookup, lookupCounts.hits.sum(),
+					lookupCounts.misses.sum()));
+		});
+	}
+
+	private static class Counts {
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+	}
+
+	private static class Key {
+		final String lookup;
+		final String stackName;
+		final List<?> arguments;
+
+		Key(String lookup, String stackName, List<?> arguments) {
+			this.lookup = lookup;
+			this.stackName = stackName;
+			this.arguments = arguments;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(arguments, lookup, stackName);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return Objects.equals(arguments, other.arguments) && Objects.equals(lookup, other.lookup)
+					&& Objects.equals(stackName, other.stackName);
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.sagebionetworks.template;
+
+import org.sagebionetworks.template.report.RunReport;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Runs the body of a main with the shared injector. Once the body completes or
+ * fails, the run report is written, the lookup cache statistics are logged and
+ * the stack status watcher is stopped so that its thread does not keep the JVM
+ * alive.
+ *
+ */
+public class MainRunner {
+
+	/**
+	 * The body of a main.
+	 *
+	 * @param <E> The exception thrown by the body
+	 */
+	@FunctionalInterface
+	public interface Body<E extends Exception> {
+
+		void run(Injector injector) throws E;
+	}
+
+	/**
+	 * Run the given body with a new injector of the {@link TemplateGuiceModule}.
+	 *
+	 * @param <E>
+	 * @param body
+	 * @throws E
+	 */
+	public static <E extends Exception> void run(Body<E> body) throws E {
+		run(Guice.createInjector(new TemplateGuiceModule()), body);
+	}
+
+	static <E extends Exception> void run(Injector injector, Body<E> body) throws E {
+		try {
+			body.run(injector);
+		} finally {
+			injector.getInstance(RunReport.class).writeReport();
+			injector.getInstance(LookupCache.class).logStatistics();
+			injector.getInstance(StackStatusWatcher.class).shutdown();
+		}
+	}
+
+}
@@ -1,15 +1,38 @@
 package org.sagebionetworks.template;
 
-import com.amazonaws.services.route53.model.ChangeResourceRecordSetsRequest;
-import com.amazonaws.services.route53.model.ChangeResourceRecordSetsResult;
+import com.amazonaws.services.route53.model.Change;
 import com.amazonaws.services.route53.model.ResourceRecordSet;
-import org.sagebionetworks.template.dns.RecordSetDescriptor;
 
+import java.util.Iterator;
 import java.util.List;
 
 public interface Route53Client {
 
-	List<ResourceRecordSet> listResourceRecordSets(String hostedZoneId);
-	void changeResourceRecordSets(String hostedZoneId, List<RecordSetDescriptor> recordSetDescriptors, int batchSize);
+	/**
+	 * Stream over every record set of the given zone, one page at a time.
+	 *
+	 * @param hostedZoneId
+	 * @return
+	 */
+	Iterator<ResourceRecordSet> listResourceRecordSets(String hostedZoneId);
+
+	/**
+	 * Submit the given changes, packed into as few requests as the Route53 limits allow.
+	 * The changes are planned by {@link org.sagebionetworks.template.dns.DnsChangePlan}.
+	 * When configured, waits for the changes to be in sync.
+	 *
+	 * @param hostedZoneId
+	 * @param changes
+	 * @param batchSize The maximum number of changes in a single request
+	 * @return The IDs of the submitted changes.
+	 */
+	List<String> submitChanges(String hostedZoneId, List<Change> changes, int batchSize);
+
+	/**
+	 * Wait for all of the given changes to be in sync.
+	 *
+	 * @param changeIds
+	 */
+	void waitForChanges(List<String> changeIds);
 
 }
@@ -1,67 +1,208 @@
 package org.sagebionetworks.template;
 
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ROUTE53_WAIT_FOR_SYNC;
+
 import com.amazonaws.services.route53.AmazonRoute53;
-import com.amazonaws.services.route53.model.AliasTarget;
 import com.amazonaws.services.route53.model.Change;
 import com.amazonaws.services.route53.model.ChangeAction;
 import com.amazonaws.services.route53.model.ChangeBatch;
+import com.amazonaws.services.route53.model.ChangeInfo;
 import com.amazonaws.services.route53.model.ChangeResourceRecordSetsRequest;
 import com.amazonaws.services.route53.model.ChangeResourceRecordSetsResult;
+import com.amazonaws.services.route53.model.ChangeStatus;
+import com.amazonaws.services.route53.model.GetChangeRequest;
 import com.amazonaws.services.route53.model.ListResourceRecordSetsRequest;
 import com.amazonaws.services.route53.model.ListResourceRecordSetsResult;
 import com.amazonaws.services.route53.model.ResourceRecord;
 import com.amazonaws.services.route53.model.ResourceRecordSet;
-import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.template.config.Configuration;
-import org.sagebionetworks.template.dns.AliasTargetDescriptor;
-import org.sagebionetworks.template.dns.RecordSetDescriptor;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class Route53ClientImpl implements Route53Client {
 
+	/**
+	 * The maximum number of record sets returned by a single list request.
+	 */
+	public static final String MAX_ITEMS_PER_PAGE = "300";
+	/**
+	 * The maximum number of changes in a single request.
+	 */
+	public static final int MAX_CHANGES_PER_BATCH = 1000;
+	/**
+	 * The maximum number of resource records in a single request, an UPSERT
+	 * counts twice.
+	 */
+	public static final int MAX_RECORDS_PER_BATCH = 1000;
+	/**
+	 * The maximum number of characters of all the record values in a single
+	 * request, an UPSERT counts twice.
+	 */
+	public static final int MAX_VALUE_CHARACTERS_PER_BATCH = 32000;
+
+	public static final long WAIT_FOR_SYNC_POLL_MS = 5000L;
+	public static final long WAIT_FOR_SYNC_TIMEOUT_MS = 10 * 60 * 1000L;
+
 	AmazonRoute53 r53Client;
 	Configuration config;
 	Logger logger;
+	ThreadProvider threadProvider;
 
 	@Inject
-	Route53ClientImpl(AmazonRoute53 r53Client, Configuration configuration, LoggerFactory loggerFactory) {
+	Route53ClientImpl(AmazonRoute53 r53Client, Configuration configuration, LoggerFactory loggerFactory, ThreadProvider threadProvider) {
 		this.r53Client = r53Client;
 		this.config = configuration;
 		this.logger = loggerFactory.getLogger(Route53ClientImpl.class);
+		this.threadProvider = threadProvider;
 	}
 
 	@Override
-	public List<ResourceRecordSet> listResourceRecordSets(String hostedZoneId) {
-		ListResourceRecordSetsRequest req = new ListResourceRecordSetsRequest().withHostedZoneId(hostedZoneId).withMaxItems("200");
-		ListResourceRecordSetsResult res = r53Client.listResourceRecordSets(req);
-		return res.getResourceRecordSets();
+	public Iterator<ResourceRecordSet> listResourceRecordSets(String hostedZoneId) {
+		return new PageIterator<>(new RecordSetPageProvider(hostedZoneId));
 	}
 
 	@Override
-	public void changeResourceRecordSets(String hostedZoneId, List<RecordSetDescriptor> recordSetDescriptors, int batchSize) {
-		List<List<RecordSetDescriptor>> batchedDescriptors = Lists.partition(recordSetDescriptors, batchSize);
-		batchedDescriptors.stream().map(l -> buildChangesList(l)).forEach(cl -> submitBatch(hostedZoneId, cl));
+	public List<String> submitChanges(String hostedZoneId, List<Change> changes, int batchSize) {
+		List<String> changeIds = new ArrayList<>();
+		for (List<Change> batch : packChanges(changes, batchSize)) {
+			String changeId = submitBatch(hostedZoneId, batch);
+			if (changeId != null) {
+				changeIds.add(changeId);
+			}
+		}
+		if (isWaitForSync()) {
+			waitForChanges(changeIds);
+		}
+		return changeIds;
+	}
+
+	/**
+	 * Pack the changes, in order, into batches that are each within the Route53
+	 * limits on the number of changes, records and characters of values.
+	 *
+	 * @param changes
+	 * @param batchSize
+	 * @return
+	 */
+	static List<List<Change>> packChanges(List<Change> changes, int batchSize) {
+		int maxChanges = Math.min(batchSize, MAX_CHANGES_PER_BATCH);
+		List<List<Change>> batches = new ArrayList<>();
+		List<Change> batch = new ArrayList<>();
+		int records = 0;
+		int characters = 0;
+		for (Change change : changes) {
+			int changeRecords = countRecords(change);
+			int changeCharacters = countValueCharacters(change);
+			if (!batch.isEmpty() && (batch.size() >= maxChanges || records + changeRecords > MAX_RECORDS_PER_BATCH
+					|| characters + changeCharacters > MAX_VALUE_CHARACTERS_PER_BATCH)) {
+				batches.add(batch);
+				batch = new ArrayList<>();
+				records = 0;
+				characters = 0;
+			}
+			batch.add(change);
+			records += changeRecords;
+			characters += changeCharacters;
+		}
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
 	}
 
-	List<Change> buildChangesList(List<RecordSetDescriptor> l) {
-		List<Change> changes = l.stream().map(rd -> rd.toResourceRecordSet())
-				.map(rrs -> new Change(ChangeAction.UPSERT, rrs))
-				.collect(Collectors.toList());
-		return changes;
+	static int countRecords(Change change) {
+		List<ResourceRecord> records = change.getResourceRecordSet().getResourceRecords();
+		int count = records == null || records.isEmpty() ? 1 : records.size();
+		return ChangeAction.UPSERT.name().equals(change.getAction()) ? 2 * count : count;
 	}
 
-	void submitBatch(String hostedZoneId, List<Change> changes) {
+	static int countValueCharacters(Change change) {
+		List<ResourceRecord> records = change.getResourceRecordSet().getResourceRecords();
+		int count = records == null ? 0 : records.stream().mapToInt(r -> r.getValue() == null ? 0 : r.getValue().length()).sum();
+		return ChangeAction.UPSERT.name().equals(change.getAction()) ? 2 * count : count;
+	}
+
+	String submitBatch(String hostedZoneId, List<Change> changes) {
 		ChangeBatch batch = new ChangeBatch(changes);
 		ChangeResourceRecordSetsRequest request = new ChangeResourceRecordSetsRequest();
 		request.setChangeBatch(batch);
 		request.setHostedZoneId(hostedZoneId);
 		ChangeResourceRecordSetsResult result = r53Client.changeResourceRecordSets(request);
+		ChangeInfo info = result == null ? null : result.getChangeInfo();
+		if (info == null) {
+			return null;
+		}
+		logger.info(String.format("Submitted %d changes to zone: %s as change: %s", changes.size(), hostedZoneId, info.getId()));
+		return info.getId();
+	}
+
+	@Override
+	public void waitForChanges(List<String> changeIds) {
+		// all of the changes are polled each round so they propagate together
+		Set<String> pending = new LinkedHashSet<>(changeIds);
+		long startTimeMS = threadProvider.currentTimeMillis();
+		while (true) {
+			pending.removeIf(this::isInSync);
+			if (pending.isEmpty()) {
+				return;
+			}
+			if (threadProvider.currentTimeMillis() - startTimeMS > WAIT_FOR_SYNC_TIMEOUT_MS) {
+				throw new IllegalStateException("Timed out waiting for changes: " + pending + " to be in sync");
+			}
+			logger.info(String.format("Waiting for %d changes to be in sync...", pending.size()));
+			try {
+				threadProvider.sleep(WAIT_FOR_SYNC_POLL_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	boolean isInSync(String changeId) {
+		ChangeInfo info = r53Client.getChange(new GetChangeRequest(changeId)).getChangeInfo();
+		return info == null || ChangeStatus.INSYNC.name().equals(info.getStatus());
+	}
+
+	boolean isWaitForSync() {
+		try {
+			return config.getBooleanProperty(PROPERTY_KEY_ROUTE53_WAIT_FOR_SYNC);
+		} catch (ConfigurationPropertyNotFound e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stateful PageProvider for listing the record sets of a zone using pagination.
+	 *
+	 */
+	private class RecordSetPageProvider implements PageIterator.PageProvider<ResourceRecordSet> {
+
+		private final ListResourceRecordSetsRequest request;
+		private boolean isDone = false;
+
+		RecordSetPageProvider(String hostedZoneId) {
+			this.request = new ListResourceRecordSetsRequest().withHostedZoneId(hostedZoneId).withMaxItems(MAX_ITEMS_PER_PAGE);
+		}
+
+		public List<ResourceRecordSet> nextPage() {
+			if (isDone) {
+				return Collections.emptyList();
+			}
+			ListResourceRecordSetsResult result = r53Client.listResourceRecordSets(request);
+			request.setStartRecordName(result.getNextRecordName());
+			request.setStartRecordType(result.getNextRecordType());
+			request.setStartRecordIdentifier(result.getNextRecordIdentifier());
+			isDone = !Boolean.TRUE.equals(result.getIsTruncated());
+			return result.getResourceRecordSets();
+		}
 	}
 
 }
@@ -0,0 +1,126 @@
+package org.sagebionetworks.template;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+/**
+ * Stateful tail over the events of a single stack. Each call to
+ * {@link #nextEvents()} only returns the events that were published since the
+ * previous call, so the events of a long running deployment are read
+ * incrementally rather than re-read on every poll.
+ *
+ */
+public class StackEventTail {
+
+	public static final String STACK_RESOURCE_TYPE = "AWS::CloudFormation::Stack";
+
+	/**
+	 * Resource types that routinely take many minutes to create or update.
+	 */
+	public static final Set<String> LONG_RUNNING_RESOURCE_TYPES = Set.of("AWS::RDS::DBInstance", "AWS::RDS::DBCluster",
+			"AWS::ElasticBeanstalk::Environment", "AWS::CloudFront::Distribution");
+
+	private final AmazonCloudFormation cloudFormationClient;
+	private final String stackName;
+	private String lastEventId;
+	private boolean terminalEventSeen;
+	private final Set<String> longRunningInProgress;
+
+	public StackEventTail(AmazonCloudFormation cloudFormationClient, String stackName) {
+		this.cloudFormationClient = cloudFormationClient;
+		this.stackName = stackName;
+		this.terminalEventSeen = false;
+		this.longRunningInProgress = new HashSet<>();
+	}
+
+	/**
+	 * Fetch the events published since the last call, in chronological order. The
+	 * first call only returns the events of the operation currently in progress.
+	 *
+	 * @return
+	 */
+	public List<StackEvent> nextEvents() {
+		LinkedList<StackEvent> newEvents = new LinkedList<>();
+		terminalEventSeen = false;
+		String nextToken = null;
+		boolean done = false;
+		while (!done) {
+			DescribeStackEventsResult result = cloudFormationClient.describeStackEvents(
+					new DescribeStackEventsRequest().withStackName(stackName).withNextToken(nextToken));
+			// events are returned newest first.
+			for (StackEvent event : result.getStackEvents()) {
+				if (event.getEventId().equals(lastEventId)) {
+					done = true;
+					break;
+				}
+				newEvents.addFirst(event);
+				if (lastEventId == null && isStackEvent(event) && isInProgress(event.getResourceStatus())) {
+					// first read: stop at the start of the current operation.
+					done = true;
+					break;
+				}
+			}
+			nextToken = result.getNextToken();
+			// on the first read never page past the most recent events.
+			if (nextToken == null || lastEventId == null) {
+				done = true;
+			}
+		}
+		if (!newEvents.isEmpty()) {
+			lastEventId = newEvents.getLast().getEventId();
+		}
+		for (StackEvent event : newEvents) {
+			track(event);
+		}
+		return Collections.unmodifiableList(newEvents);
+	}
+
+	private void track(StackEvent event) {
+		if (isStackEvent(event)) {
+			terminalEventSeen = !isInProgress(event.getResourceStatus());
+		} else if (LONG_RUNNING_RESOURCE_TYPES.contains(event.getResourceType())) {
+			if (isInProgress(event.getResourceStatus())) {
+				longRunningInProgress.add(event.getLogicalResourceId());
+			} else {
+				longRunningInProgress.remove(event.getLogicalResourceId());
+			}
+		}
+	}
+
+	/**
+	 * Did the last call to {@link #nextEvents()} return a stack level event with a
+	 * terminal status (e.g. UPDATE_COMPLETE or CREATE_FAILED)?
+	 *
+	 * @return
+	 */
+	public boolean isTerminalEventSeen() {
+		return terminalEventSeen;
+	}
+
+	/**
+	 * Is any resource of a long running type (e.g. a database or a Beanstalk
+	 * environment) still in progress?
+	 *
+	 * @return
+	 */
+	public boolean isLongRunningResourceInProgress() {
+		return !longRunningInProgress.isEmpty();
+	}
+
+	boolean isStackEvent(StackEvent event) {
+		return STACK_RESOURCE_TYPE.equals(event.getResourceType()) && stackName.equals(event.getLogicalResourceId());
+	}
+
+	static boolean isInProgress(String resourceStatus) {
+		return resourceStatus != null && resourceStatus.endsWith("_IN_PROGRESS");
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.sagebionetworks.template;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.amazonaws.services.cloudformation.model.Stack;
+
+/**
+ * Shared service that watches the status of all stacks that are currently
+ * being waited on. The status of every watched stack is checked in a single
+ * batch, so the number of describe calls does not grow with the number of
+ * stacks in flight.
+ *
+ */
+public interface StackStatusWatcher {
+
+	/**
+	 * Watch the stack with the given name until it completes. Watching a stack
+	 * that is already being watched shares the existing status checks.
+	 * 
+	 * @param stackName
+	 * @return A future that completes with the final state of the stack, with
+	 *         null if the stack does not exist, or exceptionally if the stack
+	 *         failed or timed out.
+	 */
+	CompletableFuture<Stack> watch(String stackName);
+
+	/**
+	 * Stop watching, any stack that is still watched completes exceptionally.
+	 */
+	void shutdown();
+
+}
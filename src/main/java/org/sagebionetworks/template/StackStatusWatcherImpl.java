@@ -0,0 +1,277 @@
+package org.sagebionetworks.template;
+
+import static org.sagebionetworks.template.CloudFormationClientImpl.TIMEOUT_MS;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.AmazonCloudFormationException;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Watcher that checks all watched stacks from a single background thread. On
+ * each poll the watched stacks are either described one by one or found with a
+ * single paginated sweep over all stacks, whichever needs fewer calls. The
+ * thread is stopped as soon as no stacks are watched.
+ *
+ */
+@Singleton
+public class StackStatusWatcherImpl implements StackStatusWatcher {
+
+	public static final long POLL_INTERVAL_MS = 5 * 1000;
+
+	private final AmazonCloudFormation cloudFormationClient;
+	private final Logger logger;
+	private final ThreadProvider threadProvider;
+	private final Map<String, Watch> watches;
+	private ScheduledExecutorService executor;
+	/**
+	 * The number of pages needed by the last full sweep, or the most pages seen
+	 * by a sweep that stopped early.
+	 */
+	private int sweepPageCount;
+
+	@Inject
+	public StackStatusWatcherImpl(AmazonCloudFormation cloudFormationClient, LoggerFactory loggerFactory,
+			ThreadProvider threadProvider) {
+		this.cloudFormationClient = cloudFormationClient;
+		this.logger = loggerFactory.getLogger(StackStatusWatcherImpl.class);
+		this.threadProvider = threadProvider;
+		this.watches = new ConcurrentHashMap<>();
+		this.sweepPageCount = 1;
+	}
+
+	@Override
+	public CompletableFuture<Stack> watch(String stackName) {
+		Watch watch = register(stackName);
+		startPolling();
+		// each caller gets its own copy so cancelling one does not affect the others.
+		return watch.future.copy();
+	}
+
+	/**
+	 * Register a watch for the given stack, reusing any existing watch.
+	 * 
+	 * @param stackName
+	 * @return
+	 */
+	Watch register(String stackName) {
+		ValidateArgument.requiredNotBlank(stackName, "stackName");
+		return watches.computeIfAbsent(stackName, name -> new Watch(name, threadProvider.currentTimeMillis()));
+	}
+
+	private synchronized void startPolling() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "stack-status-watcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleWithFixedDelay(this::pollSafely, 0, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void pollSafely() {
+		try {
+			poll();
+		} catch (RuntimeException e) {
+			// a failed poll (e.g. throttling) is retried on the next tick.
+			logger.warn("Failed to check the status of stacks: " + watches.keySet() + ": " + e.getMessage());
+		}
+		stopPollingIfIdle();
+	}
+
+	/**
+	 * Stop the background thread once nothing is watched, it is started again by
+	 * the next watch.
+	 */
+	synchronized void stopPollingIfIdle() {
+		if (executor != null && watches.isEmpty()) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+		for (Watch watch : watches.values()) {
+			complete(watch, null, new IllegalStateException("Stopped watching stack: '" + watch.stackName + "'"));
+		}
+	}
+
+	synchronized boolean isPolling() {
+		return executor != null;
+	}
+
+	/**
+	 * Check the status of every watched stack once.
+	 */
+	void poll() {
+		Set<String> remaining = new HashSet<>(watches.keySet());
+		if (remaining.isEmpty()) {
+			return;
+		}
+		if (remaining.size() > sweepPageCount) {
+			sweep(remaining);
+		} else {
+			for (String stackName : remaining) {
+				describe(stackName);
+			}
+		}
+		long now = threadProvider.currentTimeMillis();
+		for (Watch watch : watches.values()) {
+			if (now - watch.startMs > TIMEOUT_MS) {
+				complete(watch, null,
+						new RuntimeException("Timed out waiting for stack: '" + watch.stackName + "' status to complete"));
+			}
+		}
+	}
+
+	/**
+	 * Find the given stacks with a paginated sweep over all stacks, stopping as
+	 * soon as all of them are found.
+	 * 
+	 * @param remaining
+	 */
+	void sweep(Set<String> remaining) {
+		String nextToken = null;
+		int pages = 0;
+		do {
+			DescribeStacksResult result = cloudFormationClient
+					.describeStacks(new DescribeStacksRequest().withNextToken(nextToken));
+			pages++;
+			for (Stack stack : result.getStacks()) {
+				if (remaining.remove(stack.getStackName())) {
+					onStatus(watches.get(stack.getStackName()), stack);
+				}
+			}
+			nextToken = result.getNextToken();
+		} while (nextToken != null && !remaining.isEmpty());
+		if (nextToken != null) {
+			// the account has at least this many pages.
+			sweepPageCount = Math.max(sweepPageCount, pages);
+		} else {
+			sweepPageCount = pages;
+			// the sweep covered every stack so the rest do not exist.
+			for (String stackName : remaining) {
+				complete(watches.get(stackName), null, null);
+			}
+		}
+	}
+
+	/**
+	 * Describe a single stack.
+	 * 
+	 * @param stackName
+	 */
+	void describe(String stackName) {
+		Stack stack;
+		try {
+			List<Stack> stacks = cloudFormationClient.describeStacks(new DescribeStacksRequest().withStackName(stackName))
+					.getStacks();
+			stack = stacks.isEmpty() ? null : stacks.get(0);
+		} catch (AmazonCloudFormationException e) {
+			// thrown when the stack does not exist.
+			stack = null;
+		}
+		if (stack == null) {
+			complete(watches.get(stackName), null, null);
+		} else {
+			onStatus(watches.get(stackName), stack);
+		}
+	}
+
+	/**
+	 * Process the latest state of a watched stack.
+	 * 
+	 * @param watch
+	 * @param stack
+	 */
+	void onStatus(Watch watch, Stack stack) {
+		StackStatus status = StackStatus.fromValue(stack.getStackStatus());
+		boolean firstCheck = watch.lastStatus == null;
+		switch (status) {
+		case CREATE_COMPLETE:
+		case UPDATE_COMPLETE:
+		case DELETE_COMPLETE:
+			complete(watch, stack, null);
+			break;
+		case CREATE_IN_PROGRESS:
+		case UPDATE_IN_PROGRESS:
+		case DELETE_IN_PROGRESS:
+		case UPDATE_COMPLETE_CLEANUP_IN_PROGRESS:
+			if (status != watch.lastStatus) {
+				logger.info("Waiting for stack: '" + watch.stackName + "' to complete.  Current status: " + status.name()
+						+ "...");
+			}
+			watch.lastStatus = status;
+			break;
+		case UPDATE_ROLLBACK_COMPLETE:
+			if (firstCheck) { // There was nothing to do, state unchanged
+				complete(watch, stack, null);
+				break;
+			}
+		default:
+			complete(watch, null, new RuntimeException("Stack '" + watch.stackName + "' did not complete.  Status: "
+					+ status.name() + " with reason: " + stack.getStackStatusReason()));
+		}
+	}
+
+	private void complete(Watch watch, Stack stack, RuntimeException error) {
+		watches.remove(watch.stackName, watch);
+		if (error != null) {
+			watch.future.completeExceptionally(error);
+		} else {
+			watch.future.complete(stack);
+		}
+	}
+
+	int getWatchCount() {
+		return watches.size();
+	}
+
+	int getSweepPageCount() {
+		return sweepPageCount;
+	}
+
+	static class Watch {
+
+		private final String stackName;
+		private final long startMs;
+		private final CompletableFuture<Stack> future;
+		private StackStatus lastStatus;
+
+		Watch(String stackName, long startMs) {
+			this.stackName = stackName;
+			this.startMs = startMs;
+			this.future = new CompletableFuture<>();
+		}
+
+		CompletableFuture<Stack> getFuture() {
+			return future;
+		}
+	}
+
+}
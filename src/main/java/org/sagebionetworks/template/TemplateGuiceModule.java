@@ -1,7 +1,6 @@
 package org.sagebionetworks.template;
 
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.athena.AmazonAthena;
 import com.amazonaws.services.athena.AmazonAthenaClientBuilder;
 import com.amazonaws.services.cloudformation.AmazonCloudFormation;
@@ -15,7 +14,7 @@ import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingC
 import com.amazonaws.services.glue.AWSGlue;
 import com.amazonaws.services.glue.AWSGlueClientBuilder;
 import com.amazonaws.services.kms.AWSKMS;
-import com.amazonaws.services.kms.AWSKMSAsyncClientBuilder;
+import com.amazonaws.services.kms.AWSKMSClientBuilder;
 import com.amazonaws.services.lambda.AWSLambda;
 import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
 import com.amazonaws.services.route53.AmazonRoute53;
@@ -28,7 +27,9 @@ import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClientBuilder;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -55,10 +56,16 @@ import org.sagebionetworks.template.datawarehouse.DataWarehouseConfig;
 import org.sagebionetworks.template.datawarehouse.DataWarehouseConfigValidator;
 import org.sagebionetworks.template.datawarehouse.backfill.BackfillDataWarehouseBuilder;
 import org.sagebionetworks.template.datawarehouse.backfill.BackfillDataWarehouseBuilderImpl;
+import org.sagebionetworks.template.deploy.StackDeploymentScheduler;
+import org.sagebionetworks.template.deploy.StackDeploymentSchedulerImpl;
 import org.sagebionetworks.template.dns.DnsBuilder;
 import org.sagebionetworks.template.dns.DnsBuilderImpl;
 import org.sagebionetworks.template.docs.SynapseDocsBuilder;
 import org.sagebionetworks.template.docs.SynapseDocsBuilderImpl;
+import org.sagebionetworks.template.dryrun.DryRunArtifactDownload;
+import org.sagebionetworks.template.dryrun.DryRunCloudFormationClient;
+import org.sagebionetworks.template.dryrun.DryRunEc2Client;
+import org.sagebionetworks.template.dryrun.DryRunMode;
 import org.sagebionetworks.template.global.GlobalResourcesBuilder;
 import org.sagebionetworks.template.global.GlobalResourcesBuilderImpl;
 import org.sagebionetworks.template.ip.address.IpAddressPoolBuilder;
@@ -106,12 +113,16 @@ import org.sagebionetworks.template.repo.kinesis.firehose.KinesisFirehoseConfigV
 import org.sagebionetworks.template.repo.kinesis.firehose.KinesisFirehoseVelocityContextProvider;
 import org.sagebionetworks.template.repo.queues.SnsAndSqsConfig;
 import org.sagebionetworks.template.repo.queues.SnsAndSqsVelocityContextProvider;
+import org.sagebionetworks.template.report.RunReport;
+import org.sagebionetworks.template.report.RunReportImpl;
 import org.sagebionetworks.template.s3.S3BucketBuilder;
 import org.sagebionetworks.template.s3.S3BucketBuilderImpl;
 import org.sagebionetworks.template.s3.S3Config;
 import org.sagebionetworks.template.s3.S3ConfigValidator;
 import org.sagebionetworks.template.s3.S3TransferManagerFactory;
 import org.sagebionetworks.template.s3.S3TransferManagerFactoryImpl;
+import org.sagebionetworks.template.utils.ArtifactCache;
+import org.sagebionetworks.template.utils.ArtifactCacheImpl;
 import org.sagebionetworks.template.utils.ArtifactDownload;
 import org.sagebionetworks.template.utils.ArtifactDownloadImpl;
 import org.sagebionetworks.template.vpc.SubnetTemplateBuilder;
@@ -124,6 +135,7 @@ import org.sagebionetworks.war.WarAppender;
 import org.sagebionetworks.war.WarAppenderImpl;
 
 import java.io.IOException;
+import java.util.Set;
 import static org.sagebionetworks.template.Constants.ATHENA_QUERIES_CONFIG_FILE;
 import static org.sagebionetworks.template.Constants.CLOUDWATCH_LOGS_CONFIG_FILE;
 import static org.sagebionetworks.template.Constants.DATAWAREHOUSE_CONFIG_FILE;
@@ -141,17 +153,21 @@ public class TemplateGuiceModule extends com.google.inject.AbstractModule {
 	private static final String CLASSPATH_AND_FILE = "classpath,file";
 	private static final String CLASSPATH_RESOURCE_LOADER_CLASS = "classpath.resource.loader.class";
 	private static final String FILE_RESOURCE_LOADER_CLASS = "file.resource.loader.class";
+	private static final String CLASSPATH_RESOURCE_LOADER_CACHE = "classpath.resource.loader.cache";
+	private static final String FILE_RESOURCE_LOADER_CACHE = "file.resource.loader.cache";
+	private static final String CLASSPATH_RESOURCE_LOADER_MODIFICATION_CHECK_INTERVAL = "classpath.resource.loader.modificationCheckInterval";
 
 	@Override
 	protected void configure() {
-		bind(CloudFormationClient.class).to(CloudFormationClientImpl.class);
+		bind(StackStatusWatcher.class).to(StackStatusWatcherImpl.class);
 		bind(VpcTemplateBuilder.class).to(VpcTemplateBuilderImpl.class);
 		bind(SubnetTemplateBuilder.class).to(SubnetTemplateBuilderImpl.class);
 		bind(Configuration.class).to(ConfigurationImpl.class);
 		bind(RepoConfiguration.class).to(RepoConfigurationImpl.class);
 		bind(LoggerFactory.class).to(LoggerFactoryImpl.class);
 		bind(RepositoryTemplateBuilder.class).to(RepositoryTemplateBuilderImpl.class);
-		bind(ArtifactDownload.class).to(ArtifactDownloadImpl.class);
+		bind(TemplateRenderer.class).to(TemplateRendererImpl.class);
+		bind(ArtifactCache.class).to(ArtifactCacheImpl.class);
 		bind(ArtifactCopy.class).to(ArtifactCopyImpl.class);
 		bind(FileProvider.class).to(FileProviderImpl.class);
 		bind(ThreadProvider.class).to(ThreadProviderImp.class);
@@ -166,7 +182,8 @@ public class TemplateGuiceModule extends com.google.inject.AbstractModule {
 		bind(SesClient.class).to(SesClientImpl.class);
 		bind(GlobalResourcesBuilder.class).to(GlobalResourcesBuilderImpl.class);
 		bind(CloudwatchLogsVelocityContextProvider.class).to(CloudwatchLogsVelocityContextProviderImpl.class);
-		bind(Ec2Client.class).to(Ec2ClientImpl.class);
+		bind(LookupCache.class).to(LookupCacheImpl.class);
+		bind(RunReport.class).to(RunReportImpl.class);
 		bind(SynapseAdminClientFactory.class).to(SynapseAdminClientFactoryImpl.class);
 		bind(AsynchAdminJobExecutor.class).to(AsynchAdminJobExecutorImpl.class);
 		bind(SynapseDocsBuilder.class).to(SynapseDocsBuilderImpl.class);
@@ -183,6 +200,7 @@ public class TemplateGuiceModule extends com.google.inject.AbstractModule {
 		bind(DataWarehouseBuilder.class).to(DataWarehouseBuilderImpl.class);
 		bind(BackfillDataWarehouseBuilder.class).to(BackfillDataWarehouseBuilderImpl.class);
 		bind(MarkDownItLambdaBuilder.class).to(MarkDownItLambdaBuilderImpl.class);
+		bind(StackDeploymentScheduler.class).to(StackDeploymentSchedulerImpl.class);
 
 		Multibinder<VelocityContextProvider> velocityContextProviderMultibinder = Multibinder.newSetBinder(binder(), VelocityContextProvider.class);
 
@@ -193,161 +211,190 @@ public class TemplateGuiceModule extends com.google.inject.AbstractModule {
 		velocityContextProviderMultibinder.addBinding().to(BedrockAgentContextProvider.class);
 	}
 	
+	/**
+	 * Factory for all the AWS clients, sharing the {@link DefaultAWSCredentialsProviderChain}
+	 * and a single tuned client configuration.
+	 * @return
+	 */
+	@Provides
+	@Singleton
+	public AwsClientFactory provideAwsClientFactory(DryRunMode dryRunMode, RunReport runReport,
+			LoggerFactory loggerFactory) {
+		return new AwsClientFactory(DefaultAWSCredentialsProviderChain.getInstance(),
+				AwsClientFactory.createClientConfiguration(), dryRunMode, runReport, loggerFactory);
+	}
+
+	/**
+	 * During a dry run the templates are written to a local directory instead of
+	 * being deployed.
+	 * @return
+	 */
+	@Provides
+	public CloudFormationClient provideCloudFormationClient(DryRunMode dryRunMode,
+			Provider<CachingCloudFormationClient> cachingClient, Provider<DryRunCloudFormationClient> dryRunClient) {
+		return dryRunMode.isEnabled() ? dryRunClient.get() : cachingClient.get();
+	}
+
+	/**
+	 * Nothing is downloaded during a dry run.
+	 * @return
+	 */
+	@Provides
+	public ArtifactDownload provideArtifactDownload(DryRunMode dryRunMode, Provider<ArtifactDownloadImpl> download,
+			Provider<DryRunArtifactDownload> dryRunDownload) {
+		return dryRunMode.isEnabled() ? dryRunDownload.get() : download.get();
+	}
+
+	@Provides
+	public Ec2Client provideEc2Client(DryRunMode dryRunMode, Provider<CachingEc2Client> cachingClient) {
+		return dryRunMode.isEnabled() ? new DryRunEc2Client() : cachingClient.get();
+	}
+
 	/**
 	 * Create a AmazonCloudFormation client that uses the  {@link DefaultAWSCredentialsProviderChain}.
 	 * @return
 	 */
 	@Provides
-	public AmazonCloudFormation provideAmazonCloudFormationClient() {
-		AmazonCloudFormationClientBuilder builder = AmazonCloudFormationClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonCloudFormation provideAmazonCloudFormationClient(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonCloudFormationClientBuilder.standard());
 	}
 	
 	@Provides
-	public AmazonS3 provideAmazonS3Client() {
-		AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonS3 provideAmazonS3Client(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonS3ClientBuilder.standard());
 	}
 	
 	@Provides
-	public AWSLambda provideAWSLambdaClient() {
-		AWSLambdaClientBuilder builder = AWSLambdaClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AWSLambda provideAWSLambdaClient(AwsClientFactory clientFactory) {
+		return clientFactory.build(AWSLambdaClientBuilder.standard());
 	}
 
 	@Provides
-	public AWSGlue provideAmazonAWSGlueClient() {
-		AWSGlueClientBuilder builder = AWSGlueClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AWSGlue provideAmazonAWSGlueClient(AwsClientFactory clientFactory) {
+		return clientFactory.build(AWSGlueClientBuilder.standard());
 	}
 
 	@Provides
-	public AmazonAthena provideAmazonAmazonAthenaClient() {
-		AmazonAthenaClientBuilder builder = AmazonAthenaClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonAthena provideAmazonAmazonAthenaClient(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonAthenaClientBuilder.standard());
 	}
 
 	@Provides
-	public AmazonSimpleEmailService provideAmazonSimpleEmalService() {
-		AmazonSimpleEmailServiceClientBuilder builder = AmazonSimpleEmailServiceClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonSimpleEmailService provideAmazonSimpleEmalService(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonSimpleEmailServiceClientBuilder.standard());
 	}
 
  	@Provides
+ 	@Singleton
 	public HttpClient provideHttpClient() {
 		HttpClientBuilder builder = HttpClientBuilder.create();
 		return builder.build();
 	}
 	
 	@Provides
-	public AWSSecretsManager provideAWSSecretsManager() {
-	    AWSSecretsManagerClientBuilder builder = AWSSecretsManagerClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-	    return builder.build();
+	@Singleton
+	public AWSSecretsManager provideAWSSecretsManager(AwsClientFactory clientFactory) {
+		return clientFactory.build(AWSSecretsManagerClientBuilder.standard());
 	}
 	
 	@Provides
-	public AWSKMS provideAWSKMSClient() {
-		AWSKMSAsyncClientBuilder builder = AWSKMSAsyncClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AWSKMS provideAWSKMSClient(AwsClientFactory clientFactory) {
+		return clientFactory.build(AWSKMSClientBuilder.standard());
 	}
 	
 	@Provides
-	public AmazonElasticLoadBalancing provideAmazonElasticLoadBalancing() {
-		AmazonElasticLoadBalancingClientBuilder builder = AmazonElasticLoadBalancingClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonElasticLoadBalancing provideAmazonElasticLoadBalancing(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonElasticLoadBalancingClientBuilder.standard());
 	}
 
 	@Provides
-	public AmazonEC2 provideAmazonEc2(){
-		AmazonEC2ClientBuilder builder = AmazonEC2ClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonEC2 provideAmazonEc2(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonEC2ClientBuilder.standard());
 	}
 
 	@Provides
-	public AWSElasticBeanstalk provideAmazonElasticBeanstalk(){
-		AWSElasticBeanstalkClientBuilder builder = AWSElasticBeanstalkClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AWSElasticBeanstalk provideAmazonElasticBeanstalk(AwsClientFactory clientFactory, LookupCache lookupCache) {
+		// the platform versions do not change during a run
+		return lookupCache.createCachingProxy(AWSElasticBeanstalk.class,
+				clientFactory.build(AWSElasticBeanstalkClientBuilder.standard()), Set.of("listPlatformVersions"));
 	}
 	
 	@Provides
-	public AWSSecurityTokenService provideAmazonSts() {
-		AWSSecurityTokenServiceClientBuilder builder = AWSSecurityTokenServiceClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AWSSecurityTokenService provideAmazonSts(AwsClientFactory clientFactory, LookupCache lookupCache) {
+		return lookupCache.createCachingProxy(AWSSecurityTokenService.class,
+				clientFactory.build(AWSSecurityTokenServiceClientBuilder.standard()), Set.of("getCallerIdentity"));
 	}
 
 	@Provides
-	public AmazonRoute53 provideAmazonRoute53() {
-		AmazonRoute53ClientBuilder builder = AmazonRoute53ClientBuilder.standard();
-		builder.withCredentials(new DefaultAWSCredentialsProviderChain());
-		builder.withRegion(Regions.US_EAST_1);
-		return builder.build();
+	@Singleton
+	public AmazonRoute53 provideAmazonRoute53(AwsClientFactory clientFactory) {
+		return clientFactory.build(AmazonRoute53ClientBuilder.standard());
 	}
 	
 	@Provides
+	@Singleton
 	public VelocityEngine velocityEngineProvider() {
 		VelocityEngine engine = new VelocityEngine();
 		engine.setProperty(RuntimeConstants.RESOURCE_LOADER, CLASSPATH_AND_FILE); 
 		engine.setProperty(CLASSPATH_RESOURCE_LOADER_CLASS, ClasspathResourceLoader.class.getName());
 		engine.setProperty(FILE_RESOURCE_LOADER_CLASS, FileResourceLoader.class.getName());
+		// Templates on the classpath never change, keep each parsed template for the life of the engine
+		engine.setProperty(CLASSPATH_RESOURCE_LOADER_CACHE, true);
+		engine.setProperty(CLASSPATH_RESOURCE_LOADER_MODIFICATION_CHECK_INTERVAL, "0");
+		engine.setProperty(FILE_RESOURCE_LOADER_CACHE, true);
 		engine.setProperty(RUNTIME_REFERENCES_STRICT, true);
 		return engine;
 	}
 
 	@Provides
+	@Singleton
 	public SnsAndSqsConfig snsAndSqsConfigProvider() throws IOException {
 		return loadFromJsonFile(SNS_AND_SQS_CONFIG_FILE, SnsAndSqsConfig.class);
 	}
 
 	@Provides
+	@Singleton
 	public AppConfigConfig appConfigProvider() throws IOException {
 		return new AppConfigConfigValidator(loadFromJsonFile(APPCONFIG_CONFIG_FILE, AppConfigConfig.class)).validate();
 	}
 	
 	@Provides
+	@Singleton
 	public KinesisFirehoseConfig kinesisConfigProvider() throws IOException {
 		return new KinesisFirehoseConfigValidator(loadFromJsonFile(KINESIS_CONFIG_FILE, KinesisFirehoseConfig.class)).validate();
 	}
 	
 	@Provides
+	@Singleton
 	public RecurrentAthenaQueryConfig athenaQueryConfigProvider(SnsAndSqsConfig sqsConfig) throws IOException {
 		return new RecurrentAthenaQueryConfigValidator(loadFromJsonFile(ATHENA_QUERIES_CONFIG_FILE, RecurrentAthenaQueryConfig.class), sqsConfig).validate();
 	}
 
 	@Provides
+	@Singleton
 	public CloudwatchLogsConfig cloudwatchLogsConfigProvider(Configuration props) throws IOException {
 		return new CloudwatchLogsConfigValidator(loadFromJsonFile(CLOUDWATCH_LOGS_CONFIG_FILE, CloudwatchLogsConfig.class), props).validate();
 	}
 	
 	@Provides
+	@Singleton
 	public S3Config s3ConfigProvider() throws IOException {
 		return new S3ConfigValidator(loadFromJsonFile(S3_CONFIG_FILE, S3Config.class)).validate();
 	}
 	
 	@Provides
+	@Singleton
 	public LoadBalancerAlarmsConfig loadBalanacerConfigProvider() throws IOException {
 		return new LoadBalancerAlarmsConfigValidator(loadFromJsonFile(LOAD_BALANCER_ALARM_CONFIG_FILE, LoadBalancerAlarmsConfig.class)).validate();
 	}
@@ -363,6 +410,7 @@ public class TemplateGuiceModule extends com.google.inject.AbstractModule {
 	}
 
 	@Provides
+	@Singleton
 	public DataWarehouseConfig dataWarehouseConfigProvider() throws IOException {
 		return new DataWarehouseConfigValidator(loadFromJsonFile(DATAWAREHOUSE_CONFIG_FILE, DataWarehouseConfig.class)).validate();
 	}
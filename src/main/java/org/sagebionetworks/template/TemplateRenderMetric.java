@@ -0,0 +1,63 @@
+package org.sagebionetworks.template;
+
+import java.util.Objects;
+
+/**
+ * The time spent rendering a single template and the size of its output.
+ *
+ */
+public class TemplateRenderMetric {
+
+	private final String templatePath;
+	private final long renderTimeMS;
+	private final int outputSize;
+
+	public TemplateRenderMetric(String templatePath, long renderTimeMS, int outputSize) {
+		this.templatePath = templatePath;
+		this.renderTimeMS = renderTimeMS;
+		this.outputSize = outputSize;
+	}
+
+	public String getTemplatePath() {
+		return templatePath;
+	}
+
+	public long getRenderTimeMS() {
+		return renderTimeMS;
+	}
+
+	/**
+	 * @return The number of characters of the rendered template
+	 */
+	public int getOutputSize() {
+		return outputSize;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(outputSize, renderTimeMS, templatePath);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		TemplateRenderMetric other = (TemplateRenderMetric) obj;
+		return outputSize == other.outputSize && renderTimeMS == other.renderTimeMS
+				&& Objects.equals(templatePath, other.templatePath);
+	}
+
+	@Override
+	public String toString() {
+		return "TemplateRenderMetric [templatePath=" + templatePath + ", renderTimeMS=" + renderTimeMS + ", outputSize="
+				+ outputSize + "]";
+	}
+
+}
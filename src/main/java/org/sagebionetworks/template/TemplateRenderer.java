@@ -0,0 +1,38 @@
+package org.sagebionetworks.template;
+
+import java.util.List;
+
+import org.apache.velocity.VelocityContext;
+
+/**
+ * Shared service that renders the velocity templates of the stacks.
+ *
+ */
+public interface TemplateRenderer {
+
+	/**
+	 * Merge the template at the given path with the given context. The result is
+	 * validated to be a JSON object and returned pretty printed.
+	 * 
+	 * @param templatePath
+	 * @param context
+	 * @return
+	 */
+	String renderJson(String templatePath, VelocityContext context);
+
+	/**
+	 * Parse every template under templates/ on the classpath so that syntax
+	 * errors are reported before any stack is built.
+	 * 
+	 * @throws IllegalStateException If any template fails to parse
+	 */
+	void precompileTemplates();
+
+	/**
+	 * The metrics of the renders done by this renderer, in order.
+	 * 
+	 * @return
+	 */
+	List<TemplateRenderMetric> getMetrics();
+
+}
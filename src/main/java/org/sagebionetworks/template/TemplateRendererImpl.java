@@ -0,0 +1,204 @@
+package org.sagebionetworks.template;
+
+import static org.sagebionetworks.template.Constants.JSON_INDENT;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_TEMPLATE_PRECOMPILE;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.input.CharSequenceReader;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ParseErrorException;
+import org.sagebionetworks.template.config.Configuration;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Renderer that merges the velocity templates, parsed once and kept by the
+ * resource cache of the engine, and pretty prints the merged output with a
+ * single streaming pass that copies the JSON tokens, so that the document is
+ * never materialized as a tree. Unless disabled in the configuration, every
+ * template is parsed when the renderer is created so that syntax errors fail
+ * fast.
+ *
+ */
+@Singleton
+public class TemplateRendererImpl implements TemplateRenderer {
+
+	/**
+	 * Unquoted or single quoted field names, trailing commas and duplicate keys
+	 * are handled as they were by the org.json parser previously used by the
+	 * builders. The output is always standard JSON.
+	 */
+	static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+			.enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+			.enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+			.enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+			.enable(StreamReadFeature.STRICT_DUPLICATE_DETECTION)
+			.build();
+
+	static final String TEMPLATES_ROOT = "templates";
+	static final List<String> TEMPLATE_EXTENSIONS = List.of(".vpt", ".vtp");
+
+	private final VelocityEngine velocityEngine;
+	private final ThreadProvider threadProvider;
+	private final List<TemplateRenderMetric> metrics;
+
+	@Inject
+	public TemplateRendererImpl(VelocityEngine velocityEngine, ThreadProvider threadProvider, Configuration config) {
+		this(velocityEngine, threadProvider);
+		if (isPrecompileEnabled(config)) {
+			precompileTemplates();
+		}
+	}
+
+	public TemplateRendererImpl(VelocityEngine velocityEngine, ThreadProvider threadProvider) {
+		this.velocityEngine = velocityEngine;
+		this.threadProvider = threadProvider;
+		this.metrics = Collections.synchronizedList(new ArrayList<>());
+	}
+
+	@Override
+	public String renderJson(String templatePath, VelocityContext context) {
+		long start = threadProvider.currentTimeMillis();
+		StringWriter merged = new StringWriter();
+		velocityEngine.getTemplate(templatePath).merge(context, merged);
+		StringWriter result = new StringWriter(merged.getBuffer().length());
+		try (JsonParser parser = JSON_FACTORY.createParser(new CharSequenceReader(merged.getBuffer()));
+				JsonGenerator generator = JSON_FACTORY.createGenerator(result)) {
+			generator.setPrettyPrinter(new TemplatePrettyPrinter());
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IllegalArgumentException("The template: " + templatePath + " did not render a JSON object");
+			}
+			generator.copyCurrentStructure(parser);
+			if (parser.nextToken() != null) {
+				throw new IllegalArgumentException(
+						"The template: " + templatePath + " rendered unexpected content after the JSON object");
+			}
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(
+					"The template: " + templatePath + " did not render valid JSON: " + e.getOriginalMessage(), e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		String json = result.toString();
+		metrics.add(new TemplateRenderMetric(templatePath, threadProvider.currentTimeMillis() - start, json.length()));
+		return json;
+	}
+
+	@Override
+	public void precompileTemplates() {
+		List<String> errors = new ArrayList<>();
+		for (String templatePath : findTemplatePaths()) {
+			try {
+				velocityEngine.getTemplate(templatePath);
+			} catch (ParseErrorException e) {
+				errors.add(e.getMessage());
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new IllegalStateException("Failed to parse " + errors.size() + " template(s):\n" + String.join("\n", errors));
+		}
+	}
+
+	@Override
+	public List<TemplateRenderMetric> getMetrics() {
+		synchronized (metrics) {
+			return new ArrayList<>(metrics);
+		}
+	}
+
+	/**
+	 * Find the path of every template under {@link #TEMPLATES_ROOT} on the
+	 * classpath, either in a directory or packaged in a jar.
+	 * 
+	 * @return The sorted template paths, relative to the classpath
+	 */
+	static List<String> findTemplatePaths() {
+		URL root = TemplateRendererImpl.class.getClassLoader().getResource(TEMPLATES_ROOT);
+		if (root == null) {
+			return Collections.emptyList();
+		}
+		try {
+			URI uri = root.toURI();
+			if (!"jar".equals(uri.getScheme())) {
+				return findTemplatePaths(Paths.get(uri));
+			}
+			try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+				return findTemplatePaths(jar.getPath(TEMPLATES_ROOT));
+			} catch (FileSystemAlreadyExistsException e) {
+				return findTemplatePaths(FileSystems.getFileSystem(uri).getPath(TEMPLATES_ROOT));
+			}
+		} catch (URISyntaxException | IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static List<String> findTemplatePaths(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile)
+					.filter(path -> TEMPLATE_EXTENSIONS.stream().anyMatch(path.getFileName().toString()::endsWith))
+					.map(path -> TEMPLATES_ROOT + "/" + root.relativize(path).toString().replace(root.getFileSystem().getSeparator(), "/"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	static boolean isPrecompileEnabled(Configuration config) {
+		try {
+			return config.getBooleanProperty(PROPERTY_KEY_TEMPLATE_PRECOMPILE);
+		} catch (ConfigurationPropertyNotFound e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Indents objects and arrays with {@link Constants#JSON_INDENT} spaces.
+	 */
+	static class TemplatePrettyPrinter extends DefaultPrettyPrinter {
+
+		private static final long serialVersionUID = 1L;
+
+		TemplatePrettyPrinter() {
+			DefaultIndenter indenter = new DefaultIndenter(" ".repeat(JSON_INDENT), "\n");
+			indentObjectsWith(indenter);
+			indentArraysWith(indenter);
+		}
+
+		@Override
+		public DefaultPrettyPrinter createInstance() {
+			return new TemplatePrettyPrinter();
+		}
+
+		@Override
+		public void writeObjectFieldValueSeparator(JsonGenerator generator) throws IOException {
+			generator.writeRaw(": ");
+		}
+	}
+
+}
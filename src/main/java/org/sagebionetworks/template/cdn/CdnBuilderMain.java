@@ -1,16 +1,15 @@
 package org.sagebionetworks.template.cdn;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 public class CdnBuilderMain {
 
 	public static void main(String[] args) {
 
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		CdnBuilder builder = injector.getInstance(CdnBuilder.class);
-		builder.buildCdn(CdnBuilder.Type.PORTAL);
+		MainRunner.run(injector -> {
+			CdnBuilder builder = injector.getInstance(CdnBuilder.class);
+			builder.buildCdn(CdnBuilder.Type.PORTAL);
+		});
 
 	}
 }
@@ -1,16 +1,14 @@
 package org.sagebionetworks.template.cron;
 
-import org.sagebionetworks.template.TemplateGuiceModule;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.MainRunner;
 
 public class TimeToLiveCronJob {
 
 	public static void main(String[] args) {
-        Injector injector = Guice.createInjector(new TemplateGuiceModule());
-        ExpiredStackTeardown runner = injector.getInstance(ExpiredStackTeardown.class);
-        runner.findAndDeleteExpiredStacks();
+        MainRunner.run(injector -> {
+            ExpiredStackTeardown runner = injector.getInstance(ExpiredStackTeardown.class);
+            runner.findAndDeleteExpiredStacks();
+        });
 	}
 
 }
@@ -1,16 +1,14 @@
 package org.sagebionetworks.template.datawarehouse;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 public class DataWarehouseBuilderMain {
 	
     public static void main(String[] args) throws InterruptedException {
-        Injector injector = Guice.createInjector(new TemplateGuiceModule());
-    
-        DataWarehouseBuilder builder = injector.getInstance(DataWarehouseBuilder.class);
-        
-        builder.buildAndDeploy();
+        MainRunner.run(injector -> {
+            DataWarehouseBuilder builder = injector.getInstance(DataWarehouseBuilder.class);
+
+            builder.buildAndDeploy();
+        });
     }
 }
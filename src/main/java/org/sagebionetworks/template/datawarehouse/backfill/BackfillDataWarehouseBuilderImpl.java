@@ -15,36 +15,34 @@ import com.amazonaws.services.athena.model.StartQueryExecutionRequest;
 import com.amazonaws.services.athena.model.StartQueryExecutionResult;
 import com.amazonaws.services.glue.AWSGlue;
 import com.amazonaws.services.glue.model.BatchCreatePartitionRequest;
+import com.amazonaws.services.glue.model.BatchCreatePartitionResult;
 import com.amazonaws.services.glue.model.GetTableRequest;
 import com.amazonaws.services.glue.model.GetTableResult;
 import com.amazonaws.services.glue.model.PartitionInput;
 import com.amazonaws.services.glue.model.StartJobRunRequest;
 import com.amazonaws.services.glue.model.StorageDescriptor;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsV2Request;
-import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import org.apache.logging.log4j.Logger;
-import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.json.JSONObject;
 import org.sagebionetworks.template.CloudFormationClient;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.datawarehouse.DataWarehouseBuilderImpl;
 import org.sagebionetworks.template.repo.VelocityExceptionThrower;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 import org.sagebionetworks.util.ValidateArgument;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
@@ -55,7 +53,6 @@ import static java.util.Map.entry;
 import static org.sagebionetworks.template.Constants.CAPABILITY_NAMED_IAM;
 import static org.sagebionetworks.template.Constants.EXCEPTION_THROWER;
 import static org.sagebionetworks.template.Constants.GLUE_DATABASE_NAME;
-import static org.sagebionetworks.template.Constants.JSON_INDENT;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DATAWAREHOUSE_GLUE_DATABASE_NAME;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK;
 import static org.sagebionetworks.template.Constants.STACK;
@@ -73,6 +70,10 @@ public class BackfillDataWarehouseBuilderImpl implements BackfillDataWarehouseBu
     private static final String FIREHOSE_TABLE_NAME = "org.sagebionetworks.synapse.datawarehouse.glue.backfill.firehouse.table.name";
     private static final String ATHENA_QUERY_LOCATION = "org.sagebionetworks.synapse.datawarehouse.glue.backfill.athena.query.location";
     private static final String CREATE_PARTITION = "org.sagebionetworks.synapse.datawarehouse.glue.backfill.create.partition";
+    static final String CRAWL_MAX_PARALLELISM = "org.sagebionetworks.synapse.datawarehouse.glue.backfill.crawl.max.parallelism";
+    static final int DEFAULT_CRAWL_MAX_PARALLELISM = 16;
+    // the maximum number of partitions of a batch create partition request
+    static final int MAX_PARTITIONS_PER_BATCH = 100;
     private static final String BACKFILL_DATABASE_NAME = "backfill";
     private static final String BUCKET_NAME = "%s.snapshot.record.sagebase.org";
     private static final String BULK_FILE_DOWNLOAD_FOLDER_NAME = "bulkfiledownloadresponse";
@@ -86,7 +87,7 @@ public class BackfillDataWarehouseBuilderImpl implements BackfillDataWarehouseBu
     private ArtifactDownload downloader;
     private Configuration config;
     private Logger logger;
-    private VelocityEngine velocityEngine;
+    private TemplateRenderer templateRenderer;
     private AmazonS3 s3Client;
     private CloudFormationClient cloudFormationClient;
     private StackTagsProvider tagsProvider;
@@ -94,12 +95,12 @@ public class BackfillDataWarehouseBuilderImpl implements BackfillDataWarehouseBu
     private AmazonAthena athena;
 
     @Inject
-    public BackfillDataWarehouseBuilderImpl(CloudFormationClient cloudFormationClient, VelocityEngine velocityEngine,
+    public BackfillDataWarehouseBuilderImpl(CloudFormationClient cloudFormationClient, TemplateRenderer templateRenderer,
                                             Configuration config, LoggerFactory loggerFactory,
                                             StackTagsProvider tagsProvider, ArtifactDownload downloader,
                                             AmazonS3 s3Client, AWSGlue awsGlue, AmazonAthena athena) {
         this.cloudFormationClient = cloudFormationClient;
-        this.velocityEngine = velocityEngine;
+        this.templateRenderer = templateRenderer;
         this.config = config;
         this.logger = loggerFactory.getLogger(DataWarehouseBuilderImpl.class);
         this.tagsProvider = tagsProvider;
@@ -136,16 +137,7 @@ public class BackfillDataWarehouseBuilderImpl implements BackfillDataWarehouseBu
         extraScripts.add(GS_EXPLODE_SCRIPT);
         extraScripts.add(GS_COMMON_SCRIPT);
         context.put("extraScripts", String.join(",", extraScripts));
-        Template template = this.velocityEngine.getTemplate(TEMPLATE_ETL_GLUE_JOB_RESOURCES);
-
-        StringWriter stringWriter = new StringWriter();
-        template.merge(context, stringWriter);
-        // Parse the resulting template
-        String resultJSON = stringWriter.toString();
-        JSONObject templateJson = new JSONObject(resultJSON);
-
-        // Format the JSON
-        resultJSON = templateJson.toString(JSON_INDENT);
+        String resultJSON = this.templateRenderer.renderJson(TEMPLATE_ETL_GLUE_JOB_RESOURCES, context);
         this.logger.info(resultJSON);
         // create or update the stack
         String stackName = new StringJoiner("-").add(stack).add(databaseName).add("backfill-etl-jobs").toString();
@@ -186,9 +178,9 @@ public class BackfillDataWarehouseBuilderImpl implements BackfillDataWarehouseBu
         String scriptPath = String.format(SCRIPT_PATH_TPL, githubRepo, version);
         String s3ScriptsPath = S3_BACKFILL_KEY_PATH_TPL;
 
-        File zipFile = downloader.downloadFile(githubUrl);
+        CachedArtifact zipFile = downloader.getCachedFile(githubUrl);
 
-        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zipFile.toPath()))) {
+        try (zipFile; ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zipFile.getFile().toPath()))) {
             ZipEntry entry = null;
             while ((entry = zipInputStream.getNextEntry()) != null) {
                 if (!entry.isDirectory() && entry.getName().contains(scriptPath)) {
@@ -201,65 +193,89 @@ public class BackfillDataWarehouseBuilderImpl implements BackfillDataWarehouseBu
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
-        } finally {
-            zipFile.delete();
         }
         return s3ScriptsPath;
     }
 
-    private void createGluePartitionForOldData(String prefix, String bucketName, String databaseName) {
-        ListObjectsV2Request listObjectsV2Request = new ListObjectsV2Request().withPrefix(prefix).withBucketName(bucketName).withDelimiter("/");
-        ListObjectsV2Result s3ObjectResult = s3Client.listObjectsV2(listObjectsV2Request);
-        if (s3ObjectResult == null || s3ObjectResult.getCommonPrefixes().size() == 0) {
-            getBatchPartitionParametersAndCreateGluePartition(prefix, databaseName, bucketName);
-            return;
-        }
-        for (String newPath : s3ObjectResult.getCommonPrefixes()) {
-            if (checkToIterate(prefix, newPath)) {
-                createGluePartitionForOldData(newPath, bucketName, databaseName);
+    void createGluePartitionForOldData(String prefix, String bucketName, String databaseName) {
+        Map<String, List<PartitionInput>> pendingByTable = new HashMap<>();
+        Map<String, StorageDescriptor> tableStorageDescriptors = new HashMap<>();
+        S3PrefixCrawler crawler = new S3PrefixCrawler(s3Client, getCrawlMaxParallelism());
+        // the partitions are created while the crawl continues
+        int listed = crawler.crawl(bucketName, prefix, this::checkToIterate, leaf -> {
+            PartitionInput partition = createPartitionInput(leaf, databaseName, "s3://" + bucketName, tableStorageDescriptors);
+            if (partition == null) {
+                return;
             }
-        }
+            String tableName = tableToMidMap.get(getPrefixParts(leaf)[1]);
+            List<PartitionInput> pending = pendingByTable.computeIfAbsent(tableName, k -> new ArrayList<>());
+            pending.add(partition);
+            if (pending.size() == MAX_PARTITIONS_PER_BATCH) {
+                createBatchPartition(databaseName, tableName, pending);
+            }
+        });
+        pendingByTable.forEach((tableName, pending) -> {
+            if (!pending.isEmpty()) {
+                createBatchPartition(databaseName, tableName, pending);
+            }
+        });
+        logger.info("Listed " + listed + " prefixes of: " + bucketName);
     }
+
     private boolean checkToIterate(String prefix, String newPath) {
         if (prefix.length() == 0 && newPath.startsWith("000000")) return true;
         return newPath.contains(BULK_FILE_DOWNLOAD_FOLDER_NAME) || newPath.contains(FILE_DOWNLOAD_FOLDER_NAME);
     }
 
-    private void getBatchPartitionParametersAndCreateGluePartition(String prefix, String databaseName, String bucketName) {
-        int firstDelimiterIndex = prefix.indexOf("/");
-        int midDelimiterIndex = prefix.indexOf("/", firstDelimiterIndex + 1);
-        String releaseNumber = prefix.substring(0, firstDelimiterIndex);
-        String midPath = prefix.substring(firstDelimiterIndex + 1, midDelimiterIndex);
-        String recordDate = prefix.substring(midDelimiterIndex + 1, prefix.length() - 1);
-
-        createBatchPartition(databaseName, tableToMidMap.get(midPath), releaseNumber, recordDate, midPath, "s3://" + bucketName);
+    /**
+     * @param prefix A prefix of the form: release/midPath/recordDate/
+     * @return The release number, mid path and record date, or null if the prefix does not have that form.
+     */
+    static String[] getPrefixParts(String prefix) {
+        String[] parts = prefix.split(S3PrefixCrawler.DELIMITER);
+        return parts.length == 3 && prefix.endsWith(S3PrefixCrawler.DELIMITER) ? parts : null;
     }
 
-    private void createBatchPartition(String databaseName, String tableName, String releaseNumber,
-                                      String recordDate, String midPath, String s3Location) {
-        StorageDescriptor storageDescriptor = createStorageDescriptor(databaseName, tableName, releaseNumber,
-                recordDate, midPath, s3Location);
-        PartitionInput partitionInput = new PartitionInput()
+    private PartitionInput createPartitionInput(String prefix, String databaseName, String s3Location,
+                                                Map<String, StorageDescriptor> tableStorageDescriptors) {
+        String[] parts = getPrefixParts(prefix);
+        if (parts == null || !tableToMidMap.containsKey(parts[1])) {
+            logger.warn("Skipping prefix that is not a partition: " + prefix);
+            return null;
+        }
+        String releaseNumber = parts[0];
+        String midPath = parts[1];
+        String recordDate = parts[2];
+        String tableName = tableToMidMap.get(midPath);
+        StorageDescriptor currentTableStorageDescriptor = tableStorageDescriptors.computeIfAbsent(tableName,
+                k -> getCurrentSchema(databaseName, k).getTable().getStorageDescriptor());
+        StorageDescriptor storageDescriptor = new StorageDescriptor()
+                .withLocation(getS3PartitionLocation(s3Location, releaseNumber, recordDate, midPath))
+                .withInputFormat(currentTableStorageDescriptor.getInputFormat())
+                .withOutputFormat(currentTableStorageDescriptor.getOutputFormat())
+                .withSerdeInfo(currentTableStorageDescriptor.getSerdeInfo());
+        return new PartitionInput()
                 .withValues(releaseNumber, recordDate)
                 .withStorageDescriptor(storageDescriptor);
+    }
+
+    private void createBatchPartition(String databaseName, String tableName, List<PartitionInput> partitions) {
         BatchCreatePartitionRequest batchCreatePartitionRequest = new BatchCreatePartitionRequest()
                 .withDatabaseName(databaseName)
                 .withTableName(tableName)
-                .withPartitionInputList(partitionInput);
-        awsGlue.batchCreatePartition(batchCreatePartitionRequest);
+                .withPartitionInputList(new ArrayList<>(partitions));
+        BatchCreatePartitionResult result = awsGlue.batchCreatePartition(batchCreatePartitionRequest);
+        int errors = result == null || result.getErrors() == null ? 0 : result.getErrors().size();
+        logger.info("Created " + (partitions.size() - errors) + " of " + partitions.size() + " partitions of: " + tableName);
+        partitions.clear();
     }
 
-    private StorageDescriptor createStorageDescriptor(String databaseName, String tableName,
-                                                      String releaseNumber, String recordDate,
-                                                      String midPath, String s3Location) {
-        GetTableResult getTableResult = getCurrentSchema(databaseName, tableName);
-        StorageDescriptor currentTableStorageDescriptor = getTableResult.getTable().getStorageDescriptor();
-        return new StorageDescriptor()
-                .withLocation(getS3PartitionLocation(s3Location, releaseNumber, recordDate, midPath))
-                .withInputFormat(currentTableStorageDescriptor.getInputFormat())
-                .withOutputFormat(currentTableStorageDescriptor.getOutputFormat())
-                .withSerdeInfo(currentTableStorageDescriptor.getSerdeInfo());
-
+    int getCrawlMaxParallelism() {
+        try {
+            return Math.max(1, config.getIntegerProperty(CRAWL_MAX_PARALLELISM));
+        } catch (ConfigurationPropertyNotFound e) {
+            return DEFAULT_CRAWL_MAX_PARALLELISM;
+        }
     }
 
     private GetTableResult getCurrentSchema(String databaseName, String tableName) {
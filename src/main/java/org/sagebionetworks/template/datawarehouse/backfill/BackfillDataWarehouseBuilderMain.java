@@ -1,15 +1,13 @@
 package org.sagebionetworks.template.datawarehouse.backfill;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 public class BackfillDataWarehouseBuilderMain {
     public static void main(String[] args) throws InterruptedException {
-        Injector injector = Guice.createInjector(new TemplateGuiceModule());
+        MainRunner.run(injector -> {
+            BackfillDataWarehouseBuilderImpl builder = injector.getInstance(BackfillDataWarehouseBuilderImpl.class);
 
-        BackfillDataWarehouseBuilderImpl builder = injector.getInstance(BackfillDataWarehouseBuilderImpl.class);
-
-        builder.buildAndDeploy();
+            builder.buildAndDeploy();
+        });
     }
 }
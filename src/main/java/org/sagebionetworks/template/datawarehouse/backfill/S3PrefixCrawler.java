@@ -0,0 +1,116 @@
+package org.sagebionetworks.template.datawarehouse.backfill;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * Breadth-first walk of the "/" delimited prefixes of a bucket. The prefixes
+ * are listed concurrently on a bounded pool, every page of each listing is
+ * read, and each leaf prefix (one without sub prefixes) is passed on as soon
+ * as it is found, on the calling thread.
+ *
+ */
+public class S3PrefixCrawler {
+
+    public static final String DELIMITER = "/";
+
+    private final AmazonS3 s3Client;
+    private final int maxParallelism;
+
+    public S3PrefixCrawler(AmazonS3 s3Client, int maxParallelism) {
+        this.s3Client = s3Client;
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Walk the prefixes under the given root.
+     *
+     * @param bucketName
+     * @param rootPrefix
+     * @param descend    Given a prefix and one of its sub prefixes, true if the sub prefix should be walked
+     * @param leaves     Called with each leaf prefix that is found
+     * @return The number of prefixes listed.
+     */
+    public int crawl(String bucketName, String rootPrefix, BiPredicate<String, String> descend, Consumer<String> leaves) {
+        ExecutorService executor = Executors.newFixedThreadPool(maxParallelism);
+        try {
+            CompletionService<Listing> completionService = new ExecutorCompletionService<>(executor);
+            completionService.submit(() -> listSubPrefixes(bucketName, rootPrefix));
+            int inFlight = 1;
+            int listed = 0;
+            while (inFlight > 0) {
+                Listing listing = completionService.take().get();
+                inFlight--;
+                listed++;
+                if (listing.subPrefixes.isEmpty()) {
+                    leaves.accept(listing.prefix);
+                    continue;
+                }
+                // the pool runs the listings in the order they are submitted, one level after the other
+                for (String subPrefix : listing.subPrefixes) {
+                    if (descend.test(listing.prefix, subPrefix)) {
+                        completionService.submit(() -> listSubPrefixes(bucketName, subPrefix));
+                        inFlight++;
+                    }
+                }
+            }
+            return listed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * List every sub prefix of the given prefix, following the continuation tokens.
+     *
+     * @param bucketName
+     * @param prefix
+     * @return
+     */
+    Listing listSubPrefixes(String bucketName, String prefix) {
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix)
+                .withDelimiter(DELIMITER);
+        List<String> subPrefixes = new ArrayList<>();
+        ListObjectsV2Result result;
+        do {
+            result = s3Client.listObjectsV2(request);
+            if (result == null) {
+                break;
+            }
+            subPrefixes.addAll(result.getCommonPrefixes());
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return new Listing(prefix, subPrefixes);
+    }
+
+    static class Listing {
+
+        private final String prefix;
+        private final List<String> subPrefixes;
+
+        Listing(String prefix, List<String> subPrefixes) {
+            this.prefix = prefix;
+            this.subPrefixes = subPrefixes;
+        }
+    }
+
+}
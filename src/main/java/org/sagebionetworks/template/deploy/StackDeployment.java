@@ -0,0 +1,119 @@
+package org.sagebionetworks.template.deploy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A single node in a stack deployment graph. Each node names the stack it
+ * deploys, the stacks it depends on (e.g. because it imports their exports or
+ * reads their outputs) and the action that performs the deployment.
+ *
+ */
+public class StackDeployment {
+
+	private String stackName;
+	private Set<String> dependsOn = new LinkedHashSet<>();
+	private Action action;
+
+	/**
+	 * The name of the stack deployed by this node.
+	 * 
+	 * @return
+	 */
+	public String getStackName() {
+		return stackName;
+	}
+
+	/**
+	 * The name of the stack deployed by this node.
+	 * 
+	 * @param stackName
+	 * @return
+	 */
+	public StackDeployment withStackName(String stackName) {
+		this.stackName = stackName;
+		return this;
+	}
+
+	/**
+	 * The names of the stacks that must complete before this node can start.
+	 * 
+	 * @return
+	 */
+	public Set<String> getDependsOn() {
+		return Collections.unmodifiableSet(dependsOn);
+	}
+
+	/**
+	 * The names of the stacks that must complete before this node can start.
+	 * 
+	 * @param stackNames
+	 * @return
+	 */
+	public StackDeployment withDependsOn(String... stackNames) {
+		this.dependsOn.addAll(Arrays.asList(stackNames));
+		return this;
+	}
+
+	/**
+	 * The action that deploys the stack.
+	 * 
+	 * @return
+	 */
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * The action that deploys the stack. The action is expected to block until
+	 * the stack is ready to be used by its dependents.
+	 * 
+	 * @param action
+	 * @return
+	 */
+	public StackDeployment withAction(Action action) {
+		this.action = action;
+		return this;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(action, dependsOn, stackName);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		StackDeployment other = (StackDeployment) obj;
+		return Objects.equals(action, other.action) && Objects.equals(dependsOn, other.dependsOn)
+				&& Objects.equals(stackName, other.stackName);
+	}
+
+	@Override
+	public String toString() {
+		return "StackDeployment [stackName=" + stackName + ", dependsOn=" + dependsOn + "]";
+	}
+
+	@FunctionalInterface
+	public interface Action {
+
+		/**
+		 * Deploy the stack.
+		 * 
+		 * @throws Exception
+		 */
+		void deploy() throws Exception;
+	}
+
+}
@@ -0,0 +1,25 @@
+package org.sagebionetworks.template.deploy;
+
+import java.util.List;
+
+/**
+ * Deploys a graph of stacks, running each stack as soon as all of the stacks it
+ * depends on have completed. Independent stacks are deployed concurrently.
+ *
+ */
+public interface StackDeploymentScheduler {
+
+	/**
+	 * Deploy all of the provided stacks honoring their declared dependencies. This
+	 * call blocks until every stack has either completed, failed or been skipped
+	 * because one of its dependencies failed.
+	 * 
+	 * @param deployments
+	 * @throws InterruptedException
+	 * @throws IllegalArgumentException If the graph references an unknown stack,
+	 *                                  contains duplicate names or has a cycle.
+	 * @throws RuntimeException         If any of the deployments failed.
+	 */
+	void deploy(List<StackDeployment> deployments) throws InterruptedException;
+
+}
@@ -0,0 +1,241 @@
+package org.sagebionetworks.template.deploy;
+
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.config.Configuration;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+
+/**
+ * Scheduler that deploys a stack graph on a bounded thread pool. The start of
+ * each deployment is throttled by a rate limiter so that a burst of ready
+ * stacks does not exceed the CloudFormation API limits.
+ *
+ */
+public class StackDeploymentSchedulerImpl implements StackDeploymentScheduler {
+
+	public static final int DEFAULT_MAX_PARALLELISM = 4;
+	public static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 2.0;
+
+	private final Configuration config;
+	private final Logger logger;
+
+	@Inject
+	public StackDeploymentSchedulerImpl(Configuration config, LoggerFactory loggerFactory) {
+		this.config = config;
+		this.logger = loggerFactory.getLogger(StackDeploymentSchedulerImpl.class);
+	}
+
+	@Override
+	public void deploy(List<StackDeployment> deployments) throws InterruptedException {
+		ValidateArgument.required(deployments, "deployments");
+		if (deployments.isEmpty()) {
+			return;
+		}
+		Map<String, StackDeployment> nodes = indexByStackName(deployments);
+		Map<String, List<String>> dependents = new HashMap<>();
+		Map<String, Integer> pendingDependencies = new HashMap<>();
+		for (StackDeployment node : nodes.values()) {
+			dependents.putIfAbsent(node.getStackName(), new LinkedList<>());
+			pendingDependencies.put(node.getStackName(), node.getDependsOn().size());
+			for (String dependency : node.getDependsOn()) {
+				if (!nodes.containsKey(dependency)) {
+					throw new IllegalArgumentException(
+							"Stack '" + node.getStackName() + "' depends on unknown stack: '" + dependency + "'");
+				}
+				dependents.computeIfAbsent(dependency, k -> new LinkedList<>()).add(node.getStackName());
+			}
+		}
+		validateAcyclic(nodes, dependents, pendingDependencies);
+
+		int parallelism = Math.min(getMaxParallelism(), nodes.size());
+		RateLimiter rateLimiter = RateLimiter.create(getMaxRequestsPerSecond());
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		CompletionService<DeploymentResult> completionService = new ExecutorCompletionService<>(executor);
+
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		Set<String> skipped = new LinkedHashSet<>();
+		try {
+			int inFlight = 0;
+			for (StackDeployment node : nodes.values()) {
+				if (node.getDependsOn().isEmpty()) {
+					completionService.submit(() -> execute(node, rateLimiter));
+					inFlight++;
+				}
+			}
+			while (inFlight > 0) {
+				DeploymentResult result = takeResult(completionService);
+				inFlight--;
+				if (result.error != null) {
+					logger.error("Deployment of stack '" + result.stackName + "' failed: " + result.error.getMessage());
+					failures.put(result.stackName, result.error);
+					skipDependents(result.stackName, dependents, skipped);
+					continue;
+				}
+				for (String dependent : dependents.get(result.stackName)) {
+					int remaining = pendingDependencies.merge(dependent, -1, Integer::sum);
+					if (remaining == 0 && !skipped.contains(dependent)) {
+						StackDeployment node = nodes.get(dependent);
+						completionService.submit(() -> execute(node, rateLimiter));
+						inFlight++;
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (!failures.isEmpty()) {
+			StringBuilder message = new StringBuilder("Failed to deploy stacks: ").append(failures.keySet());
+			if (!skipped.isEmpty()) {
+				message.append(". Skipped dependent stacks: ").append(skipped);
+			}
+			throw new RuntimeException(message.toString(), failures.values().iterator().next());
+		}
+	}
+
+	/**
+	 * Run a single deployment, capturing any error in the result.
+	 *
+	 * @param node
+	 * @param rateLimiter
+	 * @return
+	 */
+	DeploymentResult execute(StackDeployment node, RateLimiter rateLimiter) {
+		rateLimiter.acquire();
+		logger.info("Starting deployment of stack: '" + node.getStackName() + "'");
+		try {
+			node.getAction().deploy();
+			logger.info("Deployment of stack: '" + node.getStackName() + "' completed");
+			return new DeploymentResult(node.getStackName(), null);
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			return new DeploymentResult(node.getStackName(), e);
+		}
+	}
+
+	private static DeploymentResult takeResult(CompletionService<DeploymentResult> completionService)
+			throws InterruptedException {
+		try {
+			return completionService.take().get();
+		} catch (ExecutionException e) {
+			// execute() never throws so this can only be an unexpected error.
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Mark every transitive dependent of the given failed stack as skipped.
+	 *
+	 * @param failedStack
+	 * @param dependents
+	 * @param skipped
+	 */
+	void skipDependents(String failedStack, Map<String, List<String>> dependents, Set<String> skipped) {
+		for (String dependent : dependents.get(failedStack)) {
+			if (skipped.add(dependent)) {
+				logger.warn("Skipping deployment of stack: '" + dependent + "' since '" + failedStack + "' failed");
+				skipDependents(dependent, dependents, skipped);
+			}
+		}
+	}
+
+	static Map<String, StackDeployment> indexByStackName(List<StackDeployment> deployments) {
+		Map<String, StackDeployment> nodes = new LinkedHashMap<>(deployments.size());
+		for (StackDeployment node : deployments) {
+			ValidateArgument.required(node, "deployment");
+			ValidateArgument.requiredNotBlank(node.getStackName(), "deployment.stackName");
+			ValidateArgument.required(node.getAction(), "deployment.action");
+			if (nodes.put(node.getStackName(), node) != null) {
+				throw new IllegalArgumentException("Duplicate stack deployment: '" + node.getStackName() + "'");
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Topologically walk the graph and fail if not every node can be reached.
+	 *
+	 * @param nodes
+	 * @param dependents
+	 * @param pendingDependencies
+	 */
+	static void validateAcyclic(Map<String, StackDeployment> nodes, Map<String, List<String>> dependents,
+			Map<String, Integer> pendingDependencies) {
+		Map<String, Integer> pending = new HashMap<>(pendingDependencies);
+		LinkedList<String> ready = new LinkedList<>();
+		pending.forEach((name, count) -> {
+			if (count == 0) {
+				ready.add(name);
+			}
+		});
+		int visited = 0;
+		while (!ready.isEmpty()) {
+			String name = ready.removeFirst();
+			visited++;
+			for (String dependent : dependents.get(name)) {
+				if (pending.merge(dependent, -1, Integer::sum) == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		if (visited < nodes.size()) {
+			List<String> cycle = new ArrayList<>();
+			pending.forEach((name, count) -> {
+				if (count > 0) {
+					cycle.add(name);
+				}
+			});
+			throw new IllegalArgumentException("Stack dependency cycle detected between: " + cycle);
+		}
+	}
+
+	int getMaxParallelism() {
+		try {
+			return Math.max(1, config.getIntegerProperty(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM));
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_PARALLELISM;
+		}
+	}
+
+	double getMaxRequestsPerSecond() {
+		try {
+			return Double.parseDouble(config.getProperty(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND));
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_REQUESTS_PER_SECOND;
+		}
+	}
+
+	static class DeploymentResult {
+
+		private final String stackName;
+		private final Throwable error;
+
+		DeploymentResult(String stackName, Throwable error) {
+			this.stackName = stackName;
+			this.error = error;
+		}
+	}
+
+}
@@ -3,16 +3,18 @@ package org.sagebionetworks.template.dns;
 import com.amazonaws.services.route53.model.ResourceRecordSet;
 import com.google.inject.Inject;
 import org.sagebionetworks.template.Route53Client;
+import org.sagebionetworks.template.Route53ClientImpl;
 import org.sagebionetworks.template.TemplateUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 public class DnsBuilderImpl implements DnsBuilder {
 
-	public static final int BATCH_SIZE = 10;
+	public static final int BATCH_SIZE = Route53ClientImpl.MAX_CHANGES_PER_BATCH;
 
 	@Inject
 	Route53Client route53Client;
@@ -20,14 +22,21 @@ public class DnsBuilderImpl implements DnsBuilder {
 	@Override
 	public void buildDns(DnsConfig dnsConfig) {
 		String hostedZoneId = dnsConfig.getHostedZoneId();
-		route53Client.changeResourceRecordSets(hostedZoneId, dnsConfig.getRecordSetDescriptorList(), BATCH_SIZE);
+		DnsChangePlan plan = DnsChangePlan.create(route53Client.listResourceRecordSets(hostedZoneId),
+				dnsConfig.getRecordSetDescriptorList(), dnsConfig.isPrune());
+		plan.toLines(hostedZoneId).forEach(System.out::println);
+		if (plan.isEmpty()) {
+			return;
+		}
+		route53Client.submitChanges(hostedZoneId, plan.toChanges(), BATCH_SIZE);
 	}
 
 	@Override
 	public void listDns(String hostedZoneId) throws IOException {
 		List<RecordSetDescriptor> recordSetDescriptors = new ArrayList<>();
-		List<ResourceRecordSet> resourceRecordSets = route53Client.listResourceRecordSets(hostedZoneId);
-		for (ResourceRecordSet rrs: resourceRecordSets) {
+		Iterator<ResourceRecordSet> resourceRecordSets = route53Client.listResourceRecordSets(hostedZoneId);
+		while (resourceRecordSets.hasNext()) {
+			ResourceRecordSet rrs = resourceRecordSets.next();
 			if (! Arrays.asList("A", "CNAME").contains(rrs.getType())) {
 				continue;
 			}
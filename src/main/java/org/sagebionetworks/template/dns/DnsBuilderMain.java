@@ -1,8 +1,6 @@
 package org.sagebionetworks.template.dns;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 import java.util.Arrays;
 
@@ -19,12 +17,13 @@ public class DnsBuilderMain {
 		String prefix = args[0];
 		String dnsConfigFileResourcePath = String.format(TEMPLATE_RESOURCE_PATH, prefix);
 		DnsBuilderMain.validateResourcePath(dnsConfigFileResourcePath);
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		// loads row config
-		DnsConfigBuilder dnsConfigBuilder = loadFromJsonFile(dnsConfigFileResourcePath, DnsConfigBuilder.class);
-		DnsConfig dnsConfig = dnsConfigBuilder.build(); // validates and creates actual config
-		DnsBuilder builder = injector.getInstance(DnsBuilder.class);
-		builder.buildDns(dnsConfig);
+		MainRunner.run(injector -> {
+			// loads row config
+			DnsConfigBuilder dnsConfigBuilder = loadFromJsonFile(dnsConfigFileResourcePath, DnsConfigBuilder.class);
+			DnsConfig dnsConfig = dnsConfigBuilder.build(); // validates and creates actual config
+			DnsBuilder builder = injector.getInstance(DnsBuilder.class);
+			builder.buildDns(dnsConfig);
+		});
 	}
 
 	public static void validateResourcePath(String resourcePath) {
@@ -0,0 +1,130 @@
+package org.sagebionetworks.template.dns;
+
+import com.amazonaws.services.route53.model.Change;
+import com.amazonaws.services.route53.model.ChangeAction;
+import com.amazonaws.services.route53.model.ResourceRecordSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The minimal set of changes that make a live zone match the desired record
+ * sets. Record sets are matched by name and type:
+ * <ul>
+ * <li>A desired record set that is missing or different is UPSERTed.</li>
+ * <li>A live record set that conflicts with a desired CNAME, or a live CNAME
+ * that conflicts with a desired record set of another type, is DELETEd.</li>
+ * <li>When pruning, a live A or CNAME record set that is not desired is
+ * DELETEd. Zones shared by several configurations must not be pruned.</li>
+ * </ul>
+ * Record sets with a routing policy (a set identifier) are not managed.
+ *
+ */
+public class DnsChangePlan {
+
+	public static final List<String> PRUNED_TYPES = Arrays.asList("A", "CNAME");
+	public static final String CNAME = "CNAME";
+
+	private final List<ResourceRecordSet> deletes;
+	private final List<RecordSetDescriptor> upserts;
+	private final int unchanged;
+
+	DnsChangePlan(List<ResourceRecordSet> deletes, List<RecordSetDescriptor> upserts, int unchanged) {
+		this.deletes = deletes;
+		this.upserts = upserts;
+		this.unchanged = unchanged;
+	}
+
+	/**
+	 * Compute the plan for the given zone.
+	 *
+	 * @param live    The current record sets of the zone
+	 * @param desired
+	 * @param prune   When true, A and CNAME record sets that are not desired are deleted
+	 * @return
+	 */
+	public static DnsChangePlan create(Iterator<ResourceRecordSet> live, List<RecordSetDescriptor> desired, boolean prune) {
+		Map<String, RecordSetDescriptor> desiredByKey = new LinkedHashMap<>();
+		Map<String, String> desiredTypeByName = new LinkedHashMap<>();
+		for (RecordSetDescriptor descriptor : desired) {
+			desiredByKey.put(RecordSetDescriptor.createKey(descriptor.getName(), descriptor.getType()), descriptor);
+			desiredTypeByName.merge(RecordSetDescriptor.normalizeName(descriptor.getName()), descriptor.getType(),
+					(a, b) -> CNAME.equals(a) ? a : b);
+		}
+		Map<String, ResourceRecordSet> liveByKey = new LinkedHashMap<>();
+		List<ResourceRecordSet> deletes = new ArrayList<>();
+		while (live.hasNext()) {
+			ResourceRecordSet recordSet = live.next();
+			if (recordSet.getSetIdentifier() != null) {
+				continue;
+			}
+			String key = RecordSetDescriptor.createKey(recordSet.getName(), recordSet.getType());
+			liveByKey.put(key, recordSet);
+			if (desiredByKey.containsKey(key)) {
+				continue;
+			}
+			String desiredType = desiredTypeByName.get(RecordSetDescriptor.normalizeName(recordSet.getName()));
+			boolean conflicts = desiredType != null && (CNAME.equals(desiredType) || CNAME.equals(recordSet.getType()));
+			boolean pruned = prune && PRUNED_TYPES.contains(recordSet.getType());
+			if (conflicts || pruned) {
+				deletes.add(recordSet);
+			}
+		}
+		List<RecordSetDescriptor> upserts = new ArrayList<>();
+		int unchanged = 0;
+		for (Map.Entry<String, RecordSetDescriptor> entry : desiredByKey.entrySet()) {
+			ResourceRecordSet current = liveByKey.get(entry.getKey());
+			if (current != null && entry.getValue().matches(current)) {
+				unchanged++;
+			} else {
+				upserts.add(entry.getValue());
+			}
+		}
+		return new DnsChangePlan(deletes, upserts, unchanged);
+	}
+
+	public List<ResourceRecordSet> getDeletes() {
+		return deletes;
+	}
+
+	public List<RecordSetDescriptor> getUpserts() {
+		return upserts;
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	public boolean isEmpty() {
+		return deletes.isEmpty() && upserts.isEmpty();
+	}
+
+	/**
+	 * @return The changes of the plan, the deletes first so that a record set
+	 *         replaced by a CNAME is removed before the CNAME is created.
+	 */
+	public List<Change> toChanges() {
+		List<Change> changes = new ArrayList<>();
+		deletes.forEach(rrs -> changes.add(new Change(ChangeAction.DELETE, rrs)));
+		upserts.forEach(rsd -> changes.add(new Change(ChangeAction.UPSERT, rsd.toResourceRecordSet())));
+		return changes;
+	}
+
+	/**
+	 * @param hostedZoneId
+	 * @return The lines of a readable plan.
+	 */
+	public List<String> toLines(String hostedZoneId) {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("Plan for zone: %s: %d to upsert, %d to delete, %d unchanged", hostedZoneId,
+				upserts.size(), deletes.size(), unchanged));
+		deletes.forEach(rrs -> lines.add(String.format("  DELETE %-6s %s", rrs.getType(), rrs.getName())));
+		upserts.forEach(rsd -> lines.add(String.format("  UPSERT %-6s %s", rsd.getType(), rsd.getName())));
+		return lines;
+	}
+
+}
@@ -7,10 +7,16 @@ public class DnsConfig {
 
 	private final String hostedZoneId;
 	private final List<RecordSetDescriptor> recordSetDescriptorList;
+	private final boolean prune;
 
 	public DnsConfig(String hostedZoneId, List<RecordSetDescriptor> recordSetDescriptorList) {
+		this(hostedZoneId, recordSetDescriptorList, false);
+	}
+
+	public DnsConfig(String hostedZoneId, List<RecordSetDescriptor> recordSetDescriptorList, boolean prune) {
 		this.hostedZoneId = hostedZoneId;
 		this.recordSetDescriptorList = recordSetDescriptorList;
+		this.prune = prune;
 	}
 
 	public String getHostedZoneId() { return hostedZoneId; }
@@ -19,17 +25,20 @@ public class DnsConfig {
 		return recordSetDescriptorList;
 	}
 
+	// true if the A and CNAME record sets of the zone that are not listed should be deleted
+	public boolean isPrune() { return prune; }
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		DnsConfig dnsConfig = (DnsConfig) o;
-		return hostedZoneId.equals(dnsConfig.hostedZoneId) && recordSetDescriptorList.equals(dnsConfig.recordSetDescriptorList);
+		return prune == dnsConfig.prune && hostedZoneId.equals(dnsConfig.hostedZoneId) && recordSetDescriptorList.equals(dnsConfig.recordSetDescriptorList);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(hostedZoneId, recordSetDescriptorList);
+		return Objects.hash(hostedZoneId, recordSetDescriptorList, prune);
 	}
 
 	@Override
@@ -37,6 +46,7 @@ public class DnsConfig {
 		return "DnsConfig{" +
 				"hostedZoneId='" + hostedZoneId + '\'' +
 				", recordSetDescriptorList=" + recordSetDescriptorList +
+				", prune=" + prune +
 				'}';
 	}
 }
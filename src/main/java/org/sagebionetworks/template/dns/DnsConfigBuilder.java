@@ -7,6 +7,7 @@ public class DnsConfigBuilder {
 
 	private String hostedZoneId;
 	private List<RecordSetDescriptor> recordSetDescriptorList;
+	private boolean prune;
 
 	public DnsConfigBuilder() {
 	}
@@ -37,17 +38,30 @@ public class DnsConfigBuilder {
 		this.recordSetDescriptorList = recordSetDescriptorList;
 	}
 
+	public boolean isPrune() {
+		return prune;
+	}
+
+	public DnsConfigBuilder prune(boolean prune) {
+		this.prune = prune;
+		return this;
+	}
+
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		DnsConfigBuilder that = (DnsConfigBuilder) o;
-		return hostedZoneId.equals(that.hostedZoneId) && recordSetDescriptorList.equals(that.recordSetDescriptorList);
+		return prune == that.prune && hostedZoneId.equals(that.hostedZoneId) && recordSetDescriptorList.equals(that.recordSetDescriptorList);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(hostedZoneId, recordSetDescriptorList);
+		return Objects.hash(hostedZoneId, recordSetDescriptorList, prune);
 	}
 
 	@Override
@@ -55,6 +69,7 @@ public class DnsConfigBuilder {
 		return "DnsConfigBuilder{" +
 				"hostedZoneId='" + hostedZoneId + '\'' +
 				", recordSetDescriptorList=" + recordSetDescriptorList +
+				", prune=" + prune +
 				'}';
 	}
 
@@ -105,7 +120,7 @@ public class DnsConfigBuilder {
 		for (RecordSetDescriptor rsd: this.recordSetDescriptorList) {
 			validateRecordSetDescriptor(rsd);
 		}
-		DnsConfig config = new DnsConfig(hostedZoneId, recordSetDescriptorList);
+		DnsConfig config = new DnsConfig(hostedZoneId, recordSetDescriptorList, prune);
 		return config;
 	}
 }
@@ -1,16 +1,15 @@
 package org.sagebionetworks.template.dns;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 public class DnsListerMain {
 	public static void main(String[] args) throws Exception {
 
 		String hostedZoneId = args[0];
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		DnsBuilder builder = injector.getInstance(DnsBuilder.class);
-		builder.listDns(hostedZoneId);
+		MainRunner.run(injector -> {
+			DnsBuilder builder = injector.getInstance(DnsBuilder.class);
+			builder.listDns(hostedZoneId);
+		});
 	}
 
 }
@@ -96,6 +96,60 @@ public class RecordSetDescriptor {
 				'}';
 	}
 
+	/**
+	 * The key of a record set in a zone: its normalized name and type.
+	 *
+	 * @param name
+	 * @param type
+	 * @return
+	 */
+	public static String createKey(String name, String type) {
+		return normalizeName(name) + " " + type;
+	}
+
+	/**
+	 * Route53 names are case insensitive and fully qualified.
+	 *
+	 * @param name
+	 * @return The lower case name, ending with a dot.
+	 */
+	public static String normalizeName(String name) {
+		if (name == null) {
+			return null;
+		}
+		String lower = name.toLowerCase();
+		return lower.endsWith(".") ? lower : lower + ".";
+	}
+
+	/**
+	 * @param current A record set of a zone
+	 * @return True if the given record set already has the values of this descriptor.
+	 */
+	public boolean matches(ResourceRecordSet current) {
+		if (current.getSetIdentifier() != null) {
+			// routing policies are not described
+			return false;
+		}
+		RecordSetDescriptor other = new RecordSetDescriptor(current);
+		if (!createKey(name, type).equals(createKey(other.name, other.type)) || !Objects.equals(ttl, other.ttl)) {
+			return false;
+		}
+		// the order of the values does not matter
+		if (!Objects.equals(sorted(resourceRecords), sorted(other.resourceRecords))) {
+			return false;
+		}
+		if (aliasTargetDescriptor == null || other.aliasTargetDescriptor == null) {
+			return aliasTargetDescriptor == other.aliasTargetDescriptor;
+		}
+		return Objects.equals(normalizeName(aliasTargetDescriptor.getDnsName()), normalizeName(other.aliasTargetDescriptor.getDnsName()))
+				&& Objects.equals(aliasTargetDescriptor.getHostedZoneId(), other.aliasTargetDescriptor.getHostedZoneId())
+				&& Objects.equals(aliasTargetDescriptor.getEvaluateTargetHealth(), other.aliasTargetDescriptor.getEvaluateTargetHealth());
+	}
+
+	private static List<String> sorted(List<String> values) {
+		return values == null || values.isEmpty() ? null : values.stream().sorted().collect(Collectors.toList());
+	}
+
 	public ResourceRecordSet toResourceRecordSet() {
 		ResourceRecordSet resourceRecordSet = new ResourceRecordSet();
 		resourceRecordSet.setName(this.getName());
@@ -0,0 +1,110 @@
+package org.sagebionetworks.template.docs;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * The key, ETag and size of each object deployed to the docs bucket, in key
+ * order. The manifest is written as gzipped lines, each a JSON array of the
+ * three values, so that the next deployment can diff the source against it
+ * without listing the destination.
+ *
+ */
+public class DocsManifest {
+
+	private final ByteArrayOutputStream bytes;
+	private final Writer writer;
+	private int size;
+
+	public DocsManifest() {
+		this.bytes = new ByteArrayOutputStream();
+		try {
+			this.writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Add an object to the manifest. Objects must be added in key order.
+	 * 
+	 * @param summary
+	 */
+	public void add(S3ObjectSummary summary) {
+		JSONArray line = new JSONArray();
+		line.put(summary.getKey());
+		line.put(summary.getETag());
+		line.put(summary.getSize());
+		try {
+			writer.write(line.toString());
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		size++;
+	}
+
+	/**
+	 * @return The number of objects added.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finish the manifest. No objects can be added after this is called.
+	 * 
+	 * @return The gzipped bytes of the manifest.
+	 */
+	public byte[] toByteArray() {
+		try {
+			writer.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read the objects of a manifest created with {@link #toByteArray()}.
+	 * 
+	 * @param bucket The bucket the manifest describes
+	 * @param in
+	 * @return The objects in key order.
+	 * @throws IOException
+	 */
+	public static List<S3ObjectSummary> read(String bucket, InputStream in) throws IOException {
+		List<S3ObjectSummary> objects = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			JSONArray values = new JSONArray(line);
+			S3ObjectSummary summary = new S3ObjectSummary();
+			summary.setBucketName(bucket);
+			summary.setKey(values.getString(0));
+			summary.setETag(values.getString(1));
+			summary.setSize(values.getLong(2));
+			objects.add(summary);
+		}
+		return objects;
+	}
+
+}
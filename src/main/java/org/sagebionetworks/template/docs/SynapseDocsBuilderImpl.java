@@ -2,26 +2,40 @@ package org.sagebionetworks.template.docs;
 
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_INSTANCE;
 import static org.sagebionetworks.template.Constants.DOCS_STACK_INSTANCE_JSON_FILE;
+import static org.sagebionetworks.template.Constants.DOCS_STACK_MANIFEST_FILE;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_SOURCE_BUCKET;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_DESTINATION_BUCKET;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_DEPLOYMENT_FLAG;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_MAX_COPIES_IN_FLIGHT;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.PageIterator;
+import org.sagebionetworks.template.ThreadProvider;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.s3.S3TransferManager;
 import org.sagebionetworks.template.s3.S3TransferManagerFactory;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.transfer.Copy;
 import com.google.inject.Inject;
@@ -30,16 +44,21 @@ public class SynapseDocsBuilderImpl implements SynapseDocsBuilder {
 
 	private static final Logger LOG = LogManager.getLogger(SynapseDocsBuilderImpl.class);
 	
+	static final int MAX_KEYS_PER_DELETE = 1000;
+	static final int DEFAULT_MAX_COPIES_IN_FLIGHT = 10;
+	
 	private final S3TransferManagerFactory transferManagerFactory;
 	private final AmazonS3 s3Client;
 	private final RepoConfiguration config;
+	private final ThreadProvider threadProvider;
 	
 	@Inject
 	SynapseDocsBuilderImpl(AmazonS3 s3Client, RepoConfiguration config, 
-			S3TransferManagerFactory transferManagerFactory) {
+			S3TransferManagerFactory transferManagerFactory, ThreadProvider threadProvider) {
 		this.s3Client = s3Client;
 		this.config = config;
 		this.transferManagerFactory = transferManagerFactory;
+		this.threadProvider = threadProvider;
 	}
 	
 	boolean verifyDeployment(String destinationBucket) {
@@ -67,58 +86,220 @@ public class SynapseDocsBuilderImpl implements SynapseDocsBuilder {
 	void sync(String sourceBucket, String destinationBucket) {
 		// deployment is a sync
 		String prefix = "";
-		Map<String, String> destinationKeyToETag = new HashMap<>();
-		// build a map of destination object keys to their etags
-		getAllS3Objects(createListObjectsRequest(destinationBucket, prefix))
-			.forEach(obj -> destinationKeyToETag.put(obj.getKey(), obj.getETag()));
-		// do the sync
-		List<S3ObjectSummary> sourceObjects = getAllS3Objects(createListObjectsRequest(sourceBucket, prefix));
+		long startTimeMS = threadProvider.currentTimeMillis();
+		SyncStatistics statistics = new SyncStatistics();
+		// both listings are in key order, so they are merged one page at a time
+		Iterator<S3ObjectSummary> sourceObjects = listObjects(sourceBucket, prefix);
+		Iterator<S3ObjectSummary> destinationObjects = getDestinationObjects(destinationBucket, prefix);
+		// a sync that fails part way leaves the destination different from any manifest
+		s3Client.deleteObject(destinationBucket, DOCS_STACK_MANIFEST_FILE);
+		DocsManifest manifest = new DocsManifest();
+		List<KeyVersion> deletes = new ArrayList<>(MAX_KEYS_PER_DELETE);
 		try (S3TransferManager s3TransferManager = transferManagerFactory.createNewS3TransferManager()) {
-			for (S3ObjectSummary sourceObject : sourceObjects) {
-				// make the destination map contain all objects to be removed (not updated) in the sync
-				String destinationETag = destinationKeyToETag.remove(sourceObject.getKey());
-				if (destinationETag != null && sourceObject.getETag().equals(destinationETag)) {
+			Deque<Copy> copiesInFlight = new ArrayDeque<>();
+			int maxCopiesInFlight = getMaxCopiesInFlight();
+			S3ObjectSummary source = next(sourceObjects);
+			S3ObjectSummary destination = next(destinationObjects);
+			while (source != null || destination != null) {
+				int compare = source == null ? 1 : destination == null ? -1 : compareKeys(source.getKey(), destination.getKey());
+				if (compare > 0) {
+					// the destination object is not in the source
+					if (!isStackFile(destination.getKey())) {
+						deletes.add(new KeyVersion(destination.getKey()));
+						if (deletes.size() == MAX_KEYS_PER_DELETE) {
+							deleteObjects(destinationBucket, deletes, statistics);
+						}
+					}
+					destination = next(destinationObjects);
 					continue;
 				}
-				Copy cpy = s3TransferManager.copy(sourceBucket, sourceObject.getKey(), 
-						destinationBucket, sourceObject.getKey());
-				try {
-					LOG.info("Waiting to copy " + sourceObject.getKey() + "...");
-					cpy.waitForCompletion();
-				} catch (Exception e) {
-					throw new RuntimeException(e);
+				if (compare == 0 && source.getETag().equals(destination.getETag())) {
+					statistics.unchanged++;
+				} else {
+					if (copiesInFlight.size() >= maxCopiesInFlight) {
+						waitForCompletion(copiesInFlight.removeFirst());
+					}
+					copiesInFlight.addLast(s3TransferManager.copy(sourceBucket, source.getKey(), destinationBucket, source.getKey()));
+					statistics.copied++;
+					statistics.bytesCopied += source.getSize();
+				}
+				manifest.add(source);
+				if (compare == 0) {
+					destination = next(destinationObjects);
 				}
+				source = next(sourceObjects);
+			}
+			while (!copiesInFlight.isEmpty()) {
+				waitForCompletion(copiesInFlight.removeFirst());
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
-
-		// remove objects in the sync
-		for (String destinationObjectKey : destinationKeyToETag.keySet()) {
-			s3Client.deleteObject(destinationBucket, destinationObjectKey);
+		if (!deletes.isEmpty()) {
+			deleteObjects(destinationBucket, deletes, statistics);
 		}
 		
+		writeManifest(destinationBucket, manifest);
 		// Write the instance to the bucket
 		JSONObject obj = new JSONObject();
 		obj.put(PROPERTY_KEY_INSTANCE, Integer.parseInt(config.getProperty(PROPERTY_KEY_INSTANCE)));
 		String json = obj.toString();
 		s3Client.putObject(destinationBucket, DOCS_STACK_INSTANCE_JSON_FILE, json);
-		LOG.info("Done with sync");
+		LOG.info("Done with sync: " + statistics.toSummary(threadProvider.currentTimeMillis() - startTimeMS));
+	}
+	
+	/**
+	 * The objects of the destination from the manifest of the last sync, or from
+	 * a listing of the bucket when there is no readable manifest.
+	 * 
+	 * @param bucket
+	 * @param prefix
+	 * @return
+	 */
+	Iterator<S3ObjectSummary> getDestinationObjects(String bucket, String prefix) {
+		if (s3Client.doesObjectExist(bucket, DOCS_STACK_MANIFEST_FILE)) {
+			try (S3Object object = s3Client.getObject(bucket, DOCS_STACK_MANIFEST_FILE)) {
+				List<S3ObjectSummary> objects = DocsManifest.read(bucket, object.getObjectContent());
+				LOG.info("Read " + objects.size() + " objects from the manifest of: " + bucket);
+				return objects.iterator();
+			} catch (IOException | JSONException e) {
+				LOG.warn("Failed to read the manifest of: " + bucket + ", will list the bucket: " + e.getMessage());
+			}
+		}
+		return listObjects(bucket, prefix);
+	}
+	
+	void writeManifest(String bucket, DocsManifest manifest) {
+		byte[] bytes = manifest.toByteArray();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(bytes.length);
+		metadata.setContentType("application/gzip");
+		s3Client.putObject(new PutObjectRequest(bucket, DOCS_STACK_MANIFEST_FILE, new ByteArrayInputStream(bytes), metadata));
+		LOG.info("Wrote a manifest of " + manifest.size() + " objects to: " + bucket);
+	}
+	
+	static boolean isStackFile(String key) {
+		return DOCS_STACK_INSTANCE_JSON_FILE.equals(key) || DOCS_STACK_MANIFEST_FILE.equals(key);
+	}
+	
+	/**
+	 * Stream over the objects of the given bucket in key order, one page at a time.
+	 * 
+	 * @param bucket
+	 * @param prefix
+	 * @return
+	 */
+	Iterator<S3ObjectSummary> listObjects(String bucket, String prefix) {
+		return new PageIterator<>(new ObjectPageProvider(createListObjectsRequest(bucket, prefix)));
+	}
+	
+	ListObjectsV2Request createListObjectsRequest(String bucket, String prefix) {
+		return new ListObjectsV2Request().withBucketName(bucket).withPrefix(prefix);
+	}
+	
+	/**
+	 * Compare two keys in the order S3 lists them, which is the order of their
+	 * UTF-8 bytes. Unlike {@link String#compareTo(String)} this is the order of
+	 * the code points.
+	 * 
+	 * @param one
+	 * @param other
+	 * @return
+	 */
+	static int compareKeys(String one, String other) {
+		int i = 0;
+		int j = 0;
+		while (i < one.length() && j < other.length()) {
+			int a = one.codePointAt(i);
+			int b = other.codePointAt(j);
+			if (a != b) {
+				return Integer.compare(a, b);
+			}
+			i += Character.charCount(a);
+			j += Character.charCount(b);
+		}
+		return Integer.compare(one.length() - i, other.length() - j);
+	}
+	
+	/**
+	 * Delete the given keys with a single request and clear them.
+	 * 
+	 * @param bucket
+	 * @param keys At most {@link #MAX_KEYS_PER_DELETE}
+	 * @param statistics
+	 */
+	void deleteObjects(String bucket, List<KeyVersion> keys, SyncStatistics statistics) {
+		LOG.info("Deleting " + keys.size() + " objects...");
+		s3Client.deleteObjects(new DeleteObjectsRequest(bucket).withKeys(new ArrayList<>(keys)).withQuiet(true));
+		statistics.deleted += keys.size();
+		keys.clear();
 	}
 	
-	List<S3ObjectSummary> getAllS3Objects(ListObjectsRequest listRequest) {
-		List<S3ObjectSummary> objects = new LinkedList<>();
-		ObjectListing listing;
-		do {
-			listing = s3Client.listObjects(listRequest);
-			objects.addAll(listing.getObjectSummaries());
-			listRequest.setMarker(listing.getNextMarker());
-		} while (listing.isTruncated());
-		return objects;
+	int getMaxCopiesInFlight() {
+		try {
+			return Math.max(1, config.getIntegerProperty(PROPERTY_KEY_DOCS_MAX_COPIES_IN_FLIGHT));
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_COPIES_IN_FLIGHT;
+		}
+	}
+	
+	private static void waitForCompletion(Copy copy) {
+		try {
+			LOG.info("Waiting to copy " + copy.getDescription() + "...");
+			copy.waitForCompletion();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static <T> T next(Iterator<T> iterator) {
+		return iterator.hasNext() ? iterator.next() : null;
 	}
 	
-	ListObjectsRequest createListObjectsRequest(String bucket, String prefix) {
-		return new ListObjectsRequest().withBucketName(bucket).withPrefix(prefix);
+	/**
+	 * Stateful PageProvider for listing the objects of a bucket using pagination.
+	 *
+	 */
+	private class ObjectPageProvider implements PageIterator.PageProvider<S3ObjectSummary> {
+		
+		private final ListObjectsV2Request request;
+		private boolean isDone = false;
+		
+		ObjectPageProvider(ListObjectsV2Request request) {
+			this.request = request;
+		}
+		
+		public List<S3ObjectSummary> nextPage() {
+			if (isDone) {
+				return Collections.emptyList();
+			}
+			ListObjectsV2Result result = s3Client.listObjectsV2(request);
+			request.setContinuationToken(result.getNextContinuationToken());
+			isDone = !result.isTruncated();
+			return result.getObjectSummaries();
+		}
+	}
+	
+	/**
+	 * Counts of the objects processed by a sync.
+	 *
+	 */
+	static class SyncStatistics {
+		
+		long copied;
+		long bytesCopied;
+		long deleted;
+		long unchanged;
+		
+		String toSummary(long elapsedMS) {
+			double seconds = Math.max(elapsedMS, 1) / 1000.0;
+			long objects = copied + deleted + unchanged;
+			return String.format("%d objects in %.1fs (%.1f objects/s), copied %d objects (%d bytes, %.0f bytes/s), deleted %d, unchanged %d",
+					objects, seconds, objects / seconds, copied, bytesCopied, bytesCopied / seconds, deleted, unchanged);
+		}
 	}
 	
 	@Override
@@ -0,0 +1,139 @@
+package org.sagebionetworks.template.dryrun;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.template.CloudFormationClient;
+import org.sagebionetworks.template.CreateOrUpdateStackRequest;
+import org.sagebionetworks.template.LoggerFactory;
+
+import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * CloudFormationClient used for a dry run. Instead of deploying a stack, its
+ * template is written to the dry run directory as &lt;stack name&gt;.json (or
+ * .yaml) along with its parameters as &lt;stack name&gt;-parameters.json. Stacks
+ * are described from what was written in this run and the recorded outputs.
+ *
+ */
+@Singleton
+public class DryRunCloudFormationClient implements CloudFormationClient {
+
+	public static final String PARAMETERS_FILE_SUFFIX = "-parameters.json";
+
+	private final DryRunMode dryRunMode;
+	private final Logger logger;
+	private final Map<String, Stack> stacks;
+
+	@Inject
+	public DryRunCloudFormationClient(DryRunMode dryRunMode, LoggerFactory loggerFactory) {
+		this.dryRunMode = dryRunMode;
+		this.logger = loggerFactory.getLogger(DryRunCloudFormationClient.class);
+		this.stacks = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public boolean doesStackNameExist(String stackName) {
+		return describeStack(stackName).isPresent();
+	}
+
+	@Override
+	public Optional<Stack> describeStack(String stackName) {
+		Stack stack = stacks.get(stackName);
+		if (stack == null && !dryRunMode.getInputs().getStackOutputs(stackName).isEmpty()) {
+			stack = createStack(stackName, new Parameter[0]);
+		}
+		return Optional.ofNullable(stack);
+	}
+
+	@Override
+	public void updateStack(CreateOrUpdateStackRequest request) {
+		createOrUpdateStack(request);
+	}
+
+	@Override
+	public void createStack(CreateOrUpdateStackRequest request) {
+		createOrUpdateStack(request);
+	}
+
+	@Override
+	public void createOrUpdateStack(CreateOrUpdateStackRequest request) {
+		String stackName = request.getStackName();
+		String templateBody = request.getTemplateBody();
+		String extension = templateBody.trim().startsWith("{") ? ".json" : ".yaml";
+		Path templateFile = dryRunMode.getDirectory().resolve(stackName + extension);
+		try {
+			Files.createDirectories(dryRunMode.getDirectory());
+			Files.write(templateFile, templateBody.getBytes(StandardCharsets.UTF_8));
+			Parameter[] parameters = request.getParameters();
+			if (parameters != null && parameters.length > 0) {
+				Map<String, String> values = new LinkedHashMap<>();
+				for (Parameter parameter : parameters) {
+					values.put(parameter.getParameterKey(), parameter.getParameterValue());
+				}
+				DryRunInputs.OBJECT_MAPPER.writerWithDefaultPrettyPrinter()
+						.writeValue(dryRunMode.getDirectory().resolve(stackName + PARAMETERS_FILE_SUFFIX).toFile(), values);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		logger.info("Dry run, wrote the template of stack: " + stackName + " to: " + templateFile);
+		stacks.put(stackName, createStack(stackName, request.getParameters()));
+	}
+
+	@Override
+	public Optional<Stack> waitForStackToComplete(String stackName) throws InterruptedException {
+		return describeStack(stackName);
+	}
+
+	@Override
+	public CompletableFuture<Stack> waitForStackToCompleteAsync(String stackName) {
+		return CompletableFuture.completedFuture(describeStack(stackName).orElse(null));
+	}
+
+	/**
+	 * The recorded value of the output, or a placeholder naming the stack and
+	 * the output when none was recorded.
+	 */
+	@Override
+	public String getOutput(String stackName, String outputKey) {
+		String value = dryRunMode.getInputs().getStackOutputs(stackName).get(outputKey);
+		return value != null ? value : "dry-run-" + stackName + "-" + outputKey;
+	}
+
+	@Override
+	public Stream<Stack> streamOverAllStacks() {
+		return Stream.empty();
+	}
+
+	@Override
+	public void deleteStack(String stackName) {
+		logger.info("Dry run, skipping the deletion of stack: " + stackName);
+	}
+
+	Stack createStack(String stackName, Parameter[] parameters) {
+		return new Stack().withStackName(stackName).withStackId(stackName)
+				.withStackStatus(StackStatus.CREATE_COMPLETE).withCreationTime(new Date())
+				.withParameters(parameters == null ? new Parameter[0] : parameters)
+				.withOutputs(dryRunMode.getInputs().getStackOutputs(stackName).entrySet().stream()
+						.map(entry -> new Output().withOutputKey(entry.getKey()).withOutputValue(entry.getValue()))
+						.collect(Collectors.toList()));
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.sagebionetworks.template.dryrun;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sagebionetworks.template.Ec2Client;
+
+/**
+ * Ec2Client used for a dry run: every instance type is offered in every subnet,
+ * and the subnets are spread over the availability zones in order.
+ *
+ */
+public class DryRunEc2Client implements Ec2Client {
+
+	public static final List<String> AVAILABILITY_ZONES = List.of("us-east-1a", "us-east-1b", "us-east-1c",
+			"us-east-1d", "us-east-1e", "us-east-1f");
+
+	@Override
+	public List<String> getAvailabilityZonesForInstanceType(String instanceType) {
+		return AVAILABILITY_ZONES;
+	}
+
+	@Override
+	public Map<String, String> getAvailabityZoneToSubnetMap(List<String> subnetIds) {
+		Map<String, String> map = new LinkedHashMap<>();
+		for (int i = 0; i < subnetIds.size(); i++) {
+			map.put(AVAILABILITY_ZONES.get(i % AVAILABILITY_ZONES.size()), subnetIds.get(i));
+		}
+		return map;
+	}
+
+	@Override
+	public List<String> getAvailableSubnetsForInstanceType(String instanceType, List<String> subnets) {
+		return subnets;
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.sagebionetworks.template.dryrun;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The recorded inputs used in place of AWS during a dry run. A JSON file of the
+ * form:
+ *
+ * <pre>
+ * {
+ *   "outputs": { "&lt;stack name&gt;": { "&lt;output key&gt;": "&lt;value&gt;" } },
+ *   "responses": { "&lt;client interface&gt;.&lt;method&gt;": &lt;result as JSON&gt; }
+ * }
+ * </pre>
+ *
+ * The responses are converted to the return type of the method, e.g.
+ * "AWSElasticBeanstalk.listPlatformVersions" to a ListPlatformVersionsResult.
+ *
+ */
+public class DryRunInputs {
+
+	public static final String DEFAULTS_FILE = "dry-run-defaults.json";
+
+	static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	private Map<String, Map<String, String>> outputs = new HashMap<>();
+	private Map<String, JsonNode> responses = new HashMap<>();
+
+	public Map<String, Map<String, String>> getOutputs() {
+		return outputs;
+	}
+
+	public void setOutputs(Map<String, Map<String, String>> outputs) {
+		this.outputs = outputs;
+	}
+
+	public Map<String, JsonNode> getResponses() {
+		return responses;
+	}
+
+	public void setResponses(Map<String, JsonNode> responses) {
+		this.responses = responses;
+	}
+
+	/**
+	 * @param stackName
+	 * @return The recorded outputs of the given stack, empty if none were
+	 *         recorded.
+	 */
+	public Map<String, String> getStackOutputs(String stackName) {
+		return outputs.getOrDefault(stackName, Collections.emptyMap());
+	}
+
+	/**
+	 * Get the recorded response of a client call converted to the given type.
+	 *
+	 * @param call The name of the call: &lt;client interface&gt;.&lt;method&gt;
+	 * @param type
+	 * @return
+	 */
+	public Optional<Object> getResponse(String call, Type type) {
+		JsonNode response = responses.get(call);
+		if (response == null) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.ofNullable(OBJECT_MAPPER.convertValue(response, OBJECT_MAPPER.constructType(type)));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("The recorded response of: " + call + " does not match " + type, e);
+		}
+	}
+
+	/**
+	 * Add all the outputs and responses of the given inputs, replacing the ones
+	 * already recorded.
+	 *
+	 * @param other
+	 * @return
+	 */
+	public DryRunInputs withOverrides(DryRunInputs other) {
+		other.outputs.forEach((stackName, stackOutputs) -> {
+			outputs.computeIfAbsent(stackName, k -> new HashMap<>()).putAll(stackOutputs);
+		});
+		responses.putAll(other.responses);
+		return this;
+	}
+
+	/**
+	 * Load the defaults from the classpath, used for the calls that must return
+	 * something usable by the builders.
+	 *
+	 * @return
+	 */
+	public static DryRunInputs loadDefaults() {
+		try (InputStream in = DryRunInputs.class.getClassLoader().getResourceAsStream(DEFAULTS_FILE)) {
+			if (in == null) {
+				throw new RuntimeException("Failed to load file content from the classpath: " + DEFAULTS_FILE);
+			}
+			return OBJECT_MAPPER.readValue(in, DryRunInputs.class);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Load the inputs recorded in the given file.
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static DryRunInputs load(Path file) {
+		try (InputStream in = Files.newInputStream(file)) {
+			return OBJECT_MAPPER.readValue(in, DryRunInputs.class);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Failed to load the dry run inputs: " + file, e);
+		}
+	}
+
+}
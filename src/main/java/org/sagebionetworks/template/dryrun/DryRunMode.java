@@ -0,0 +1,138 @@
+package org.sagebionetworks.template.dryrun;
+
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DRY_RUN_DIRECTORY;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DRY_RUN_INPUTS;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.config.Configuration;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * A dry run is enabled by setting the
+ * {@link org.sagebionetworks.template.Constants#PROPERTY_KEY_DRY_RUN_DIRECTORY}
+ * property. The builders then run against stubbed AWS clients and the rendered
+ * templates are written to that directory instead of being deployed. The
+ * stubbed clients answer from the optional inputs file set with
+ * {@link org.sagebionetworks.template.Constants#PROPERTY_KEY_DRY_RUN_INPUTS},
+ * on top of the defaults in {@link DryRunInputs#DEFAULTS_FILE}.
+ *
+ */
+@Singleton
+public class DryRunMode {
+
+	private final Path directory;
+	private final DryRunInputs inputs;
+
+	@Inject
+	public DryRunMode(Configuration config) {
+		this.directory = getOptionalPath(config, PROPERTY_KEY_DRY_RUN_DIRECTORY);
+		if (directory == null) {
+			this.inputs = null;
+			return;
+		}
+		DryRunInputs defaults = DryRunInputs.loadDefaults();
+		Path inputsFile = getOptionalPath(config, PROPERTY_KEY_DRY_RUN_INPUTS);
+		this.inputs = inputsFile == null ? defaults : defaults.withOverrides(DryRunInputs.load(inputsFile));
+	}
+
+	public DryRunMode(Path directory, DryRunInputs inputs) {
+		this.directory = directory;
+		this.inputs = inputs;
+	}
+
+	/**
+	 * @return True if this is a dry run.
+	 */
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	/**
+	 * @return The directory the rendered templates are written to.
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return The recorded inputs of the dry run.
+	 */
+	public DryRunInputs getInputs() {
+		return inputs;
+	}
+
+	/**
+	 * Wrap the given AWS client so that no call reaches AWS. Each call returns
+	 * the recorded response of the method if there is one, otherwise an empty
+	 * result.
+	 *
+	 * @param <T>
+	 * @param client
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T createClientProxy(T client) {
+		List<Class<?>> interfaces = ClassUtils.getAllInterfaces(client.getClass());
+		return (T) Proxy.newProxyInstance(client.getClass().getClassLoader(), interfaces.toArray(new Class<?>[0]),
+				(proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						return method.invoke(client, args);
+					}
+					String call = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+					return inputs.getResponse(call, method.getGenericReturnType()).orElseGet(() -> emptyResult(method));
+				});
+	}
+
+	/**
+	 * The result of a call without a recorded response: a new instance of SDK
+	 * result classes, an empty collection or the default of a primitive.
+	 *
+	 * @param method
+	 * @return
+	 */
+	static Object emptyResult(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == void.class) {
+			return null;
+		}
+		if (type.isPrimitive()) {
+			return Array.get(Array.newInstance(type, 1), 0);
+		}
+		if (List.class.isAssignableFrom(type)) {
+			return Collections.emptyList();
+		}
+		if (Set.class.isAssignableFrom(type)) {
+			return Collections.emptySet();
+		}
+		if (Map.class.isAssignableFrom(type)) {
+			return Collections.emptyMap();
+		}
+		try {
+			return type.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	static Path getOptionalPath(Configuration config, String key) {
+		try {
+			return Paths.get(config.getProperty(key));
+		} catch (ConfigurationPropertyNotFound e) {
+			return null;
+		}
+	}
+
+}
@@ -1,15 +1,14 @@
 package org.sagebionetworks.template.global;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 public class GlobalResourcesBuilderMain {
 
     public static void main(String[] args) throws InterruptedException {
-        Injector injector = Guice.createInjector(new TemplateGuiceModule());
-        GlobalResourcesBuilder builder = injector.getInstance(GlobalResourcesBuilder.class);
-        builder.buildGlobalResources();
+        MainRunner.run(injector -> {
+            GlobalResourcesBuilder builder = injector.getInstance(GlobalResourcesBuilder.class);
+            builder.buildGlobalResources();
+        });
     }
 
 }
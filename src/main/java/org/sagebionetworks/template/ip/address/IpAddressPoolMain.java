@@ -1,16 +1,14 @@
 package org.sagebionetworks.template.ip.address;
 
-import org.sagebionetworks.template.TemplateGuiceModule;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.MainRunner;
 
 public class IpAddressPoolMain {
 
 	public static void main(String[] args) {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		IpAddressPoolBuilder builder = injector.getInstance(IpAddressPoolBuilder.class);
-		builder.buildAndDeploy();
+		MainRunner.run(injector -> {
+			IpAddressPoolBuilder builder = injector.getInstance(IpAddressPoolBuilder.class);
+			builder.buildAndDeploy();
+		});
 	}
 
 }
@@ -2,10 +2,7 @@ package org.sagebionetworks.template.jobs;
 
 import org.sagebionetworks.repo.model.asynch.AsynchronousAdminRequestBody;
 import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
-import org.sagebionetworks.template.TemplateGuiceModule;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.MainRunner;
 
 public class AsyncAdminJobExecutorMain {
 	
@@ -16,13 +13,13 @@ public class AsyncAdminJobExecutorMain {
 		
 		String stringRequest = args[0];
 		
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		
-		AsynchAdminJobExecutor jobExecutor = injector.getInstance(AsynchAdminJobExecutor.class);
-		
-		AsynchronousAdminRequestBody requestBody = EntityFactory.createEntityFromJSONString(stringRequest, AsynchronousAdminRequestBody.class);
-		
-		jobExecutor.executeJob(requestBody);
+		MainRunner.run(injector -> {
+			AsynchAdminJobExecutor jobExecutor = injector.getInstance(AsynchAdminJobExecutor.class);
+			
+			AsynchronousAdminRequestBody requestBody = EntityFactory.createEntityFromJSONString(stringRequest, AsynchronousAdminRequestBody.class);
+			
+			jobExecutor.executeJob(requestBody);
+		});
 	}
 
 }
@@ -16,8 +16,8 @@ import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
-import java.io.File;
 import java.io.StringWriter;
 import java.util.Optional;
 
@@ -65,11 +65,8 @@ public class MarkDownItLambdaBuilderImpl implements MarkDownItLambdaBuilder {
         String lambdaArtifactKey = String.format("artifacts/markdown-it/%s", FilenameUtils.getName(lambdaSourceArtifactUrl));
 
         // Download from jfrog and upload to S3
-        File artifact = downloader.downloadFile(lambdaSourceArtifactUrl);
-        try {
-            s3Client.putObject(artifactBucket, lambdaArtifactKey, artifact);
-        } finally {
-            artifact.delete();
+        try (CachedArtifact artifact = downloader.getCachedFile(lambdaSourceArtifactUrl)) {
+            s3Client.putObject(artifactBucket, lambdaArtifactKey, artifact.getFile());
         }
 
         buildMarkDownItLambdaStack(stack, artifactBucket, lambdaArtifactKey);
@@ -1,15 +1,13 @@
 package org.sagebionetworks.template.markdownit;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
-
+import org.sagebionetworks.template.MainRunner;
 
 public class MarkDownItLambdaBuilderMain {
 
     public static void main(String[] args) throws InterruptedException {
-        Injector injector = Guice.createInjector(new TemplateGuiceModule());
-        MarkDownItLambdaBuilder builder = injector.getInstance(MarkDownItLambdaBuilder.class);
-        builder.buildMarkDownItLambda();
+        MainRunner.run(injector -> {
+            MarkDownItLambdaBuilder builder = injector.getInstance(MarkDownItLambdaBuilder.class);
+            builder.buildMarkDownItLambda();
+        });
     }
 }
@@ -1,9 +1,6 @@
 package org.sagebionetworks.template.nlb;
 
-import org.sagebionetworks.template.TemplateGuiceModule;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.MainRunner;
 
 /**
  * This main is used to setup the binding between the static network load
@@ -14,9 +11,10 @@ import com.google.inject.Injector;
 public class BindNetworkLoadBalancersMain {
 
 	public static void main(String[] args) {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		BindNetworkLoadBalancerBuilder builder = injector.getInstance(BindNetworkLoadBalancerBuilder.class);
-		builder.buildAndDeploy();
+		MainRunner.run(injector -> {
+			BindNetworkLoadBalancerBuilder builder = injector.getInstance(BindNetworkLoadBalancerBuilder.class);
+			builder.buildAndDeploy();
+		});
 	}
 
 }
@@ -1,13 +1,12 @@
 package org.sagebionetworks.template.redirectors.userdocs;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 
 public class UserDocsRedirectorBuilderMain {
 	public static void main(String[] args) {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		UserDocsRedirectorBuilder builder = injector.getInstance(UserDocsRedirectorBuilder.class);
-		builder.buildRedirector();
+		MainRunner.run(injector -> {
+			UserDocsRedirectorBuilder builder = injector.getInstance(UserDocsRedirectorBuilder.class);
+			builder.buildRedirector();
+		});
 	}
 }
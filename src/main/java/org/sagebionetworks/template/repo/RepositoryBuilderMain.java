@@ -1,10 +1,10 @@
 package org.sagebionetworks.template.repo;
 
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 import org.sagebionetworks.template.docs.SynapseDocsBuilder;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.report.RunReport;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 
 /**
  * Main to build all repository stacks.
@@ -13,10 +13,16 @@ import com.google.inject.Injector;
 public class RepositoryBuilderMain {
 
 	public static void main(String[] args) throws InterruptedException {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		SynapseDocsBuilder docsBuilder = injector.getInstance(SynapseDocsBuilder.class);
-		RepositoryTemplateBuilder builder = injector.getInstance(RepositoryTemplateBuilder.class);
-		docsBuilder.deployDocs();
-		builder.buildAndDeploy();
+		MainRunner.run(injector -> {
+			SynapseDocsBuilder docsBuilder = injector.getInstance(SynapseDocsBuilder.class);
+			RepositoryTemplateBuilder builder = injector.getInstance(RepositoryTemplateBuilder.class);
+			RunReport runReport = injector.getInstance(RunReport.class);
+			try (Span span = runReport.startSpan(SpanCategory.BUILD, "docs")) {
+				docsBuilder.deployDocs();
+			}
+			try (Span span = runReport.startSpan(SpanCategory.BUILD, "repository")) {
+				builder.buildAndDeploy();
+			}
+		});
 	}
 }
@@ -11,10 +11,7 @@ import com.amazonaws.services.elasticbeanstalk.model.ListPlatformVersionsResult;
 import com.amazonaws.services.elasticbeanstalk.model.PlatformSummary;
 import com.google.inject.Inject;
 import org.apache.logging.log4j.Logger;
-import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.json.JSONObject;
 import org.sagebionetworks.template.CloudFormationClient;
 import org.sagebionetworks.template.ConfigurationPropertyNotFound;
 import org.sagebionetworks.template.Constants;
@@ -22,8 +19,11 @@ import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.Ec2Client;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.config.TimeToLive;
+import org.sagebionetworks.template.deploy.StackDeployment;
+import org.sagebionetworks.template.deploy.StackDeploymentScheduler;
 import org.sagebionetworks.template.repo.beanstalk.ArtifactCopy;
 import org.sagebionetworks.template.repo.beanstalk.BeanstalkUtils;
 import org.sagebionetworks.template.repo.beanstalk.ElasticBeanstalkSolutionStackNameProvider;
@@ -33,7 +33,6 @@ import org.sagebionetworks.template.repo.beanstalk.SecretBuilder;
 import org.sagebionetworks.template.repo.beanstalk.SourceBundle;
 import org.sagebionetworks.template.repo.cloudwatchlogs.CloudwatchLogsVelocityContextProvider;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -59,7 +58,6 @@ import static org.sagebionetworks.template.Constants.ENVIRONMENT;
 import static org.sagebionetworks.template.Constants.EXCEPTION_THROWER;
 import static org.sagebionetworks.template.Constants.GLOBAL_RESOURCES_EXPORT_PREFIX;
 import static org.sagebionetworks.template.Constants.INSTANCE;
-import static org.sagebionetworks.template.Constants.JSON_INDENT;
 import static org.sagebionetworks.template.Constants.MACHINE_TYPES;
 import static org.sagebionetworks.template.Constants.NOSNAPSHOT;
 import static org.sagebionetworks.template.Constants.OAUTH_ENDPOINT;
@@ -117,7 +115,7 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 
 	private final CloudFormationClient cloudFormationClient;
 	private final Ec2Client ec2Client;
-	private final VelocityEngine velocityEngine;
+	private final TemplateRenderer templateRenderer;
 	private final RepoConfiguration config;
 	private final Logger logger;
 	private final ArtifactCopy artifactCopy;
@@ -128,18 +126,20 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 	private final CloudwatchLogsVelocityContextProvider cwlContextProvider;
 	private final AWSElasticBeanstalk beanstalkClient;
 	private final TimeToLive timeToLive;
+	private final StackDeploymentScheduler deploymentScheduler;
 
 	@Inject
-	public RepositoryTemplateBuilderImpl(CloudFormationClient cloudFormationClient, VelocityEngine velocityEngine,
+	public RepositoryTemplateBuilderImpl(CloudFormationClient cloudFormationClient, TemplateRenderer templateRenderer,
 										 RepoConfiguration configuration, LoggerFactory loggerFactory, ArtifactCopy artifactCopy,
 										 SecretBuilder secretBuilder, Set<VelocityContextProvider> contextProviders,
 										 ElasticBeanstalkSolutionStackNameProvider elasticBeanstalkDefaultAMIEncrypter,
 										 StackTagsProvider stackTagsProvider, CloudwatchLogsVelocityContextProvider cloudwatchLogsVelocityContextProvider,
-										 Ec2Client ec2Client, AWSElasticBeanstalk beanstalkClient, TimeToLive ttl) {
+										 Ec2Client ec2Client, AWSElasticBeanstalk beanstalkClient, TimeToLive ttl,
+										 StackDeploymentScheduler deploymentScheduler) {
 		super();
 		this.cloudFormationClient = cloudFormationClient;
 		this.ec2Client = ec2Client;
-		this.velocityEngine = velocityEngine;
+		this.templateRenderer = templateRenderer;
 		this.config = configuration;
 		this.logger = loggerFactory.getLogger(RepositoryTemplateBuilderImpl.class);
 		this.artifactCopy = artifactCopy;
@@ -150,6 +150,7 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 		this.cwlContextProvider = cloudwatchLogsVelocityContextProvider;
 		this.beanstalkClient = beanstalkClient;
 		this.timeToLive = ttl;
+		this.deploymentScheduler = deploymentScheduler;
 	}
 
 	public String getActualBeanstalkAmazonLinuxPlatform() {
@@ -192,35 +193,46 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 	}
 
 	/**
-	 * Build all of the environments
+	 * Build all of the environments. The environments only depend on the shared
+	 * resources so they are deployed concurrently.
+	 * 
 	 * @param sharedStackResults
+	 * @throws InterruptedException
 	 */
-	public List<String> buildEnvironments(Stack sharedStackResults) {
+	public List<String> buildEnvironments(Stack sharedStackResults) throws InterruptedException {
 		// Create the repo/worker secrets
 		SourceBundle secretsSouce = secretBuilder.createSecrets();
 		
 		Parameter ttl = timeToLive.createTimeToLiveParameter().orElse(null);
 
+		List<EnvironmentDescriptor> environments = createEnvironments(secretsSouce);
+		// The lookups that do not depend on the environment are done once for all of them
+		VelocityContext sharedContext = environments.isEmpty() ? null : createEnvironmentSharedContext(sharedStackResults);
+
 		List<String> environmentNames = new LinkedList<>();
+		List<StackDeployment> deployments = new LinkedList<>();
 		// each environment is treated as its own stack.
-		for (EnvironmentDescriptor environment : createEnvironments(secretsSouce)) {
-			VelocityContext context = createEnvironmentContext(sharedStackResults, environment);
+		for (EnvironmentDescriptor environment : environments) {
 			environmentNames.add(environment.getName());
-			// build this type.
-			buildAndDeployStack(context, environment.getName(), TEMPALTE_BEAN_STALK_ENVIRONMENT, ttl);
+			deployments.add(new StackDeployment().withStackName(environment.getName()).withAction(() -> {
+				VelocityContext context = createEnvironmentContext(sharedContext, environment);
+				// build this type.
+				buildAndDeployStack(context, environment.getName(), TEMPALTE_BEAN_STALK_ENVIRONMENT, ttl);
+			}));
 		}
+		deploymentScheduler.deploy(deployments);
 		return environmentNames;
 	}
 	
 
 	/**
-	 * Create the context used for each environment
-	 * @param sharedStackResults
-	 * @param environment 
+	 * Create the context shared by all the environments, the result should not be
+	 * modified.
 	 * 
+	 * @param sharedStackResults
 	 * @return
 	 */
-	VelocityContext createEnvironmentContext(Stack sharedStackResults, EnvironmentDescriptor environment) {
+	VelocityContext createEnvironmentSharedContext(Stack sharedStackResults) {
 		VelocityContext context = new VelocityContext();
 		String stack = config.getProperty(PROPERTY_KEY_STACK);
 		context.put(STACK, stack);
@@ -232,7 +244,6 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 		context.put(REPO_BEANSTALK_NUMBER, config.getIntegerProperty(PROPERTY_KEY_BEANSTALK_NUMBER + EnvironmentType.REPOSITORY_SERVICES.getShortName()));
 		// Extract the database suffix
 		context.put(DB_ENDPOINT_SUFFIX, extractDatabaseSuffix(sharedStackResults));
-		context.put(ENVIRONMENT, environment);
 		context.put(STACK_CMK_ALIAS, secretBuilder.getCMKAlias());
 
 		//use encrypted copies of the default elasticbeanstalk AMI
@@ -245,9 +256,6 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 		// oauth
 		context.put(OAUTH_ENDPOINT, config.getProperty(PROPERTY_KEY_OAUTH_ENDPOINT));
 
-		// CloudwatchLogs
-		context.put(CLOUDWATCH_LOGS_DESCRIPTORS, cwlContextProvider.getLogDescriptors(EnvironmentType.valueOfPrefix(environment.getType())));
-
 		// EC2 instance type and memory
 		String ec2InstanceType = config.getProperty(PROPERTY_KEY_EC2_INSTANCE_TYPE);
 		context.put(EC2_INSTANCE_TYPE, ec2InstanceType);
@@ -267,6 +275,22 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 		return context;
 	}
 
+	/**
+	 * Create the context used for each environment, layered over the given
+	 * shared context that is left unchanged.
+	 * 
+	 * @param sharedContext
+	 * @param environment
+	 * @return
+	 */
+	VelocityContext createEnvironmentContext(VelocityContext sharedContext, EnvironmentDescriptor environment) {
+		VelocityContext context = new VelocityContext(sharedContext);
+		context.put(ENVIRONMENT, environment);
+		// CloudwatchLogs
+		context.put(CLOUDWATCH_LOGS_DESCRIPTORS, cwlContextProvider.getLogDescriptors(EnvironmentType.valueOfPrefix(environment.getType())));
+		return context;
+	}
+
 	/**
 	 * Build and deploy a stack using the provided context and template.
 	 * 
@@ -280,14 +304,7 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 		List<Tag> stackTags = stackTagsProvider.getStackTags();
 
 		// Merge the context with the template
-		Template template = this.velocityEngine.getTemplate(templatePath);
-		StringWriter stringWriter = new StringWriter();
-		template.merge(context, stringWriter);
-		// Parse the resulting template
-		String resultJSON = stringWriter.toString();
-		JSONObject templateJson = new JSONObject(resultJSON);
-		// Format the JSON
-		resultJSON = templateJson.toString(JSON_INDENT);
+		String resultJSON = this.templateRenderer.renderJson(templatePath, context);
 		this.logger.info("Template for stack: " + stackName);
 		this.logger.info(resultJSON);
 		// create or update the template
@@ -320,7 +337,7 @@ public class RepositoryTemplateBuilderImpl implements RepositoryTemplateBuilder
 		context.put(EXCEPTION_THROWER, new VelocityExceptionThrower());
 		context.put(CTXT_ENABLE_ENHANCED_RDS_MONITORING, config.getProperty(PROPERTY_KEY_ENABLE_RDS_ENHANCED_MONITORING));
 		
-		context.put(ADMIN_RULE_ACTION, Constants.isProd(stack) ? "Block:{}" : "Count:{}");
+		context.put(ADMIN_RULE_ACTION, Constants.isProd(stack) ? "Block" : "Count");
 		context.put(DELETION_POLICY,
 				Constants.isProd(stack) ? DeletionPolicy.Retain.name() : DeletionPolicy.Delete.name());
 		
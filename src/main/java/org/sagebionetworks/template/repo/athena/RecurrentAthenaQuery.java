@@ -18,6 +18,24 @@ public class RecurrentAthenaQuery {
 	private String destinationQueue;
 	private String dataBucket;
 	
+	public RecurrentAthenaQuery() {
+	}
+	
+	/**
+	 * Copy constructor
+	 * 
+	 * @param other
+	 */
+	public RecurrentAthenaQuery(RecurrentAthenaQuery other) {
+		this.database = other.database;
+		this.queryName = other.queryName;
+		this.queryPath = other.queryPath;
+		this.queryString = other.queryString;
+		this.scheduleExpression = other.scheduleExpression;
+		this.destinationQueue = other.destinationQueue;
+		this.dataBucket = other.dataBucket;
+	}
+	
 	public String getDatabase() {
 		return database;
 	}
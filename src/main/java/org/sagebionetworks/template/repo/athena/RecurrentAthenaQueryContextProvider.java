@@ -4,6 +4,7 @@ import static org.sagebionetworks.template.Constants.ATHENA_QUERY_DESCRIPTORS;
 import static org.sagebionetworks.template.Constants.ATHENA_QUERY_DATA_BUCKETS;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -31,19 +32,23 @@ public class RecurrentAthenaQueryContextProvider implements VelocityContextProvi
 	@Override
 	public void addToContext(VelocityContext context) {
 
-		List<RecurrentAthenaQuery> queries = config.getQueries();
+		List<RecurrentAthenaQuery> configQueries = config.getQueries();
 
-		if (queries == null) {
-			queries = Collections.emptyList();
+		if (configQueries == null) {
+			configQueries = Collections.emptyList();
 		}
 
+		// The config is shared, the processed queries are copies so that the context can be built more than once
+		List<RecurrentAthenaQuery> queries = new ArrayList<>(configQueries.size());
 		Set<String> buckets = new HashSet<>();
-		queries.forEach((query) -> {
+		configQueries.forEach((configQuery) -> {
+			RecurrentAthenaQuery query = new RecurrentAthenaQuery(configQuery);
 			query.setQueryString(processQueryString(context, query));
 			if (query.getDatabase() == null) {
 				query.setDatabase(DEFAULT_DATABASE);
 			}
 			buckets.add(processTemplate(context, query.getDataBucket()));
+			queries.add(query);
 		});
 
 		context.put(ATHENA_QUERY_DESCRIPTORS, queries);
@@ -6,7 +6,11 @@ import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.repo.beanstalk.ssl.ElasticBeanstalkExtentionBuilder;
+import org.sagebionetworks.template.report.RunReport;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.google.inject.Inject;
@@ -17,18 +21,21 @@ public class ArtifactCopyImpl implements ArtifactCopy {
 	private Configuration configuration;
 	private ArtifactDownload downloader;
 	private ElasticBeanstalkExtentionBuilder ebBuilder;
+	private RunReport runReport;
 	
 	private Logger logger;
 
 	@Inject
 	public ArtifactCopyImpl(AmazonS3 s3Client, Configuration propertyProvider,
-			ArtifactDownload downloader, LoggerFactory loggerFactory, ElasticBeanstalkExtentionBuilder ebBuilder) {
+			ArtifactDownload downloader, LoggerFactory loggerFactory, ElasticBeanstalkExtentionBuilder ebBuilder,
+			RunReport runReport) {
 		super();
 		this.s3Client = s3Client;
 		this.configuration = propertyProvider;
 		this.downloader = downloader;
 		this.logger = loggerFactory.getLogger(ArtifactCopyImpl.class);
 		this.ebBuilder = ebBuilder;
+		this.runReport = runReport;
 	}
 
 	@Override
@@ -44,17 +51,24 @@ public class ArtifactCopyImpl implements ArtifactCopy {
 			 */
 			String artifactoryUrl = environment.createArtifactoryUrl(version);
 			logger.info("Downloading artifact: "+artifactoryUrl);
-			File download = downloader.downloadFile(artifactoryUrl);
+			CachedArtifact download;
+			try (Span span = runReport.startSpan(SpanCategory.DOWNLOAD, artifactoryUrl)) {
+				download = downloader.getCachedFile(artifactoryUrl);
+				span.addBytes(download.getFile().length());
+			}
 			File warWithExtentions = null;
 			try {
 				logger.info("Adding .ebextentions to war: "+s3Key);
 				// add the .eb extensions to the given war file.
-				warWithExtentions = ebBuilder.copyWarWithExtensions(download, environment);
+				warWithExtentions = ebBuilder.copyWarWithExtensions(download.getFile(), environment);
 				logger.info("Uploading artifact to S3: "+s3Key);
-				s3Client.putObject(bucket, s3Key, warWithExtentions);
+				try (Span span = runReport.startSpan(SpanCategory.UPLOAD, s3Key)) {
+					s3Client.putObject(bucket, s3Key, warWithExtentions);
+					span.addBytes(warWithExtentions.length());
+				}
 			} finally {
-				// cleanup the temp file
-				download.delete();
+				// cleanup the temp file, the download is kept in the artifact cache
+				download.close();
 				if(warWithExtentions != null) {
 					warWithExtentions.delete();
 				}
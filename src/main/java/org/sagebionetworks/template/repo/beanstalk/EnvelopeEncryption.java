@@ -0,0 +1,83 @@
+package org.sagebionetworks.template.repo.beanstalk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM encryption of secret values with a KMS data key. Each value is
+ * encrypted with a random IV and its property key as the additional
+ * authenticated data, so a value cannot be moved to another key. The encoded
+ * value is the base 64 of the IV followed by the cipher text and tag.
+ *
+ */
+public class EnvelopeEncryption {
+
+	public static final String ALGORITHM = "AES";
+	public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	public static final int IV_LENGTH_BYTES = 12;
+	public static final int TAG_LENGTH_BITS = 128;
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final SecretKeySpec dataKey;
+
+	/**
+	 * @param plaintextDataKey The plaintext of the KMS data key.
+	 */
+	public EnvelopeEncryption(byte[] plaintextDataKey) {
+		this.dataKey = new SecretKeySpec(plaintextDataKey, ALGORITHM);
+	}
+
+	/**
+	 * Encrypt the value of the given property key.
+	 *
+	 * @param key
+	 * @param plaintextValue
+	 * @return
+	 */
+	public String encrypt(String key, String plaintextValue) {
+		byte[] iv = new byte[IV_LENGTH_BYTES];
+		RANDOM.nextBytes(iv);
+		try {
+			Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+			cipher.updateAAD(key.getBytes(StandardCharsets.UTF_8));
+			byte[] cipherText = cipher.doFinal(plaintextValue.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(
+					ByteBuffer.allocate(iv.length + cipherText.length).put(iv).put(cipherText).array());
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decrypt the value of the given property key.
+	 *
+	 * @param key
+	 * @param encodedValue A value created with {@link #encrypt(String, String)}
+	 * @return
+	 */
+	public String decrypt(String key, String encodedValue) {
+		byte[] bytes = Base64.getDecoder().decode(encodedValue);
+		if (bytes.length <= IV_LENGTH_BYTES) {
+			throw new IllegalArgumentException("Encrypted value of: '" + key + "' is too short");
+		}
+		try {
+			Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH_BITS, bytes, 0, IV_LENGTH_BYTES));
+			cipher.updateAAD(key.getBytes(StandardCharsets.UTF_8));
+			byte[] plaintext = cipher.doFinal(bytes, IV_LENGTH_BYTES, bytes.length - IV_LENGTH_BYTES);
+			return new String(plaintext, StandardCharsets.UTF_8);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -3,6 +3,10 @@ package org.sagebionetworks.template.repo.beanstalk;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ID_GENERATOR_DATABASE_PASSWORD;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_INSTANCE;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_REPOSITORY_DATABASE_PASSWORD;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_ENVELOPE_ENCRYPTION;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_MAX_PARALLELISM;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_MAX_REQUESTS_PER_SECOND;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRET_KEYS_CSV;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK;
 
@@ -10,21 +14,47 @@ import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Hex;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
 import org.sagebionetworks.template.config.Configuration;
+import org.sagebionetworks.template.report.RunReport;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 
 import com.amazonaws.services.kms.AWSKMS;
 import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.DataKeySpec;
+import com.amazonaws.services.kms.model.DescribeKeyRequest;
 import com.amazonaws.services.kms.model.EncryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.Inject;
 import org.sagebionetworks.template.config.RepoConfiguration;
 
@@ -35,45 +65,251 @@ public class SecretBuilderImpl implements SecretBuilder {
 	private static final String SAGEBIONETWORKS = "sagebionetworks";
 	private static final String ORG = "org";
 	public static final String UTF_8 = "UTF-8";
+	/**
+	 * User metadata of the secrets file with the HMAC of the plaintext values it
+	 * was encrypted from.
+	 */
+	public static final String PLAINTEXT_HASH_METADATA = "plaintext-hmac-sha256";
+	public static final String HMAC_ALGORITHM = "HmacSHA256";
+	/**
+	 * Property of an envelope encrypted secrets file with the format of the
+	 * values. Files without it have each value encrypted with the CMK.
+	 */
+	public static final String ENVELOPE_FORMAT_KEY = "org.sagebionetworks.secrets.format";
+	public static final String ENVELOPE_FORMAT = "kms-data-key-aes-gcm-v1";
+	/**
+	 * Property of an envelope encrypted secrets file with the base 64 data key,
+	 * encrypted with the CMK.
+	 */
+	public static final String ENVELOPE_DATA_KEY = "org.sagebionetworks.secrets.data.key";
+	public static final int DEFAULT_MAX_PARALLELISM = 8;
+	public static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 20.0;
 	
 	Configuration config;
 	AWSSecretsManager secretManager;
 	AWSKMS keyManager;
 	AmazonS3 s3Client;
+	RunReport runReport;
 	
 	@Inject
-	public SecretBuilderImpl(RepoConfiguration config, AWSSecretsManager secretManager, AWSKMS keyManager, AmazonS3 s3Client) {
+	public SecretBuilderImpl(RepoConfiguration config, AWSSecretsManager secretManager, AWSKMS keyManager, AmazonS3 s3Client,
+			RunReport runReport) {
 		super();
 		this.config = config;
 		this.secretManager = secretManager;
 		this.keyManager = keyManager;
 		this.s3Client = s3Client;
+		this.runReport = runReport;
 	}
 
 	@Override
 	public SourceBundle createSecrets() {
 		// Load the secret names
 		String[] secretNames = config.getComaSeparatedProperty(PROPERTY_KEY_SECRET_KEYS_CSV);
+		try (Span span = runReport.startSpan(SpanCategory.SECRETS, PROPERTY_KEY_SECRET_KEYS_CSV)) {
+			int parallelism = Math.min(getMaxParallelism(), Math.max(1, secretNames.length));
+			ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+			try {
+				Map<String, String> plaintextValues = mapInParallel(executor, secretNames, this::getSecretValue);
+				boolean envelope = isEnvelopeEncryption();
+				Map<String, String> hashed = plaintextValues;
+				if (envelope) {
+					// switching formats must replace the file
+					hashed = new LinkedHashMap<>(plaintextValues);
+					hashed.put(ENVELOPE_FORMAT_KEY, ENVELOPE_FORMAT);
+				}
+				// without a key the secrets are always encrypted again
+				byte[] hashKey = getHashKey();
+				String plaintextHash = null;
+				if (hashKey != null) {
+					plaintextHash = calculatePlaintextHash(hashKey, hashed);
+					SourceBundle existing = findExistingSecrets(plaintextHash);
+					if (existing != null) {
+						return existing;
+					}
+				}
+				Properties secrets = envelope ? createEnvelopeSecrets(plaintextValues)
+						: encryptEachSecret(executor, plaintextValues);
+				SourceBundle bundle = uploadSecretsToS3(secrets, plaintextHash);
+				span.addBytes(getPropertiesBytes(secrets).length);
+				return bundle;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Encrypt each value with the CMK, one KMS call per secret.
+	 * 
+	 * @param executor
+	 * @param plaintextValues
+	 * @return
+	 */
+	Properties encryptEachSecret(ExecutorService executor, Map<String, String> plaintextValues) {
+		// the encrypt calls are throttled to stay under the KMS request quota
+		RateLimiter rateLimiter = RateLimiter.create(getMaxRequestsPerSecond());
+		String[] keys = plaintextValues.keySet().toArray(new String[plaintextValues.size()]);
+		Map<String, String> ciphers = mapInParallel(executor, keys, key -> {
+			rateLimiter.acquire();
+			return encryptSecret(plaintextValues.get(key));
+		});
 		Properties secrets = new Properties();
-		for (int i = 0; i < secretNames.length; i++) {
-			String secretKey = secretNames[i];
-			String secretCipher = createSecret(secretKey);
-			secrets.put(secretKey, secretCipher);
+		secrets.putAll(ciphers);
+		return secrets;
+	}
+
+	/**
+	 * Encrypt all values locally with a single data key generated by KMS. The
+	 * data key, encrypted with the CMK, is added to the properties with the
+	 * format, so an instance needs a single KMS call to decrypt all of the
+	 * values.
+	 * 
+	 * @param plaintextValues
+	 * @return
+	 */
+	Properties createEnvelopeSecrets(Map<String, String> plaintextValues) {
+		GenerateDataKeyResult dataKey = keyManager.generateDataKey(
+				new GenerateDataKeyRequest().withKeyId(getCMKAlias()).withKeySpec(DataKeySpec.AES_256));
+		ByteBuffer plaintextKey = dataKey.getPlaintext();
+		byte[] keyBytes = new byte[plaintextKey.remaining()];
+		plaintextKey.get(keyBytes);
+		try {
+			EnvelopeEncryption encryption = new EnvelopeEncryption(keyBytes);
+			Properties secrets = new Properties();
+			plaintextValues.forEach((key, value) -> secrets.put(key, encryption.encrypt(key, value)));
+			secrets.put(ENVELOPE_FORMAT_KEY, ENVELOPE_FORMAT);
+			secrets.put(ENVELOPE_DATA_KEY, base64Encode(dataKey.getCiphertextBlob()));
+			return secrets;
+		} finally {
+			// do not keep the plaintext key in memory
+			Arrays.fill(keyBytes, (byte) 0);
+			if (plaintextKey.hasArray()) {
+				Arrays.fill(plaintextKey.array(), (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Apply the given function to each key on the given executor.
+	 * 
+	 * @param executor
+	 * @param keys
+	 * @param function
+	 * @return The result of each key, in the order of the keys.
+	 */
+	static Map<String, String> mapInParallel(ExecutorService executor, String[] keys,
+			Function<String, String> function) {
+		List<Future<String>> futures = new ArrayList<>(keys.length);
+		for (String key : keys) {
+			futures.add(executor.submit(() -> function.apply(key)));
+		}
+		Map<String, String> results = new LinkedHashMap<>(keys.length);
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				results.put(keys[i], futures.get(i).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * HMAC of the plaintext values and the key used to encrypt them. The
+	 * encryption is not deterministic, so this is used to tell if the secrets
+	 * file in S3 is still current. The ARN of the key is used rather than its
+	 * alias, since the alias points to a new key when the shared resources of
+	 * the instance are recreated. It is keyed so that the metadata cannot be
+	 * used to confirm a guessed secret, and each field is length prefixed so
+	 * that different values cannot produce the same input.
+	 * 
+	 * @param hashKey
+	 * @param plaintextValues
+	 * @return
+	 */
+	String calculatePlaintextHash(byte[] hashKey, Map<String, String> plaintextValues) {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(new SecretKeySpec(hashKey, HMAC_ALGORITHM));
+			updateWithLength(mac, getCMKArn());
+			new TreeMap<>(plaintextValues).forEach((key, value) -> {
+				updateWithLength(mac, key);
+				updateWithLength(mac, value);
+			});
+			return Hex.encodeHexString(mac.doFinal());
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void updateWithLength(Mac mac, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+		mac.update(bytes);
+	}
+
+	/**
+	 * The key of the HMAC of the plaintext values, from the secret set with
+	 * {@link org.sagebionetworks.template.Constants#PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID}.
+	 * 
+	 * @return The key, or null if none is configured.
+	 */
+	byte[] getHashKey() {
+		String secretId;
+		try {
+			secretId = config.getProperty(PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID);
+		} catch (ConfigurationPropertyNotFound e) {
+			return null;
+		}
+		String value = secretManager.getSecretValue(new GetSecretValueRequest().withSecretId(secretId)).getSecretString();
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Secret string is null for: " + secretId);
 		}
-		return uploadSecretsToS3(secrets);
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Find the secrets file in S3 if it was encrypted from the same plaintext
+	 * values.
+	 * 
+	 * @param plaintextHash
+	 * @return The existing secrets, or null if they need to be created.
+	 */
+	SourceBundle findExistingSecrets(String plaintextHash) {
+		String bucket = config.getConfigurationBucket();
+		String key = createSecretS3Key();
+		if (!s3Client.doesObjectExist(bucket, key)) {
+			return null;
+		}
+		ObjectMetadata metadata = s3Client.getObjectMetadata(bucket, key);
+		if (metadata == null || !plaintextHash.equals(metadata.getUserMetaDataOf(PLAINTEXT_HASH_METADATA))) {
+			return null;
+		}
+		return new SourceBundle(bucket, key);
 	}
 
 	/**
 	 * Upload the given secret properties to S3.
 	 * @param secrets
+	 * @param plaintextHash The HMAC of the plaintext values, or null if the file cannot be reused
 	 * @return
 	 */
-	SourceBundle uploadSecretsToS3(Properties secrets) {
+	SourceBundle uploadSecretsToS3(Properties secrets, String plaintextHash) {
 			String bucket = config.getConfigurationBucket();
 			String key = createSecretS3Key();
 			byte[] bytes = getPropertiesBytes(secrets);
 			ObjectMetadata metadata = new ObjectMetadata();
 			metadata.setContentLength(bytes.length);
+			if (plaintextHash != null) {
+				metadata.addUserMetadata(PLAINTEXT_HASH_METADATA, plaintextHash);
+			}
 			s3Client.putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(bytes), metadata));
 			return new SourceBundle(bucket, key);
 	}
@@ -113,7 +349,16 @@ public class SecretBuilderImpl implements SecretBuilder {
 	 * @return
 	 */
 	String createSecret(String key) {
-		String plaintextValue = getSecretValue(key);
+		return encryptSecret(getSecretValue(key));
+	}
+
+	/**
+	 * Encrypt the given plaintext value using the stack's CMK.
+	 * 
+	 * @param plaintextValue
+	 * @return The base 64 encoded cipher.
+	 */
+	String encryptSecret(String plaintextValue) {
 		// Encrypt the value using the stack's key
 		EncryptResult encryptResult = keyManager.encrypt(new EncryptRequest()
 				.withPlaintext(stringToByteBuffer(plaintextValue)).withKeyId(getCMKAlias()));
@@ -169,6 +414,15 @@ public class SecretBuilderImpl implements SecretBuilder {
 		return joiner.toString();
 	}
 	
+	/**
+	 * The ARN of the key the CMK alias currently points to.
+	 * 
+	 * @return
+	 */
+	String getCMKArn() {
+		return keyManager.describeKey(new DescribeKeyRequest().withKeyId(getCMKAlias())).getKeyMetadata().getArn();
+	}
+	
 	/**
 	 * Convert a string to ByteBuffer.
 	 * 
@@ -218,6 +472,30 @@ public class SecretBuilderImpl implements SecretBuilder {
 		return builder.toString();
 	}
 
+	boolean isEnvelopeEncryption() {
+		try {
+			return config.getBooleanProperty(PROPERTY_KEY_SECRETS_ENVELOPE_ENCRYPTION);
+		} catch (ConfigurationPropertyNotFound e) {
+			return false;
+		}
+	}
+
+	int getMaxParallelism() {
+		try {
+			return Math.max(1, config.getIntegerProperty(PROPERTY_KEY_SECRETS_MAX_PARALLELISM));
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_PARALLELISM;
+		}
+	}
+
+	double getMaxRequestsPerSecond() {
+		try {
+			return Double.parseDouble(config.getProperty(PROPERTY_KEY_SECRETS_MAX_REQUESTS_PER_SECOND));
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_REQUESTS_PER_SECOND;
+		}
+	}
+
 	@Override
 	public String getRepositoryDatabasePassword() {
 		return getSecretValue(PROPERTY_KEY_REPOSITORY_DATABASE_PASSWORD);
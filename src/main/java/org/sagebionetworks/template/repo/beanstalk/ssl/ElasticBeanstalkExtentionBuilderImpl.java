@@ -19,7 +19,7 @@ import org.apache.velocity.app.VelocityEngine;
 import org.json.JSONObject;
 import org.sagebionetworks.template.Constants;
 import org.sagebionetworks.template.FileProvider;
-import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.MainRunner;
 import org.sagebionetworks.template.TemplateUtils;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.repo.beanstalk.EnvironmentType;
@@ -27,9 +27,7 @@ import org.sagebionetworks.template.repo.beanstalk.LoadBalancerAlarmsConfig;
 import org.sagebionetworks.template.repo.cloudwatchlogs.CloudwatchLogsVelocityContextProvider;
 import org.sagebionetworks.war.WarAppender;
 
-import com.google.inject.Guice;
 import com.google.inject.Inject;
-import com.google.inject.Injector;
 
 public class ElasticBeanstalkExtentionBuilderImpl implements ElasticBeanstalkExtentionBuilder {
 
@@ -197,10 +195,11 @@ public class ElasticBeanstalkExtentionBuilderImpl implements ElasticBeanstalkExt
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		ElasticBeanstalkExtentionBuilder builder = injector.getInstance(ElasticBeanstalkExtentionBuilder.class);
-		File resultWar = builder.copyWarWithExtensions(new File(args[0]), EnvironmentType.REPOSITORY_SERVICES);
-		System.out.println(resultWar.getAbsolutePath());
+		MainRunner.run(injector -> {
+			ElasticBeanstalkExtentionBuilder builder = injector.getInstance(ElasticBeanstalkExtentionBuilder.class);
+			File resultWar = builder.copyWarWithExtensions(new File(args[0]), EnvironmentType.REPOSITORY_SERVICES);
+			System.out.println(resultWar.getAbsolutePath());
+		});
 	}
 
 }
@@ -1,6 +1,7 @@
 package org.sagebionetworks.template.repo.glue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -17,6 +18,24 @@ public class GlueTableDescriptor {
 	// Additional custom parameters for the glue table
 	private Map<String, String> parameters = null;
 
+	public GlueTableDescriptor() {
+	}
+
+	/**
+	 * Copy constructor, the columns and parameters are copied into new collections
+	 * 
+	 * @param other
+	 */
+	public GlueTableDescriptor(GlueTableDescriptor other) {
+		this.name = other.name;
+		this.description = other.description;
+		this.columns = other.columns == null ? null : new ArrayList<>(other.columns);
+		this.partitionKeys = other.partitionKeys == null ? null : new ArrayList<>(other.partitionKeys);
+		this.inputFormat = other.inputFormat;
+		this.location = other.location;
+		this.parameters = other.parameters == null ? null : new HashMap<>(other.parameters);
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -32,6 +32,27 @@ public class KinesisFirehoseStreamDescriptor {
 	// When the format is PARQUET by default we create a backup of the raw JSON data, setting this to true will disable the backup
 	private boolean backupDisabled = false;
 
+	public KinesisFirehoseStreamDescriptor() {
+	}
+
+	/**
+	 * Copy constructor, the table descriptor (if any) is copied as well
+	 * 
+	 * @param other
+	 */
+	public KinesisFirehoseStreamDescriptor(KinesisFirehoseStreamDescriptor other) {
+		this.name = other.name;
+		this.bucket = other.bucket;
+		this.parameterizeDestinationByStack = other.parameterizeDestinationByStack;
+		this.devOnly = other.devOnly;
+		this.partitionScheme = other.partitionScheme;
+		this.bufferFlushInterval = other.bufferFlushInterval;
+		this.bufferFlushSize = other.bufferFlushSize;
+		this.format = other.format;
+		this.tableDescriptor = other.tableDescriptor == null ? null : new GlueTableDescriptor(other.tableDescriptor);
+		this.backupDisabled = other.backupDisabled;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -32,9 +32,9 @@ public class KinesisFirehoseVelocityContextProvider implements VelocityContextPr
 
 	@Override
 	public void addToContext(VelocityContext context) {
-		Set<KinesisFirehoseStreamDescriptor> streams = config.getStreamDescriptors();
-
-		streams.forEach(this::postProcessStream);
+		// The config is shared, the processed streams are copies so that the context can be built more than once
+		Set<KinesisFirehoseStreamDescriptor> streams = config.getStreamDescriptors().stream().map(this::postProcessStream)
+				.collect(Collectors.toSet());
 
 		// Does not deploy to prod stacks that are dev only
 		if (getStack().equalsIgnoreCase(Constants.PROD_STACK_NAME)) {
@@ -49,14 +49,14 @@ public class KinesisFirehoseVelocityContextProvider implements VelocityContextPr
 		context.put(KINESIS_FIREHOSE_BUCKETS, buckets);
 	}
 
-	private void postProcessStream(KinesisFirehoseStreamDescriptor stream) {
-		if (stream == null) {
-			return;
-		}
+	private KinesisFirehoseStreamDescriptor postProcessStream(KinesisFirehoseStreamDescriptor stream) {
+		KinesisFirehoseStreamDescriptor processed = new KinesisFirehoseStreamDescriptor(stream);
+
+		processed.setBucket(TemplateUtils.replaceStackVariable(stream.getBucket(), getStack()));
 
-		stream.setBucket(TemplateUtils.replaceStackVariable(stream.getBucket(), getStack()));
+		postProcessTable(processed.getTableDescriptor());
 
-		postProcessTable(stream.getTableDescriptor());
+		return processed;
 	}
 
 	private void postProcessTable(GlueTableDescriptor table) {
@@ -0,0 +1,33 @@
+package org.sagebionetworks.template.report;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.RequestHandler2;
+
+/**
+ * Counts every call made by an AWS client in the run report. Retries of a call
+ * are not counted again.
+ *
+ */
+public class ApiCallRequestHandler extends RequestHandler2 {
+
+	private static final String REQUEST_SUFFIX = "Request";
+
+	private final RunReport runReport;
+	private final String serviceName;
+
+	public ApiCallRequestHandler(RunReport runReport, String serviceName) {
+		this.runReport = runReport;
+		this.serviceName = serviceName;
+	}
+
+	@Override
+	public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+		String operation = request.getClass().getSimpleName();
+		if (operation.endsWith(REQUEST_SUFFIX)) {
+			operation = operation.substring(0, operation.length() - REQUEST_SUFFIX.length());
+		}
+		runReport.recordApiCall(serviceName + "." + operation);
+		return request;
+	}
+
+}
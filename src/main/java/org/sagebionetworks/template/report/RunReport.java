@@ -0,0 +1,50 @@
+package org.sagebionetworks.template.report;
+
+import java.util.List;
+
+/**
+ * Times the work done during a run so that a report of where the time went
+ * can be written when the run ends.
+ *
+ */
+public interface RunReport {
+
+	/**
+	 * Start a span on the current thread. The span must be closed when the work
+	 * is done, usually with try-with-resources.
+	 *
+	 * @param category
+	 * @param name     What the work was done for, e.g. a stack name or a file
+	 * @return
+	 */
+	Span startSpan(SpanCategory category, String name);
+
+	/**
+	 * Start a span that is not attached to the current thread, for work that
+	 * completes on another thread. API calls are never attributed to it.
+	 *
+	 * @param category
+	 * @param name
+	 * @return
+	 */
+	Span startDetachedSpan(SpanCategory category, String name);
+
+	/**
+	 * Count a call to AWS, attributed to the innermost open span of the current
+	 * thread.
+	 *
+	 * @param operation The service and operation, e.g. AmazonS3.PutObject
+	 */
+	void recordApiCall(String operation);
+
+	/**
+	 * @return All the spans started so far, in the order they were started.
+	 */
+	List<Span> getSpans();
+
+	/**
+	 * Write the JSON report and log the summary of the run.
+	 */
+	void writeReport();
+
+}
@@ -0,0 +1,280 @@
+package org.sagebionetworks.template.report;
+
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_RUN_REPORT_FILE;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.TemplateRenderMetric;
+import org.sagebionetworks.template.TemplateRenderer;
+import org.sagebionetworks.template.ThreadProvider;
+import org.sagebionetworks.template.config.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Run report shared by the whole run. The report is written by
+ * {@link org.sagebionetworks.template.MainRunner} at the end of the run, as
+ * JSON to the file set with
+ * {@link org.sagebionetworks.template.Constants#PROPERTY_KEY_RUN_REPORT_FILE}
+ * (a file in the temp directory by default), and as a summary of the critical
+ * path in the log.
+ *
+ */
+@Singleton
+public class RunReportImpl implements RunReport {
+
+	public static final String DEFAULT_REPORT_FILE_NAME = "stack-builder-run-report.json";
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private final ThreadProvider threadProvider;
+	private final TemplateRenderer templateRenderer;
+	private final Path reportFile;
+	private final Logger logger;
+	private final long startTimeMS;
+	private final List<Span> spans;
+	private final ThreadLocal<Deque<Span>> openSpans;
+	private final Map<String, LongAdder> apiCalls;
+
+	@Inject
+	public RunReportImpl(ThreadProvider threadProvider, TemplateRenderer templateRenderer, Configuration config,
+			LoggerFactory loggerFactory) {
+		this(threadProvider, templateRenderer, getReportFile(config), loggerFactory);
+	}
+
+	public RunReportImpl(ThreadProvider threadProvider, TemplateRenderer templateRenderer, Path reportFile,
+			LoggerFactory loggerFactory) {
+		this.threadProvider = threadProvider;
+		this.templateRenderer = templateRenderer;
+		this.reportFile = reportFile;
+		this.logger = loggerFactory.getLogger(RunReportImpl.class);
+		this.startTimeMS = threadProvider.currentTimeMillis();
+		this.spans = Collections.synchronizedList(new ArrayList<>());
+		this.openSpans = ThreadLocal.withInitial(ConcurrentLinkedDeque::new);
+		this.apiCalls = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public Span startSpan(SpanCategory category, String name) {
+		Deque<Span> threadSpans = openSpans.get();
+		Span span = new Span(category, name, threadProvider::currentTimeMillis, threadSpans);
+		threadSpans.push(span);
+		spans.add(span);
+		return span;
+	}
+
+	@Override
+	public Span startDetachedSpan(SpanCategory category, String name) {
+		Span span = new Span(category, name, threadProvider::currentTimeMillis, null);
+		spans.add(span);
+		return span;
+	}
+
+	@Override
+	public void recordApiCall(String operation) {
+		apiCalls.computeIfAbsent(operation, k -> new LongAdder()).increment();
+		Span current = openSpans.get().peek();
+		if (current != null) {
+			current.addApiCall();
+		}
+	}
+
+	@Override
+	public List<Span> getSpans() {
+		synchronized (spans) {
+			return new ArrayList<>(spans);
+		}
+	}
+
+	@Override
+	public void writeReport() {
+		List<Span> closed = getSpans().stream().filter(Span::isClosed).collect(Collectors.toList());
+		if (closed.isEmpty()) {
+			// nothing was done in this run
+			return;
+		}
+		List<Span> criticalPath = findCriticalPath(closed);
+		try {
+			Files.createDirectories(reportFile.toAbsolutePath().getParent());
+			OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(),
+					createReport(closed, criticalPath));
+		} catch (IOException e) {
+			logger.warn("Failed to write the run report to: " + reportFile + ": " + e.getMessage());
+		}
+		createSummary(closed, criticalPath).forEach(logger::info);
+	}
+
+	/**
+	 * The JSON report: every span, the totals of each category, the count of each
+	 * AWS operation and the critical path. Times are relative to the start of the
+	 * run.
+	 *
+	 * @param closed
+	 * @param criticalPath
+	 * @return
+	 */
+	Map<String, Object> createReport(List<Span> closed, List<Span> criticalPath) {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("startTimeMS", startTimeMS);
+		report.put("durationMS", getEndTimeMS(closed) - startTimeMS);
+		report.put("spans", closed.stream().map(this::toMap).collect(Collectors.toList()));
+		Map<String, Object> totals = new LinkedHashMap<>();
+		createTotals(closed).forEach((category, total) -> totals.put(category.name(), total));
+		report.put("totals", totals);
+		Map<String, Long> calls = new TreeMap<>();
+		apiCalls.forEach((operation, count) -> calls.put(operation, count.sum()));
+		report.put("apiCalls", calls);
+		report.put("criticalPath", criticalPath.stream().map(this::toMap).collect(Collectors.toList()));
+		return report;
+	}
+
+	/**
+	 * The lines of the summary: the critical path with the time that was not
+	 * covered by any span, followed by the totals of each category.
+	 *
+	 * @param closed
+	 * @param criticalPath
+	 * @return
+	 */
+	List<String> createSummary(List<Span> closed, List<Span> criticalPath) {
+		List<String> lines = new ArrayList<>();
+		long endTimeMS = getEndTimeMS(closed);
+		lines.add("Run took " + formatSeconds(endTimeMS - startTimeMS) + ", report written to: " + reportFile);
+		lines.add("Critical path:");
+		long cursor = startTimeMS;
+		for (Span span : criticalPath) {
+			if (span.getStartTimeMS() > cursor) {
+				lines.add(String.format("  %9s %9s  (untracked)", formatSeconds(cursor - startTimeMS),
+						formatSeconds(span.getStartTimeMS() - cursor)));
+			}
+			lines.add(String.format("  %9s %9s  %-12s %s", formatSeconds(span.getStartTimeMS() - startTimeMS),
+					formatSeconds(span.getDurationMS()), span.getCategory(), span.getName()));
+			cursor = span.getEndTimeMS();
+		}
+		lines.add("Totals:");
+		createTotals(closed).forEach((category, total) -> {
+			lines.add(String.format("  %-12s %4d spans %9s %12d bytes %6d API calls", category, total.get("count"),
+					formatSeconds((Long) total.get("durationMS")), total.get("bytes"), total.get("apiCalls")));
+		});
+		return lines;
+	}
+
+	/**
+	 * The totals of each category. The templates rendered are included from the
+	 * metrics of the renderer, with the number of characters as the bytes.
+	 *
+	 * @param closed
+	 * @return
+	 */
+	Map<SpanCategory, Map<String, Object>> createTotals(List<Span> closed) {
+		Map<SpanCategory, Map<String, Object>> totals = new EnumMap<>(SpanCategory.class);
+		for (Span span : closed) {
+			addToTotal(totals, span.getCategory(), span.getDurationMS(), span.getBytes(), span.getApiCalls());
+		}
+		if (templateRenderer != null) {
+			for (TemplateRenderMetric metric : templateRenderer.getMetrics()) {
+				addToTotal(totals, SpanCategory.RENDER, metric.getRenderTimeMS(), metric.getOutputSize(), 0);
+			}
+		}
+		return totals;
+	}
+
+	static void addToTotal(Map<SpanCategory, Map<String, Object>> totals, SpanCategory category, long durationMS,
+			long bytes, long apiCalls) {
+		Map<String, Object> total = totals.computeIfAbsent(category, k -> {
+			Map<String, Object> empty = new LinkedHashMap<>();
+			empty.put("count", 0L);
+			empty.put("durationMS", 0L);
+			empty.put("bytes", 0L);
+			empty.put("apiCalls", 0L);
+			return empty;
+		});
+		total.merge("count", 1L, (a, b) -> (Long) a + (Long) b);
+		total.merge("durationMS", durationMS, (a, b) -> (Long) a + (Long) b);
+		total.merge("bytes", bytes, (a, b) -> (Long) a + (Long) b);
+		total.merge("apiCalls", apiCalls, (a, b) -> (Long) a + (Long) b);
+	}
+
+	/**
+	 * Find the chain of spans that determined the end of the run, walking back
+	 * from the last span to end. Of the spans that ended before the chain
+	 * continues, the one that ended last is on the path, and of nested spans
+	 * ending at the same time the outermost is used, so the time of an outer
+	 * span before its inner span started is not lost.
+	 *
+	 * @param closed
+	 * @return The spans of the critical path in the order they ran.
+	 */
+	static List<Span> findCriticalPath(List<Span> closed) {
+		List<Span> path = new ArrayList<>();
+		Set<Span> used = new HashSet<>();
+		Comparator<Span> latest = Comparator.comparingLong(Span::getEndTimeMS)
+				.thenComparing(Comparator.comparingLong(Span::getStartTimeMS).reversed());
+		long cursor = Long.MAX_VALUE;
+		while (true) {
+			final long limit = cursor;
+			Span next = closed.stream().filter(span -> !used.contains(span) && span.getEndTimeMS() <= limit)
+					.max(latest).orElse(null);
+			if (next == null) {
+				break;
+			}
+			path.add(next);
+			used.add(next);
+			cursor = next.getStartTimeMS();
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	Map<String, Object> toMap(Span span) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("category", span.getCategory().name());
+		map.put("name", span.getName());
+		map.put("thread", span.getThread());
+		map.put("startMS", span.getStartTimeMS() - startTimeMS);
+		map.put("durationMS", span.getDurationMS());
+		map.put("bytes", span.getBytes());
+		map.put("apiCalls", span.getApiCalls());
+		return map;
+	}
+
+	static long getEndTimeMS(List<Span> closed) {
+		return closed.stream().mapToLong(Span::getEndTimeMS).max().getAsLong();
+	}
+
+	static String formatSeconds(long durationMS) {
+		return String.format("%.1fs", durationMS / 1000.0);
+	}
+
+	static Path getReportFile(Configuration config) {
+		try {
+			return Paths.get(config.getProperty(PROPERTY_KEY_RUN_REPORT_FILE));
+		} catch (ConfigurationPropertyNotFound e) {
+			return Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_REPORT_FILE_NAME);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.sagebionetworks.template.report;
+
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A timed unit of work of a run, with the bytes it moved and the number of AWS
+ * calls made on its thread while it was the innermost open span. A span is
+ * ended by closing it, which can be done from any thread.
+ *
+ */
+public class Span implements AutoCloseable {
+
+	private final SpanCategory category;
+	private final String name;
+	private final String thread;
+	private final long startTimeMS;
+	private final LongSupplier clock;
+	private final Deque<Span> openSpans;
+	private final AtomicLong bytes;
+	private final AtomicInteger apiCalls;
+	private volatile long endTimeMS;
+
+	/**
+	 * @param category
+	 * @param name
+	 * @param clock
+	 * @param openSpans The open spans of the thread that started the span, or null
+	 *                  for a detached span.
+	 */
+	Span(SpanCategory category, String name, LongSupplier clock, Deque<Span> openSpans) {
+		this.category = category;
+		this.name = name;
+		this.thread = Thread.currentThread().getName();
+		this.clock = clock;
+		this.startTimeMS = clock.getAsLong();
+		this.openSpans = openSpans;
+		this.bytes = new AtomicLong();
+		this.apiCalls = new AtomicInteger();
+		this.endTimeMS = -1;
+	}
+
+	/**
+	 * Add to the number of bytes read or written by this span.
+	 *
+	 * @param count
+	 * @return
+	 */
+	public Span addBytes(long count) {
+		bytes.addAndGet(count);
+		return this;
+	}
+
+	void addApiCall() {
+		apiCalls.incrementAndGet();
+	}
+
+	@Override
+	public void close() {
+		if (endTimeMS < 0) {
+			endTimeMS = clock.getAsLong();
+			if (openSpans != null) {
+				openSpans.remove(this);
+			}
+		}
+	}
+
+	public SpanCategory getCategory() {
+		return category;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getThread() {
+		return thread;
+	}
+
+	public long getStartTimeMS() {
+		return startTimeMS;
+	}
+
+	/**
+	 * @return The time the span was closed, or -1 if it is still open.
+	 */
+	public long getEndTimeMS() {
+		return endTimeMS;
+	}
+
+	public boolean isClosed() {
+		return endTimeMS >= 0;
+	}
+
+	public long getDurationMS() {
+		return isClosed() ? endTimeMS - startTimeMS : 0;
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public int getApiCalls() {
+		return apiCalls.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Span [category=" + category + ", name=" + name + ", startTimeMS=" + startTimeMS + ", endTimeMS="
+				+ endTimeMS + ", bytes=" + bytes + ", apiCalls=" + apiCalls + "]";
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.sagebionetworks.template.report;
+
+/**
+ * The kinds of work timed in a run.
+ *
+ */
+public enum SpanCategory {
+
+	BUILD,
+	DOWNLOAD,
+	WAR,
+	UPLOAD,
+	SECRETS,
+	RENDER,
+	STACK_UPDATE,
+	STACK_WAIT;
+
+}
@@ -3,33 +3,39 @@ package org.sagebionetworks.template.s3;
 import static org.sagebionetworks.template.Constants.CAPABILITY_NAMED_IAM;
 import static org.sagebionetworks.template.Constants.GLOBAL_RESOURCES_STACK_NAME_FORMAT;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_LAMBDA_VIRUS_SCANNER_ARTIFACT_URL;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_S3_BUCKETS_MAX_PARALLELISM;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK;
 
-import java.io.File;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.json.JSONObject;
 import org.sagebionetworks.template.CloudFormationClient;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
 import org.sagebionetworks.template.Constants;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
 import org.sagebionetworks.template.TemplateUtils;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cloudformation.model.Stack;
@@ -65,6 +71,7 @@ import com.amazonaws.services.s3.model.inventory.InventoryIncludedObjectVersions
 import com.amazonaws.services.s3.model.inventory.InventoryS3BucketDestination;
 import com.amazonaws.services.s3.model.inventory.InventorySchedule;
 import com.amazonaws.services.s3.model.lifecycle.LifecycleFilter;
+import com.amazonaws.services.s3.model.lifecycle.LifecyclePrefixPredicate;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
 import com.google.inject.Inject;
@@ -99,6 +106,8 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 	static final String VIRUS_SCANNER_KEY_TEMPLATE = "artifacts/virus-scanner/%s";
 	static final String BUCKET_POLICY_STACK_NAME = "${stack}-synapse-bucket-policies";
 	
+	static final int DEFAULT_MAX_PARALLELISM = 4;
+	
 
 	private static String getStackOutput(Stack stack, String key) {
 		return stack.getOutputs().stream()
@@ -113,19 +122,19 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 	private AWSLambda lambdaClient;
 	private RepoConfiguration config;
 	private S3Config s3Config;
-	private VelocityEngine velocity;
+	private TemplateRenderer templateRenderer;
 	private CloudFormationClient cloudFormationClient;
 	private StackTagsProvider tagsProvider;
 	private ArtifactDownload downloader;
 	
 	@Inject
-	public S3BucketBuilderImpl(AmazonS3 s3Client, AWSSecurityTokenService stsClient, AWSLambda lambdaClient, RepoConfiguration config, S3Config s3Config, VelocityEngine velocity, CloudFormationClient cloudFormationClient, StackTagsProvider tagsProvider, ArtifactDownload downloader) {
+	public S3BucketBuilderImpl(AmazonS3 s3Client, AWSSecurityTokenService stsClient, AWSLambda lambdaClient, RepoConfiguration config, S3Config s3Config, TemplateRenderer templateRenderer, CloudFormationClient cloudFormationClient, StackTagsProvider tagsProvider, ArtifactDownload downloader) {
 		this.s3Client = s3Client;
 		this.stsClient = stsClient;
 		this.lambdaClient = lambdaClient;
 		this.config = config;
 		this.s3Config = s3Config;
-		this.velocity = velocity;
+		this.templateRenderer = templateRenderer;
 		this.cloudFormationClient = cloudFormationClient;
 		this.tagsProvider = tagsProvider;
 		this.downloader = downloader;
@@ -137,25 +146,22 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 		
 		String accountId = stsClient.getCallerIdentity(new GetCallerIdentityRequest()).getAccount();
 		
+		List<S3BucketDescriptor> buckets = new ArrayList<>();
 		List<String> virusScanEnabledBuckets = new ArrayList<>();
 		List<String> virusScanDisabledBuckets = new ArrayList<>();
 		
-		// Configure all buckets first
-		for (S3BucketDescriptor bucket : s3Config.getBuckets()) {
+		for (S3BucketDescriptor configBucket : s3Config.getBuckets()) {
 			
-			bucket.setName(TemplateUtils.replaceStackVariable(bucket.getName(), stack));
+			// The config is shared, the name is resolved on a copy
+			S3BucketDescriptor bucket = new S3BucketDescriptor(configBucket);
+			bucket.setName(TemplateUtils.replaceStackVariable(configBucket.getName(), stack));
 			
 			if (bucket.isDevOnly() && stack.equalsIgnoreCase(Constants.PROD_STACK_NAME)) {
 				LOG.warn("The bucket {} is deployed only on non-prod stacks.", bucket.getName());
 				continue;
 			}
 			
-			createBucket(bucket.getName());
-			configureEncryption(bucket.getName());	
-			configureInventory(stack, bucket.getName(), accountId, s3Config.getInventoryConfig(), bucket.isInventoryEnabled());
-			configureBucketLifeCycle(bucket);
-			configureIntelligentTieringArchive(bucket);
-			configureBucketNotifications(bucket, stack);
+			buckets.add(bucket);
 			
 			if (bucket.isVirusScanEnabled()) {
 				virusScanEnabledBuckets.add(bucket.getName());
@@ -164,15 +170,62 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 			}
 			
 		}
+		
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		Optional<Stack> virusScannerStack = Optional.empty();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(getMaxParallelism(), Math.max(1, buckets.size())));
+		
+		try {
+			// The buckets must exist before the virus scanner stack refers to them, but it does not need their configuration
+			List<S3BucketDescriptor> created = runForEachBucket(executor, buckets, bucket -> createBucket(bucket.getName()), failures);
+			
+			List<Future<?>> configurations = submitForEachBucket(executor, created, bucket -> configureBucket(bucket, stack, accountId));
+			
+			RuntimeException stackFailure = null;
+			
+			try {
+				if (failures.isEmpty()) {
+					// The stack is built on this thread while the workers configure the buckets
+					virusScannerStack = buildVirusScannerStack(stack, s3Config.getVirusScannerConfig(), virusScanEnabledBuckets);
+				}
+			} catch (RuntimeException e) {
+				stackFailure = e;
+			}
+			
+			awaitForEachBucket(created, configurations, failures);
+			
+			LOG.info("Configured {} of {} buckets.", buckets.size() - failures.size(), buckets.size());
+			
+			if (!failures.isEmpty()) {
+				LOG.error("Failed to configure buckets: {}", failures.keySet());
+			}
+			
+			if (stackFailure != null) {
+				// The bucket failures would be lost otherwise
+				failures.values().forEach(stackFailure::addSuppressed);
+				throw stackFailure;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		if (!failures.isEmpty()) {
+			Throwable failure = failures.values().iterator().next();
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			throw new RuntimeException(failure);
+		}
 
-		buildVirusScannerStack(stack, s3Config.getVirusScannerConfig(), virusScanEnabledBuckets).ifPresent( virusScannerStack -> {
+		virusScannerStack.ifPresent( virusScannerStackOutput -> {
 			// Once the virus scanner stack is built we need to setup for each bucket a notification configuration to
 			// send upload events to the topic the lambda is triggered by, this cannot be done in the cloud formation
 			// template due to a known circular dependency (See https://github.com/aws-cloudformation/cloudformation-coverage-roadmap/issues/79).
 			// Note that the proposed solution (e.g. read hack) by AWS (https://aws.amazon.com/premiumsupport/knowledge-center/cloudformation-s3-notification-lambda/)
 			// involves using a custom resource setup by yet another lambda when the stack is created taking in input the bucket to setup the notification for, since we want to enable
 			// this on multiple buckets using the API is a much simpler solution.
-			String virusScannerTopicArn = getStackOutput(virusScannerStack, CF_OUTPUT_VIRUS_TRIGGER_TOPIC);
+			String virusScannerTopicArn = getStackOutput(virusScannerStackOutput, CF_OUTPUT_VIRUS_TRIGGER_TOPIC);
 			
 			virusScanEnabledBuckets.forEach( bucket -> {
 				configureBucketNotification(bucket, VIRUS_SCANNER_NOTIFICATION_CONFIG_NAME, virusScannerTopicArn, Collections.singleton(S3Event.ObjectCreatedByCompleteMultipartUpload.toString()));
@@ -184,7 +237,7 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 			});
 			
 			// We also need to trigger the lambda that updates the clamav definitions to setup them up so that the scanner can download them
-			String virusScannerUpdatedLambda = getStackOutput(virusScannerStack, CF_OUTPUT_VIRUS_UPDATER_LAMBDA);
+			String virusScannerUpdatedLambda = getStackOutput(virusScannerStackOutput, CF_OUTPUT_VIRUS_UPDATER_LAMBDA);
 			
 			lambdaClient.invoke(new InvokeRequest()
 				.withFunctionName(virusScannerUpdatedLambda)
@@ -195,24 +248,79 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 		buildS3BucketPolicyStack(stack);
 	}
 
+	/**
+	 * Apply the full configuration to a bucket that exists.
+	 * 
+	 * @param bucket
+	 * @param stack
+	 * @param accountId
+	 */
+	void configureBucket(S3BucketDescriptor bucket, String stack, String accountId) {
+		configureEncryption(bucket.getName());	
+		configureInventory(stack, bucket.getName(), accountId, s3Config.getInventoryConfig(), bucket.isInventoryEnabled());
+		configureBucketLifeCycle(bucket);
+		configureIntelligentTieringArchive(bucket);
+		configureBucketNotifications(bucket, stack);
+	}
+	
+	/**
+	 * Run the given action for each bucket on the executor and wait for all of them.
+	 * 
+	 * @return The buckets for which the action succeeded, the failures are added to the given map
+	 */
+	static List<S3BucketDescriptor> runForEachBucket(ExecutorService executor, List<S3BucketDescriptor> buckets, Consumer<S3BucketDescriptor> action, Map<String, Throwable> failures) {
+		return awaitForEachBucket(buckets, submitForEachBucket(executor, buckets, action), failures);
+	}
+	
+	static List<Future<?>> submitForEachBucket(ExecutorService executor, List<S3BucketDescriptor> buckets, Consumer<S3BucketDescriptor> action) {
+		List<Future<?>> futures = new ArrayList<>(buckets.size());
+		for (S3BucketDescriptor bucket : buckets) {
+			futures.add(executor.submit(() -> action.accept(bucket)));
+		}
+		return futures;
+	}
+	
+	/**
+	 * Wait for the action of each bucket, so that a failure of one bucket does not stop the others.
+	 * 
+	 * @return The buckets for which the action succeeded, the failures are added to the given map
+	 */
+	static List<S3BucketDescriptor> awaitForEachBucket(List<S3BucketDescriptor> buckets, List<Future<?>> futures, Map<String, Throwable> failures) {
+		List<S3BucketDescriptor> succeeded = new ArrayList<>(buckets.size());
+		for (int i = 0; i < buckets.size(); i++) {
+			S3BucketDescriptor bucket = buckets.get(i);
+			try {
+				futures.get(i).get();
+				succeeded.add(bucket);
+			} catch (ExecutionException e) {
+				LOG.error("Failed to configure bucket {}: {}", bucket.getName(), e.getCause().getMessage());
+				failures.put(bucket.getName(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.put(bucket.getName(), e);
+			}
+		}
+		return succeeded;
+	}
+	
+	int getMaxParallelism() {
+		try {
+			return Math.max(1, config.getIntegerProperty(PROPERTY_KEY_S3_BUCKETS_MAX_PARALLELISM));
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_PARALLELISM;
+		}
+	}
+
 	private Optional<Stack> buildS3BucketPolicyStack(String stack) {
 		VelocityContext context = new VelocityContext();
 
 		context.put(Constants.STACK, stack);
 
 		// Merge the context with the template
-		Template template = velocity.getTemplate(Constants.TEMPLATE_S3_BUCKET_POLICY);
-
-		StringWriter stringWriter = new StringWriter();
-
-		template.merge(context, stringWriter);
-
-		String resultJSON = stringWriter.toString();
+		String resultJSON = templateRenderer.renderJson(Constants.TEMPLATE_S3_BUCKET_POLICY, context);
 
 		LOG.info(resultJSON);
 
-		resultJSON = new JSONObject(resultJSON).toString(5);
-
 		String stackName = TemplateUtils.replaceStackVariable(BUCKET_POLICY_STACK_NAME, stack);
 
 		cloudFormationClient.createOrUpdateStack(new CreateOrUpdateStackRequest()
@@ -239,12 +347,8 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 		String lambdaArtifactBucket = TemplateUtils.replaceStackVariable(config.getLambdaArtifactBucket(), stack);
 		String lambdaArtifactKey = String.format(VIRUS_SCANNER_KEY_TEMPLATE, FilenameUtils.getName(lambdaSourceArtifactUrl));
 		
-		File artifact = downloader.downloadFile(lambdaSourceArtifactUrl);
-		
-		try {
-			s3Client.putObject(lambdaArtifactBucket, lambdaArtifactKey, artifact);
-		} finally {
-			artifact.delete();
+		try (CachedArtifact artifact = downloader.getCachedFile(lambdaSourceArtifactUrl)) {
+			s3Client.putObject(lambdaArtifactBucket, lambdaArtifactKey, artifact.getFile());
 		}
 		
 		VelocityContext context = new VelocityContext();
@@ -256,18 +360,10 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 		context.put(CF_PROPERTY_LAMBDA_KEY, lambdaArtifactKey);
 		
 		// Merge the context with the template
-		Template template = velocity.getTemplate(Constants.TEMPLATE_S3_VIRUS_SCANNER);
-		
-		StringWriter stringWriter = new StringWriter();
-		
-		template.merge(context, stringWriter);
-		
-		String resultJSON = stringWriter.toString();
+		String resultJSON = templateRenderer.renderJson(Constants.TEMPLATE_S3_VIRUS_SCANNER, context);
 		
 		LOG.info(resultJSON);
 		
-		resultJSON = new JSONObject(resultJSON).toString(5);
-		
 		String stackName = TemplateUtils.replaceStackVariable(VIRUS_SCANNER_STACK_NAME, stack);
 		
 		cloudFormationClient.createOrUpdateStack(new CreateOrUpdateStackRequest()
@@ -477,13 +573,14 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 	}
 	
 	private Rule createRetentionRule(S3BucketDescriptor bucket) {
-		return new Rule().withExpirationInDays(bucket.getRetentionDays()).withFilter(allBucketLifecycletFilter());
+		return new Rule().withExpirationInDays(bucket.getRetentionDays()).withFilter(retentionLifecycleFilter(bucket));
 	}
 	
 	private boolean updateRetentionRule(Rule rule, S3BucketDescriptor bucket) {
-		if (!bucket.getRetentionDays().equals(rule.getExpirationInDays()) || rule.getFilter() == null) {
+		String prefix = bucket.getRetentionPrefix() == null ? "" : bucket.getRetentionPrefix();
+		if (!bucket.getRetentionDays().equals(rule.getExpirationInDays()) || !prefix.equals(getFilterPrefix(rule.getFilter()))) {
 			rule.withExpirationInDays(bucket.getRetentionDays())
-				.withFilter(allBucketLifecycletFilter());
+				.withFilter(retentionLifecycleFilter(bucket));
 			return true;
 		} else {
 			return false;
@@ -519,6 +616,31 @@ public class S3BucketBuilderImpl implements S3BucketBuilder {
 		return new LifecycleFilter(null);
 	}
 	
+	private static LifecycleFilter retentionLifecycleFilter(S3BucketDescriptor bucket) {
+		if (bucket.getRetentionPrefix() == null) {
+			return allBucketLifecycletFilter();
+		}
+		return new LifecycleFilter(new LifecyclePrefixPredicate(bucket.getRetentionPrefix()));
+	}
+	
+	/**
+	 * @return The prefix the given filter applies to, an empty string for the whole bucket or null if the filter is not
+	 *         (only) on a prefix
+	 */
+	private static String getFilterPrefix(LifecycleFilter filter) {
+		if (filter == null) {
+			return null;
+		}
+		if (filter.getPredicate() == null) {
+			return "";
+		}
+		if (filter.getPredicate() instanceof LifecyclePrefixPredicate) {
+			String prefix = ((LifecyclePrefixPredicate) filter.getPredicate()).getPrefix();
+			return prefix == null ? "" : prefix;
+		}
+		return null;
+	}
+	
 	private static <T> boolean addOrUpdateRule(List<Rule> rules, String bucket, String ruleName, T definition, Function<T, Rule> ruleCreator, BiFunction<Rule, T, Boolean> ruleUpdate) {
 		Optional<Rule> rule = findRule(ruleName, rules);
 		
@@ -20,6 +20,11 @@ public class S3BucketDescriptor {
 	 */
 	private Integer retentionDays;
 	
+	/**
+	 * If set the retention life cycle rule only applies to the objects with this prefix
+	 */
+	private String retentionPrefix;
+	
 	/**
 	 * True if the bucket should be created only in dev
 	 */
@@ -48,6 +53,23 @@ public class S3BucketDescriptor {
 	public S3BucketDescriptor() {
 	}
 
+	/**
+	 * Copy constructor, the nested configurations are shared
+	 * 
+	 * @param other
+	 */
+	public S3BucketDescriptor(S3BucketDescriptor other) {
+		this.name = other.name;
+		this.inventoryEnabled = other.inventoryEnabled;
+		this.retentionDays = other.retentionDays;
+		this.retentionPrefix = other.retentionPrefix;
+		this.devOnly = other.devOnly;
+		this.storageClassTransitions = other.storageClassTransitions;
+		this.intArchiveConfiguration = other.intArchiveConfiguration;
+		this.notificationsConfiguration = other.notificationsConfiguration;
+		this.virusScanEnabled = other.virusScanEnabled;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -72,6 +94,14 @@ public class S3BucketDescriptor {
 		this.retentionDays = retentionDays;
 	}
 	
+	public String getRetentionPrefix() {
+		return retentionPrefix;
+	}
+	
+	public void setRetentionPrefix(String retentionPrefix) {
+		this.retentionPrefix = retentionPrefix;
+	}
+	
 	public boolean isDevOnly() {
 		return devOnly;
 	}
@@ -115,7 +145,7 @@ public class S3BucketDescriptor {
 	@Override
 	public int hashCode() {
 		return Objects.hash(devOnly, intArchiveConfiguration, inventoryEnabled, name, notificationsConfiguration, retentionDays,
-				storageClassTransitions, virusScanEnabled);
+				retentionPrefix, storageClassTransitions, virusScanEnabled);
 	}
 
 	@Override
@@ -133,14 +163,14 @@ public class S3BucketDescriptor {
 		return devOnly == other.devOnly && Objects.equals(intArchiveConfiguration, other.intArchiveConfiguration)
 				&& inventoryEnabled == other.inventoryEnabled && Objects.equals(name, other.name)
 				&& Objects.equals(notificationsConfiguration, other.notificationsConfiguration)
-				&& Objects.equals(retentionDays, other.retentionDays)
+				&& Objects.equals(retentionDays, other.retentionDays) && Objects.equals(retentionPrefix, other.retentionPrefix)
 				&& Objects.equals(storageClassTransitions, other.storageClassTransitions) && virusScanEnabled == other.virusScanEnabled;
 	}
 
 	@Override
 	public String toString() {
 		return "S3BucketDescriptor [name=" + name + ", inventoryEnabled=" + inventoryEnabled + ", retentionDays=" + retentionDays
-				+ ", devOnly=" + devOnly + ", storageClassTransitions=" + storageClassTransitions + ", intArchiveConfiguration="
+				+ ", retentionPrefix=" + retentionPrefix + ", devOnly=" + devOnly + ", storageClassTransitions=" + storageClassTransitions + ", intArchiveConfiguration="
 				+ intArchiveConfiguration + ", notificationsConfiguration=" + notificationsConfiguration + ", virusScanEnabled="
 				+ virusScanEnabled + "]";
 	}
@@ -1,16 +1,14 @@
 package org.sagebionetworks.template.s3;
 
-import org.sagebionetworks.template.TemplateGuiceModule;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.MainRunner;
 
 public class S3BuilderMain {
 	
 	public static void main(String[] args) throws InterruptedException {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		S3BucketBuilder builder = injector.getInstance(S3BucketBuilder.class);
-		builder.buildAllBuckets();
+		MainRunner.run(injector -> {
+			S3BucketBuilder builder = injector.getInstance(S3BucketBuilder.class);
+			builder.buildAllBuckets();
+		});
 	}
 
 }
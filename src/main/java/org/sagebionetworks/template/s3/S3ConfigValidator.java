@@ -40,6 +40,7 @@ public class S3ConfigValidator {
 		}
 		
 		config.getBuckets().stream().forEach(bucket -> {
+			validateRetention(bucket);
 			validateStorageClassTransitions(bucket);
 			validateIntArchiveConfiguration(bucket);
 			validateNotificationsConfiguration(bucket);
@@ -52,6 +53,10 @@ public class S3ConfigValidator {
 		return config;
 	}
 	
+	private void validateRetention(S3BucketDescriptor bucket) {
+		ValidateArgument.requirement(bucket.getRetentionPrefix() == null || bucket.getRetentionDays() != null, "The retentionDays are required with the retentionPrefix for bucket " + bucket.getName());
+	}
+	
 	private void validateStorageClassTransitions(S3BucketDescriptor bucket) {
 		if (bucket.getStorageClassTransitions() == null || bucket.getStorageClassTransitions().isEmpty()) {
 			return;
@@ -0,0 +1,31 @@
+package org.sagebionetworks.template.utils;
+
+import java.io.File;
+
+/**
+ * Size bounded on-disk cache of downloaded artifacts that can be shared by
+ * concurrent processes.
+ */
+public interface ArtifactCache {
+
+	/**
+	 * Get the cached file for the given key, marking it as recently used. The
+	 * entry cannot be evicted until the returned artifact is closed.
+	 * 
+	 * @param key
+	 * @return The cached file or null if the cache does not contain the key
+	 */
+	CachedArtifact get(String key);
+
+	/**
+	 * Move the given file into the cache under the given key, evicting the least
+	 * recently used entries if the cache is over its size limit. The entry cannot
+	 * be evicted until the returned artifact is closed.
+	 * 
+	 * @param key
+	 * @param file
+	 * @return The cached file
+	 */
+	CachedArtifact put(String key, File file);
+
+}
@@ -0,0 +1,231 @@
+package org.sagebionetworks.template.utils;
+
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ARTIFACT_CACHE_MAX_SIZE_MB;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.ThreadProvider;
+import org.sagebionetworks.template.config.Configuration;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Artifact cache stored in a local directory. Each entry is a single file and
+ * its last modified time is used as the last access time for the LRU eviction.
+ * All the operations are done while holding an exclusive lock on a lock file in
+ * the cache directory, so that concurrent builder processes can share the same
+ * cache. An entry that is handed out holds a shared lock on its file until it
+ * is closed, and eviction skips any entry it cannot lock exclusively.
+ */
+@Singleton
+public class ArtifactCacheImpl implements ArtifactCache {
+
+	public static final long DEFAULT_MAX_SIZE_MB = 4096;
+	public static final String LOCK_FILE_NAME = ".lock";
+	public static final String ENTRY_SUFFIX = ".artifact";
+
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	private final File directory;
+	private final long maxSizeBytes;
+	private final ThreadProvider threadProvider;
+	private final Logger logger;
+	// entries handed out by this process, a JVM can only hold one lock per file
+	private final Map<File, Pin> pins = new HashMap<>();
+
+	@Inject
+	public ArtifactCacheImpl(Configuration config, ThreadProvider threadProvider, LoggerFactory loggerFactory) {
+		this(getDirectory(config), getMaxSizeMB(config) * BYTES_PER_MB, threadProvider, loggerFactory);
+	}
+
+	ArtifactCacheImpl(File directory, long maxSizeBytes, ThreadProvider threadProvider, LoggerFactory loggerFactory) {
+		this.directory = directory;
+		this.maxSizeBytes = maxSizeBytes;
+		this.threadProvider = threadProvider;
+		this.logger = loggerFactory.getLogger(ArtifactCacheImpl.class);
+	}
+
+	@Override
+	public CachedArtifact get(String key) {
+		return withLock(() -> {
+			File entry = getEntryFile(key);
+			if (!entry.isFile()) {
+				return null;
+			}
+			entry.setLastModified(threadProvider.currentTimeMillis());
+			return pin(entry);
+		});
+	}
+
+	@Override
+	public CachedArtifact put(String key, File file) {
+		return withLock(() -> {
+			File entry = getEntryFile(key);
+			if (entry.isFile()) {
+				// another download of the same version won, it might be in use.
+				Files.delete(file.toPath());
+			} else {
+				Files.move(file.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			entry.setLastModified(threadProvider.currentTimeMillis());
+			evict(entry);
+			return pin(entry);
+		});
+	}
+
+	/**
+	 * Take a shared lock on the given entry, called while holding the cache lock.
+	 * 
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	CachedArtifact pin(File entry) throws IOException {
+		Pin pin = pins.get(entry);
+		if (pin == null) {
+			FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ);
+			try {
+				channel.lock(0, Long.MAX_VALUE, true);
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			pin = new Pin(channel);
+			pins.put(entry, pin);
+		}
+		pin.count++;
+		return new CachedArtifact(entry, () -> release(entry));
+	}
+
+	private synchronized void release(File entry) {
+		Pin pin = pins.get(entry);
+		if (pin == null) {
+			return;
+		}
+		if (--pin.count == 0) {
+			pins.remove(entry);
+			try {
+				// closing the channel releases its lock
+				pin.channel.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * @param entry
+	 * @return True if the entry is in use by this or another process.
+	 */
+	boolean isPinned(File entry) {
+		if (pins.containsKey(entry)) {
+			return true;
+		}
+		try (FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.WRITE)) {
+			FileLock lock = channel.tryLock();
+			if (lock == null) {
+				return true;
+			}
+			lock.release();
+			return false;
+		} catch (OverlappingFileLockException e) {
+			return true;
+		} catch (IOException e) {
+			// treat an entry that cannot be checked as in use
+			return true;
+		}
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache fits in its size
+	 * limit. The given entry and the entries in use are never evicted.
+	 *
+	 * @param keep
+	 */
+	void evict(File keep) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+		if (files == null) {
+			return;
+		}
+		List<File> entries = Arrays.asList(files);
+		long totalSize = entries.stream().mapToLong(File::length).sum();
+		entries.sort(Comparator.comparingLong(File::lastModified));
+		for (File entry : entries) {
+			if (totalSize <= maxSizeBytes) {
+				break;
+			}
+			if (entry.equals(keep) || isPinned(entry)) {
+				continue;
+			}
+			long size = entry.length();
+			if (entry.delete()) {
+				totalSize -= size;
+				logger.info("Evicted artifact from cache: " + entry.getName() + " (" + size + " bytes)");
+			}
+		}
+	}
+
+	File getEntryFile(String key) {
+		return new File(directory, key + ENTRY_SUFFIX);
+	}
+
+	private synchronized <T> T withLock(CacheOperation<T> operation) {
+		try {
+			Files.createDirectories(directory.toPath());
+			try (FileChannel channel = FileChannel.open(new File(directory, LOCK_FILE_NAME).toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+				return operation.apply();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static File getDirectory(Configuration config) {
+		try {
+			return new File(config.getProperty(PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY));
+		} catch (ConfigurationPropertyNotFound e) {
+			return new File(System.getProperty("user.home"), ".synapse-stack-builder/artifacts");
+		}
+	}
+
+	static long getMaxSizeMB(Configuration config) {
+		try {
+			return config.getIntegerProperty(PROPERTY_KEY_ARTIFACT_CACHE_MAX_SIZE_MB);
+		} catch (ConfigurationPropertyNotFound e) {
+			return DEFAULT_MAX_SIZE_MB;
+		}
+	}
+
+	@FunctionalInterface
+	private interface CacheOperation<T> {
+		T apply() throws IOException;
+	}
+
+	private static class Pin {
+		private final FileChannel channel;
+		private int count;
+
+		Pin(FileChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+}
@@ -15,4 +15,16 @@ public interface ArtifactDownload {
      */
 	File downloadFile(String url);
 
+    /**
+     * Get the file at the given URL from the local artifact cache. The file is
+     * only downloaded if the cache does not hold the version currently published
+     * at the URL. The returned file belongs to the cache and must not be modified
+     * or deleted by the caller, who must close it once the file is no longer
+     * used so that it can be evicted.
+     *
+     * @param url
+     * @return
+     */
+	CachedArtifact getCachedFile(String url);
+
 }
@@ -1,52 +1,298 @@
 package org.sagebionetworks.template.utils;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.ThreadProvider;
 
 import com.google.inject.Inject;
 
+/**
+ * Downloads artifacts with a large buffer straight into a file channel. The
+ * checksums published by Artifactory are verified and a failed request or an
+ * interrupted download is retried with a backoff, resuming with a conditional
+ * range request. Downloads can be shared through the
+ * {@link ArtifactCache}, keyed by the url and the published checksum.
+ */
 public class ArtifactDownloadImpl implements ArtifactDownload {
+
+    public static final String SHA256_HEADER = "X-Checksum-Sha256";
+    public static final String SHA1_HEADER = "X-Checksum-Sha1";
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    public static final int MAX_ATTEMPTS = 3;
+    /**
+     * The wait before the first retry, doubled for each following retry.
+     */
+    public static final long RETRY_BACKOFF_MS = 1000;
+
+    /**
+     * Response headers that identify the version of an artifact, in order of
+     * preference.
+     */
+    public static final List<String> VERSION_HEADERS = List.of(SHA256_HEADER, SHA1_HEADER, HttpHeaders.ETAG);
+
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
     private HttpClient httpClient;
+    private ArtifactCache cache;
+    private ThreadProvider threadProvider;
+    private Logger logger;
 
     @Inject
-    public ArtifactDownloadImpl(HttpClient httpClient) {
+    public ArtifactDownloadImpl(HttpClient httpClient, ArtifactCache cache, ThreadProvider threadProvider,
+            LoggerFactory loggerFactory) {
         this.httpClient = httpClient;
+        this.cache = cache;
+        this.threadProvider = threadProvider;
+        this.logger = loggerFactory.getLogger(ArtifactDownloadImpl.class);
     }
 
     @Override
     public File downloadFile(String url) {
-        HttpGet httpget = new HttpGet(url);
-        HttpResponse response;
+        File temp;
         try {
-            response = httpClient.execute(httpget);
-            StatusLine statusLine = response.getStatusLine();
-            if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
-                throw new RuntimeException("Failed to download file: " + url + " Status code:"
-                        + statusLine.getStatusCode() + " reason: " + statusLine.getReasonPhrase());
-            }
             // download to a temp file.
-            File temp = File.createTempFile("artifact", ".tmp");
-            try (BufferedInputStream bis = new BufferedInputStream(response.getEntity().getContent());
-                 BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(temp))) {
-                int inByte;
-                while ((inByte = bis.read()) != -1) {
-                    bos.write(inByte);
+            temp = File.createTempFile("artifact", ".tmp");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            download(url, temp);
+            return temp;
+        } catch (IOException e) {
+            temp.delete();
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    @Override
+    public CachedArtifact getCachedFile(String url) {
+        try {
+            String version = getRemoteVersion(url);
+            if (version != null) {
+                CachedArtifact cached = cache.get(getCacheKey(url, version));
+                if (cached != null) {
+                    logger.info("Using cached artifact for: " + url);
+                    return cached;
+                }
+            }
+            File download = downloadFile(url);
+            if (version == null) {
+                // nothing identifies the published version, key the entry by its content.
+                try (InputStream in = Files.newInputStream(download.toPath())) {
+                    version = DigestUtils.sha256Hex(in);
                 }
-                bos.flush();
-                return temp;
             }
+            return cache.put(getCacheKey(url, version), download);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Fetch the version of the artifact currently published at the given url
+     * (e.g. its checksum) with a HEAD request.
+     *
+     * @param url
+     * @return The version or null if the server does not provide one
+     * @throws IOException
+     */
+    String getRemoteVersion(String url) throws IOException {
+        HttpResponse response = executeWithRetry(new HttpHead(url));
+        try {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                return null;
+            }
+            for (String name : VERSION_HEADERS) {
+                String value = getHeaderValue(response, name);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    static String getCacheKey(String url, String version) {
+        return DigestUtils.sha256Hex(url + "\n" + version);
+    }
+
+    /**
+     * Download the given url into the given file, resuming from the bytes already
+     * written if the transfer is interrupted. The resume request is conditional on
+     * the ETag (or Last-Modified date) of the first response, the server sends the
+     * full content again if the artifact changed in between.
+     *
+     * @param url
+     * @param file
+     * @throws IOException
+     */
+    void download(String url, File file) throws IOException {
+        long start = threadProvider.currentTimeMillis();
+        MessageDigest sha256 = DigestUtils.getSha256Digest();
+        MessageDigest sha1 = DigestUtils.getSha1Digest();
+        String expectedSha256 = null;
+        String expectedSha1 = null;
+        String validator = null;
+        long position = 0;
+        for (int attempt = 1;; attempt++) {
+            HttpGet httpget = new HttpGet(url);
+            if (position > 0 && validator != null) {
+                httpget.setHeader(HttpHeaders.RANGE, "bytes=" + position + "-");
+                httpget.setHeader(HttpHeaders.IF_RANGE, validator);
+            }
+            try {
+                HttpResponse response = httpClient.execute(httpget);
+                StatusLine statusLine = response.getStatusLine();
+                boolean resume = httpget.containsHeader(HttpHeaders.RANGE)
+                        && statusLine.getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT;
+                if (statusLine.getStatusCode() != HttpStatus.SC_OK && !resume) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    throw new RuntimeException("Failed to download file: " + url + " Status code:"
+                            + statusLine.getStatusCode() + " reason: " + statusLine.getReasonPhrase());
+                }
+                if (!resume) {
+                    // full content, including when the artifact changed since the last attempt.
+                    position = 0;
+                    sha256.reset();
+                    sha1.reset();
+                    expectedSha256 = getHeaderValue(response, SHA256_HEADER);
+                    expectedSha1 = getHeaderValue(response, SHA1_HEADER);
+                    validator = getHeaderValue(response, HttpHeaders.ETAG);
+                    if (validator == null) {
+                        validator = getHeaderValue(response, HttpHeaders.LAST_MODIFIED);
+                    }
+                }
+                try (InputStream in = response.getEntity().getContent();
+                        FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                                resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                    copy(in, out, sha256, sha1);
+                    position = out.size();
+                }
+                break;
+            } catch (IOException e) {
+                // only the bytes that were written have been digested.
+                position = file.length();
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Download of " + url + " interrupted after " + position + " bytes, retrying (attempt "
+                        + (attempt + 1) + " of " + MAX_ATTEMPTS + "): " + e.getMessage());
+                backoff(attempt);
+            }
+        }
+        verifyChecksum(url, SHA256_HEADER, expectedSha256, sha256);
+        verifyChecksum(url, SHA1_HEADER, expectedSha1, sha1);
+        long elapsedMS = Math.max(1, threadProvider.currentTimeMillis() - start);
+        double sizeMB = position / BYTES_PER_MB;
+        logger.info(String.format("Downloaded %s: %.1f MB in %.1f s (%.1f MB/s)", url, sizeMB, elapsedMS / 1000.0,
+                sizeMB * 1000.0 / elapsedMS));
+    }
+
+    /**
+     * Execute the given request, retrying with a backoff when it fails with an
+     * I/O error.
+     *
+     * @param request
+     * @return
+     * @throws IOException If the last attempt failed
+     */
+    HttpResponse executeWithRetry(HttpUriRequest request) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return httpClient.execute(request);
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Request " + request.getMethod() + " " + request.getURI() + " failed, retrying (attempt "
+                        + (attempt + 1) + " of " + MAX_ATTEMPTS + "): " + e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Wait before the retry that follows the given attempt.
+     *
+     * @param attempt
+     */
+    void backoff(int attempt) {
+        try {
+            threadProvider.sleep(RETRY_BACKOFF_MS << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copy the given stream to the given channel with a single large buffer,
+     * updating the given digests with the bytes of each completed write.
+     *
+     * @param in
+     * @param out
+     * @param digests
+     * @throws IOException
+     */
+    static void copy(InputStream in, FileChannel out, MessageDigest... digests) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(in);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                int offset = buffer.position();
+                int written = out.write(buffer);
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer.array(), offset, written);
+                }
+            }
+            buffer.clear();
+        }
+    }
+
+    static void verifyChecksum(String url, String headerName, String expected, MessageDigest digest) {
+        if (expected == null) {
+            return;
+        }
+        String actual = Hex.encodeHexString(digest.digest());
+        if (!actual.equalsIgnoreCase(expected)) {
+            throw new RuntimeException("Checksum mismatch for file: " + url + " " + headerName + " expected: "
+                    + expected + " actual: " + actual);
+        }
+    }
+
+    static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
 }
@@ -0,0 +1,46 @@
+package org.sagebionetworks.template.utils;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * A file handed out by the {@link ArtifactCache}. While it is open the entry
+ * holds a shared lock that keeps it from being evicted, so it must be closed
+ * once the file is no longer used.
+ */
+public class CachedArtifact implements Closeable {
+
+	private final File file;
+	private final Runnable release;
+	private boolean closed;
+
+	/**
+	 * A file that is not held in the cache, closing it has no effect.
+	 *
+	 * @param file
+	 */
+	public CachedArtifact(File file) {
+		this(file, null);
+	}
+
+	CachedArtifact(File file, Runnable release) {
+		this.file = file;
+		this.release = release;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Release the entry so it can be evicted again.
+	 */
+	@Override
+	public synchronized void close() {
+		if (release != null && !closed) {
+			closed = true;
+			release.run();
+		}
+	}
+
+}
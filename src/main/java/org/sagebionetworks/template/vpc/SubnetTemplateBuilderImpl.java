@@ -3,17 +3,18 @@ package org.sagebionetworks.template.vpc;
 import com.amazonaws.services.cloudformation.model.Parameter;
 import com.google.inject.Inject;
 import org.apache.logging.log4j.Logger;
-import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.json.JSONObject;
 import org.sagebionetworks.template.CloudFormationClient;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
 import org.sagebionetworks.template.config.Configuration;
+import org.sagebionetworks.template.deploy.StackDeployment;
+import org.sagebionetworks.template.deploy.StackDeploymentScheduler;
 
-import java.io.StringWriter;
+import java.util.LinkedList;
+import java.util.List;
 
 import static org.sagebionetworks.template.Constants.*;
 import static org.sagebionetworks.template.Constants.VPC_CIDR;
@@ -21,19 +22,22 @@ import static org.sagebionetworks.template.Constants.VPC_CIDR;
 public class SubnetTemplateBuilderImpl implements SubnetTemplateBuilder {
 
     CloudFormationClient cloudFormationClient;
-    VelocityEngine velocityEngine;
+    TemplateRenderer templateRenderer;
     Configuration config;
     Logger logger;
     StackTagsProvider stackTagsProvider;
+    StackDeploymentScheduler deploymentScheduler;
 
     @Inject
-    public SubnetTemplateBuilderImpl(CloudFormationClient cloudFormationClient, VelocityEngine velocityEngine,
-                                  Configuration configuration, LoggerFactory loggerFactory, StackTagsProvider stackTagsProvider) {
+    public SubnetTemplateBuilderImpl(CloudFormationClient cloudFormationClient, TemplateRenderer templateRenderer,
+                                  Configuration configuration, LoggerFactory loggerFactory, StackTagsProvider stackTagsProvider,
+                                  StackDeploymentScheduler deploymentScheduler) {
         this.cloudFormationClient = cloudFormationClient;
-        this.velocityEngine = velocityEngine;
+        this.templateRenderer = templateRenderer;
         this.config = configuration;
         this.logger = loggerFactory.getLogger(VpcTemplateBuilderImpl.class);
         this.stackTagsProvider = stackTagsProvider;
+        this.deploymentScheduler = deploymentScheduler;
     }
 
     @Override
@@ -41,12 +45,7 @@ public class SubnetTemplateBuilderImpl implements SubnetTemplateBuilder {
         String stackName = createPublicSubnetsStackName();
         // Create the context from the input
         VelocityContext context = createContext();
-        Template publicSubnetsTemplate = this.velocityEngine.getTemplate(TEMPLATES_VPC_PUBLIC_SUBNETS_JSON_VTP);
-        StringWriter stringWriter = new StringWriter();
-        publicSubnetsTemplate.merge(context, stringWriter);
-        String resultJSON = stringWriter.toString();
-        JSONObject templateJson = new JSONObject(resultJSON);
-        resultJSON = templateJson.toString(JSON_INDENT);
+        String resultJSON = this.templateRenderer.renderJson(TEMPLATES_VPC_PUBLIC_SUBNETS_JSON_VTP, context);
 
         this.cloudFormationClient.createOrUpdateStack(
             new CreateOrUpdateStackRequest()
@@ -64,27 +63,28 @@ public class SubnetTemplateBuilderImpl implements SubnetTemplateBuilder {
         VelocityContext context = createContext();
 
         Subnets subnets = (Subnets)context.get(SUBNETS);
+        // The private subnet stacks of each color only depend on the public subnets so they are deployed concurrently
+        List<StackDeployment> deployments = new LinkedList<>();
         for (int i=0; i<subnets.getPrivateSubnetGroups().length; i++) {
             SubnetGroup sg = subnets.getPrivateSubnetGroups()[i];
             String stackName = createPrivateSubnetStackName(sg.getColor().toString());
 
+            // The context is shared across colors so each template is rendered before any deployment starts
             context.put(PRIVATE_SUBNET_IDX, i);
-            Template privateSubnetsTemplate = this.velocityEngine.getTemplate(TEMPLATES_VPC_PRIVATE_SUBNET_JSON_VTP);
-            StringWriter stringWriter = new StringWriter();
-            privateSubnetsTemplate.merge(context, stringWriter);
-            String resultJSON = stringWriter.toString();
-            JSONObject templateJson = new JSONObject(resultJSON);
-            resultJSON = templateJson.toString(JSON_INDENT);
-
-            this.cloudFormationClient.createOrUpdateStack(
-                    new CreateOrUpdateStackRequest()
-                            .withStackName(stackName)
-                            .withTemplateBody(resultJSON)
-                            .withTags(stackTagsProvider.getStackTags())
-            );
-
-            this.cloudFormationClient.waitForStackToComplete(stackName);
+            String resultJSON = this.templateRenderer.renderJson(TEMPLATES_VPC_PRIVATE_SUBNET_JSON_VTP, context);
+
+            CreateOrUpdateStackRequest request = new CreateOrUpdateStackRequest()
+                    .withStackName(stackName)
+                    .withTemplateBody(resultJSON)
+                    .withTags(stackTagsProvider.getStackTags());
+
+            deployments.add(new StackDeployment().withStackName(stackName).withAction(() -> {
+                this.cloudFormationClient.createOrUpdateStack(request);
+                // the status checks are shared with the other colors deployed concurrently
+                this.cloudFormationClient.waitForStackToCompleteAsync(stackName).join();
+            }));
         }
+        deploymentScheduler.deploy(deployments);
     }
 
     VelocityContext createContext() {
@@ -1,9 +1,6 @@
 package org.sagebionetworks.template.vpc;
 
-import org.sagebionetworks.template.TemplateGuiceModule;
-
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import org.sagebionetworks.template.MainRunner;
 
 /**
  * Main to build the VPC stack.
@@ -12,12 +9,13 @@ import com.google.inject.Injector;
 public class VpcBuilderMain {
 
 	public static void main(String[] args) throws InterruptedException {
-		Injector injector = Guice.createInjector(new TemplateGuiceModule());
-		VpcTemplateBuilder builder = injector.getInstance(VpcTemplateBuilder.class);
-		builder.buildAndDeploy();
-		SubnetTemplateBuilder subnetBuilder = injector.getInstance(SubnetTemplateBuilder.class);
-		subnetBuilder.buildAndDeployPublicSubnets();
-		subnetBuilder.buildAndDeployPrivateSubnets();
+		MainRunner.run(injector -> {
+			VpcTemplateBuilder builder = injector.getInstance(VpcTemplateBuilder.class);
+			builder.buildAndDeploy();
+			SubnetTemplateBuilder subnetBuilder = injector.getInstance(SubnetTemplateBuilder.class);
+			subnetBuilder.buildAndDeployPublicSubnets();
+			subnetBuilder.buildAndDeployPrivateSubnets();
+		});
 	}
 
 }
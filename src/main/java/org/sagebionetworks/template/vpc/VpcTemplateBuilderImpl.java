@@ -1,15 +1,12 @@
 package org.sagebionetworks.template.vpc;
 
-import java.io.StringWriter;
 
 import org.apache.logging.log4j.Logger;
-import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.json.JSONObject;
 import org.sagebionetworks.template.CloudFormationClient;
 import org.sagebionetworks.template.SesClient;
 import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
@@ -26,16 +23,16 @@ import static org.sagebionetworks.template.Constants.*;
 public class VpcTemplateBuilderImpl implements VpcTemplateBuilder {
 
 	CloudFormationClient cloudFormationClient;
-	VelocityEngine velocityEngine;
+	TemplateRenderer templateRenderer;
 	Configuration config;
 	Logger logger;
 	StackTagsProvider stackTagsProvider;
 
 	@Inject
-	public VpcTemplateBuilderImpl(CloudFormationClient cloudFormationClient, VelocityEngine velocityEngine,
+	public VpcTemplateBuilderImpl(CloudFormationClient cloudFormationClient, TemplateRenderer templateRenderer,
 								  Configuration configuration, LoggerFactory loggerFactory, StackTagsProvider stackTagsProvider) {
 		this.cloudFormationClient = cloudFormationClient;
-		this.velocityEngine = velocityEngine;
+		this.templateRenderer = templateRenderer;
 		this.config = configuration;
 		this.logger = loggerFactory.getLogger(VpcTemplateBuilderImpl.class);
 		this.stackTagsProvider = stackTagsProvider;
@@ -47,15 +44,7 @@ public class VpcTemplateBuilderImpl implements VpcTemplateBuilder {
 		// Create the context from the input
 		VelocityContext context = createContext();
 		// Merge the context with the template
-		Template template = this.velocityEngine.getTemplate(TEMPLATES_VPC_MAIN_VPC_JSON_VTP);
-		StringWriter stringWriter = new StringWriter();
-		template.merge(context, stringWriter);
-		// Parse the resulting template
-		String resultJSON = stringWriter.toString();
-		System.out.println(resultJSON);
-		JSONObject templateJson = new JSONObject(resultJSON);
-		// Format the JSON
-		resultJSON = templateJson.toString(JSON_INDENT);
+		String resultJSON = this.templateRenderer.renderJson(TEMPLATES_VPC_MAIN_VPC_JSON_VTP, context);
 		this.logger.info(resultJSON);
 		Parameter[] params = createParameters(stackName);
 		// create or update the template
@@ -9,7 +9,9 @@ public interface WarAppender {
 	 * Append files to a copy of the provided war file.
 	 * 
 	 * @param originalWar The original war file.
-	 * @param callback Callback to append files to the war.
+	 * @param callback Callback to append files to the war. The callback is given
+	 *                 an empty directory, the files written to it are added to the
+	 *                 copy of the war.
 	 * @return A copy of the original war file containing the appended files.
 	 */
 	public File appendFilesCopyOfWar(File originalWar, Consumer<File> callback);
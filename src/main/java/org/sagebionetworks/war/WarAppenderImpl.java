@@ -8,34 +8,42 @@ import java.util.function.Consumer;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.report.RunReport;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 
 import com.google.inject.Inject;
 
 public class WarAppenderImpl implements WarAppender {
 	
 	Logger logger;
+	RunReport runReport;
 	
 	@Inject
-	public WarAppenderImpl(LoggerFactory loggerFactory) {
+	public WarAppenderImpl(LoggerFactory loggerFactory, RunReport runReport) {
 		logger = loggerFactory.getLogger(WarAppenderImpl.class);
+		this.runReport = runReport;
 	}
 
 	@Override
 	public File appendFilesCopyOfWar(File originalWar, Consumer<File> callback) {
 		File tempDir = null;
-		try {
+		File warCopy = null;
+		try (Span span = runReport.startSpan(SpanCategory.WAR, originalWar.getName())) {
 			tempDir = Files.createTempDirectory("warCopy").toFile();
-			logger.info("Unzipping war: "+originalWar.getName()+"...");
-			// Unzip the war to the temp dir
-			WarUtilities.unzipWarToDirectory(originalWar, tempDir);
-			// create the ebextensions directory
+			// the callback only writes the new files to the temp dir
 			callback.accept(tempDir);
-			// Zip the war into a new file
-			File warCopy = File.createTempFile("WarCopy", ".war");
-			logger.info("Creating new war with .ebextensions: "+originalWar.getName()+"...");
-			WarUtilities.zipDirectoryToWar(tempDir, warCopy);
+			warCopy = File.createTempFile("WarCopy", ".war");
+			logger.info("Copying war: "+originalWar.getName()+" with .ebextensions...");
+			// the existing entries are copied raw, only the new files are compressed
+			WarUtilities.addDirectoryToWar(tempDir, originalWar, warCopy);
+			logger.info("Finished copying war: "+originalWar.getName());
+			span.addBytes(warCopy.length());
 			return warCopy;
 		} catch (IOException e) {
+			if (warCopy != null) {
+				warCopy.delete();
+			}
 			throw new RuntimeException(e);
 		} finally {
 			if (tempDir != null) {
@@ -2,16 +2,30 @@ package org.sagebionetworks.war;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -21,6 +35,15 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 
 public class WarUtilities {
 
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int END_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_SIZE = 46;
+	private static final int CENTRAL_OFFSET = 42;
+	private static final int MAX_ENTRIES = 0xFFFF;
+	private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
 	/**
 	 * Unzip the given WAR file to the provided destination. This is from
 	 * 
@@ -84,4 +107,181 @@ public class WarUtilities {
 			}
 		}
 	}
+
+	/**
+	 * Write a copy of the given WAR file with the contents of the provided source
+	 * directory added, in a single pass. The existing entries are copied as they
+	 * are, with their stored CRC and sizes, without being decompressed and
+	 * compressed again, and only the new files are compressed. Files that already
+	 * exist in the WAR are replaced. Zip64 archives are not supported.
+	 * 
+	 * @param sourceDirectory
+	 * @param originalWar
+	 * @param destinationWar
+	 * @throws IOException
+	 */
+	public static void addDirectoryToWar(File sourceDirectory, File originalWar, File destinationWar) throws IOException {
+		File newEntries = File.createTempFile("newEntries", ".zip");
+		try {
+			zipDirectoryToWar(sourceDirectory, newEntries);
+			try (FileChannel original = FileChannel.open(originalWar.toPath(), StandardOpenOption.READ);
+					FileChannel added = FileChannel.open(newEntries.toPath(), StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(destinationWar.toPath(), StandardOpenOption.WRITE,
+							StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				List<ZipRecord> addedRecords = readCentralDirectory(added);
+				Set<String> replaced = new HashSet<>();
+				for (ZipRecord record : addedRecords) {
+					replaced.add(record.name);
+				}
+				ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+				int count = copyEntries(original, readCentralDirectory(original), replaced, out, centralDirectory);
+				count += copyEntries(added, addedRecords, Collections.emptySet(), out, centralDirectory);
+				writeEndOfCentralDirectory(out, count, centralDirectory.toByteArray());
+			}
+		} finally {
+			newEntries.delete();
+		}
+	}
+
+	/**
+	 * Read the central directory of the given zip file. The length of each
+	 * record spans its local header, data and data descriptor.
+	 * 
+	 * @param channel
+	 * @return The records in the order of the central directory
+	 * @throws IOException
+	 */
+	static List<ZipRecord> readCentralDirectory(FileChannel channel) throws IOException {
+		long fileSize = channel.size();
+		int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+		ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+		int end = tailSize - END_SIZE;
+		while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+			end--;
+		}
+		if (end < 0) {
+			throw new ZipException("Failed to find the end of the central directory");
+		}
+		int count = Short.toUnsignedInt(tail.getShort(end + 10));
+		long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+		long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+		if (count == MAX_ENTRIES || directorySize == MAX_OFFSET || directoryOffset == MAX_OFFSET) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+		ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+		List<ZipRecord> records = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int start = directory.position();
+			if (directory.getInt(start) != CENTRAL_SIGNATURE) {
+				throw new ZipException("Invalid central directory record at: " + (directoryOffset + start));
+			}
+			int nameLength = Short.toUnsignedInt(directory.getShort(start + 28));
+			int extraLength = Short.toUnsignedInt(directory.getShort(start + 30));
+			int commentLength = Short.toUnsignedInt(directory.getShort(start + 32));
+			long offset = Integer.toUnsignedLong(directory.getInt(start + CENTRAL_OFFSET));
+			if (offset == MAX_OFFSET) {
+				throw new ZipException("Zip64 archives are not supported");
+			}
+			byte[] centralRecord = new byte[CENTRAL_SIZE + nameLength + extraLength + commentLength];
+			directory.get(centralRecord);
+			String name = new String(centralRecord, CENTRAL_SIZE, nameLength, StandardCharsets.UTF_8);
+			records.add(new ZipRecord(name, offset, centralRecord));
+		}
+		// each entry ends where the next one, or the central directory, starts
+		List<ZipRecord> byOffset = new ArrayList<>(records);
+		byOffset.sort(Comparator.comparingLong(record -> record.offset));
+		for (int i = 0; i < byOffset.size(); i++) {
+			long next = i + 1 < byOffset.size() ? byOffset.get(i + 1).offset : directoryOffset;
+			byOffset.get(i).length = next - byOffset.get(i).offset;
+		}
+		return records;
+	}
+
+	/**
+	 * Copy the raw bytes of each entry that is not skipped to the output and
+	 * collect its central directory record, pointing to the new offset.
+	 * 
+	 * @return The number of copied entries
+	 */
+	private static int copyEntries(FileChannel source, List<ZipRecord> records, Set<String> skip, FileChannel out,
+			ByteArrayOutputStream centralDirectory) throws IOException {
+		int count = 0;
+		for (ZipRecord record : records) {
+			if (skip.contains(record.name)) {
+				continue;
+			}
+			long offset = out.position();
+			if (offset >= MAX_OFFSET) {
+				throw new ZipException("Zip64 archives are not supported");
+			}
+			long position = record.offset;
+			long remaining = record.length;
+			while (remaining > 0) {
+				long transferred = source.transferTo(position, remaining, out);
+				if (transferred <= 0) {
+					throw new EOFException("Unexpected end of entry: " + record.name);
+				}
+				position += transferred;
+				remaining -= transferred;
+			}
+			ByteBuffer.wrap(record.centralRecord).order(ByteOrder.LITTLE_ENDIAN).putInt(CENTRAL_OFFSET, (int) offset);
+			centralDirectory.write(record.centralRecord);
+			count++;
+		}
+		return count;
+	}
+
+	private static void writeEndOfCentralDirectory(FileChannel out, int count, byte[] centralDirectory)
+			throws IOException {
+		long directoryOffset = out.position();
+		if (count >= MAX_ENTRIES || directoryOffset + centralDirectory.length >= MAX_OFFSET) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+		writeFully(out, ByteBuffer.wrap(centralDirectory));
+		ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		end.putInt(END_SIGNATURE);
+		end.putShort((short) 0);
+		end.putShort((short) 0);
+		end.putShort((short) count);
+		end.putShort((short) count);
+		end.putInt(centralDirectory.length);
+		end.putInt((int) directoryOffset);
+		end.putShort((short) 0);
+		end.flip();
+		writeFully(out, end);
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of zip file");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * An entry of a zip file with its raw central directory record.
+	 */
+	static class ZipRecord {
+
+		private final String name;
+		private final long offset;
+		private final byte[] centralRecord;
+		private long length;
+
+		ZipRecord(String name, long offset, byte[] centralRecord) {
+			this.name = name;
+			this.offset = offset;
+			this.centralRecord = centralRecord;
+		}
+	}
 }
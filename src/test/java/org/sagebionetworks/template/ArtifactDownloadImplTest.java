@@ -1,17 +1,124 @@
 package org.sagebionetworks.template;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
-import org.junit.Test;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.utils.ArtifactCache;
 import org.sagebionetworks.template.utils.ArtifactDownload;
 import org.sagebionetworks.template.utils.ArtifactDownloadImpl;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
+@ExtendWith(MockitoExtension.class)
 public class ArtifactDownloadImplTest {
 
+    @Mock
+    HttpClient mockHttpClient;
+    @Mock
+    HttpResponse mockResponse;
+    @Mock
+    HttpResponse mockResumeResponse;
+    @Mock
+    StatusLine mockStatusLine;
+    @Mock
+    StatusLine mockResumeStatusLine;
+    @Mock
+    HttpEntity mockEntity;
+    @Mock
+    HttpEntity mockResumeEntity;
+    @Mock
+    HttpResponse mockHeadResponse;
+    @Mock
+    StatusLine mockHeadStatusLine;
+    @Mock
+    ArtifactCache mockCache;
+    @Mock
+    CachedArtifact mockCachedFile;
+    @Mock
+    ThreadProvider mockThreadProvider;
+    @Mock
+    LoggerFactory mockLoggerFactory;
+    @Mock
+    Logger mockLogger;
+    @Captor
+    ArgumentCaptor<HttpUriRequest> requestCaptor;
+
+    String url;
+    byte[] content;
+    ArtifactDownloadImpl downloader;
+    File file;
+
+    @BeforeEach
+    public void before() {
+        url = "https://sagebionetworks.jfrog.io/some/artifact.war";
+        content = "some artifact content".getBytes(StandardCharsets.UTF_8);
+        when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+        downloader = new ArtifactDownloadImpl(mockHttpClient, mockCache, mockThreadProvider, mockLoggerFactory);
+    }
+
+    @AfterEach
+    public void after() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    void setupResponse(byte[] body, String sha256) throws IOException {
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getFirstHeader(ArtifactDownloadImpl.SHA256_HEADER))
+                .thenReturn(new BasicHeader(ArtifactDownloadImpl.SHA256_HEADER, sha256));
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(body));
+    }
+
+    void setupHeaders(HttpResponse response, Map<String, String> headers) {
+        when(response.getFirstHeader(any())).thenAnswer(invocation -> {
+            String name = invocation.getArgument(0);
+            return headers.containsKey(name) ? new BasicHeader(name, headers.get(name)) : null;
+        });
+    }
+
     /**
      * This is an integration test for file download.
      */
@@ -20,7 +127,7 @@ public class ArtifactDownloadImplTest {
         // this is a small file
         String url = "https://sagebionetworks.jfrog.io/sagebionetworks/libs-releases-local/org/json/JSON-Java/maven-metadata.xml";
         HttpClient client = new TemplateGuiceModule().provideHttpClient();
-        ArtifactDownload downloader = new ArtifactDownloadImpl(client);
+        ArtifactDownload downloader = new ArtifactDownloadImpl(client, mockCache, new ThreadProviderImp(), new LoggerFactoryImpl());
         File temp = downloader.downloadFile(url);
         try {
             assertNotNull(temp);
@@ -31,4 +138,355 @@ public class ArtifactDownloadImplTest {
             }
         }
     }
+
+    @Test
+    public void testDownloadFileWithChecksum() throws IOException {
+        setupResponse(content, DigestUtils.sha256Hex(content));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse);
+        when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 3000L);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        verify(mockHttpClient).execute(requestCaptor.capture());
+        assertNull(requestCaptor.getValue().getFirstHeader(HttpHeaders.RANGE));
+        verify(mockLogger).info("Downloaded " + url + ": 0.0 MB in 2.0 s (0.0 MB/s)");
+    }
+
+    @Test
+    public void testDownloadFileWithLargeContent() throws IOException {
+        byte[] largeContent = new byte[ArtifactDownloadImpl.BUFFER_SIZE * 2 + 3];
+        for (int i = 0; i < largeContent.length; i++) {
+            largeContent[i] = (byte) i;
+        }
+        setupResponse(largeContent, DigestUtils.sha256Hex(largeContent));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse);
+        when(mockResponse.getFirstHeader(ArtifactDownloadImpl.SHA1_HEADER))
+                .thenReturn(new BasicHeader(ArtifactDownloadImpl.SHA1_HEADER, DigestUtils.sha1Hex(largeContent)));
+        when(mockThreadProvider.currentTimeMillis()).thenReturn(0L, 1000L);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(largeContent, Files.readAllBytes(file.toPath()));
+        verify(mockLogger).info("Downloaded " + url + ": 2.0 MB in 1.0 s (2.0 MB/s)");
+    }
+
+    @Test
+    public void testDownloadFileWithChecksumMismatch() throws IOException {
+        setupResponse(content, DigestUtils.sha256Hex("something else"));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse);
+
+        String message = assertThrows(RuntimeException.class, () -> {
+            // call under test
+            downloader.downloadFile(url);
+        }).getMessage();
+
+        assertTrue(message.startsWith("Checksum mismatch for file: " + url + " X-Checksum-Sha256 expected: "));
+    }
+
+    @Test
+    public void testDownloadFileWithResume() throws Exception {
+        int split = 5;
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        setupHeaders(mockResponse, Map.of(ArtifactDownloadImpl.SHA256_HEADER, DigestUtils.sha256Hex(content),
+                HttpHeaders.ETAG, "\"v1\""));
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(
+                new SequenceInputStream(new ByteArrayInputStream(content, 0, split), failing));
+        when(mockResumeResponse.getStatusLine()).thenReturn(mockResumeStatusLine);
+        when(mockResumeStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_PARTIAL_CONTENT);
+        when(mockResumeResponse.getEntity()).thenReturn(mockResumeEntity);
+        when(mockResumeEntity.getContent())
+                .thenReturn(new ByteArrayInputStream(content, split, content.length - split));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse, mockResumeResponse);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        verify(mockHttpClient, times(2)).execute(requestCaptor.capture());
+        List<HttpUriRequest> requests = requestCaptor.getAllValues();
+        assertNull(requests.get(0).getFirstHeader(HttpHeaders.RANGE));
+        assertEquals("bytes=5-", requests.get(1).getFirstHeader(HttpHeaders.RANGE).getValue());
+        assertEquals("\"v1\"", requests.get(1).getFirstHeader(HttpHeaders.IF_RANGE).getValue());
+        verify(mockLogger).warn(
+                "Download of " + url + " interrupted after 5 bytes, retrying (attempt 2 of 3): Connection reset");
+        verify(mockThreadProvider).sleep(ArtifactDownloadImpl.RETRY_BACKOFF_MS);
+    }
+
+    @Test
+    public void testDownloadFileWithChangedArtifact() throws Exception {
+        int split = 5;
+        byte[] changed = "some changed artifact content".getBytes(StandardCharsets.UTF_8);
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        setupHeaders(mockResponse, Map.of(ArtifactDownloadImpl.SHA256_HEADER, DigestUtils.sha256Hex(content),
+                HttpHeaders.ETAG, "\"v1\""));
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(
+                new SequenceInputStream(new ByteArrayInputStream(content, 0, split), failing));
+        // the artifact changed, the server ignores the range and sends the new version.
+        when(mockResumeResponse.getStatusLine()).thenReturn(mockResumeStatusLine);
+        when(mockResumeStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResumeResponse.getFirstHeader(ArtifactDownloadImpl.SHA256_HEADER))
+                .thenReturn(new BasicHeader(ArtifactDownloadImpl.SHA256_HEADER, DigestUtils.sha256Hex(changed)));
+        when(mockResumeResponse.getEntity()).thenReturn(mockResumeEntity);
+        when(mockResumeEntity.getContent()).thenReturn(new ByteArrayInputStream(changed));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse, mockResumeResponse);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(changed, Files.readAllBytes(file.toPath()));
+        verify(mockHttpClient, times(2)).execute(requestCaptor.capture());
+        HttpUriRequest resumeRequest = requestCaptor.getAllValues().get(1);
+        assertEquals("bytes=5-", resumeRequest.getFirstHeader(HttpHeaders.RANGE).getValue());
+        assertEquals("\"v1\"", resumeRequest.getFirstHeader(HttpHeaders.IF_RANGE).getValue());
+    }
+
+    @Test
+    public void testDownloadFileWithInterruptionWithoutValidator() throws Exception {
+        int split = 5;
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getFirstHeader(ArtifactDownloadImpl.SHA256_HEADER))
+                .thenReturn(new BasicHeader(ArtifactDownloadImpl.SHA256_HEADER, DigestUtils.sha256Hex(content)));
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(
+                new SequenceInputStream(new ByteArrayInputStream(content, 0, split), failing),
+                new ByteArrayInputStream(content));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        verify(mockHttpClient, times(2)).execute(requestCaptor.capture());
+        // nothing identifies the version of the partial download, start over.
+        for (HttpUriRequest request : requestCaptor.getAllValues()) {
+            assertNull(request.getFirstHeader(HttpHeaders.RANGE));
+            assertNull(request.getFirstHeader(HttpHeaders.IF_RANGE));
+        }
+    }
+
+    @Test
+    public void testDownloadFileWithFailedRequest() throws Exception {
+        setupResponse(content, DigestUtils.sha256Hex(content));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenThrow(new IOException("Connection refused"))
+                .thenThrow(new IOException("Connection refused")).thenReturn(mockResponse);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        verify(mockHttpClient, times(3)).execute(requestCaptor.capture());
+        for (HttpUriRequest request : requestCaptor.getAllValues()) {
+            assertNull(request.getFirstHeader(HttpHeaders.RANGE));
+        }
+        verify(mockThreadProvider).sleep(ArtifactDownloadImpl.RETRY_BACKOFF_MS);
+        verify(mockThreadProvider).sleep(ArtifactDownloadImpl.RETRY_BACKOFF_MS * 2);
+    }
+
+    @Test
+    public void testDownloadFileWithFailedResumeRequest() throws Exception {
+        int split = 5;
+        String lastModified = "Wed, 21 Oct 2026 07:28:00 GMT";
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        setupHeaders(mockResponse, Map.of(ArtifactDownloadImpl.SHA256_HEADER, DigestUtils.sha256Hex(content),
+                HttpHeaders.LAST_MODIFIED, lastModified));
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(
+                new SequenceInputStream(new ByteArrayInputStream(content, 0, split), failing));
+        when(mockResumeResponse.getStatusLine()).thenReturn(mockResumeStatusLine);
+        when(mockResumeStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_PARTIAL_CONTENT);
+        when(mockResumeResponse.getEntity()).thenReturn(mockResumeEntity);
+        when(mockResumeEntity.getContent())
+                .thenReturn(new ByteArrayInputStream(content, split, content.length - split));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse)
+                .thenThrow(new IOException("Connection refused")).thenReturn(mockResumeResponse);
+
+        // call under test
+        file = downloader.downloadFile(url);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        verify(mockHttpClient, times(3)).execute(requestCaptor.capture());
+        List<HttpUriRequest> requests = requestCaptor.getAllValues();
+        assertNull(requests.get(0).getFirstHeader(HttpHeaders.RANGE));
+        assertEquals("bytes=5-", requests.get(1).getFirstHeader(HttpHeaders.RANGE).getValue());
+        assertEquals("bytes=5-", requests.get(2).getFirstHeader(HttpHeaders.RANGE).getValue());
+        assertEquals(lastModified, requests.get(2).getFirstHeader(HttpHeaders.IF_RANGE).getValue());
+        verify(mockThreadProvider).sleep(ArtifactDownloadImpl.RETRY_BACKOFF_MS);
+        verify(mockThreadProvider).sleep(ArtifactDownloadImpl.RETRY_BACKOFF_MS * 2);
+    }
+
+    @Test
+    public void testDownloadFileWithTooManyFailedRequests() throws IOException {
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenThrow(new IOException("Connection refused"));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> {
+            // call under test
+            downloader.downloadFile(url);
+        });
+
+        assertEquals("Connection refused", e.getCause().getMessage());
+        verify(mockHttpClient, times(ArtifactDownloadImpl.MAX_ATTEMPTS)).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void testDownloadFileWithTooManyInterruptions() throws IOException {
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenThrow(new IOException("Connection reset"));
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> {
+            // call under test
+            downloader.downloadFile(url);
+        });
+
+        assertEquals("Connection reset", e.getCause().getMessage());
+        verify(mockHttpClient, times(ArtifactDownloadImpl.MAX_ATTEMPTS)).execute(any(HttpUriRequest.class));
+        verify(mockLogger, times(ArtifactDownloadImpl.MAX_ATTEMPTS - 1)).warn(anyString());
+    }
+
+    @Test
+    public void testDownloadFileWithFailedStatus() throws IOException {
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_NOT_FOUND);
+        when(mockStatusLine.getReasonPhrase()).thenReturn("Not Found");
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockResponse);
+
+        String message = assertThrows(RuntimeException.class, () -> {
+            // call under test
+            downloader.downloadFile(url);
+        }).getMessage();
+
+        assertEquals("Failed to download file: " + url + " Status code:404 reason: Not Found", message);
+    }
+
+    void setupHead(String headerName, String value) throws IOException {
+        when(mockHeadResponse.getStatusLine()).thenReturn(mockHeadStatusLine);
+        when(mockHeadStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockHeadResponse.getFirstHeader(any()))
+                .thenAnswer(invocation -> headerName.equals(invocation.getArgument(0)) ? new BasicHeader(headerName, value) : null);
+    }
+
+    @Test
+    public void testGetCachedFileWithHit() throws IOException {
+        String sha256 = DigestUtils.sha256Hex(content);
+        setupHead(ArtifactDownloadImpl.SHA256_HEADER, sha256);
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockHeadResponse);
+        when(mockCache.get(any())).thenReturn(mockCachedFile);
+
+        // call under test
+        CachedArtifact result = downloader.getCachedFile(url);
+
+        assertSame(mockCachedFile, result);
+        verify(mockCache).get(DigestUtils.sha256Hex(url + "\n" + sha256));
+        verify(mockHttpClient).execute(requestCaptor.capture());
+        assertTrue(requestCaptor.getValue() instanceof HttpHead);
+        verify(mockCache, never()).put(any(), any());
+    }
+
+    @Test
+    public void testGetCachedFileWithFailedHead() throws Exception {
+        String sha256 = DigestUtils.sha256Hex(content);
+        setupHead(ArtifactDownloadImpl.SHA256_HEADER, sha256);
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenThrow(new IOException("Connection refused"))
+                .thenReturn(mockHeadResponse);
+        when(mockCache.get(any())).thenReturn(mockCachedFile);
+
+        // call under test
+        CachedArtifact result = downloader.getCachedFile(url);
+
+        assertSame(mockCachedFile, result);
+        verify(mockCache).get(DigestUtils.sha256Hex(url + "\n" + sha256));
+        verify(mockHttpClient, times(2)).execute(any(HttpHead.class));
+        verify(mockThreadProvider).sleep(ArtifactDownloadImpl.RETRY_BACKOFF_MS);
+        verify(mockLogger).warn("Request HEAD " + url + " failed, retrying (attempt 2 of 3): Connection refused");
+    }
+
+    @Test
+    public void testGetCachedFileWithMiss() throws IOException {
+        String sha256 = DigestUtils.sha256Hex(content);
+        setupResponse(content, sha256);
+        setupHead(ArtifactDownloadImpl.SHA256_HEADER, sha256);
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockHeadResponse, mockResponse);
+        when(mockCache.put(any(), any())).thenReturn(mockCachedFile);
+
+        // call under test
+        CachedArtifact result = downloader.getCachedFile(url);
+
+        assertSame(mockCachedFile, result);
+        String key = DigestUtils.sha256Hex(url + "\n" + sha256);
+        verify(mockCache).get(key);
+        ArgumentCaptor<File> fileCaptor = ArgumentCaptor.forClass(File.class);
+        verify(mockCache).put(eq(key), fileCaptor.capture());
+        file = fileCaptor.getValue();
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testGetCachedFileWithETag() throws IOException {
+        setupResponse(content, null);
+        setupHead(HttpHeaders.ETAG, "\"some-etag\"");
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockHeadResponse, mockResponse);
+        when(mockCache.put(any(), any())).thenReturn(mockCachedFile);
+
+        // call under test
+        downloader.getCachedFile(url);
+
+        verify(mockCache).get(DigestUtils.sha256Hex(url + "\n\"some-etag\""));
+        ArgumentCaptor<File> fileCaptor = ArgumentCaptor.forClass(File.class);
+        verify(mockCache).put(any(), fileCaptor.capture());
+        file = fileCaptor.getValue();
+    }
+
+    @Test
+    public void testGetCachedFileWithoutVersion() throws IOException {
+        setupResponse(content, null);
+        when(mockHeadResponse.getStatusLine()).thenReturn(mockHeadStatusLine);
+        when(mockHeadStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_METHOD_NOT_ALLOWED);
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenReturn(mockHeadResponse, mockResponse);
+        when(mockCache.put(any(), any())).thenReturn(mockCachedFile);
+
+        // call under test
+        CachedArtifact result = downloader.getCachedFile(url);
+
+        assertSame(mockCachedFile, result);
+        verify(mockCache, never()).get(any());
+        // keyed by the content of the download
+        ArgumentCaptor<File> fileCaptor = ArgumentCaptor.forClass(File.class);
+        verify(mockCache).put(eq(DigestUtils.sha256Hex(url + "\n" + DigestUtils.sha256Hex(content))), fileCaptor.capture());
+        file = fileCaptor.getValue();
+    }
 }
@@ -0,0 +1,102 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Paths;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.dryrun.DryRunInputs;
+import org.sagebionetworks.template.dryrun.DryRunMode;
+import org.sagebionetworks.template.report.RunReport;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.retry.RetryMode;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.AmazonCloudFormationClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+
+@ExtendWith(MockitoExtension.class)
+public class AwsClientFactoryTest {
+
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+	@Mock
+	DryRunMode mockDryRunMode;
+	@Mock
+	RunReport mockRunReport;
+
+	AwsClientFactory factory;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		factory = new AwsClientFactory(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")),
+				AwsClientFactory.createClientConfiguration(), mockDryRunMode, mockRunReport, mockLoggerFactory);
+	}
+
+	@Test
+	public void testCreateClientConfiguration() {
+		// call under test
+		ClientConfiguration config = AwsClientFactory.createClientConfiguration();
+		assertEquals(AwsClientFactory.MAX_CONNECTIONS, config.getMaxConnections());
+		assertEquals(true, config.useTcpKeepAlive());
+		assertEquals(AwsClientFactory.CONNECTION_TTL_MS, config.getConnectionTTL());
+		assertEquals(RetryMode.ADAPTIVE, config.getRetryMode());
+	}
+
+	@Test
+	public void testBuild() {
+		when(mockDryRunMode.isEnabled()).thenReturn(false);
+
+		// call under test
+		AmazonS3 s3 = factory.build(AmazonS3ClientBuilder.standard());
+		AmazonCloudFormation cloudFormation = factory.build(AmazonCloudFormationClientBuilder.standard());
+		assertNotNull(s3);
+		assertNotNull(cloudFormation);
+		assertEquals(2, factory.getClientCount());
+		verify(mockLogger).info("Created AWS client: AmazonS3Client (1 clients with up to 50 pooled connections)");
+		verify(mockLogger)
+				.info("Created AWS client: AmazonCloudFormationClient (2 clients with up to 100 pooled connections)");
+	}
+
+	@Test
+	public void testBuildWithDryRun() {
+		DryRunMode dryRunMode = new DryRunMode(Paths.get("dry-run"), DryRunInputs.loadDefaults());
+		factory = new AwsClientFactory(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")),
+				AwsClientFactory.createClientConfiguration(), dryRunMode, mockRunReport, mockLoggerFactory);
+
+		// call under test
+		AmazonS3 s3 = factory.build(AmazonS3ClientBuilder.standard());
+
+		assertFalse(s3 instanceof AmazonS3Client);
+		// answered from the defaults without calling AWS
+		assertTrue(s3.doesObjectExist("bucket", "key"));
+		assertNotNull(s3.getBucketLifecycleConfiguration("bucket"));
+		assertEquals(1, factory.getClientCount());
+	}
+
+	@Test
+	public void testGetServiceName() {
+		assertEquals("AmazonS3", AwsClientFactory.getServiceName(AmazonS3ClientBuilder.standard()));
+		assertEquals("AmazonCloudFormation",
+				AwsClientFactory.getServiceName(AmazonCloudFormationClientBuilder.standard()));
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingCloudFormationClientTest {
+
+	@Mock
+	CloudFormationClientImpl mockDelegate;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	LookupCacheImpl cache;
+	CachingCloudFormationClient client;
+
+	String stackName;
+	Stack stack;
+	CreateOrUpdateStackRequest request;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		cache = new LookupCacheImpl(mockLoggerFactory);
+		client = new CachingCloudFormationClient(mockDelegate, cache);
+		stackName = "some-stack";
+		stack = new Stack().withStackName(stackName).withStackStatus(StackStatus.CREATE_COMPLETE);
+		request = new CreateOrUpdateStackRequest().withStackName(stackName);
+	}
+
+	@Test
+	public void testDescribeStack() {
+		when(mockDelegate.describeStack(stackName)).thenReturn(Optional.of(stack));
+
+		// call under test
+		assertEquals(Optional.of(stack), client.describeStack(stackName));
+		assertTrue(client.doesStackNameExist(stackName));
+
+		verify(mockDelegate, times(1)).describeStack(stackName);
+		assertEquals(1, cache.getHitCount(CachingCloudFormationClient.DESCRIBE_STACK));
+	}
+
+	@Test
+	public void testGetOutput() {
+		when(mockDelegate.getOutput(stackName, "one")).thenReturn("1");
+		when(mockDelegate.getOutput(stackName, "two")).thenReturn("2");
+
+		// call under test
+		assertEquals("1", client.getOutput(stackName, "one"));
+		assertEquals("1", client.getOutput(stackName, "one"));
+		assertEquals("2", client.getOutput(stackName, "two"));
+
+		verify(mockDelegate, times(1)).getOutput(stackName, "one");
+		verify(mockDelegate, times(1)).getOutput(stackName, "two");
+	}
+
+	@Test
+	public void testCreateOrUpdateStackInvalidates() {
+		when(mockDelegate.describeStack(stackName)).thenReturn(Optional.empty(), Optional.of(stack));
+		assertFalse(client.doesStackNameExist(stackName));
+
+		// call under test
+		client.createOrUpdateStack(request);
+
+		verify(mockDelegate).createOrUpdateStack(request);
+		assertTrue(client.doesStackNameExist(stackName));
+		verify(mockDelegate, times(2)).describeStack(stackName);
+	}
+
+	@Test
+	public void testCreateOrUpdateStackWithFailureInvalidates() {
+		when(mockDelegate.getOutput(stackName, "one")).thenReturn("1");
+		client.getOutput(stackName, "one");
+		doThrow(new IllegalStateException()).when(mockDelegate).createOrUpdateStack(request);
+
+		assertThrows(IllegalStateException.class, () -> {
+			// call under test
+			client.createOrUpdateStack(request);
+		});
+
+		client.getOutput(stackName, "one");
+		verify(mockDelegate, times(2)).getOutput(stackName, "one");
+	}
+
+	@Test
+	public void testUpdateAndCreateStackInvalidate() {
+		when(mockDelegate.getOutput(stackName, "one")).thenReturn("1");
+		client.getOutput(stackName, "one");
+
+		// call under test
+		client.updateStack(request);
+		client.getOutput(stackName, "one");
+		client.createStack(request);
+		client.getOutput(stackName, "one");
+
+		verify(mockDelegate).updateStack(request);
+		verify(mockDelegate).createStack(request);
+		verify(mockDelegate, times(3)).getOutput(stackName, "one");
+	}
+
+	@Test
+	public void testWaitForStackToCompleteInvalidates() throws InterruptedException {
+		when(mockDelegate.describeStack(stackName)).thenReturn(Optional.of(stack));
+		when(mockDelegate.waitForStackToComplete(stackName)).thenReturn(Optional.of(stack));
+		client.describeStack(stackName);
+
+		// call under test
+		assertEquals(Optional.of(stack), client.waitForStackToComplete(stackName));
+
+		client.describeStack(stackName);
+		verify(mockDelegate, times(2)).describeStack(stackName);
+	}
+
+	@Test
+	public void testWaitForStackToCompleteAsyncInvalidates() {
+		when(mockDelegate.describeStack(stackName)).thenReturn(Optional.of(stack));
+		CompletableFuture<Stack> future = new CompletableFuture<>();
+		when(mockDelegate.waitForStackToCompleteAsync(stackName)).thenReturn(future);
+		client.describeStack(stackName);
+
+		// call under test
+		CompletableFuture<Stack> result = client.waitForStackToCompleteAsync(stackName);
+
+		client.describeStack(stackName);
+		verify(mockDelegate, times(1)).describeStack(stackName);
+		future.complete(stack);
+		assertEquals(stack, result.join());
+		client.describeStack(stackName);
+		verify(mockDelegate, times(2)).describeStack(stackName);
+	}
+
+	@Test
+	public void testDeleteStackInvalidates() {
+		when(mockDelegate.describeStack(stackName)).thenReturn(Optional.of(stack), Optional.empty());
+		client.describeStack(stackName);
+
+		// call under test
+		client.deleteStack(stackName);
+
+		verify(mockDelegate).deleteStack(stackName);
+		assertEquals(Optional.empty(), client.describeStack(stackName));
+	}
+}
@@ -0,0 +1,77 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingEc2ClientTest {
+
+	@Mock
+	Ec2ClientImpl mockDelegate;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	LookupCacheImpl cache;
+	CachingEc2Client client;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		cache = new LookupCacheImpl(mockLoggerFactory);
+		client = new CachingEc2Client(mockDelegate, cache);
+	}
+
+	@Test
+	public void testGetAvailabilityZonesForInstanceType() {
+		when(mockDelegate.getAvailabilityZonesForInstanceType("t2.medium")).thenReturn(List.of("us-east-1a"));
+
+		// call under test
+		assertEquals(List.of("us-east-1a"), client.getAvailabilityZonesForInstanceType("t2.medium"));
+		assertEquals(List.of("us-east-1a"), client.getAvailabilityZonesForInstanceType("t2.medium"));
+
+		verify(mockDelegate, times(1)).getAvailabilityZonesForInstanceType("t2.medium");
+	}
+
+	@Test
+	public void testGetAvailabityZoneToSubnetMap() {
+		List<String> subnets = List.of("subnet1", "subnet2");
+		when(mockDelegate.getAvailabityZoneToSubnetMap(subnets)).thenReturn(Map.of("us-east-1a", "subnet1"));
+
+		// call under test
+		client.getAvailabityZoneToSubnetMap(subnets);
+		assertEquals(Map.of("us-east-1a", "subnet1"), client.getAvailabityZoneToSubnetMap(List.of("subnet1", "subnet2")));
+
+		verify(mockDelegate, times(1)).getAvailabityZoneToSubnetMap(subnets);
+	}
+
+	@Test
+	public void testGetAvailableSubnetsForInstanceType() {
+		List<String> subnets = List.of("subnet1", "subnet2");
+		when(mockDelegate.getAvailableSubnetsForInstanceType("t2.medium", subnets)).thenReturn(subnets);
+		when(mockDelegate.getAvailableSubnetsForInstanceType("t3.large", subnets)).thenReturn(List.of("subnet2"));
+
+		// call under test
+		assertEquals(subnets, client.getAvailableSubnetsForInstanceType("t2.medium", subnets));
+		assertEquals(subnets, client.getAvailableSubnetsForInstanceType("t2.medium", subnets));
+		assertEquals(List.of("subnet2"), client.getAvailableSubnetsForInstanceType("t3.large", subnets));
+
+		verify(mockDelegate, times(1)).getAvailableSubnetsForInstanceType("t2.medium", subnets);
+		assertEquals(1, cache.getHitCount(CachingEc2Client.AVAILABLE_SUBNETS_FOR_INSTANCE_TYPE));
+		assertEquals(2, cache.getMissCount(CachingEc2Client.AVAILABLE_SUBNETS_FOR_INSTANCE_TYPE));
+	}
+}
@@ -1,9 +1,14 @@
 package org.sagebionetworks.template;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -11,40 +16,72 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.report.RunReportImpl;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.repo.beanstalk.SourceBundle;
 
 import com.amazonaws.services.cloudformation.AmazonCloudFormation;
 import com.amazonaws.services.cloudformation.model.AmazonCloudFormationException;
+import com.amazonaws.services.cloudformation.model.Change;
+import com.amazonaws.services.cloudformation.model.ChangeAction;
+import com.amazonaws.services.cloudformation.model.ChangeSetStatus;
+import com.amazonaws.services.cloudformation.model.ChangeSetType;
+import com.amazonaws.services.cloudformation.model.CreateChangeSetRequest;
+import com.amazonaws.services.cloudformation.model.CreateChangeSetResult;
 import com.amazonaws.services.cloudformation.model.CreateStackRequest;
 import com.amazonaws.services.cloudformation.model.CreateStackResult;
+import com.amazonaws.services.cloudformation.model.DeleteChangeSetRequest;
 import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
+import com.amazonaws.services.cloudformation.model.DescribeChangeSetResult;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
 import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
 import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.ExecuteChangeSetRequest;
 import com.amazonaws.services.cloudformation.model.Output;
 import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Replacement;
+import com.amazonaws.services.cloudformation.model.ResourceChange;
 import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackEvent;
 import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.Tag;
 import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
 import com.amazonaws.services.cloudformation.model.UpdateStackResult;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
+import com.amazonaws.services.s3.model.BucketLifecycleConfiguration.Rule;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.lifecycle.LifecycleFilter;
+import com.amazonaws.services.s3.model.lifecycle.LifecyclePrefixPredicate;
+import com.amazonaws.services.s3.model.lifecycle.LifecycleTagPredicate;
 
 @ExtendWith(MockitoExtension.class)
 public class CloudFormationClientImplTest {
@@ -68,6 +105,11 @@ public class CloudFormationClientImplTest {
 	Logger mockLogger;
 	@Mock
 	ThreadProvider mockThreadProvider;
+	@Mock
+	StackStatusWatcher mockStackStatusWatcher;
+	
+	RunReportImpl runReport;
+	LookupCacheImpl lookupCache;
 
 	@Captor
 	ArgumentCaptor<DescribeStacksRequest> describeStackRequestCapture;
@@ -99,7 +141,10 @@ public class CloudFormationClientImplTest {
 	public void before() throws MalformedURLException {
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
 		
-		client = new CloudFormationClientImpl(mockCloudFormationClient, mockS3Client, mockConfig, mockLoggerFactory, mockThreadProvider);
+		// the report uses a real clock so the spans do not consume the stubbed times
+		runReport = new RunReportImpl(new ThreadProviderImp(), null, (Path) null, mockLoggerFactory);
+		lookupCache = new LookupCacheImpl(mockLoggerFactory);
+		client = new CloudFormationClientImpl(mockCloudFormationClient, mockS3Client, mockConfig, mockLoggerFactory, mockThreadProvider, mockStackStatusWatcher, runReport, lookupCache);
 
 		stackId = "theStackId";
 		Collection<Output> outputs = new ArrayList<>();
@@ -239,15 +284,244 @@ public class CloudFormationClientImplTest {
 	}
 	
 	@Test
-	public void testCreateOrUpdateAsUpdate() {
+	public void testCreateOrUpdateAsUpdate() throws InterruptedException {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(123L);
 		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(describeResult);
-		when(mockCloudFormationClient.updateStack(any(UpdateStackRequest.class))).thenReturn(updateResult);
+		when(mockCloudFormationClient.createChangeSet(any())).thenReturn(new CreateChangeSetResult().withId("changeSetId"));
+		ResourceChange change = new ResourceChange().withAction(ChangeAction.Modify).withLogicalResourceId("bucket")
+				.withResourceType("AWS::S3::Bucket").withReplacement(Replacement.False);
+		when(mockCloudFormationClient.describeChangeSet(any())).thenReturn(
+				new DescribeChangeSetResult().withStatus(ChangeSetStatus.CREATE_IN_PROGRESS),
+				new DescribeChangeSetResult().withStatus(ChangeSetStatus.CREATE_COMPLETE)
+						.withChanges(new Change().withResourceChange(change)));
 		// call under test
 		client.createOrUpdateStack(inputReqequest);
-		verify(mockCloudFormationClient).updateStack(any(UpdateStackRequest.class));
+		ArgumentCaptor<CreateChangeSetRequest> captor = ArgumentCaptor.forClass(CreateChangeSetRequest.class);
+		verify(mockCloudFormationClient).createChangeSet(captor.capture());
+		CreateChangeSetRequest request = captor.getValue();
+		assertEquals(stackName, request.getStackName());
+		assertEquals("deploy-123", request.getChangeSetName());
+		assertEquals(ChangeSetType.UPDATE.toString(), request.getChangeSetType());
+		Assertions.assertNotNull(request.getTemplateURL());
+		assertEquals(List.of(parameter), request.getParameters());
+		assertEquals(List.of(capabilities), request.getCapabilities());
+		verify(mockThreadProvider).sleep(CloudFormationClientImpl.INITIAL_SLEEP_TIME);
+		verify(mockLogger).info("Stack: 'someStackName' change: Modify 'bucket' (AWS::S3::Bucket) replacement: False");
+		verify(mockCloudFormationClient).executeChangeSet(
+				new ExecuteChangeSetRequest().withStackName(stackName).withChangeSetName("changeSetId"));
+		verify(mockCloudFormationClient, never()).updateStack(any(UpdateStackRequest.class));
 		verify(mockCloudFormationClient, never()).createStack(any(CreateStackRequest.class));
+		List<Span> spans = runReport.getSpans();
+		assertEquals(1, spans.size());
+		assertEquals(SpanCategory.STACK_UPDATE, spans.get(0).getCategory());
+		assertEquals(stackName, spans.get(0).getName());
+		assertEquals(inputReqequest.getTemplateBody().length(), spans.get(0).getBytes());
+		assertTrue(spans.get(0).isClosed());
 	}
-	
+
+	@Test
+	public void testCreateOrUpdateAsUpdateWithNoChanges() throws InterruptedException {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(describeResult);
+		when(mockCloudFormationClient.createChangeSet(any())).thenReturn(new CreateChangeSetResult().withId("changeSetId"));
+		when(mockCloudFormationClient.describeChangeSet(any())).thenReturn(new DescribeChangeSetResult()
+				.withStatus(ChangeSetStatus.FAILED).withStatusReason(CloudFormationClientImpl.NO_CHANGES_IN_CHANGE_SET
+						+ ". Submit different information to create a change set."));
+		when(mockCloudFormationClient.updateStack(any(UpdateStackRequest.class))).thenReturn(updateResult);
+		// call under test
+		client.createOrUpdateStack(inputReqequest);
+		verify(mockCloudFormationClient).deleteChangeSet(
+				new DeleteChangeSetRequest().withStackName(stackName).withChangeSetName("changeSetId"));
+		verify(mockCloudFormationClient, never()).executeChangeSet(any());
+		verify(mockLogger).info("There were no updates for stack: " + stackName);
+		// the stack is updated directly to record the deployment hash
+		verify(mockCloudFormationClient).updateStack(updateStackRequestCapture.capture());
+		UpdateStackRequest request = updateStackRequestCapture.getValue();
+		assertEquals(stackName, request.getStackName());
+		Assertions.assertNotNull(request.getTemplateURL());
+		assertEquals(List.of(parameter), request.getParameters());
+		assertEquals(List.of(capabilities), request.getCapabilities());
+	}
+
+	@Test
+	public void testCreateOrUpdateAsUpdateWithNoChangesAndNoUpdates() throws InterruptedException {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(describeResult);
+		when(mockCloudFormationClient.createChangeSet(any())).thenReturn(new CreateChangeSetResult().withId("changeSetId"));
+		when(mockCloudFormationClient.describeChangeSet(any())).thenReturn(new DescribeChangeSetResult()
+				.withStatus(ChangeSetStatus.FAILED).withStatusReason(CloudFormationClientImpl.NO_CHANGES_IN_CHANGE_SET));
+		when(mockCloudFormationClient.updateStack(any(UpdateStackRequest.class)))
+				.thenThrow(new AmazonCloudFormationException(CloudFormationClientImpl.NO_UPDATES_ARE_TO_BE_PERFORMED));
+		// call under test
+		client.createOrUpdateStack(inputReqequest);
+		verify(mockCloudFormationClient).deleteChangeSet(
+				new DeleteChangeSetRequest().withStackName(stackName).withChangeSetName("changeSetId"));
+		verify(mockLogger, times(2)).info("There were no updates for stack: " + stackName);
+	}
+
+	@Test
+	public void testCreateOrUpdateAsUpdateWithFailedChangeSet() {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(describeResult);
+		when(mockCloudFormationClient.createChangeSet(any())).thenReturn(new CreateChangeSetResult().withId("changeSetId"));
+		when(mockCloudFormationClient.describeChangeSet(any()))
+				.thenReturn(new DescribeChangeSetResult().withStatus(ChangeSetStatus.FAILED).withStatusReason("bad"));
+		RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> {
+			// call under test
+			client.createOrUpdateStack(inputReqequest);
+		});
+		assertEquals("Change set for stack: 'someStackName' failed.  Status: FAILED with reason: bad", e.getMessage());
+		verify(mockCloudFormationClient, never()).executeChangeSet(any());
+		// the failed change set is not left behind
+		verify(mockCloudFormationClient).deleteChangeSet(
+				new DeleteChangeSetRequest().withStackName(stackName).withChangeSetName("changeSetId"));
+		verify(mockCloudFormationClient, never()).updateStack(any(UpdateStackRequest.class));
+	}
+
+	@Test
+	public void testCreateOrUpdateAsUpdateWithFailedChangeSetAndFailedDelete() {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(describeResult);
+		when(mockCloudFormationClient.createChangeSet(any())).thenReturn(new CreateChangeSetResult().withId("changeSetId"));
+		when(mockCloudFormationClient.describeChangeSet(any()))
+				.thenReturn(new DescribeChangeSetResult().withStatus(ChangeSetStatus.FAILED).withStatusReason("bad"));
+		AmazonCloudFormationException deleteError = new AmazonCloudFormationException("delete failed");
+		when(mockCloudFormationClient.deleteChangeSet(any())).thenThrow(deleteError);
+		RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> {
+			// call under test
+			client.createOrUpdateStack(inputReqequest);
+		});
+		// the change set failure is reported, not the failure to clean it up
+		assertEquals("Change set for stack: 'someStackName' failed.  Status: FAILED with reason: bad", e.getMessage());
+		assertEquals(List.of(deleteError), List.of(e.getSuppressed()));
+	}
+
+	@Test
+	public void testCreateOrUpdateWithUnchangedStack() {
+		stack.setStackStatus(StackStatus.UPDATE_COMPLETE);
+		stack.withOutputs(new Output().withOutputKey(CloudFormationClientImpl.DEPLOYMENT_HASH_OUTPUT_KEY)
+				.withOutputValue(CloudFormationClientImpl.calculateDeploymentHash(inputReqequest)));
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(describeResult);
+		// call under test
+		client.createOrUpdateStack(inputReqequest);
+		verify(mockCloudFormationClient).describeStacks(any(DescribeStacksRequest.class));
+		verifyNoMoreInteractions(mockCloudFormationClient);
+		verifyNoMoreInteractions(mockS3Client);
+	}
+
+	@Test
+	public void testIsUnchanged() {
+		stack.withOutputs(new Output().withOutputKey(CloudFormationClientImpl.DEPLOYMENT_HASH_OUTPUT_KEY)
+				.withOutputValue("hash"));
+		stack.setStackStatus(StackStatus.CREATE_COMPLETE);
+		assertTrue(CloudFormationClientImpl.isUnchanged(stack, "hash"));
+		assertFalse(CloudFormationClientImpl.isUnchanged(stack, "otherHash"));
+		// a stack that was rolled back must be deployed again
+		stack.setStackStatus(StackStatus.UPDATE_ROLLBACK_COMPLETE);
+		assertFalse(CloudFormationClientImpl.isUnchanged(stack, "hash"));
+		stack.setStackStatus((String) null);
+		assertFalse(CloudFormationClientImpl.isUnchanged(stack, "hash"));
+	}
+
+	@Test
+	public void testCalculateDeploymentHash() {
+		Parameter other = new Parameter().withParameterKey("other").withParameterValue("value");
+		Tag tag = new Tag().withKey("key").withValue("value");
+		String hash = CloudFormationClientImpl.calculateDeploymentHash(
+				inputReqequest.withParameters(parameter, other).withTags(List.of(tag)));
+		assertEquals(64, hash.length());
+		// order does not matter
+		assertEquals(hash, CloudFormationClientImpl.calculateDeploymentHash(new CreateOrUpdateStackRequest()
+				.withTemplateBody(tempalteBody).withParameters(other, parameter)
+				.withCapabilities(capabilities[1], capabilities[0]).withTags(List.of(tag))));
+		// everything deployed is part of the hash
+		assertNotEquals(hash, CloudFormationClientImpl.calculateDeploymentHash(inputReqequest.withTemplateBody("changed")));
+		assertNotEquals(hash, CloudFormationClientImpl.calculateDeploymentHash(inputReqequest.withTemplateBody(tempalteBody)
+				.withParameters(parameter, new Parameter().withParameterKey("other").withParameterValue("changed"))));
+		assertNotEquals(hash, CloudFormationClientImpl.calculateDeploymentHash(inputReqequest.withParameters(parameter, other)
+				.withTags(List.of(new Tag().withKey("key").withValue("changed")))));
+	}
+
+	@Test
+	public void testWithDeploymentHash() {
+		inputReqequest.withTemplateBody("{\"Resources\":{},\"Outputs\":{\"one\":{\"Value\":\"1\"}}}").withTags(List.of())
+				.withEnableTerminationProtection(true);
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		JSONObject outputs = new JSONObject(result.getTemplateBody()).getJSONObject("Outputs");
+		assertEquals("1", outputs.getJSONObject("one").getString("Value"));
+		assertEquals("hash", outputs.getJSONObject(CloudFormationClientImpl.DEPLOYMENT_HASH_OUTPUT_KEY).getString("Value"));
+		assertEquals(inputReqequest.withTemplateBody(result.getTemplateBody()), result);
+	}
+
+	@Test
+	public void testWithDeploymentHashWithNoOutputs() {
+		inputReqequest.withTemplateBody("{\"Resources\":{}}");
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals("hash", new JSONObject(result.getTemplateBody()).getJSONObject("Outputs")
+				.getJSONObject(CloudFormationClientImpl.DEPLOYMENT_HASH_OUTPUT_KEY).getString("Value"));
+	}
+
+	@Test
+	public void testWithDeploymentHashKeepsKeyOrder() {
+		String template = "{\n  \"Resources\": {\"b\": {\"Outputs\": \"{\\\"}\"}, \"a\": {}},\n  \"Outputs\" : {\n    \"one\": {\"Value\": \"1\"}\n  },\n  \"Conditions\": {}\n}";
+		inputReqequest.withTemplateBody(template);
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals("{\"Resources\":{\"b\":{\"Outputs\":\"{\\\"}\"},\"a\":{}},"
+				+ "\"Outputs\":{\"one\":{\"Value\":\"1\"},\"DeploymentHash\":{\"Value\":\"hash\"}},\"Conditions\":{}}",
+				result.getTemplateBody());
+	}
+
+	@Test
+	public void testWithDeploymentHashWithEmptyOutputs() {
+		inputReqequest.withTemplateBody("{\"Outputs\": {}}");
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals("{\"Outputs\":{\"DeploymentHash\":{\"Value\":\"hash\"}}}", result.getTemplateBody());
+	}
+
+	@Test
+	public void testWithDeploymentHashWithEmptyTemplate() {
+		inputReqequest.withTemplateBody("{ }");
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals("{\"Outputs\":{\"DeploymentHash\":{\"Value\":\"hash\"}}}", result.getTemplateBody());
+	}
+
+	@Test
+	public void testWithDeploymentHashWithOutputsNotAnObject() {
+		inputReqequest.withTemplateBody("{\"Outputs\": []}");
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals(inputReqequest, result);
+	}
+
+	@Test
+	public void testWithDeploymentHashWithArrayTemplate() {
+		inputReqequest.withTemplateBody("[]");
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals(inputReqequest, result);
+	}
+
+	@Test
+	public void testWithDeploymentHashWithUnclosedTemplate() {
+		inputReqequest.withTemplateBody("{\"Resources\": {}");
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals(inputReqequest, result);
+	}
+
+	@Test
+	public void testWithDeploymentHashWithNonJsonTemplate() {
+		// call under test
+		CreateOrUpdateStackRequest result = CloudFormationClientImpl.withDeploymentHash(inputReqequest, "hash");
+		assertEquals(inputReqequest, result);
+	}
+
 	@Test
 	public void testCreateOrUpdateAsCreate() {
 		when(mockCloudFormationClient.createStack(any(CreateStackRequest.class))).thenReturn(createResult);
@@ -260,16 +534,18 @@ public class CloudFormationClientImplTest {
 		verify(mockCloudFormationClient).createStack(any(CreateStackRequest.class));
 	}
 	
+	@Test
+	public void testCreateTemplateKey() {
+		// call under test
+		assertEquals("templates/someStackName-" + DigestUtils.sha256Hex(tempalteBody) + ".json",
+				CloudFormationClientImpl.createTemplateKey(stackName, tempalteBody));
+	}
+	
 	@Test
 	public void testSaveTempalteToS3() {
-		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		SourceBundle bundle = new SourceBundle(bucket, CloudFormationClientImpl.createTemplateKey(stackName, tempalteBody));
 		// call under test
-		SourceBundle bundle = client.saveTempalteToS3(stackName, tempalteBody);
-		Assertions.assertNotNull(bundle);
-		Assertions.assertEquals(bucket, bundle.getBucket());
-		Assertions.assertNotNull(bundle.getKey());
-		Assertions.assertTrue(bundle.getKey().startsWith("templates/someStackName"));
-		Assertions.assertTrue(bundle.getKey().endsWith(".json"));
+		assertTrue(client.saveTempalteToS3(bundle, tempalteBody));
 		ArgumentCaptor<PutObjectRequest> requestCapture = ArgumentCaptor.forClass(PutObjectRequest.class);
 		verify(mockS3Client).putObject(requestCapture.capture());
 		PutObjectRequest request = requestCapture.getValue();
@@ -281,29 +557,177 @@ public class CloudFormationClientImplTest {
 	}
 	
 	@Test
-	public void testDeleteTemplate() {
-		String key = "someKey";
-		SourceBundle bundle = new SourceBundle(bucket, key);
+	public void testSaveTempalteToS3WithExistingTemplate() {
+		SourceBundle bundle = new SourceBundle(bucket, CloudFormationClientImpl.createTemplateKey(stackName, tempalteBody));
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(TimeUnit.DAYS.toMillis(100));
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setLastModified(new Date(TimeUnit.DAYS.toMillis(90)));
+		when(mockS3Client.getObjectMetadata(any(), any())).thenReturn(metadata);
 		// call under test
-		client.deleteTemplate(bundle);
-		verify(mockS3Client).deleteObject(bucket, key);
+		assertFalse(client.saveTempalteToS3(bundle, tempalteBody));
+		verify(mockS3Client).getObjectMetadata(bucket, bundle.getKey());
+		verify(mockS3Client, never()).putObject(any(PutObjectRequest.class));
 	}
-	
+
+	@Test
+	public void testSaveTempalteToS3WithTemplateCloseToExpiration() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(TimeUnit.DAYS.toMillis(100));
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setLastModified(new Date(TimeUnit.DAYS.toMillis(100 - CloudFormationClientImpl.TEMPLATE_REUSE_DAYS)));
+		when(mockS3Client.getObjectMetadata(any(), any())).thenReturn(metadata);
+		// call under test
+		assertTrue(client.saveTempalteToS3(new SourceBundle(bucket, "key"), tempalteBody));
+		verify(mockS3Client).putObject(any(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testSaveTempalteToS3WithMissingTemplate() {
+		AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+		notFound.setStatusCode(404);
+		when(mockS3Client.getObjectMetadata(any(), any())).thenThrow(notFound);
+		// call under test
+		assertTrue(client.saveTempalteToS3(new SourceBundle(bucket, "key"), tempalteBody));
+		verify(mockS3Client).putObject(any(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testSaveTempalteToS3WithMetadataError() {
+		AmazonS3Exception denied = new AmazonS3Exception("Access Denied");
+		denied.setStatusCode(403);
+		when(mockS3Client.getObjectMetadata(any(), any())).thenThrow(denied);
+		Assertions.assertThrows(AmazonS3Exception.class, () -> {
+			// call under test
+			client.saveTempalteToS3(new SourceBundle(bucket, "key"), tempalteBody);
+		});
+	}
+
+	@Test
+	public void testIsTemplateExpirationConfigured() {
+		Rule otherRule = new Rule().withId("other").withStatus(BucketLifecycleConfiguration.ENABLED).withExpirationInDays(1)
+				.withFilter(new LifecycleFilter(null));
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket))
+				.thenReturn(new BucketLifecycleConfiguration().withRules(otherRule, templateExpirationRule()));
+		// call under test
+		assertTrue(client.isTemplateExpirationConfigured(bucket));
+		assertTrue(client.isTemplateExpirationConfigured(bucket));
+		// only checked once per run
+		verify(mockS3Client).getBucketLifecycleConfiguration(bucket);
+		verify(mockS3Client, never()).setBucketLifecycleConfiguration(any(), any());
+	}
+
+	@Test
+	public void testIsTemplateExpirationConfiguredWithoutRule() {
+		Rule otherRule = new Rule().withId("other").withStatus(BucketLifecycleConfiguration.ENABLED).withExpirationInDays(30)
+				.withFilter(new LifecycleFilter(new LifecyclePrefixPredicate("other/")));
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket))
+				.thenReturn(new BucketLifecycleConfiguration().withRules(otherRule));
+		// call under test
+		assertFalse(client.isTemplateExpirationConfigured(bucket));
+		verify(mockLogger).warn("The bucket: theBucket does not expire the templates, they will be deleted after use");
+		verify(mockS3Client, never()).setBucketLifecycleConfiguration(any(), any());
+	}
+
+	@Test
+	public void testIsTemplateExpirationConfiguredWithoutLifecycle() {
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket)).thenReturn(null);
+		// call under test
+		assertFalse(client.isTemplateExpirationConfigured(bucket));
+	}
+
+	@Test
+	public void testIsTemplateExpirationConfiguredWithError() {
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket)).thenThrow(new AmazonS3Exception("Access Denied"));
+		// call under test
+		assertFalse(client.isTemplateExpirationConfigured(bucket));
+		assertFalse(client.isTemplateExpirationConfigured(bucket));
+		verify(mockS3Client).getBucketLifecycleConfiguration(bucket);
+	}
+
+	@Test
+	public void testIsTemplateExpirationRule() {
+		assertTrue(CloudFormationClientImpl.isTemplateExpirationRule(templateExpirationRule()));
+		// the whole bucket
+		assertTrue(CloudFormationClientImpl.isTemplateExpirationRule(templateExpirationRule().withFilter(new LifecycleFilter(null))));
+		assertFalse(CloudFormationClientImpl.isTemplateExpirationRule(templateExpirationRule().withStatus(BucketLifecycleConfiguration.DISABLED)));
+		// the templates would expire while reused
+		assertFalse(CloudFormationClientImpl.isTemplateExpirationRule(templateExpirationRule().withExpirationInDays(CloudFormationClientImpl.TEMPLATE_REUSE_DAYS)));
+		assertFalse(CloudFormationClientImpl.isTemplateExpirationRule(templateExpirationRule()
+				.withFilter(new LifecycleFilter(new LifecyclePrefixPredicate("templates/other")))));
+		assertFalse(CloudFormationClientImpl.isTemplateExpirationRule(templateExpirationRule()
+				.withFilter(new LifecycleFilter(new LifecycleTagPredicate(new com.amazonaws.services.s3.model.Tag("key", "value"))))));
+		// transitions only
+		assertFalse(CloudFormationClientImpl.isTemplateExpirationRule(new Rule().withStatus(BucketLifecycleConfiguration.ENABLED)
+				.withFilter(new LifecycleFilter(null))));
+	}
+
+	Rule templateExpirationRule() {
+		return new Rule().withId("retentionRule").withStatus(BucketLifecycleConfiguration.ENABLED).withExpirationInDays(30)
+				.withFilter(new LifecycleFilter(new LifecyclePrefixPredicate(CloudFormationClientImpl.TEMPLATES_PREFIX)));
+	}
+
 	@Test
 	public void testExecuteWithS3Template() {
 		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket))
+				.thenReturn(new BucketLifecycleConfiguration().withRules(templateExpirationRule()));
 		when(mockFunction.apply(anyString())).thenReturn(stackId);
 		// call under test
 		client.executeWithS3Template(inputReqequest, mockFunction);
 		verify(mockS3Client).putObject(any(PutObjectRequest.class));
 		verify(mockFunction).apply(anyString());
-		verify(mockS3Client).deleteObject(anyString(), anyString());
+		// templates are expired by the bucket lifecycle
+		verify(mockS3Client, never()).deleteObject(anyString(), anyString());
+	}
+	
+	@Test
+	public void testExecuteWithS3TemplateWithoutExpiration() {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket)).thenReturn(null);
+		when(mockFunction.apply(anyString())).thenReturn(stackId);
+		// call under test
+		client.executeWithS3Template(inputReqequest, mockFunction);
+		String key = CloudFormationClientImpl.createTemplateKey(stackName, tempalteBody);
+		InOrder inOrder = inOrder(mockS3Client, mockFunction);
+		inOrder.verify(mockS3Client).putObject(any(PutObjectRequest.class));
+		inOrder.verify(mockFunction).apply("https://s3.amazonaws.com/theBucket/" + key);
+		// without the expiration the uploaded template is deleted after use
+		inOrder.verify(mockS3Client).deleteObject(bucket, key);
+	}
+	
+	@Test
+	public void testExecuteWithS3TemplateWithoutExpirationAndError() {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket)).thenReturn(null);
+		when(mockFunction.apply(anyString())).thenThrow(new AmazonCloudFormationException("some other error"));
+		Assertions.assertThrows(RuntimeException.class, () -> {
+			// call under test
+			client.executeWithS3Template(inputReqequest, mockFunction);
+		});
+		verify(mockS3Client).deleteObject(bucket, CloudFormationClientImpl.createTemplateKey(stackName, tempalteBody));
 	}
 	
+	@Test
+	public void testExecuteWithS3TemplateWithReusedTemplate() {
+		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(TimeUnit.DAYS.toMillis(100));
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setLastModified(new Date(TimeUnit.DAYS.toMillis(90)));
+		when(mockS3Client.getObjectMetadata(any(), any())).thenReturn(metadata);
+		when(mockFunction.apply(anyString())).thenReturn(stackId);
+		// call under test
+		client.executeWithS3Template(inputReqequest, mockFunction);
+		verify(mockFunction).apply(anyString());
+		// a reused template is not deleted, so the lifecycle is not checked
+		verify(mockS3Client, never()).putObject(any(PutObjectRequest.class));
+		verify(mockS3Client, never()).getBucketLifecycleConfiguration(anyString());
+		verify(mockS3Client, never()).deleteObject(anyString(), anyString());
+	}
 	
 	@Test
 	public void testExecuteWithS3TemplateNoUpdates() {
 		when(mockConfig.getConfigurationBucket()).thenReturn(bucket);
+		when(mockS3Client.getBucketLifecycleConfiguration(bucket))
+				.thenReturn(new BucketLifecycleConfiguration().withRules(templateExpirationRule()));
 		AmazonCloudFormationException exception = new AmazonCloudFormationException(CloudFormationClientImpl.NO_UPDATES_ARE_TO_BE_PERFORMED);
 		
 		when(mockFunction.apply(anyString())).thenThrow(exception);
@@ -311,8 +735,8 @@ public class CloudFormationClientImplTest {
 		client.executeWithS3Template(inputReqequest, mockFunction);
 		verify(mockS3Client).putObject(any(PutObjectRequest.class));
 		verify(mockFunction).apply(anyString());
-		verify(mockS3Client).deleteObject(anyString(), anyString());
-		verify(mockLogger).info(any(String.class));
+		verify(mockS3Client, never()).deleteObject(anyString(), anyString());
+		verify(mockLogger).info("There were no updates for stack: " + stackName);
 	}
 
 	@Test
@@ -354,6 +778,7 @@ public class CloudFormationClientImplTest {
 		initStack.setStackStatus(StackStatus.CREATE_IN_PROGRESS);
 		stack.setStackStatus(StackStatus.CREATE_IN_PROGRESS);
 		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(initDescribeResult, describeResult);
+		when(mockCloudFormationClient.describeStackEvents(any())).thenReturn(new DescribeStackEventsResult());
 		when(mockThreadProvider.currentTimeMillis()).thenReturn(1L, 2L,3L,4L,Long.MAX_VALUE);
 		// call under test
 		try {
@@ -373,6 +798,7 @@ public class CloudFormationClientImplTest {
 		initStack.setStackStatus(StackStatus.UPDATE_IN_PROGRESS);
 		stack.setStackStatus(StackStatus.UPDATE_IN_PROGRESS);
 		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(initDescribeResult, describeResult);
+		when(mockCloudFormationClient.describeStackEvents(any())).thenReturn(new DescribeStackEventsResult());
 		when(mockThreadProvider.currentTimeMillis()).thenReturn(1L, 2L,3L,4L,Long.MAX_VALUE);		// call under test
 		try {
 			client.waitForStackToComplete(stackName);
@@ -391,6 +817,7 @@ public class CloudFormationClientImplTest {
 		initStack.setStackStatus(StackStatus.UPDATE_IN_PROGRESS);
 		stack.setStackStatus(StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS);
 		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(initDescribeResult, describeResult);
+		when(mockCloudFormationClient.describeStackEvents(any())).thenReturn(new DescribeStackEventsResult());
 		when(mockThreadProvider.currentTimeMillis()).thenReturn(1L, 2L,3L,4L,Long.MAX_VALUE);
 		// call under test
 		try {
@@ -405,6 +832,91 @@ public class CloudFormationClientImplTest {
 		verify(mockThreadProvider, times(3)).sleep(any(Long.class));
 	}
 	
+	@Test
+	public void testWaitForStackToCompleteWithBackoff() throws InterruptedException {
+		initStack.setStackStatus(StackStatus.CREATE_IN_PROGRESS);
+		stack.setStackStatus(StackStatus.CREATE_IN_PROGRESS);
+		Stack complete = new Stack().withStackId(stackId).withStackStatus(StackStatus.CREATE_COMPLETE);
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(initDescribeResult,
+				describeResult, describeResult, describeResult, new DescribeStacksResult().withStacks(complete));
+		when(mockCloudFormationClient.describeStackEvents(any())).thenReturn(new DescribeStackEventsResult());
+		// call under test
+		Stack result = client.waitForStackToComplete(stackName).get();
+		assertEquals(complete, result);
+		// each poll without progress doubles the sleep.
+		InOrder inOrder = inOrder(mockThreadProvider);
+		inOrder.verify(mockThreadProvider).sleep(1000L);
+		inOrder.verify(mockThreadProvider).sleep(2000L);
+		inOrder.verify(mockThreadProvider).sleep(4000L);
+		verify(mockThreadProvider, times(3)).sleep(anyLong());
+	}
+
+	@Test
+	public void testWaitForStackToCompleteWithTerminalEvent() throws InterruptedException {
+		initStack.setStackStatus(StackStatus.UPDATE_IN_PROGRESS);
+		stack.setStackStatus(StackStatus.UPDATE_IN_PROGRESS);
+		Stack complete = new Stack().withStackId(stackId).withStackStatus(StackStatus.UPDATE_COMPLETE);
+		when(mockCloudFormationClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(initDescribeResult,
+				describeResult, new DescribeStacksResult().withStacks(complete));
+		StackEvent start = new StackEvent().withEventId("1").withStackName(stackName).withLogicalResourceId(stackName)
+				.withResourceType(StackEventTail.STACK_RESOURCE_TYPE).withResourceStatus("UPDATE_IN_PROGRESS");
+		StackEvent resource = new StackEvent().withEventId("2").withStackName(stackName).withLogicalResourceId("bucket")
+				.withResourceType("AWS::S3::Bucket").withResourceStatus("UPDATE_FAILED").withResourceStatusReason("nope");
+		StackEvent end = new StackEvent().withEventId("3").withStackName(stackName).withLogicalResourceId(stackName)
+				.withResourceType(StackEventTail.STACK_RESOURCE_TYPE).withResourceStatus("UPDATE_COMPLETE");
+		when(mockCloudFormationClient.describeStackEvents(any()))
+				.thenReturn(new DescribeStackEventsResult().withStackEvents(end, resource, start));
+		// call under test
+		Stack result = client.waitForStackToComplete(stackName).get();
+		assertEquals(complete, result);
+		// the stack published its final event so there is no need to sleep.
+		verify(mockThreadProvider, never()).sleep(anyLong());
+		verify(mockCloudFormationClient).describeStackEvents(new DescribeStackEventsRequest().withStackName(stackName));
+		InOrder inOrder = inOrder(mockLogger);
+		inOrder.verify(mockLogger).info("Stack: 'someStackName' resource: 'someStackName' (AWS::CloudFormation::Stack) UPDATE_IN_PROGRESS");
+		inOrder.verify(mockLogger).info("Stack: 'someStackName' resource: 'bucket' (AWS::S3::Bucket) UPDATE_FAILED reason: nope");
+		inOrder.verify(mockLogger).info("Stack: 'someStackName' resource: 'someStackName' (AWS::CloudFormation::Stack) UPDATE_COMPLETE");
+		List<Span> spans = runReport.getSpans();
+		assertEquals(1, spans.size());
+		assertEquals(SpanCategory.STACK_WAIT, spans.get(0).getCategory());
+		assertEquals(stackName, spans.get(0).getName());
+		assertTrue(spans.get(0).isClosed());
+	}
+
+	@Test
+	public void testWaitForStackToCompleteAsync() {
+		CompletableFuture<Stack> future = new CompletableFuture<>();
+		when(mockStackStatusWatcher.watch(stackName)).thenReturn(future);
+		// call under test
+		CompletableFuture<Stack> result = client.waitForStackToCompleteAsync(stackName);
+		Span span = runReport.getSpans().get(0);
+		assertEquals(SpanCategory.STACK_WAIT, span.getCategory());
+		assertFalse(span.isClosed());
+		// the span is not attached to the calling thread
+		runReport.recordApiCall("AmazonCloudFormation.DescribeStacks");
+		assertEquals(0, span.getApiCalls());
+		Stack stack = new Stack().withStackName(stackName);
+		future.complete(stack);
+		assertEquals(stack, result.join());
+		assertTrue(span.isClosed());
+	}
+
+	@Test
+	public void testNextSleepTime() {
+		// no progress backs off
+		assertEquals(2000L, CloudFormationClientImpl.nextSleepTime(1000L, false, false));
+		assertEquals(CloudFormationClientImpl.SLEEP_TIME, CloudFormationClientImpl.nextSleepTime(8000L, false, false));
+		// progress keeps the current sleep
+		assertEquals(1000L, CloudFormationClientImpl.nextSleepTime(1000L, true, false));
+		// long running resources are allowed a longer sleep
+		assertEquals(16000L, CloudFormationClientImpl.nextSleepTime(8000L, false, true));
+		assertEquals(CloudFormationClientImpl.LONG_RUNNING_SLEEP_TIME,
+				CloudFormationClientImpl.nextSleepTime(16000L, false, true));
+		// back to the short limit once the long running resources are done
+		assertEquals(CloudFormationClientImpl.SLEEP_TIME,
+				CloudFormationClientImpl.nextSleepTime(CloudFormationClientImpl.LONG_RUNNING_SLEEP_TIME, true, false));
+	}
+
 	@Test
 	public void testWaitForStackToCompleteCreateFailed() {
 		stack.setStackStatus(StackStatus.CREATE_FAILED);
@@ -0,0 +1,185 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
+import com.amazonaws.services.securitytoken.model.GetSessionTokenRequest;
+
+@ExtendWith(MockitoExtension.class)
+public class LookupCacheImplTest {
+
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+	@Mock
+	AWSSecurityTokenService mockSts;
+
+	LookupCacheImpl cache;
+	AtomicInteger loads;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		cache = new LookupCacheImpl(mockLoggerFactory);
+		loads = new AtomicInteger();
+	}
+
+	String load(String value) {
+		loads.incrementAndGet();
+		return value;
+	}
+
+	@Test
+	public void testGet() {
+		// call under test
+		assertEquals("one", cache.get("lookup", "stack", List.of("a"), () -> load("one")));
+		assertEquals("one", cache.get("lookup", "stack", List.of("a"), () -> load("two")));
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHitCount("lookup"));
+		assertEquals(1, cache.getMissCount("lookup"));
+	}
+
+	@Test
+	public void testGetWithDifferentArguments() {
+		// call under test
+		assertEquals("one", cache.get("lookup", "stack", List.of("a"), () -> load("one")));
+		assertEquals("two", cache.get("lookup", "stack", List.of("b"), () -> load("two")));
+		assertEquals("three", cache.get("other", "stack", List.of("a"), () -> load("three")));
+
+		assertEquals(3, loads.get());
+		assertEquals(0, cache.getHitCount("lookup"));
+		assertEquals(2, cache.getMissCount("lookup"));
+	}
+
+	@Test
+	public void testGetWithFailure() {
+		IllegalStateException error = new IllegalStateException("failed");
+
+		assertSame(error, assertThrows(IllegalStateException.class, () -> {
+			// call under test
+			cache.get("lookup", null, Collections.emptyList(), () -> {
+				throw error;
+			});
+		}));
+
+		// failures are not cached
+		assertEquals("one", cache.get("lookup", null, Collections.emptyList(), () -> load("one")));
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.get("lookup", "stack", List.of("a"), () -> load("one"));
+		cache.get("lookup", "other", List.of("a"), () -> load("one"));
+		cache.get("lookup", null, List.of("a"), () -> load("one"));
+
+		// call under test
+		cache.invalidate("stack");
+
+		assertEquals("two", cache.get("lookup", "stack", List.of("a"), () -> load("two")));
+		assertEquals("one", cache.get("lookup", "other", List.of("a"), () -> load("two")));
+		assertEquals("one", cache.get("lookup", null, List.of("a"), () -> load("two")));
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void testGetCoalescesConcurrentCalls() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(() -> cache.get("lookup", null, List.of("a"), () -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return load("one");
+			}));
+			started.await();
+			Future<String> second = executor.submit(() -> cache.get("lookup", null, List.of("a"), () -> load("two")));
+			// the second call is waiting on the first
+			while (cache.getHitCount("lookup") == 0) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			assertEquals("one", first.get());
+			assertEquals("one", second.get());
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCreateCachingProxy() {
+		GetCallerIdentityResult result = new GetCallerIdentityResult().withAccount("123");
+		when(mockSts.getCallerIdentity(any())).thenReturn(result);
+
+		// call under test
+		AWSSecurityTokenService proxy = cache.createCachingProxy(AWSSecurityTokenService.class, mockSts,
+				Set.of("getCallerIdentity"));
+
+		assertSame(result, proxy.getCallerIdentity(new GetCallerIdentityRequest()));
+		assertSame(result, proxy.getCallerIdentity(new GetCallerIdentityRequest()));
+		proxy.getSessionToken(new GetSessionTokenRequest());
+		proxy.getSessionToken(new GetSessionTokenRequest());
+
+		verify(mockSts, times(1)).getCallerIdentity(any());
+		verify(mockSts, times(2)).getSessionToken(any());
+		assertEquals(1, cache.getHitCount("AWSSecurityTokenService.getCallerIdentity"));
+	}
+
+	@Test
+	public void testCreateCachingProxyWithException() {
+		IllegalArgumentException error = new IllegalArgumentException("bad");
+		when(mockSts.getCallerIdentity(any())).thenThrow(error);
+		AWSSecurityTokenService proxy = cache.createCachingProxy(AWSSecurityTokenService.class, mockSts,
+				Set.of("getCallerIdentity"));
+
+		assertSame(error, assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			proxy.getCallerIdentity(new GetCallerIdentityRequest());
+		}));
+	}
+
+	@Test
+	public void testLogStatistics() {
+		cache.get("b", null, List.of(), () -> load("one"));
+		cache.get("a", null, List.of(), () -> load("one"));
+		cache.get("a", null, List.of(), () -> load("one"));
+
+		// call under test
+		cache.logStatistics();
+
+		verify(mockLogger).info("Lookup cache a: 1 hits, 1 misses");
+		verify(mockLogger).info("Lookup cache b: 0 hits, 1 misses");
+	}
+}
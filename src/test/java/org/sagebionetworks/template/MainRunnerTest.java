@@ -0,0 +1,73 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.report.RunReport;
+
+import com.google.inject.Injector;
+
+@ExtendWith(MockitoExtension.class)
+public class MainRunnerTest {
+
+	@Mock
+	Injector mockInjector;
+	@Mock
+	RunReport mockRunReport;
+	@Mock
+	LookupCache mockLookupCache;
+	@Mock
+	StackStatusWatcher mockWatcher;
+	@Mock
+	Builder mockBuilder;
+
+	interface Builder {
+		void build() throws InterruptedException;
+	}
+
+	@BeforeEach
+	public void before() {
+		when(mockInjector.getInstance(RunReport.class)).thenReturn(mockRunReport);
+		when(mockInjector.getInstance(LookupCache.class)).thenReturn(mockLookupCache);
+		when(mockInjector.getInstance(StackStatusWatcher.class)).thenReturn(mockWatcher);
+	}
+
+	@Test
+	public void testRun() throws InterruptedException {
+		// call under test
+		MainRunner.run(mockInjector, injector -> mockBuilder.build());
+
+		InOrder inOrder = inOrder(mockBuilder, mockRunReport, mockLookupCache, mockWatcher);
+		inOrder.verify(mockBuilder).build();
+		inOrder.verify(mockRunReport).writeReport();
+		inOrder.verify(mockLookupCache).logStatistics();
+		inOrder.verify(mockWatcher).shutdown();
+	}
+
+	@Test
+	public void testRunWithFailure() {
+		IllegalStateException failure = new IllegalStateException("failed");
+
+		IllegalStateException result = assertThrows(IllegalStateException.class, () -> {
+			// call under test
+			MainRunner.run(mockInjector, injector -> {
+				throw failure;
+			});
+		});
+
+		assertEquals(failure, result);
+		InOrder inOrder = inOrder(mockRunReport, mockLookupCache, mockWatcher);
+		inOrder.verify(mockRunReport).writeReport();
+		inOrder.verify(mockLookupCache).logStatistics();
+		inOrder.verify(mockWatcher).shutdown();
+	}
+
+}
@@ -4,14 +4,22 @@ import com.amazonaws.services.route53.AmazonRoute53;
 import com.amazonaws.services.route53.model.AliasTarget;
 import com.amazonaws.services.route53.model.Change;
 import com.amazonaws.services.route53.model.ChangeAction;
+import com.amazonaws.services.route53.model.ChangeInfo;
 import com.amazonaws.services.route53.model.ChangeResourceRecordSetsRequest;
+import com.amazonaws.services.route53.model.ChangeResourceRecordSetsResult;
+import com.amazonaws.services.route53.model.ChangeStatus;
+import com.amazonaws.services.route53.model.GetChangeRequest;
+import com.amazonaws.services.route53.model.GetChangeResult;
+import com.amazonaws.services.route53.model.ListResourceRecordSetsRequest;
+import com.amazonaws.services.route53.model.ListResourceRecordSetsResult;
+import com.amazonaws.services.route53.model.ResourceRecord;
 import com.amazonaws.services.route53.model.ResourceRecordSet;
+import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.sagebionetworks.template.config.Configuration;
@@ -19,11 +27,15 @@ import org.sagebionetworks.template.dns.AliasTargetDescriptor;
 import org.sagebionetworks.template.dns.RecordSetDescriptor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ROUTE53_WAIT_FOR_SYNC;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -40,7 +52,12 @@ class Route53ClientImplTest {
 	@Mock
 	private Configuration mockConfig;
 
-	@InjectMocks
+	@Mock
+	private ThreadProvider mockThreadProvider;
+
+	@Mock
+	private Logger mockLogger;
+
 	private Route53ClientImpl route53Client;
 
 	@Mock
@@ -59,17 +76,20 @@ class Route53ClientImplTest {
 
 	@BeforeEach
 	void setup() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		route53Client = new Route53ClientImpl(mockR53Client, mockConfig, mockLoggerFactory, mockThreadProvider);
 	}
 
 	@Test
-	void testChangeResourceRecordSets() {
+	void testSubmitChanges() {
 		RecordSetDescriptor descriptor = new RecordSetDescriptor("name", "CNAME", "600", Collections.singletonList("targetName"), null);
-		List<RecordSetDescriptor> descriptors = Collections.singletonList(descriptor);
+		List<Change> changes = Collections.singletonList(new Change(ChangeAction.UPSERT, descriptor.toResourceRecordSet()));
 		// call under test
-		route53Client.changeResourceRecordSets("hostedZoneId", descriptors, 1);
+		route53Client.submitChanges("hostedZoneId", changes, 1);
 		verify(mockR53Client, times(1)).changeResourceRecordSets(changeResourceRecordSetsRequestArgumentCaptor.capture());
 		assertEquals(1, changeResourceRecordSetsRequestArgumentCaptor.getAllValues().size());
 		ChangeResourceRecordSetsRequest req = changeResourceRecordSetsRequestArgumentCaptor.getAllValues().get(0);
+		assertEquals("hostedZoneId", req.getHostedZoneId());
 		assertEquals(1, req.getChangeBatch().getChanges().size());
 		Change change = req.getChangeBatch().getChanges().get(0);
 		assertEquals(ChangeAction.UPSERT.name(), change.getAction());
@@ -77,17 +97,17 @@ class Route53ClientImplTest {
 		assertNotNull(rrs);
 		assertEquals("targetName", rrs.getResourceRecords().get(0).getValue());
 	}
+
 	@Test
-	void testBatchingMoreThanBatchSizeChangeResourceRecordSets() {
+	void testBatchingMoreThanBatchSizeSubmitChanges() {
 		when(mockAliasTarget.getDNSName()).thenReturn("target1");
 		when(mockResourceRecordSet.getAliasTarget()).thenReturn(mockAliasTarget);
-		when(mockRecordSetDescriptor.toResourceRecordSet()).thenReturn(mockResourceRecordSet);
 		// 2 records, batches of 1
-		List<RecordSetDescriptor> descriptors = new ArrayList<>();
-		descriptors.add(mockRecordSetDescriptor);
-		descriptors.add(mockRecordSetDescriptor);
+		List<Change> changes = new ArrayList<>();
+		changes.add(new Change(ChangeAction.UPSERT, mockResourceRecordSet));
+		changes.add(new Change(ChangeAction.UPSERT, mockResourceRecordSet));
 		// call under test
-		route53Client.changeResourceRecordSets("hostedZoneId", descriptors, 1);
+		route53Client.submitChanges("hostedZoneId", changes, 1);
 		// 2 calls, 2 batches of 1 record
 		verify(mockR53Client, times(2)).changeResourceRecordSets(changeResourceRecordSetsRequestArgumentCaptor.capture());
 		assertEquals(2, changeResourceRecordSetsRequestArgumentCaptor.getAllValues().size());
@@ -109,14 +129,13 @@ class Route53ClientImplTest {
 	}
 
 	@Test
-	void testBatchingEqualsBatchSizeChangeResourceRecordSets() {
-		when(mockRecordSetDescriptor.toResourceRecordSet()).thenReturn(mockResourceRecordSet);
+	void testBatchingEqualsBatchSizeSubmitChanges() {
 		// 2 records, batches of 2
-		List<RecordSetDescriptor> descriptors = new ArrayList<>();
-		descriptors.add(mockRecordSetDescriptor);
-		descriptors.add(mockRecordSetDescriptor);
+		List<Change> changes = new ArrayList<>();
+		changes.add(new Change(ChangeAction.UPSERT, mockResourceRecordSet));
+		changes.add(new Change(ChangeAction.UPSERT, mockResourceRecordSet));
 		// call under test
-		route53Client.changeResourceRecordSets("hostedZoneId", descriptors, 2);
+		route53Client.submitChanges("hostedZoneId", changes, 2);
 		// 1 call, 1 batch of 2 records
 		verify(mockR53Client, times(1)).changeResourceRecordSets(changeResourceRecordSetsRequestArgumentCaptor.capture());
 		assertEquals(1, changeResourceRecordSetsRequestArgumentCaptor.getAllValues().size());
@@ -125,12 +144,12 @@ class Route53ClientImplTest {
 	}
 
 	@Test
-	void testBatchingLessThanBatchSizeChangeResourceRecordSets() {
+	void testBatchingLessThanBatchSizeSubmitChanges() {
 		// 1 record, batches of 2
-		List<RecordSetDescriptor> descriptors = new ArrayList<>();
-		descriptors.add(mockRecordSetDescriptor);
+		List<Change> changes = new ArrayList<>();
+		changes.add(new Change(ChangeAction.UPSERT, mockResourceRecordSet));
 		// call under test
-		route53Client.changeResourceRecordSets("hostedZoneId", descriptors, 2);
+		route53Client.submitChanges("hostedZoneId", changes, 2);
 		// 1 call, 1 batch of 1 record
 		verify(mockR53Client, times(1)).changeResourceRecordSets(changeResourceRecordSetsRequestArgumentCaptor.capture());
 		assertEquals(1, changeResourceRecordSetsRequestArgumentCaptor.getAllValues().size());
@@ -138,4 +157,126 @@ class Route53ClientImplTest {
 		assertEquals(1, req.getChangeBatch().getChanges().size());
 	}
 
+
+	@Test
+	void testListResourceRecordSetsWithPages() {
+		ResourceRecordSet first = new ResourceRecordSet("a.synapse.org.", "A");
+		ResourceRecordSet second = new ResourceRecordSet("b.synapse.org.", "CNAME");
+		List<ListResourceRecordSetsResult> pages = new ArrayList<>(Arrays.asList(
+				new ListResourceRecordSetsResult().withResourceRecordSets(first).withIsTruncated(true)
+						.withNextRecordName("b.synapse.org.").withNextRecordType("CNAME").withNextRecordIdentifier("id"),
+				new ListResourceRecordSetsResult().withResourceRecordSets(second).withIsTruncated(false)));
+		List<String> starts = new ArrayList<>();
+		when(mockR53Client.listResourceRecordSets(any())).thenAnswer(invocation -> {
+			ListResourceRecordSetsRequest request = invocation.getArgument(0);
+			assertEquals("hostedZoneId", request.getHostedZoneId());
+			assertEquals(Route53ClientImpl.MAX_ITEMS_PER_PAGE, request.getMaxItems());
+			starts.add(request.getStartRecordName() + " " + request.getStartRecordType() + " " + request.getStartRecordIdentifier());
+			return pages.remove(0);
+		});
+		// call under test
+		Iterator<ResourceRecordSet> iterator = route53Client.listResourceRecordSets("hostedZoneId");
+		List<ResourceRecordSet> all = new ArrayList<>();
+		iterator.forEachRemaining(all::add);
+		assertEquals(Arrays.asList(first, second), all);
+		// the next page starts at the record after the last page
+		assertEquals(Arrays.asList("null null null", "b.synapse.org. CNAME id"), starts);
+	}
+
+	@Test
+	void testSubmitChangesWithWaitForSync() throws Exception {
+		RecordSetDescriptor descriptor = new RecordSetDescriptor("name.", "CNAME", "600", Collections.singletonList("targetName"), null);
+		when(mockR53Client.changeResourceRecordSets(any())).thenReturn(
+				new ChangeResourceRecordSetsResult().withChangeInfo(new ChangeInfo().withId("change-1")));
+		when(mockConfig.getBooleanProperty(PROPERTY_KEY_ROUTE53_WAIT_FOR_SYNC)).thenReturn(true);
+		when(mockR53Client.getChange(new GetChangeRequest("change-1"))).thenReturn(changeResult("change-1", ChangeStatus.INSYNC));
+		// call under test
+		List<String> changeIds = route53Client.submitChanges("hostedZoneId",
+				Collections.singletonList(new Change(ChangeAction.UPSERT, descriptor.toResourceRecordSet())), 10);
+		assertEquals(Collections.singletonList("change-1"), changeIds);
+		verify(mockR53Client).getChange(new GetChangeRequest("change-1"));
+		verify(mockThreadProvider, never()).sleep(any(Long.class));
+	}
+
+	@Test
+	void testPackChangesByCount() {
+		List<Change> changes = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			changes.add(new Change(ChangeAction.DELETE, new ResourceRecordSet("name" + i, "A").withResourceRecords(new ResourceRecord("v"))));
+		}
+		// call under test
+		List<List<Change>> batches = Route53ClientImpl.packChanges(changes, 2);
+		assertEquals(3, batches.size());
+		assertEquals(changes.subList(0, 2), batches.get(0));
+		assertEquals(changes.subList(4, 5), batches.get(2));
+	}
+
+	@Test
+	void testPackChangesByRecords() {
+		List<ResourceRecord> records = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			records.add(new ResourceRecord("v"));
+		}
+		List<Change> changes = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			// each UPSERT counts 600 records
+			changes.add(new Change(ChangeAction.UPSERT, new ResourceRecordSet("name" + i, "A").withResourceRecords(records)));
+		}
+		// call under test
+		List<List<Change>> batches = Route53ClientImpl.packChanges(changes, Route53ClientImpl.MAX_CHANGES_PER_BATCH);
+		assertEquals(3, batches.size());
+	}
+
+	@Test
+	void testPackChangesByValueCharacters() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 255; i++) {
+			value.append('x');
+		}
+		List<Change> changes = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			// each UPSERT counts 510 characters, so 62 fit in a batch
+			changes.add(new Change(ChangeAction.UPSERT, new ResourceRecordSet("name" + i, "TXT").withResourceRecords(new ResourceRecord(value.toString()))));
+		}
+		// call under test
+		List<List<Change>> batches = Route53ClientImpl.packChanges(changes, Route53ClientImpl.MAX_CHANGES_PER_BATCH);
+		assertEquals(2, batches.size());
+		assertEquals(62, batches.get(0).size());
+		assertEquals(38, batches.get(1).size());
+	}
+
+	@Test
+	void testPackChangesEmpty() {
+		assertEquals(Collections.emptyList(), Route53ClientImpl.packChanges(Collections.emptyList(), 10));
+	}
+
+	@Test
+	void testWaitForChanges() throws Exception {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L, 1000L);
+		when(mockR53Client.getChange(new GetChangeRequest("one"))).thenReturn(
+				changeResult("one", ChangeStatus.PENDING), changeResult("one", ChangeStatus.INSYNC));
+		when(mockR53Client.getChange(new GetChangeRequest("two"))).thenReturn(changeResult("two", ChangeStatus.INSYNC));
+		// call under test
+		route53Client.waitForChanges(Arrays.asList("one", "two"));
+		verify(mockR53Client, times(2)).getChange(new GetChangeRequest("one"));
+		// a change is not polled again once it is in sync
+		verify(mockR53Client, times(1)).getChange(new GetChangeRequest("two"));
+		verify(mockThreadProvider, times(1)).sleep(Route53ClientImpl.WAIT_FOR_SYNC_POLL_MS);
+	}
+
+	@Test
+	void testWaitForChangesWithTimeout() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L, Route53ClientImpl.WAIT_FOR_SYNC_TIMEOUT_MS + 1);
+		when(mockR53Client.getChange(new GetChangeRequest("one"))).thenReturn(changeResult("one", ChangeStatus.PENDING));
+		String message = assertThrows(IllegalStateException.class, () -> {
+			// call under test
+			route53Client.waitForChanges(Collections.singletonList("one"));
+		}).getMessage();
+		assertEquals("Timed out waiting for changes: [one] to be in sync", message);
+	}
+
+	private static GetChangeResult changeResult(String id, ChangeStatus status) {
+		return new GetChangeResult().withChangeInfo(new ChangeInfo().withId(id).withStatus(status));
+	}
+
 }
\ No newline at end of file
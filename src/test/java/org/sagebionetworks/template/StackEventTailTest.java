@@ -0,0 +1,105 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+@ExtendWith(MockitoExtension.class)
+public class StackEventTailTest {
+
+	@Mock
+	AmazonCloudFormation mockCloudFormationClient;
+
+	String stackName;
+	StackEventTail tail;
+
+	StackEvent previousEnd;
+	StackEvent start;
+	StackEvent dbStart;
+	StackEvent dbEnd;
+	StackEvent end;
+
+	@BeforeEach
+	public void before() {
+		stackName = "repo-prod";
+		tail = new StackEventTail(mockCloudFormationClient, stackName);
+		previousEnd = stackEvent("0", "UPDATE_COMPLETE");
+		start = stackEvent("1", "UPDATE_IN_PROGRESS");
+		dbStart = new StackEvent().withEventId("2").withLogicalResourceId("database")
+				.withResourceType("AWS::RDS::DBInstance").withResourceStatus("UPDATE_IN_PROGRESS");
+		dbEnd = new StackEvent().withEventId("3").withLogicalResourceId("database")
+				.withResourceType("AWS::RDS::DBInstance").withResourceStatus("UPDATE_COMPLETE");
+		end = stackEvent("4", "UPDATE_COMPLETE");
+	}
+
+	StackEvent stackEvent(String eventId, String status) {
+		return new StackEvent().withEventId(eventId).withLogicalResourceId(stackName)
+				.withResourceType(StackEventTail.STACK_RESOURCE_TYPE).withResourceStatus(status);
+	}
+
+	@Test
+	public void testNextEventsFirstReadStopsAtOperationStart() {
+		when(mockCloudFormationClient.describeStackEvents(any()))
+				.thenReturn(new DescribeStackEventsResult().withStackEvents(dbStart, start, previousEnd).withNextToken("more"));
+		// call under test
+		List<StackEvent> events = tail.nextEvents();
+		assertEquals(List.of(start, dbStart), events);
+		assertFalse(tail.isTerminalEventSeen());
+		assertTrue(tail.isLongRunningResourceInProgress());
+		verify(mockCloudFormationClient).describeStackEvents(new DescribeStackEventsRequest().withStackName(stackName));
+	}
+
+	@Test
+	public void testNextEventsIncremental() {
+		when(mockCloudFormationClient.describeStackEvents(any())).thenReturn(
+				new DescribeStackEventsResult().withStackEvents(dbStart, start),
+				new DescribeStackEventsResult().withStackEvents(end, dbEnd).withNextToken("page two"),
+				new DescribeStackEventsResult().withStackEvents(dbStart, start),
+				new DescribeStackEventsResult().withStackEvents(end, dbEnd, dbStart, start));
+		assertEquals(List.of(start, dbStart), tail.nextEvents());
+		// call under test
+		List<StackEvent> events = tail.nextEvents();
+		assertEquals(List.of(dbEnd, end), events);
+		assertTrue(tail.isTerminalEventSeen());
+		assertFalse(tail.isLongRunningResourceInProgress());
+		verify(mockCloudFormationClient)
+				.describeStackEvents(new DescribeStackEventsRequest().withStackName(stackName).withNextToken("page two"));
+		// nothing new since the last read
+		assertEquals(List.of(), tail.nextEvents());
+		assertFalse(tail.isTerminalEventSeen());
+	}
+
+	@Test
+	public void testNextEventsWithNoEvents() {
+		when(mockCloudFormationClient.describeStackEvents(any())).thenReturn(new DescribeStackEventsResult());
+		// call under test
+		assertEquals(List.of(), tail.nextEvents());
+		assertFalse(tail.isTerminalEventSeen());
+		assertFalse(tail.isLongRunningResourceInProgress());
+	}
+
+	@Test
+	public void testIsInProgress() {
+		assertTrue(StackEventTail.isInProgress("CREATE_IN_PROGRESS"));
+		assertTrue(StackEventTail.isInProgress("UPDATE_COMPLETE_CLEANUP_IN_PROGRESS"));
+		assertFalse(StackEventTail.isInProgress("UPDATE_COMPLETE"));
+		assertFalse(StackEventTail.isInProgress("CREATE_FAILED"));
+		assertFalse(StackEventTail.isInProgress(null));
+	}
+}
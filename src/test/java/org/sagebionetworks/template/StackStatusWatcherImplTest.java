@@ -0,0 +1,243 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.AmazonCloudFormationException;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+@ExtendWith(MockitoExtension.class)
+public class StackStatusWatcherImplTest {
+
+	@Mock
+	AmazonCloudFormation mockCloudFormationClient;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+	@Mock
+	ThreadProvider mockThreadProvider;
+
+	StackStatusWatcherImpl watcher;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		watcher = new StackStatusWatcherImpl(mockCloudFormationClient, mockLoggerFactory, mockThreadProvider);
+	}
+
+	Stack stack(String name, StackStatus status) {
+		return new Stack().withStackName(name).withStackStatus(status);
+	}
+
+	@Test
+	public void testPollWithSingleStack() throws Exception {
+		Stack inProgress = stack("one", StackStatus.UPDATE_IN_PROGRESS);
+		Stack complete = stack("one", StackStatus.UPDATE_COMPLETE);
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(
+				new DescribeStacksResult().withStacks(inProgress), new DescribeStacksResult().withStacks(complete));
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+
+		// call under test
+		watcher.poll();
+		assertFalse(future.isDone());
+		watcher.poll();
+
+		assertSame(complete, future.get());
+		assertEquals(0, watcher.getWatchCount());
+		verify(mockCloudFormationClient, times(2)).describeStacks(new DescribeStacksRequest().withStackName("one"));
+	}
+
+	@Test
+	public void testPollWithManyStacksUsesSingleSweep() throws Exception {
+		CompletableFuture<Stack> one = watcher.register("one").getFuture();
+		CompletableFuture<Stack> two = watcher.register("two").getFuture();
+		CompletableFuture<Stack> three = watcher.register("three").getFuture();
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(
+				new DescribeStacksResult().withStacks(stack("other", StackStatus.CREATE_COMPLETE),
+						stack("one", StackStatus.CREATE_COMPLETE)).withNextToken("page two"),
+				new DescribeStacksResult().withStacks(stack("two", StackStatus.UPDATE_COMPLETE),
+						stack("three", StackStatus.UPDATE_IN_PROGRESS)).withNextToken("page three"));
+
+		// call under test
+		watcher.poll();
+
+		assertEquals(StackStatus.CREATE_COMPLETE.toString(), one.get().getStackStatus());
+		assertEquals(StackStatus.UPDATE_COMPLETE.toString(), two.get().getStackStatus());
+		assertFalse(three.isDone());
+		// the sweep stops once all the watched stacks are found.
+		verify(mockCloudFormationClient).describeStacks(new DescribeStacksRequest().withNextToken(null));
+		verify(mockCloudFormationClient).describeStacks(new DescribeStacksRequest().withNextToken("page two"));
+		verify(mockCloudFormationClient, times(2)).describeStacks(any());
+	}
+
+	@Test
+	public void testSweepStoppedEarlyRecordsPages() throws Exception {
+		watcher.register("one");
+		watcher.register("two");
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(
+				new DescribeStacksResult().withStacks(stack("one", StackStatus.CREATE_COMPLETE)).withNextToken("page two"),
+				new DescribeStacksResult().withStacks(stack("two", StackStatus.UPDATE_IN_PROGRESS)).withNextToken("page three"),
+				new DescribeStacksResult().withStacks(stack("two", StackStatus.UPDATE_COMPLETE)));
+
+		// call under test
+		watcher.poll();
+
+		assertEquals(2, watcher.getSweepPageCount());
+		// a single stack is described rather than swept
+		watcher.poll();
+		verify(mockCloudFormationClient).describeStacks(new DescribeStacksRequest().withStackName("two"));
+		assertEquals(0, watcher.getWatchCount());
+	}
+
+	@Test
+	public void testSweepWithMissingStack() throws Exception {
+		CompletableFuture<Stack> one = watcher.register("one").getFuture();
+		CompletableFuture<Stack> two = watcher.register("two").getFuture();
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(
+				new DescribeStacksResult().withStacks(stack("one", StackStatus.CREATE_COMPLETE)));
+
+		// call under test
+		watcher.poll();
+
+		assertTrue(one.isDone());
+		// a complete sweep that did not find the stack means it does not exist.
+		assertNull(two.get());
+	}
+
+	@Test
+	public void testDescribeWithMissingStack() throws Exception {
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+		when(mockCloudFormationClient.describeStacks(any())).thenThrow(new AmazonCloudFormationException("does not exist"));
+		// call under test
+		watcher.poll();
+		assertNull(future.get());
+	}
+
+	@Test
+	public void testPollWithFailedStack() {
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(new DescribeStacksResult()
+				.withStacks(stack("one", StackStatus.CREATE_FAILED).withStackStatusReason("bad template")));
+		// call under test
+		watcher.poll();
+		ExecutionException e = assertThrows(ExecutionException.class, () -> {
+			future.get();
+		});
+		assertEquals("Stack 'one' did not complete.  Status: CREATE_FAILED with reason: bad template",
+				e.getCause().getMessage());
+	}
+
+	@Test
+	public void testPollWithStartedInUpdateRollbackComplete() throws Exception {
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+		Stack stack = stack("one", StackStatus.UPDATE_ROLLBACK_COMPLETE);
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(new DescribeStacksResult().withStacks(stack));
+		// call under test
+		watcher.poll();
+		assertSame(stack, future.get());
+	}
+
+	@Test
+	public void testPollWithUpdateRolledBack() {
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(
+				new DescribeStacksResult().withStacks(stack("one", StackStatus.UPDATE_IN_PROGRESS)),
+				new DescribeStacksResult().withStacks(stack("one", StackStatus.UPDATE_ROLLBACK_COMPLETE)));
+		// call under test
+		watcher.poll();
+		watcher.poll();
+		assertThrows(ExecutionException.class, () -> {
+			future.get();
+		});
+	}
+
+	@Test
+	public void testPollWithTimeout() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L, CloudFormationClientImpl.TIMEOUT_MS + 1);
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+		when(mockCloudFormationClient.describeStacks(any()))
+				.thenReturn(new DescribeStacksResult().withStacks(stack("one", StackStatus.CREATE_IN_PROGRESS)));
+		// call under test
+		watcher.poll();
+		ExecutionException e = assertThrows(ExecutionException.class, () -> {
+			future.get();
+		});
+		assertTrue(e.getCause().getMessage().contains("Timed out"));
+	}
+
+	@Test
+	public void testRegisterSharesWatch() {
+		// call under test
+		assertSame(watcher.register("one"), watcher.register("one"));
+		assertEquals(1, watcher.getWatchCount());
+	}
+
+	@Test
+	public void testWatch() throws Exception {
+		Stack complete = stack("one", StackStatus.CREATE_COMPLETE);
+		when(mockCloudFormationClient.describeStacks(any())).thenReturn(new DescribeStacksResult().withStacks(complete));
+		// call under test
+		CompletableFuture<Stack> first = watcher.watch("one");
+		assertSame(complete, first.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testWatchStopsPollingWhenIdle() throws Exception {
+		when(mockCloudFormationClient.describeStacks(any()))
+				.thenReturn(new DescribeStacksResult().withStacks(stack("one", StackStatus.CREATE_COMPLETE)));
+		// call under test
+		watcher.watch("one").get(10, TimeUnit.SECONDS);
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (watcher.isPolling() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertFalse(watcher.isPolling());
+	}
+
+	@Test
+	public void testShutdown() {
+		CompletableFuture<Stack> future = watcher.register("one").getFuture();
+		// call under test
+		watcher.shutdown();
+		ExecutionException e = assertThrows(ExecutionException.class, () -> {
+			future.get();
+		});
+		assertEquals("Stopped watching stack: 'one'", e.getCause().getMessage());
+		assertEquals(0, watcher.getWatchCount());
+		assertFalse(watcher.isPolling());
+	}
+
+	@Test
+	public void testWatchCancelDoesNotAffectOtherCallers() {
+		CompletableFuture<Stack> shared = watcher.register("one").getFuture();
+		// call under test
+		CompletableFuture<Stack> first = watcher.watch("one");
+		first.cancel(true);
+		assertFalse(shared.isCancelled());
+	}
+
+}
@@ -1,10 +1,18 @@
 package org.sagebionetworks.template;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
+import org.apache.velocity.app.VelocityEngine;
 import org.junit.Test;
+import org.sagebionetworks.template.repo.athena.RecurrentAthenaQueryConfig;
+import org.sagebionetworks.template.repo.kinesis.firehose.KinesisFirehoseConfig;
+import org.sagebionetworks.template.s3.S3Config;
 import org.sagebionetworks.template.vpc.VpcTemplateBuilder;
 
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.s3.AmazonS3;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
@@ -16,4 +24,28 @@ public class TemplateGuiceModuleTest {
 		VpcTemplateBuilder builder = injector.getInstance(VpcTemplateBuilder.class);
 		assertNotNull(builder);
 	}
+
+	@Test
+	public void testAwsClientsAreSingletons() {
+		Injector injector = Guice.createInjector(new TemplateGuiceModule());
+		AmazonS3 s3 = injector.getInstance(AmazonS3.class);
+		assertSame(s3, injector.getInstance(AmazonS3.class));
+		assertSame(injector.getInstance(AmazonCloudFormation.class), injector.getInstance(AmazonCloudFormation.class));
+		assertEquals(2, injector.getInstance(AwsClientFactory.class).getClientCount());
+	}
+
+	@Test
+	public void testVelocityEngineIsSingleton() {
+		Injector injector = Guice.createInjector(new TemplateGuiceModule());
+		assertSame(injector.getInstance(VelocityEngine.class), injector.getInstance(VelocityEngine.class));
+		assertSame(injector.getInstance(TemplateRenderer.class), injector.getInstance(TemplateRenderer.class));
+	}
+
+	@Test
+	public void testConfigsAreLoadedOnce() {
+		Injector injector = Guice.createInjector(new TemplateGuiceModule());
+		assertSame(injector.getInstance(KinesisFirehoseConfig.class), injector.getInstance(KinesisFirehoseConfig.class));
+		assertSame(injector.getInstance(RecurrentAthenaQueryConfig.class), injector.getInstance(RecurrentAthenaQueryConfig.class));
+		assertSame(injector.getInstance(S3Config.class), injector.getInstance(S3Config.class));
+	}
 }
@@ -0,0 +1,214 @@
+package org.sagebionetworks.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_TEMPLATE_PRECOMPILE;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ParseErrorException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.config.Configuration;
+
+@ExtendWith(MockitoExtension.class)
+public class TemplateRendererImplTest {
+
+	@Mock
+	VelocityEngine mockVelocityEngine;
+	@Mock
+	Template mockTemplate;
+	@Mock
+	ThreadProvider mockThreadProvider;
+	@Mock
+	Configuration mockConfig;
+
+	VelocityContext context;
+	TemplateRendererImpl renderer;
+
+	@BeforeEach
+	public void before() {
+		context = new VelocityContext();
+		renderer = new TemplateRendererImpl(mockVelocityEngine, mockThreadProvider);
+	}
+
+	void setupTemplate(String merged) {
+		when(mockVelocityEngine.getTemplate(any())).thenReturn(mockTemplate);
+		doAnswer(invocation -> {
+			Writer writer = invocation.getArgument(1);
+			writer.write(merged);
+			return null;
+		}).when(mockTemplate).merge(any(), any());
+	}
+
+	@Test
+	public void testRenderJson() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 1025L);
+		setupTemplate("{\"b\":1,\"a\":[true,{\"c\":\"d\"}],}");
+
+		// call under test
+		String result = renderer.renderJson("template.json.vpt", context);
+
+		String expected = "{\n"
+				+ "     \"b\": 1,\n"
+				+ "     \"a\": [\n"
+				+ "          true,\n"
+				+ "          {\n"
+				+ "               \"c\": \"d\"\n"
+				+ "          }\n"
+				+ "     ]\n"
+				+ "}";
+		assertEquals(expected, result);
+		verify(mockTemplate).merge(eq(context), any());
+		assertEquals(List.of(new TemplateRenderMetric("template.json.vpt", 25L, expected.length())),
+				renderer.getMetrics());
+	}
+
+	@Test
+	public void testRenderJsonGetsTemplateFromEngine() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L);
+		setupTemplate("{}");
+
+		renderer.renderJson("template.json.vpt", context);
+		// call under test
+		renderer.renderJson("template.json.vpt", context);
+
+		// the parsed template is cached by the engine
+		verify(mockVelocityEngine, times(2)).getTemplate("template.json.vpt");
+		verify(mockTemplate, times(2)).merge(any(), any());
+		assertEquals(2, renderer.getMetrics().size());
+	}
+
+	@Test
+	public void testRenderJsonWithInvalidJson() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L);
+		setupTemplate("{\"a\": }");
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			renderer.renderJson("template.json.vpt", context);
+		}).getMessage();
+
+		assertTrue(message.startsWith("The template: template.json.vpt did not render valid JSON: "));
+		assertTrue(renderer.getMetrics().isEmpty());
+	}
+
+	@Test
+	public void testRenderJsonWithDuplicateKey() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L);
+		setupTemplate("{\"a\": 1, \"a\": 2}");
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			renderer.renderJson("template.json.vpt", context);
+		}).getMessage();
+
+		assertTrue(message.contains("Duplicate field 'a'"), message);
+	}
+
+	@Test
+	public void testRenderJsonWithArray() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L);
+		setupTemplate("[1, 2]");
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			renderer.renderJson("template.json.vpt", context);
+		}).getMessage();
+
+		assertEquals("The template: template.json.vpt did not render a JSON object", message);
+	}
+
+	@Test
+	public void testRenderJsonWithTrailingContent() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L);
+		setupTemplate("{} {}");
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			renderer.renderJson("template.json.vpt", context);
+		}).getMessage();
+
+		assertEquals("The template: template.json.vpt rendered unexpected content after the JSON object", message);
+	}
+
+	@Test
+	public void testPrecompileTemplates() {
+		renderer = new TemplateRendererImpl(new TemplateGuiceModule().velocityEngineProvider(), mockThreadProvider);
+
+		// call under test
+		renderer.precompileTemplates();
+	}
+
+	@Test
+	public void testPrecompileTemplatesWithParseError() {
+		when(mockVelocityEngine.getTemplate(any())).thenThrow(new ParseErrorException("Encountered \"#end\""));
+
+		String message = assertThrows(IllegalStateException.class, () -> {
+			// call under test
+			renderer.precompileTemplates();
+		}).getMessage();
+
+		assertTrue(message.startsWith("Failed to parse " + TemplateRendererImpl.findTemplatePaths().size() + " template(s):\n"), message);
+	}
+
+	@Test
+	public void testConstructorPrecompilesByDefault() {
+		when(mockConfig.getBooleanProperty(PROPERTY_KEY_TEMPLATE_PRECOMPILE))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_TEMPLATE_PRECOMPILE));
+		when(mockVelocityEngine.getTemplate(any())).thenReturn(mockTemplate);
+
+		// call under test
+		new TemplateRendererImpl(mockVelocityEngine, mockThreadProvider, mockConfig);
+
+		verify(mockVelocityEngine).getTemplate("templates/repo/main-repo-shared-resources-template.json.vpt");
+		verify(mockVelocityEngine).getTemplate("templates/cdn/synapse_cdn.yaml.vtp");
+	}
+
+	@Test
+	public void testConstructorWithPrecompileDisabled() {
+		when(mockConfig.getBooleanProperty(PROPERTY_KEY_TEMPLATE_PRECOMPILE)).thenReturn(false);
+
+		// call under test
+		new TemplateRendererImpl(mockVelocityEngine, mockThreadProvider, mockConfig);
+
+		verify(mockVelocityEngine, never()).getTemplate(any());
+	}
+
+	@Test
+	public void testFindTemplatePaths() throws IOException {
+		Path root = Files.createTempDirectory("templates");
+		try {
+			Files.createDirectories(root.resolve("repo"));
+			Files.createFile(root.resolve("repo/stack.json.vpt"));
+			Files.createFile(root.resolve("repo/include.json"));
+			Files.createFile(root.resolve("cdn.yaml.vtp"));
+
+			// call under test
+			List<String> paths = TemplateRendererImpl.findTemplatePaths(root);
+
+			assertEquals(List.of("templates/cdn.yaml.vtp", "templates/repo/stack.json.vpt"), paths);
+		} finally {
+			FileUtils.deleteDirectory(root.toFile());
+		}
+	}
+}
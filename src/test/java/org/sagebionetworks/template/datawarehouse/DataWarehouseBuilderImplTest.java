@@ -18,10 +18,13 @@ import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.repo.glue.GlueColumn;
 import org.sagebionetworks.template.repo.glue.GlueTableDescriptor;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -77,7 +80,7 @@ public class DataWarehouseBuilderImplTest {
 	@BeforeEach
 	public void before() {
 		when(loggerFactory.getLogger(any())).thenReturn(logger);
-		builder = new DataWarehouseBuilderImpl(cloudFormationClient, velocityEngine, mockConfig, loggerFactory, tagsProvider,
+		builder = new DataWarehouseBuilderImpl(cloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), mockConfig, loggerFactory, tagsProvider,
 				dataWarehouseConfig, mockDownloader, mockS3Client);
 	}
 
@@ -101,7 +104,7 @@ public class DataWarehouseBuilderImplTest {
 			out.putNextEntry(new ZipEntry("repo-1.0.0/src/scripts/glue_jobs/utilities/utils.py"));
 		}
 
-		when(mockDownloader.downloadFile(any())).thenReturn(zipFile);
+		when(mockDownloader.getCachedFile(any())).thenReturn(new CachedArtifact(zipFile));
 		when(dataWarehouseConfig.getGithubRepo()).thenReturn("repo");
 		when(dataWarehouseConfig.getVersion()).thenReturn("1.0.0");
 		when(dataWarehouseConfig.getExtraScripts()).thenReturn(List.of("utilities/utils.py"));
@@ -145,7 +148,7 @@ public class DataWarehouseBuilderImplTest {
 		// call under test
 		builder.buildAndDeploy();
 
-		verify(mockDownloader).downloadFile("https://codeload.github.com/Sage-Bionetworks/repo/zip/refs/tags/v1.0.0");
+		verify(mockDownloader).getCachedFile("https://codeload.github.com/Sage-Bionetworks/repo/zip/refs/tags/v1.0.0");
 		verify(mockS3Client).putObject(eq("dev.aws-glue.sagebase.org"), eq("scripts/v1.0.0/testjob.py"), any(), any());
 		verify(mockS3Client).putObject(eq("dev.aws-glue.sagebase.org"), eq("scripts/v1.0.0/utilities/utils.py"), any(), any());
 		verifyNoMoreInteractions(mockS3Client);
@@ -0,0 +1,178 @@
+package org.sagebionetworks.template.datawarehouse.backfill;
+
+import com.amazonaws.services.athena.AmazonAthena;
+import com.amazonaws.services.glue.AWSGlue;
+import com.amazonaws.services.glue.model.BatchCreatePartitionRequest;
+import com.amazonaws.services.glue.model.BatchCreatePartitionResult;
+import com.amazonaws.services.glue.model.GetTableRequest;
+import com.amazonaws.services.glue.model.GetTableResult;
+import com.amazonaws.services.glue.model.PartitionInput;
+import com.amazonaws.services.glue.model.SerDeInfo;
+import com.amazonaws.services.glue.model.StorageDescriptor;
+import com.amazonaws.services.glue.model.Table;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.CloudFormationClient;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
+import org.sagebionetworks.template.config.Configuration;
+import org.sagebionetworks.template.utils.ArtifactDownload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BackfillDataWarehouseBuilderImplTest {
+
+    private static final String BUCKET = "dev.snapshot.record.sagebase.org";
+    private static final String DATABASE = "backfill";
+
+    @Mock
+    private CloudFormationClient mockCloudFormationClient;
+    @Mock
+    private TemplateRenderer mockTemplateRenderer;
+    @Mock
+    private Configuration mockConfig;
+    @Mock
+    private LoggerFactory mockLoggerFactory;
+    @Mock
+    private Logger mockLogger;
+    @Mock
+    private StackTagsProvider mockTagsProvider;
+    @Mock
+    private ArtifactDownload mockDownloader;
+    @Mock
+    private AmazonS3 mockS3Client;
+    @Mock
+    private AWSGlue mockGlue;
+    @Mock
+    private AmazonAthena mockAthena;
+    @Captor
+    private ArgumentCaptor<BatchCreatePartitionRequest> batchCaptor;
+
+    private BackfillDataWarehouseBuilderImpl builder;
+
+    // prefix -> sub prefixes
+    private final Map<String, List<String>> tree = new HashMap<>();
+
+    @BeforeEach
+    public void before() {
+        when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+        builder = new BackfillDataWarehouseBuilderImpl(mockCloudFormationClient, mockTemplateRenderer, mockConfig,
+                mockLoggerFactory, mockTagsProvider, mockDownloader, mockS3Client, mockGlue, mockAthena);
+    }
+
+    @Test
+    public void testCreateGluePartitionForOldData() {
+        when(mockConfig.getIntegerProperty(BackfillDataWarehouseBuilderImpl.CRAWL_MAX_PARALLELISM)).thenReturn(4);
+        // one more partition than a batch holds
+        List<String> dates = new ArrayList<>();
+        for (int i = 0; i <= BackfillDataWarehouseBuilderImpl.MAX_PARTITIONS_PER_BATCH; i++) {
+            dates.add("000000001/filedownloadrecord/2020-" + i + "/");
+        }
+        tree.put("", List.of("000000001/", "000000002/"));
+        tree.put("000000001/", List.of("000000001/filedownloadrecord/", "000000001/bulkfiledownloadresponse/"));
+        tree.put("000000001/filedownloadrecord/", dates);
+        tree.put("000000001/bulkfiledownloadresponse/", List.of("000000001/bulkfiledownloadresponse/2020-1/"));
+        setupListings();
+        StorageDescriptor tableDescriptor = new StorageDescriptor().withInputFormat("input").withOutputFormat("output")
+                .withSerdeInfo(new SerDeInfo().withName("serde"));
+        when(mockGlue.getTable(any())).thenReturn(
+                new GetTableResult().withTable(new Table().withStorageDescriptor(tableDescriptor)));
+        when(mockGlue.batchCreatePartition(any())).thenReturn(new BatchCreatePartitionResult());
+
+        // call under test
+        builder.createGluePartitionForOldData("", BUCKET, DATABASE);
+
+        // the storage descriptor of each table is fetched once
+        verify(mockGlue).getTable(new GetTableRequest().withDatabaseName(DATABASE).withName("filedownloadscsv"));
+        verify(mockGlue).getTable(new GetTableRequest().withDatabaseName(DATABASE).withName("bulkfiledownloadscsv"));
+        // a full batch is flushed during the crawl, the rest of each table at the end
+        verify(mockGlue, times(3)).batchCreatePartition(batchCaptor.capture());
+        Map<String, List<Integer>> batchSizes = batchCaptor.getAllValues().stream().collect(Collectors.groupingBy(
+                BatchCreatePartitionRequest::getTableName,
+                Collectors.mapping(request -> request.getPartitionInputList().size(), Collectors.toList())));
+        assertEquals(Map.of("filedownloadscsv", List.of(BackfillDataWarehouseBuilderImpl.MAX_PARTITIONS_PER_BATCH, 1),
+                "bulkfiledownloadscsv", List.of(1)), batchSizes);
+        BatchCreatePartitionRequest bulkRequest = batchCaptor.getAllValues().stream()
+                .filter(request -> request.getTableName().equals("bulkfiledownloadscsv")).findFirst().get();
+        assertEquals(DATABASE, bulkRequest.getDatabaseName());
+        PartitionInput partition = bulkRequest.getPartitionInputList().get(0);
+        assertEquals(List.of("000000001", "2020-1"), partition.getValues());
+        assertEquals(new StorageDescriptor().withLocation("s3://" + BUCKET + "/000000001/bulkfiledownloadresponse/2020-1")
+                .withInputFormat("input").withOutputFormat("output").withSerdeInfo(new SerDeInfo().withName("serde")),
+                partition.getStorageDescriptor());
+        // the release without any record is not a partition
+        verify(mockLogger).warn("Skipping prefix that is not a partition: 000000002/");
+    }
+
+    @Test
+    public void testCreateGluePartitionForOldDataWithNoPartitions() {
+        when(mockConfig.getIntegerProperty(BackfillDataWarehouseBuilderImpl.CRAWL_MAX_PARALLELISM)).thenReturn(4);
+        tree.put("", List.of("000000002/"));
+        setupListings();
+
+        // call under test
+        builder.createGluePartitionForOldData("", BUCKET, DATABASE);
+
+        verify(mockGlue, never()).batchCreatePartition(any());
+        verify(mockLogger).warn("Skipping prefix that is not a partition: 000000002/");
+    }
+
+    @Test
+    public void testGetCrawlMaxParallelism() {
+        when(mockConfig.getIntegerProperty(BackfillDataWarehouseBuilderImpl.CRAWL_MAX_PARALLELISM)).thenReturn(8);
+        // call under test
+        assertEquals(8, builder.getCrawlMaxParallelism());
+    }
+
+    @Test
+    public void testGetCrawlMaxParallelismWithNotPositive() {
+        when(mockConfig.getIntegerProperty(BackfillDataWarehouseBuilderImpl.CRAWL_MAX_PARALLELISM)).thenReturn(0);
+        // call under test
+        assertEquals(1, builder.getCrawlMaxParallelism());
+    }
+
+    @Test
+    public void testGetCrawlMaxParallelismWithDefault() {
+        when(mockConfig.getIntegerProperty(BackfillDataWarehouseBuilderImpl.CRAWL_MAX_PARALLELISM))
+                .thenThrow(new ConfigurationPropertyNotFound(BackfillDataWarehouseBuilderImpl.CRAWL_MAX_PARALLELISM));
+        // call under test
+        assertEquals(BackfillDataWarehouseBuilderImpl.DEFAULT_CRAWL_MAX_PARALLELISM, builder.getCrawlMaxParallelism());
+    }
+
+    /**
+     * Answer each listing from the tree with a single page.
+     */
+    private void setupListings() {
+        when(mockS3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            assertEquals(BUCKET, request.getBucketName());
+            ListObjectsV2Result result = new ListObjectsV2Result();
+            result.getCommonPrefixes().addAll(tree.getOrDefault(request.getPrefix(), Collections.emptyList()));
+            return result;
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package org.sagebionetworks.template.datawarehouse.backfill;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class S3PrefixCrawlerTest {
+
+    private static final String BUCKET = "bucket";
+
+    @Mock
+    private AmazonS3 mockS3Client;
+
+    // prefix -> pages of sub prefixes
+    private final Map<String, List<List<String>>> tree = new HashMap<>();
+
+    @Test
+    public void testCrawl() {
+        tree.put("", Arrays.asList(Arrays.asList("000000001/", "other/"), Collections.singletonList("000000002/")));
+        tree.put("000000001/", Collections.singletonList(Arrays.asList("000000001/filedownloadrecord/", "000000001/skip/")));
+        tree.put("000000002/", Collections.singletonList(Collections.singletonList("000000002/filedownloadrecord/")));
+        tree.put("000000001/filedownloadrecord/", Arrays.asList(
+                Collections.singletonList("000000001/filedownloadrecord/2020-01-01/"),
+                Collections.singletonList("000000001/filedownloadrecord/2020-01-02/")));
+        tree.put("000000002/filedownloadrecord/", Collections.singletonList(
+                Collections.singletonList("000000002/filedownloadrecord/2020-01-03/")));
+        setupListings();
+        List<String> leaves = new ArrayList<>();
+        // call under test
+        int listed = new S3PrefixCrawler(mockS3Client, 4).crawl(BUCKET, "",
+                (prefix, subPrefix) -> !subPrefix.startsWith("other") && !subPrefix.contains("skip"), leaves::add);
+        // the second page of each listing is followed
+        Collections.sort(leaves);
+        assertEquals(Arrays.asList("000000001/filedownloadrecord/2020-01-01/", "000000001/filedownloadrecord/2020-01-02/",
+                "000000002/filedownloadrecord/2020-01-03/"), leaves);
+        assertEquals(8, listed);
+    }
+
+    @Test
+    public void testCrawlWithNoPrefixes() {
+        setupListings();
+        List<String> leaves = new ArrayList<>();
+        // call under test
+        int listed = new S3PrefixCrawler(mockS3Client, 2).crawl(BUCKET, "root/", (prefix, subPrefix) -> true, leaves::add);
+        assertEquals(Collections.singletonList("root/"), leaves);
+        assertEquals(1, listed);
+    }
+
+    @Test
+    public void testCrawlWithFailedListing() {
+        IllegalStateException exception = new IllegalStateException("failed");
+        when(mockS3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenThrow(exception);
+        // call under test
+        IllegalStateException result = assertThrows(IllegalStateException.class, () -> {
+            new S3PrefixCrawler(mockS3Client, 2).crawl(BUCKET, "", (prefix, subPrefix) -> true, leaf -> {});
+        });
+        assertEquals(exception, result);
+    }
+
+    @Test
+    public void testCrawlWithFailedConsumer() {
+        setupListings();
+        IllegalArgumentException exception = new IllegalArgumentException("failed");
+        // call under test
+        IllegalArgumentException result = assertThrows(IllegalArgumentException.class, () -> {
+            new S3PrefixCrawler(mockS3Client, 2).crawl(BUCKET, "", (prefix, subPrefix) -> true, leaf -> {
+                throw exception;
+            });
+        });
+        assertEquals(exception, result);
+    }
+
+    /**
+     * Answer each listing from the tree, one page per continuation token.
+     */
+    private void setupListings() {
+        when(mockS3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            assertEquals(BUCKET, request.getBucketName());
+            assertEquals(S3PrefixCrawler.DELIMITER, request.getDelimiter());
+            List<List<String>> pages = tree.getOrDefault(request.getPrefix(), Collections.singletonList(Collections.emptyList()));
+            int page = request.getContinuationToken() == null ? 0 : Integer.parseInt(request.getContinuationToken());
+            ListObjectsV2Result result = new ListObjectsV2Result();
+            result.getCommonPrefixes().addAll(pages.get(page));
+            result.setTruncated(page + 1 < pages.size());
+            result.setNextContinuationToken(page + 1 < pages.size() ? String.valueOf(page + 1) : null);
+            return result;
+        });
+    }
+}
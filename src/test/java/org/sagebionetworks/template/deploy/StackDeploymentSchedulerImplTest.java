@@ -0,0 +1,211 @@
+package org.sagebionetworks.template.deploy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.config.Configuration;
+
+@ExtendWith(MockitoExtension.class)
+public class StackDeploymentSchedulerImplTest {
+
+	@Mock
+	private Configuration mockConfig;
+	@Mock
+	private LoggerFactory mockLoggerFactory;
+	@Mock
+	private Logger mockLogger;
+
+	private StackDeploymentSchedulerImpl scheduler;
+
+	private ConcurrentLinkedQueue<String> executionOrder;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		scheduler = new StackDeploymentSchedulerImpl(mockConfig, mockLoggerFactory);
+		executionOrder = new ConcurrentLinkedQueue<>();
+	}
+
+	private void setupConfig(int parallelism) {
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM)).thenReturn(parallelism);
+		when(mockConfig.getProperty(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND)).thenReturn("1000");
+	}
+
+	private StackDeployment recording(String stackName, String... dependsOn) {
+		return new StackDeployment().withStackName(stackName).withDependsOn(dependsOn)
+				.withAction(() -> executionOrder.add(stackName));
+	}
+
+	@Test
+	public void testDeployWithEmpty() throws InterruptedException {
+		// call under test
+		scheduler.deploy(Collections.emptyList());
+	}
+
+	@Test
+	public void testDeployWithDependencies() throws InterruptedException {
+		setupConfig(4);
+		List<StackDeployment> deployments = List.of(recording("red", "public"), recording("green", "public"),
+				recording("vpc"), recording("public", "vpc"), recording("repo", "red", "green"));
+		// call under test
+		scheduler.deploy(deployments);
+
+		List<String> order = List.copyOf(executionOrder);
+		assertEquals(5, order.size());
+		assertTrue(order.indexOf("vpc") < order.indexOf("public"));
+		assertTrue(order.indexOf("public") < order.indexOf("red"));
+		assertTrue(order.indexOf("public") < order.indexOf("green"));
+		assertTrue(order.indexOf("red") < order.indexOf("repo"));
+		assertTrue(order.indexOf("green") < order.indexOf("repo"));
+	}
+
+	@Test
+	public void testDeployRunsIndependentStacksConcurrently() throws InterruptedException {
+		setupConfig(3);
+		// each action waits for the other two to start, which can only succeed if they run concurrently.
+		CountDownLatch started = new CountDownLatch(3);
+		StackDeployment.Action action = () -> {
+			started.countDown();
+			if (!started.await(10, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Deployments did not run concurrently");
+			}
+		};
+		List<StackDeployment> deployments = List.of(new StackDeployment().withStackName("repo").withAction(action),
+				new StackDeployment().withStackName("workers").withAction(action),
+				new StackDeployment().withStackName("portal").withAction(action));
+		// call under test
+		scheduler.deploy(deployments);
+
+		assertEquals(0, started.getCount());
+	}
+
+	@Test
+	public void testDeployHonorsMaxParallelism() throws InterruptedException {
+		setupConfig(2);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		StackDeployment.Action action = () -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			Thread.sleep(20);
+			running.decrementAndGet();
+		};
+		List<StackDeployment> deployments = List.of(new StackDeployment().withStackName("one").withAction(action),
+				new StackDeployment().withStackName("two").withAction(action),
+				new StackDeployment().withStackName("three").withAction(action),
+				new StackDeployment().withStackName("four").withAction(action));
+		// call under test
+		scheduler.deploy(deployments);
+
+		assertTrue(maxRunning.get() <= 2);
+	}
+
+	@Test
+	public void testDeployWithFailureSkipsDependents() throws InterruptedException {
+		setupConfig(1);
+		IllegalStateException error = new IllegalStateException("nope");
+		List<StackDeployment> deployments = List.of(
+				new StackDeployment().withStackName("vpc").withAction(() -> {
+					throw error;
+				}), recording("public", "vpc"), recording("red", "public"), recording("global"));
+
+		RuntimeException result = assertThrows(RuntimeException.class, () -> {
+			// call under test
+			scheduler.deploy(deployments);
+		});
+
+		assertSame(error, result.getCause());
+		assertEquals("Failed to deploy stacks: [vpc]. Skipped dependent stacks: [public, red]", result.getMessage());
+		// independent stacks are still deployed
+		assertEquals(List.of("global"), List.copyOf(executionOrder));
+	}
+
+	@Test
+	public void testDeployWithUnknownDependency() {
+		List<StackDeployment> deployments = List.of(recording("public", "vpc"));
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			scheduler.deploy(deployments);
+		}).getMessage();
+
+		assertEquals("Stack 'public' depends on unknown stack: 'vpc'", message);
+	}
+
+	@Test
+	public void testDeployWithDuplicateStack() {
+		List<StackDeployment> deployments = List.of(recording("vpc"), recording("vpc"));
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			scheduler.deploy(deployments);
+		}).getMessage();
+
+		assertEquals("Duplicate stack deployment: 'vpc'", message);
+	}
+
+	@Test
+	public void testDeployWithCycle() {
+		List<StackDeployment> deployments = List.of(recording("vpc"), recording("one", "two", "vpc"),
+				recording("two", "one"));
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			scheduler.deploy(deployments);
+		}).getMessage();
+
+		assertTrue(message.startsWith("Stack dependency cycle detected between: "));
+		assertTrue(message.contains("one"));
+		assertTrue(message.contains("two"));
+		assertTrue(executionOrder.isEmpty());
+	}
+
+	@Test
+	public void testDeployWithNoAction() {
+		List<StackDeployment> deployments = List.of(new StackDeployment().withStackName("vpc"));
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			scheduler.deploy(deployments);
+		}).getMessage();
+
+		assertEquals("deployment.action is required.", message);
+	}
+
+	@Test
+	public void testGetMaxParallelismWithDefault() {
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_PARALLELISM));
+		// call under test
+		assertEquals(StackDeploymentSchedulerImpl.DEFAULT_MAX_PARALLELISM, scheduler.getMaxParallelism());
+	}
+
+	@Test
+	public void testGetMaxRequestsPerSecondWithDefault() {
+		when(mockConfig.getProperty(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_STACK_DEPLOYMENT_MAX_REQUESTS_PER_SECOND));
+		// call under test
+		assertEquals(StackDeploymentSchedulerImpl.DEFAULT_MAX_REQUESTS_PER_SECOND, scheduler.getMaxRequestsPerSecond());
+	}
+
+}
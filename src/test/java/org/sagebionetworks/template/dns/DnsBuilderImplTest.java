@@ -1,16 +1,27 @@
 package org.sagebionetworks.template.dns;
 
+import com.amazonaws.services.route53.model.Change;
+import com.amazonaws.services.route53.model.ChangeAction;
+import com.amazonaws.services.route53.model.ResourceRecord;
+import com.amazonaws.services.route53.model.ResourceRecordSet;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.sagebionetworks.template.Route53Client;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -26,16 +37,40 @@ class DnsBuilderImplTest {
 	@InjectMocks
 	DnsBuilderImpl dnsBuilder;
 
-	@Mock
-	private List<RecordSetDescriptor> mockRecordSetDescriptors;
+	@Captor
+	private ArgumentCaptor<List<Change>> changesCaptor;
 
 	@Test
 	void testBuildDns() {
+		RecordSetDescriptor unchanged = new RecordSetDescriptor("same.synapse.org.", "CNAME", "300", Collections.singletonList("a"), null);
+		RecordSetDescriptor missing = new RecordSetDescriptor("new.synapse.org.", "CNAME", "300", Collections.singletonList("a"), null);
+		ResourceRecordSet other = new ResourceRecordSet("other.synapse.org.", "CNAME").withTTL(300L).withResourceRecords(new ResourceRecord("a"));
+		when(mockConfig.getHostedZoneId()).thenReturn("hostedZoneId");
+		when(mockConfig.getRecordSetDescriptorList()).thenReturn(Arrays.asList(unchanged, missing));
+		when(mockConfig.isPrune()).thenReturn(true);
+		when(mockRoute53Client.listResourceRecordSets("hostedZoneId")).thenReturn(Arrays.asList(
+				new ResourceRecordSet("same.synapse.org.", "CNAME").withTTL(300L).withResourceRecords(new ResourceRecord("a")),
+				other).iterator());
+		// call under test
+		dnsBuilder.buildDns(mockConfig);
+		verify(mockRoute53Client).submitChanges(eq("hostedZoneId"), changesCaptor.capture(), eq(1000));
+		List<Change> changes = changesCaptor.getValue();
+		assertEquals(2, changes.size());
+		assertEquals(new Change(ChangeAction.DELETE, other), changes.get(0));
+		assertEquals(new Change(ChangeAction.UPSERT, missing.toResourceRecordSet()), changes.get(1));
+	}
+
+	@Test
+	void testBuildDnsWithNoChanges() {
+		RecordSetDescriptor unchanged = new RecordSetDescriptor("same.synapse.org.", "CNAME", "300", Collections.singletonList("a"), null);
 		when(mockConfig.getHostedZoneId()).thenReturn("hostedZoneId");
-		when(mockConfig.getRecordSetDescriptorList()).thenReturn(mockRecordSetDescriptors);
+		when(mockConfig.getRecordSetDescriptorList()).thenReturn(Collections.singletonList(unchanged));
+		when(mockConfig.isPrune()).thenReturn(false);
+		when(mockRoute53Client.listResourceRecordSets("hostedZoneId")).thenReturn(Collections.singletonList(
+				new ResourceRecordSet("same.synapse.org.", "CNAME").withTTL(300L).withResourceRecords(new ResourceRecord("a"))).iterator());
 		// call under test
 		dnsBuilder.buildDns(mockConfig);
-		verify(mockRoute53Client).changeResourceRecordSets(eq("hostedZoneId"), eq(mockRecordSetDescriptors), eq(10));
+		verify(mockRoute53Client, never()).submitChanges(any(), any(), anyInt());
 	}
 
 }
\ No newline at end of file
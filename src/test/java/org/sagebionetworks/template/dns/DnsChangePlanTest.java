@@ -0,0 +1,130 @@
+package org.sagebionetworks.template.dns;
+
+import com.amazonaws.services.route53.model.AliasTarget;
+import com.amazonaws.services.route53.model.Change;
+import com.amazonaws.services.route53.model.ChangeAction;
+import com.amazonaws.services.route53.model.ResourceRecord;
+import com.amazonaws.services.route53.model.ResourceRecordSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DnsChangePlanTest {
+
+	private static final ResourceRecordSet SOA = new ResourceRecordSet("synapse.org.", "SOA").withTTL(900L)
+			.withResourceRecords(new ResourceRecord("ns.awsdns.com. hostmaster.amazon.com. 1 7200 900 1209600 86400"));
+	private static final ResourceRecordSet NS = new ResourceRecordSet("synapse.org.", "NS").withTTL(172800L)
+			.withResourceRecords(new ResourceRecord("ns.awsdns.com."));
+
+	@Test
+	void testCreate() {
+		RecordSetDescriptor unchanged = cname("same.synapse.org.", "300", "a");
+		RecordSetDescriptor changed = cname("changed.synapse.org.", "300", "new");
+		RecordSetDescriptor missing = cname("new.synapse.org.", "300", "a");
+		RecordSetDescriptor alias = new RecordSetDescriptor("synapse.org.", "A", null, null,
+				new AliasTargetDescriptor("d1.cloudfront.net.", false, "Z2FDTNDATAQYW2"));
+		ResourceRecordSet other = liveCname("other.synapse.org.", "a");
+		List<ResourceRecordSet> live = Arrays.asList(SOA, NS, liveCname("same.synapse.org.", "a"),
+				liveCname("changed.synapse.org.", "old"), other,
+				new ResourceRecordSet("synapse.org.", "A").withAliasTarget(
+						new AliasTarget("Z2FDTNDATAQYW2", "D1.cloudfront.net.").withEvaluateTargetHealth(false)));
+		// call under test
+		DnsChangePlan plan = DnsChangePlan.create(live.iterator(), Arrays.asList(unchanged, changed, missing, alias), false);
+		assertEquals(Arrays.asList(changed, missing), plan.getUpserts());
+		// not pruned
+		assertEquals(Collections.emptyList(), plan.getDeletes());
+		assertEquals(2, plan.getUnchanged());
+		assertFalse(plan.isEmpty());
+	}
+
+	@Test
+	void testCreateWithPrune() {
+		RecordSetDescriptor unchanged = cname("same.synapse.org.", "300", "a");
+		ResourceRecordSet other = liveCname("other.synapse.org.", "a");
+		ResourceRecordSet otherA = new ResourceRecordSet("other-a.synapse.org.", "A").withTTL(300L)
+				.withResourceRecords(new ResourceRecord("10.0.0.1"));
+		ResourceRecordSet txt = new ResourceRecordSet("synapse.org.", "TXT").withTTL(300L)
+				.withResourceRecords(new ResourceRecord("\"v=spf1\""));
+		ResourceRecordSet weighted = liveCname("weighted.synapse.org.", "a").withSetIdentifier("one").withWeight(1L);
+		List<ResourceRecordSet> live = Arrays.asList(SOA, NS, txt, liveCname("same.synapse.org.", "a"), other, otherA, weighted);
+		// call under test
+		DnsChangePlan plan = DnsChangePlan.create(live.iterator(), Collections.singletonList(unchanged), true);
+		// only A and CNAME record sets without a routing policy are pruned
+		assertEquals(Arrays.asList(other, otherA), plan.getDeletes());
+		assertEquals(Collections.emptyList(), plan.getUpserts());
+		assertEquals(1, plan.getUnchanged());
+	}
+
+	@Test
+	void testCreateWithConflictingTypes() {
+		// replace an A with a CNAME, and a CNAME with an A
+		RecordSetDescriptor toCname = cname("www.synapse.org.", "300", "synapse.org");
+		RecordSetDescriptor toA = new RecordSetDescriptor("api.synapse.org.", "A", "300", Collections.singletonList("10.0.0.2"), null);
+		ResourceRecordSet liveA = new ResourceRecordSet("www.synapse.org.", "A").withTTL(300L)
+				.withResourceRecords(new ResourceRecord("10.0.0.1"));
+		ResourceRecordSet liveTxt = new ResourceRecordSet("WWW.synapse.org.", "TXT").withTTL(300L)
+				.withResourceRecords(new ResourceRecord("\"text\""));
+		ResourceRecordSet liveCname = liveCname("api.synapse.org.", "a");
+		List<ResourceRecordSet> live = Arrays.asList(SOA, NS, liveCname, liveA, liveTxt);
+		// call under test
+		DnsChangePlan plan = DnsChangePlan.create(live.iterator(), Arrays.asList(toCname, toA), false);
+		assertEquals(Arrays.asList(liveCname, liveA, liveTxt), plan.getDeletes());
+		assertEquals(Arrays.asList(toCname, toA), plan.getUpserts());
+		List<Change> changes = plan.toChanges();
+		assertEquals(5, changes.size());
+		// deletes come first
+		assertEquals(ChangeAction.DELETE.name(), changes.get(0).getAction());
+		assertSame(liveCname, changes.get(0).getResourceRecordSet());
+		assertEquals(ChangeAction.UPSERT.name(), changes.get(3).getAction());
+		assertEquals("www.synapse.org.", changes.get(3).getResourceRecordSet().getName());
+	}
+
+	@Test
+	void testCreateMatchesNamesAndValuesInAnyCaseAndOrder() {
+		RecordSetDescriptor unchanged = new RecordSetDescriptor("Same.synapse.org", "CNAME", "300", Arrays.asList("b", "a"), null);
+		RecordSetDescriptor changedTtl = cname("ttl.synapse.org.", "600", "a");
+		List<ResourceRecordSet> live = Arrays.asList(SOA, NS,
+				new ResourceRecordSet("same.synapse.org.", "CNAME").withTTL(300L)
+						.withResourceRecords(new ResourceRecord("a"), new ResourceRecord("b")),
+				liveCname("ttl.synapse.org.", "a"));
+		// call under test
+		DnsChangePlan plan = DnsChangePlan.create(live.iterator(), Arrays.asList(unchanged, changedTtl), false);
+		assertEquals(Collections.singletonList(changedTtl), plan.getUpserts());
+		assertEquals(1, plan.getUnchanged());
+	}
+
+	@Test
+	void testCreateAllUnchanged() {
+		RecordSetDescriptor unchanged = cname("same.synapse.org.", "300", "a");
+		// call under test
+		DnsChangePlan plan = DnsChangePlan.create(Arrays.asList(SOA, NS, liveCname("same.synapse.org.", "a")).iterator(),
+				Collections.singletonList(unchanged), true);
+		assertTrue(plan.isEmpty());
+		assertEquals(Collections.emptyList(), plan.toChanges());
+	}
+
+	@Test
+	void testToLines() {
+		ResourceRecordSet other = liveCname("other.synapse.org.", "a");
+		RecordSetDescriptor missing = cname("new.synapse.org.", "300", "a");
+		DnsChangePlan plan = new DnsChangePlan(Collections.singletonList(other), Collections.singletonList(missing), 3);
+		// call under test
+		List<String> lines = plan.toLines("zoneId");
+		assertEquals(Arrays.asList(
+				"Plan for zone: zoneId: 1 to upsert, 1 to delete, 3 unchanged",
+				"  DELETE CNAME  other.synapse.org.",
+				"  UPSERT CNAME  new.synapse.org."), lines);
+	}
+
+	private static RecordSetDescriptor cname(String name, String ttl, String value) {
+		return new RecordSetDescriptor(name, "CNAME", ttl, Collections.singletonList(value), null);
+	}
+
+	private static ResourceRecordSet liveCname(String name, String value) {
+		return new ResourceRecordSet(name, "CNAME").withTTL(300L).withResourceRecords(new ResourceRecord(value));
+	}
+}
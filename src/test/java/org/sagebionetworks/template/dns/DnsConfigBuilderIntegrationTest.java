@@ -10,6 +10,7 @@ import org.sagebionetworks.template.TemplateGuiceModule;
 import org.sagebionetworks.template.TemplateUtils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.sagebionetworks.template.Constants.ROUTE53_DEV_SAGEBASE_ORG_DNS_CONFIG_FILE;
 import static org.sagebionetworks.template.Constants.ROUTE53_PROD_DOCS_CLIENT_DNS_CONFIG_FILE;
 import static org.sagebionetworks.template.Constants.ROUTE53_PROD_PORTALS_DNS_CONFIG_FILE;
@@ -28,6 +29,14 @@ public class DnsConfigBuilderIntegrationTest {
 		dnsConfigBuilder = TemplateUtils.loadFromJsonFile(ROUTE53_PROD_DOCS_CLIENT_DNS_CONFIG_FILE, DnsConfigBuilder.class);
 	}
 
+	@Test
+	void testSharedZonesNotPruned() throws Exception {
+		// these configurations share a zone, so pruning one would delete the records of the others
+		for (String file : new String[] {ROUTE53_PROD_SYNAPSE_ORG_DNS_CONFIG_FILE, ROUTE53_PROD_PORTALS_DNS_CONFIG_FILE, ROUTE53_PROD_DOCS_CLIENT_DNS_CONFIG_FILE}) {
+			assertFalse(TemplateUtils.loadFromJsonFile(file, DnsConfigBuilder.class).build().isPrune());
+		}
+	}
+
 	@Test
 	void testValidateResourcePathInvalid() {
 		IllegalArgumentException thrown = Assertions.assertThrows(IllegalArgumentException.class, () -> {
@@ -0,0 +1,58 @@
+package org.sagebionetworks.template.docs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class DocsManifestTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DocsManifest manifest = new DocsManifest();
+		manifest.add(summary("a/index.html", "\"etag-a\"", 123L));
+		// keys can contain any character
+		manifest.add(summary("b/with\nnew line\t\"quoted\"é", "etag-b", 0L));
+		assertEquals(2, manifest.size());
+		// call under test
+		List<S3ObjectSummary> objects = DocsManifest.read("bucket", new ByteArrayInputStream(manifest.toByteArray()));
+		assertEquals(2, objects.size());
+		assertEquals("bucket", objects.get(0).getBucketName());
+		assertEquals("a/index.html", objects.get(0).getKey());
+		assertEquals("\"etag-a\"", objects.get(0).getETag());
+		assertEquals(123L, objects.get(0).getSize());
+		assertEquals("b/with\nnew line\t\"quoted\"é", objects.get(1).getKey());
+		assertEquals("etag-b", objects.get(1).getETag());
+		assertEquals(0L, objects.get(1).getSize());
+	}
+
+	@Test
+	public void testRoundTripEmpty() throws IOException {
+		DocsManifest manifest = new DocsManifest();
+		// call under test
+		List<S3ObjectSummary> objects = DocsManifest.read("bucket", new ByteArrayInputStream(manifest.toByteArray()));
+		assertEquals(0, objects.size());
+	}
+
+	@Test
+	public void testReadNotGzipped() {
+		assertThrows(IOException.class, () -> {
+			// call under test
+			DocsManifest.read("bucket", new ByteArrayInputStream("[\"a\",\"b\",1]".getBytes()));
+		});
+	}
+
+	static S3ObjectSummary summary(String key, String etag, long size) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setKey(key);
+		summary.setETag(etag);
+		summary.setSize(size);
+		return summary;
+	}
+}
@@ -2,19 +2,26 @@ package org.sagebionetworks.template.docs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.json.JSONObject;
 
@@ -22,22 +29,34 @@ import static org.sagebionetworks.template.Constants.PROPERTY_KEY_INSTANCE;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_SOURCE_BUCKET;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_DESTINATION_BUCKET;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_DEPLOYMENT_FLAG;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DOCS_MAX_COPIES_IN_FLIGHT;
 import static org.sagebionetworks.template.Constants.DOCS_STACK_INSTANCE_JSON_FILE;
+import static org.sagebionetworks.template.Constants.DOCS_STACK_MANIFEST_FILE;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.ThreadProvider;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.s3.S3TransferManager;
 import org.sagebionetworks.template.s3.S3TransferManagerFactory;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.transfer.Copy;
 
@@ -57,16 +76,10 @@ public class SynapseDocsBuilderImplTest {
 	private RepoConfiguration mockConfig;
 	
 	@Mock
-	private ObjectListing mockSourceListing;
-
-	@Mock
-	private ObjectListing mockDestinationListing;
-	
-	@Mock
-	private ListObjectsRequest mockSourceListRequest;
+	private ThreadProvider mockThreadProvider;
 	
 	@Mock
-	private ListObjectsRequest mockDestinationListRequest;
+	private S3Object mockManifestObject;
 	
 	@Mock
 	private Copy mockCopy;
@@ -78,7 +91,6 @@ public class SynapseDocsBuilderImplTest {
 	private JSONObject instanceObjectUpToDate;
 	private String jsonOutOfDate;
 	private String jsonUpToDate;
-	private List<S3ObjectSummary> objects;
 	private S3ObjectSummary object;
 	private String prefix;
 	
@@ -104,8 +116,7 @@ public class SynapseDocsBuilderImplTest {
 		object = new S3ObjectSummary();
 		object.setKey("objectKey");
 		object.setETag("etag");
-		objects = Arrays.asList(object);
-		builder = new SynapseDocsBuilderImpl(mockS3Client, mockConfig, mockS3TransferManagerFactory);
+		builder = new SynapseDocsBuilderImpl(mockS3Client, mockConfig, mockS3TransferManagerFactory, mockThreadProvider);
 		builderSpy = spy(builder);
 	}
 	
@@ -193,118 +204,278 @@ public class SynapseDocsBuilderImplTest {
 	
 	@Test
 	public void testSyncWithDestinationEmpty() throws Exception {
-		doAnswer(invocation -> mockDestinationListRequest)
-			.when(builderSpy).createListObjectsRequest(destinationBucket, prefix);
-		doAnswer(invocation -> mockSourceListRequest)
-			.when(builderSpy).createListObjectsRequest(sourceBucket, prefix);
-		doAnswer(invocation -> new ArrayList<S3ObjectSummary>())
-			.when(builderSpy).getAllS3Objects(mockDestinationListRequest);
-		doAnswer(invocation -> objects)
-			.when(builderSpy).getAllS3Objects(mockSourceListRequest);
+		setupListing(sourceBucket, page(false, null, object));
+		setupListing(destinationBucket, page(false, null));
 		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
 		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(mockCopy);
 		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
 		// call under test
-		builderSpy.sync(sourceBucket, destinationBucket);
+		builder.sync(sourceBucket, destinationBucket);
 		verify(mockS3TransferManager).close();
 		verify(mockS3TransferManager).copy(sourceBucket, object.getKey(), destinationBucket, object.getKey());
-		verify(mockS3Client, never()).deleteObject(any(), any());
+		verify(mockCopy).waitForCompletion();
+		verify(mockS3Client, never()).deleteObjects(any());
+		verify(mockS3Client).deleteObject(destinationBucket, DOCS_STACK_MANIFEST_FILE);
+		assertEquals(Arrays.asList(object.getKey()), keys(captureManifest()));
 		verify(mockS3Client).putObject(destinationBucket, DOCS_STACK_INSTANCE_JSON_FILE, jsonUpToDate);
 	}
 	
+	@Test
+	public void testSyncWithManifest() throws Exception {
+		S3ObjectSummary changed = summary("changed", "new-etag");
+		S3ObjectSummary removed = summary("removed", "etag");
+		DocsManifest existing = new DocsManifest();
+		existing.add(summary("changed", "old-etag"));
+		existing.add(object);
+		existing.add(removed);
+		setupListing(sourceBucket, page(false, null, changed, object));
+		when(mockS3Client.doesObjectExist(destinationBucket, DOCS_STACK_MANIFEST_FILE)).thenReturn(true);
+		when(mockS3Client.getObject(destinationBucket, DOCS_STACK_MANIFEST_FILE)).thenReturn(mockManifestObject);
+		when(mockManifestObject.getObjectContent()).thenReturn(
+				new S3ObjectInputStream(new ByteArrayInputStream(existing.toByteArray()), null));
+		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
+		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(mockCopy);
+		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
+		// call under test
+		builder.sync(sourceBucket, destinationBucket);
+		// the destination is not listed
+		verify(mockS3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+		verify(mockS3TransferManager).copy(sourceBucket, "changed", destinationBucket, "changed");
+		verify(mockS3TransferManager, times(1)).copy(any(), any(), any(), any());
+		ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+		verify(mockS3Client).deleteObjects(captor.capture());
+		assertEquals(Arrays.asList("removed"), keys(captor.getValue()));
+		verify(mockManifestObject).close();
+		List<S3ObjectSummary> written = captureManifest();
+		assertEquals(Arrays.asList("changed", object.getKey()), keys(written));
+		assertEquals("new-etag", written.get(0).getETag());
+		verify(mockS3Client).putObject(destinationBucket, DOCS_STACK_INSTANCE_JSON_FILE, jsonUpToDate);
+	}
+	
+	@Test
+	public void testGetDestinationObjectsWithUnreadableManifest() throws Exception {
+		setupListing(destinationBucket, page(false, null, object));
+		when(mockS3Client.doesObjectExist(destinationBucket, DOCS_STACK_MANIFEST_FILE)).thenReturn(true);
+		when(mockS3Client.getObject(destinationBucket, DOCS_STACK_MANIFEST_FILE)).thenReturn(mockManifestObject);
+		when(mockManifestObject.getObjectContent()).thenReturn(
+				new S3ObjectInputStream(new ByteArrayInputStream("not gzip".getBytes()), null));
+		// call under test
+		Iterator<S3ObjectSummary> objects = builder.getDestinationObjects(destinationBucket, prefix);
+		// falls back to listing the bucket
+		assertTrue(objects.hasNext());
+		assertEquals(object.getKey(), objects.next().getKey());
+		assertFalse(objects.hasNext());
+	}
+	
 	@Test
 	public void testSyncWithDestinationSameKeyWithSameETag() throws Exception {
-		doAnswer(invocation -> mockDestinationListRequest)
-			.when(builderSpy).createListObjectsRequest(destinationBucket, prefix);
-		doAnswer(invocation -> mockSourceListRequest)
-			.when(builderSpy).createListObjectsRequest(sourceBucket, prefix);
-		doAnswer(invocation -> objects).when(builderSpy).getAllS3Objects(mockDestinationListRequest);
-		doAnswer(invocation -> objects).when(builderSpy).getAllS3Objects(mockSourceListRequest);
+		setupListing(sourceBucket, page(false, null, object));
+		setupListing(destinationBucket, page(false, null, object));
 		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
 		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
 		// call under test
-		builderSpy.sync(sourceBucket, destinationBucket);
+		builder.sync(sourceBucket, destinationBucket);
 		verify(mockS3TransferManager).close();
 		verify(mockS3TransferManager, never()).copy(any(), any(), any(), any());
-		verify(mockS3Client, never()).deleteObject(any(), any());
+		verify(mockS3Client, never()).deleteObjects(any());
 		verify(mockS3Client).putObject(destinationBucket, DOCS_STACK_INSTANCE_JSON_FILE, jsonUpToDate);
 	}
 	
 	@Test
 	public void testSyncWithDestinationSameKeyWithDifferentETag() throws Exception {
-		S3ObjectSummary newObject = new S3ObjectSummary();
-		newObject.setETag("different-etag");
-		newObject.setKey(object.getKey());
-		List<S3ObjectSummary> newObjects = Arrays.asList(newObject);
-		doAnswer(invocation -> mockDestinationListRequest)
-			.when(builderSpy).createListObjectsRequest(destinationBucket, prefix);
-		doAnswer(invocation -> mockSourceListRequest)
-			.when(builderSpy).createListObjectsRequest(sourceBucket, prefix);
-		doAnswer(invocation -> newObjects).when(builderSpy).getAllS3Objects(mockDestinationListRequest);
-		doAnswer(invocation -> objects).when(builderSpy).getAllS3Objects(mockSourceListRequest);
+		S3ObjectSummary newObject = summary(object.getKey(), "different-etag");
+		setupListing(sourceBucket, page(false, null, object));
+		setupListing(destinationBucket, page(false, null, newObject));
 		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
 		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
 		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(mockCopy);
 		// call under test
-		builderSpy.sync(sourceBucket, destinationBucket);
+		builder.sync(sourceBucket, destinationBucket);
 		verify(mockS3TransferManager).close();
 		verify(mockS3TransferManager).copy(sourceBucket, object.getKey(), destinationBucket, object.getKey());
-		verify(mockS3Client, never()).deleteObject(any(), any());
+		verify(mockS3Client, never()).deleteObjects(any());
 		verify(mockS3Client).putObject(destinationBucket, DOCS_STACK_INSTANCE_JSON_FILE, jsonUpToDate);
 	}
 	
 	@Test
 	public void testSyncWithDestinationDeleteExistingFile() throws Exception {
-		S3ObjectSummary newObject = new S3ObjectSummary();
-		newObject.setKey("someKeyNotInSource");
-		List<S3ObjectSummary> newObjects = Arrays.asList(newObject);
-		doAnswer(invocation -> mockDestinationListRequest)
-			.when(builderSpy).createListObjectsRequest(destinationBucket, prefix);
-		doAnswer(invocation -> mockSourceListRequest)
-			.when(builderSpy).createListObjectsRequest(sourceBucket, prefix);
-		doAnswer(invocation -> newObjects).when(builderSpy).getAllS3Objects(mockDestinationListRequest);
-		doAnswer(invocation -> objects).when(builderSpy).getAllS3Objects(mockSourceListRequest);
+		S3ObjectSummary newObject = summary("someKeyNotInSource", "etag");
+		// the instance file is not in the source but must be kept
+		S3ObjectSummary instanceFile = summary(DOCS_STACK_INSTANCE_JSON_FILE, "instance-etag");
+		setupListing(sourceBucket, page(false, null, object));
+		setupListing(destinationBucket, page(false, null, instanceFile, object, newObject));
 		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
 		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
-		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(mockCopy);
 		// call under test
-		builderSpy.sync(sourceBucket, destinationBucket);
+		builder.sync(sourceBucket, destinationBucket);
 		verify(mockS3TransferManager).close();
-		verify(mockS3TransferManager).copy(sourceBucket, object.getKey(), destinationBucket, object.getKey());
-		verify(mockS3Client).deleteObject(destinationBucket, newObject.getKey());
+		verify(mockS3TransferManager, never()).copy(any(), any(), any(), any());
+		ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+		verify(mockS3Client).deleteObjects(captor.capture());
+		assertEquals(destinationBucket, captor.getValue().getBucketName());
+		assertEquals(Arrays.asList(object.getKey()), keys(captureManifest()));
+		assertEquals(Arrays.asList(newObject.getKey()), keys(captor.getValue()));
+		assertTrue(captor.getValue().getQuiet());
 		verify(mockS3Client).putObject(destinationBucket, DOCS_STACK_INSTANCE_JSON_FILE, jsonUpToDate);
 	}
 	
 	@Test
-	public void testGetAllS3Objects() {
-		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockSourceListing);
-		when(mockSourceListing.getObjectSummaries()).thenReturn(objects);
-		when(mockSourceListing.isTruncated()).thenReturn(false);
+	public void testSyncWithInterleavedKeysAcrossPages() throws Exception {
+		S3ObjectSummary a = summary("a", "etag-a");
+		S3ObjectSummary b = summary("b", "etag-b");
+		S3ObjectSummary c = summary("c", "etag-c");
+		S3ObjectSummary d = summary("d", "etag-d");
+		S3ObjectSummary e = summary("e", "etag-e");
+		setupListing(sourceBucket, page(true, "s1", a, c), page(false, null, e));
+		setupListing(destinationBucket, page(true, "d1", b), page(true, "d2", c), page(false, null, d));
+		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
+		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(mockCopy);
+		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
 		// call under test
-		List<S3ObjectSummary> allObjects = builder.getAllS3Objects(mockSourceListRequest);
-		verify(mockSourceListRequest).setMarker(mockSourceListing.getNextMarker());
-		assertEquals(allObjects, objects);
+		builder.sync(sourceBucket, destinationBucket);
+		verify(mockS3TransferManager).copy(sourceBucket, "a", destinationBucket, "a");
+		verify(mockS3TransferManager).copy(sourceBucket, "e", destinationBucket, "e");
+		verify(mockS3TransferManager, times(2)).copy(any(), any(), any(), any());
+		ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+		verify(mockS3Client).deleteObjects(captor.capture());
+		assertEquals(Arrays.asList("b", "d"), keys(captor.getValue()));
+		// every page of both buckets is listed once
+		verify(mockS3Client, times(5)).listObjectsV2(any(ListObjectsV2Request.class));
 	}
 	
 	@Test
-	public void testGetAllS3ObjectsWithTruncatedList() {
-		S3ObjectSummary nextObject = new S3ObjectSummary();
-		List<S3ObjectSummary> nextPageObjects = Arrays.asList(nextObject);
-		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockSourceListing);
-		when(mockSourceListing.getObjectSummaries()).thenReturn(objects,nextPageObjects);
-		when(mockSourceListing.isTruncated()).thenReturn(true, false);
+	public void testSyncWithDeletesInBatches() throws Exception {
+		List<S3ObjectSummary> toDelete = new ArrayList<>();
+		for (int i = 0; i < SynapseDocsBuilderImpl.MAX_KEYS_PER_DELETE + 1; i++) {
+			toDelete.add(summary(String.format("key-%05d", i), "etag"));
+		}
+		setupListing(sourceBucket, page(false, null));
+		setupListing(destinationBucket, page(false, null, toDelete.toArray(new S3ObjectSummary[0])));
+		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
+		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
 		// call under test
-		List<S3ObjectSummary> allObjects = builder.getAllS3Objects(mockSourceListRequest);
-		List<S3ObjectSummary> expected = Arrays.asList(object, nextObject);
-		verify(mockSourceListRequest, times(2)).setMarker(mockSourceListing.getNextMarker());
-		assertEquals(allObjects, expected);
+		builder.sync(sourceBucket, destinationBucket);
+		ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+		verify(mockS3Client, times(2)).deleteObjects(captor.capture());
+		assertEquals(SynapseDocsBuilderImpl.MAX_KEYS_PER_DELETE, captor.getAllValues().get(0).getKeys().size());
+		assertEquals(Arrays.asList("key-01000"), keys(captor.getAllValues().get(1)));
+	}
+	
+	@Test
+	public void testSyncWithMaxCopiesInFlight() throws Exception {
+		Copy first = Mockito.mock(Copy.class);
+		Copy second = Mockito.mock(Copy.class);
+		Copy third = Mockito.mock(Copy.class);
+		setupListing(sourceBucket, page(false, null, summary("a", "1"), summary("b", "2"), summary("c", "3")));
+		setupListing(destinationBucket, page(false, null));
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_DOCS_MAX_COPIES_IN_FLIGHT)).thenReturn(2);
+		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
+		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(first, second, third);
+		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(prodInstance);
+		// call under test
+		builder.sync(sourceBucket, destinationBucket);
+		// the oldest copy is waited on before the third is started
+		InOrder inOrder = Mockito.inOrder(mockS3TransferManager, first, second, third);
+		inOrder.verify(mockS3TransferManager).copy(sourceBucket, "a", destinationBucket, "a");
+		inOrder.verify(mockS3TransferManager).copy(sourceBucket, "b", destinationBucket, "b");
+		inOrder.verify(first).waitForCompletion();
+		inOrder.verify(mockS3TransferManager).copy(sourceBucket, "c", destinationBucket, "c");
+		inOrder.verify(second).waitForCompletion();
+		inOrder.verify(third).waitForCompletion();
+		inOrder.verify(mockS3TransferManager).close();
+	}
+	
+	@Test
+	public void testSyncWithFailedCopy() throws Exception {
+		setupListing(sourceBucket, page(false, null, object));
+		setupListing(destinationBucket, page(false, null));
+		when(mockS3TransferManagerFactory.createNewS3TransferManager()).thenReturn(mockS3TransferManager);
+		when(mockS3TransferManager.copy(any(), any(), any(), any())).thenReturn(mockCopy);
+		AmazonServiceException exception = new AmazonServiceException("failed");
+		doThrow(exception).when(mockCopy).waitForCompletion();
+		// call under test
+		RuntimeException result = assertThrows(RuntimeException.class, () -> {
+			builder.sync(sourceBucket, destinationBucket);
+		});
+		assertEquals(exception, result.getCause());
+		verify(mockS3TransferManager).close();
+		verify(mockS3Client, never()).putObject(any(PutObjectRequest.class));
+		verify(mockS3Client, never()).putObject(any(), any(), any(String.class));
+	}
+	
+	@Test
+	public void testGetMaxCopiesInFlightWithMissingProperty() {
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_DOCS_MAX_COPIES_IN_FLIGHT))
+			.thenThrow(ConfigurationPropertyNotFound.class);
+		// call under test
+		assertEquals(SynapseDocsBuilderImpl.DEFAULT_MAX_COPIES_IN_FLIGHT, builder.getMaxCopiesInFlight());
+	}
+	
+	@Test
+	public void testCompareKeys() {
+		assertEquals(0, SynapseDocsBuilderImpl.compareKeys("a/b", "a/b"));
+		assertTrue(SynapseDocsBuilderImpl.compareKeys("a", "a/b") < 0);
+		assertTrue(SynapseDocsBuilderImpl.compareKeys("a/b", "a") > 0);
+		assertTrue(SynapseDocsBuilderImpl.compareKeys("a/b", "a/c") < 0);
+		// a supplementary character is after any character of the basic plane in UTF-8 order
+		assertTrue(SynapseDocsBuilderImpl.compareKeys("\uD83D\uDE00", "\uFFFF") > 0);
+		assertTrue("\uD83D\uDE00".compareTo("\uFFFF") < 0);
 	}
 	
 	@Test
 	public void testCreateListObjectsRequest() {
 		// call under test
-		ListObjectsRequest request = builder.createListObjectsRequest(sourceBucket, prefix);
+		ListObjectsV2Request request = builder.createListObjectsRequest(sourceBucket, prefix);
 		assertEquals(request.getBucketName(), sourceBucket);
 		assertEquals(request.getPrefix(), prefix);
 	}
+	
+	/**
+	 * Setup the pages returned when listing the given bucket, checking that
+	 * each page is requested with the token of the page before it.
+	 */
+	private void setupListing(String bucket, ListObjectsV2Result... pages) {
+		List<ListObjectsV2Result> remaining = new ArrayList<>(Arrays.asList(pages));
+		String[] expectedToken = new String[1];
+		when(mockS3Client.listObjectsV2(argThat((ListObjectsV2Request request) -> request != null && bucket.equals(request.getBucketName()))))
+			.thenAnswer(invocation -> {
+				ListObjectsV2Request request = invocation.getArgument(0);
+				assertEquals(expectedToken[0], request.getContinuationToken());
+				ListObjectsV2Result result = remaining.remove(0);
+				expectedToken[0] = result.getNextContinuationToken();
+				return result;
+			});
+	}
+	
+	private List<S3ObjectSummary> captureManifest() throws IOException {
+		ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+		verify(mockS3Client).putObject(captor.capture());
+		assertEquals(destinationBucket, captor.getValue().getBucketName());
+		assertEquals(DOCS_STACK_MANIFEST_FILE, captor.getValue().getKey());
+		return DocsManifest.read(destinationBucket, captor.getValue().getInputStream());
+	}
+	
+	private static ListObjectsV2Result page(boolean truncated, String nextToken, S3ObjectSummary... summaries) {
+		ListObjectsV2Result result = new ListObjectsV2Result();
+		result.setTruncated(truncated);
+		result.setNextContinuationToken(nextToken);
+		result.getObjectSummaries().addAll(Arrays.asList(summaries));
+		return result;
+	}
+	
+	private static S3ObjectSummary summary(String key, String etag) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setKey(key);
+		summary.setETag(etag);
+		summary.setSize(10);
+		return summary;
+	}
+	
+	private static List<String> keys(List<S3ObjectSummary> summaries) {
+		return summaries.stream().map(S3ObjectSummary::getKey).collect(Collectors.toList());
+	}
+	
+	private static List<String> keys(DeleteObjectsRequest request) {
+		return request.getKeys().stream().map(KeyVersion::getKey).collect(Collectors.toList());
+	}
 }
@@ -0,0 +1,64 @@
+package org.sagebionetworks.template.dryrun;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.utils.CachedArtifact;
+
+@ExtendWith(MockitoExtension.class)
+public class DryRunArtifactDownloadTest {
+
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	DryRunArtifactDownload downloader;
+	String url;
+
+	@BeforeEach
+	public void before() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		downloader = new DryRunArtifactDownload(mockLoggerFactory);
+		url = "https://sagebionetworks.jfrog.io/some/artifact.war";
+	}
+
+	@Test
+	public void testDownloadFile() throws IOException {
+		// call under test
+		File file = downloader.downloadFile(url);
+		try (ZipFile zip = new ZipFile(file)) {
+			assertEquals(0, zip.size());
+		} finally {
+			file.delete();
+		}
+		verify(mockLogger).info("Dry run, skipping the download of: " + url);
+	}
+
+	@Test
+	public void testGetCachedFile() throws IOException {
+		// call under test
+		try (CachedArtifact artifact = downloader.getCachedFile(url)) {
+			assertTrue(artifact.getFile().exists());
+			try (ZipFile zip = new ZipFile(artifact.getFile())) {
+				assertEquals(0, zip.size());
+			}
+			artifact.getFile().delete();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.sagebionetworks.template.dryrun;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.CreateOrUpdateStackRequest;
+import org.sagebionetworks.template.LoggerFactory;
+
+import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+@ExtendWith(MockitoExtension.class)
+public class DryRunCloudFormationClientTest {
+
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	Path directory;
+	DryRunInputs inputs;
+	DryRunCloudFormationClient client;
+
+	@BeforeEach
+	public void before() throws IOException {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		directory = Files.createTempDirectory("dry-run");
+		inputs = new DryRunInputs();
+		inputs.getOutputs().put("recorded", Map.of("key", "value"));
+		client = new DryRunCloudFormationClient(new DryRunMode(directory.resolve("templates"), inputs),
+				mockLoggerFactory);
+	}
+
+	@AfterEach
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Test
+	public void testCreateOrUpdateStack() throws IOException, InterruptedException {
+		// call under test
+		client.createOrUpdateStack(new CreateOrUpdateStackRequest().withStackName("stack")
+				.withTemplateBody("{\"Resources\": {}}")
+				.withParameters(new Parameter().withParameterKey("b").withParameterValue("1"),
+						new Parameter().withParameterKey("a").withParameterValue("2")));
+
+		assertEquals("{\"Resources\": {}}", read("stack.json"));
+		assertEquals("{\n  \"b\" : \"1\",\n  \"a\" : \"2\"\n}", read("stack-parameters.json").replace("\r", ""));
+		Stack stack = client.waitForStackToComplete("stack").get();
+		assertEquals("stack", stack.getStackName());
+		assertEquals(StackStatus.CREATE_COMPLETE.toString(), stack.getStackStatus());
+		assertEquals(2, stack.getParameters().size());
+		assertTrue(client.doesStackNameExist("stack"));
+		verify(mockLogger).info("Dry run, wrote the template of stack: stack to: " + directory.resolve("templates/stack.json"));
+	}
+
+	@Test
+	public void testCreateStackWithYaml() throws IOException {
+		// call under test
+		client.createStack(new CreateOrUpdateStackRequest().withStackName("cdn").withTemplateBody("Resources: {}"));
+
+		assertEquals("Resources: {}", read("cdn.yaml"));
+		assertFalse(Files.exists(directory.resolve("templates/cdn-parameters.json")));
+	}
+
+	@Test
+	public void testUpdateStackWithRecordedOutputs() {
+		// call under test
+		client.updateStack(new CreateOrUpdateStackRequest().withStackName("recorded").withTemplateBody("{}"));
+
+		Stack stack = client.waitForStackToCompleteAsync("recorded").join();
+		assertEquals(List.of("key=value"), stack.getOutputs().stream()
+				.map(output -> output.getOutputKey() + "=" + output.getOutputValue()).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testDescribeStack() {
+		assertEquals(List.of(new Output().withOutputKey("key").withOutputValue("value")),
+				client.describeStack("recorded").get().getOutputs());
+		assertFalse(client.describeStack("unknown").isPresent());
+		assertFalse(client.doesStackNameExist("unknown"));
+		assertNull(client.waitForStackToCompleteAsync("unknown").join());
+	}
+
+	@Test
+	public void testGetOutput() {
+		assertEquals("value", client.getOutput("recorded", "key"));
+		assertEquals("dry-run-recorded-other", client.getOutput("recorded", "other"));
+	}
+
+	@Test
+	public void testDeleteStack() {
+		// call under test
+		client.deleteStack("stack");
+
+		verify(mockLogger).info("Dry run, skipping the deletion of stack: stack");
+	}
+
+	@Test
+	public void testStreamOverAllStacks() {
+		assertEquals(0, client.streamOverAllStacks().count());
+	}
+
+	String read(String fileName) throws IOException {
+		return new String(Files.readAllBytes(directory.resolve("templates").resolve(fileName)), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,30 @@
+package org.sagebionetworks.template.dryrun;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class DryRunEc2ClientTest {
+
+	DryRunEc2Client client = new DryRunEc2Client();
+
+	@Test
+	public void testGetAvailabilityZonesForInstanceType() {
+		assertEquals(DryRunEc2Client.AVAILABILITY_ZONES, client.getAvailabilityZonesForInstanceType("t3.large"));
+	}
+
+	@Test
+	public void testGetAvailabityZoneToSubnetMap() {
+		assertEquals(Map.of("us-east-1a", "subnet-1", "us-east-1b", "subnet-2"),
+				client.getAvailabityZoneToSubnetMap(List.of("subnet-1", "subnet-2")));
+	}
+
+	@Test
+	public void testGetAvailableSubnetsForInstanceType() {
+		List<String> subnets = List.of("subnet-1", "subnet-2");
+		assertEquals(subnets, client.getAvailableSubnetsForInstanceType("t3.large", subnets));
+	}
+}
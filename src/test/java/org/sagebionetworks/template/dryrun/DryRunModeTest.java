@@ -0,0 +1,177 @@
+package org.sagebionetworks.template.dryrun;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DRY_RUN_DIRECTORY;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_DRY_RUN_INPUTS;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.config.Configuration;
+
+import com.amazonaws.services.elasticbeanstalk.AWSElasticBeanstalk;
+import com.amazonaws.services.elasticbeanstalk.AWSElasticBeanstalkClient;
+import com.amazonaws.services.elasticbeanstalk.model.DescribePlatformVersionRequest;
+import com.amazonaws.services.elasticbeanstalk.model.ListPlatformVersionsRequest;
+import com.amazonaws.services.elasticbeanstalk.model.PlatformSummary;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.route53.AmazonRoute53;
+import com.amazonaws.services.route53.AmazonRoute53Client;
+import com.amazonaws.services.route53.model.ListResourceRecordSetsRequest;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerClient;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
+
+@ExtendWith(MockitoExtension.class)
+public class DryRunModeTest {
+
+	@Mock
+	Configuration mockConfig;
+
+	@Test
+	public void testConstructorDisabled() {
+		when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_DIRECTORY))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_DRY_RUN_DIRECTORY));
+
+		// call under test
+		DryRunMode mode = new DryRunMode(mockConfig);
+
+		assertFalse(mode.isEnabled());
+		assertNull(mode.getDirectory());
+		assertNull(mode.getInputs());
+	}
+
+	@Test
+	public void testConstructorWithDefaults() {
+		when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_DIRECTORY)).thenReturn("target/dry-run");
+		when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_INPUTS))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_DRY_RUN_INPUTS));
+
+		// call under test
+		DryRunMode mode = new DryRunMode(mockConfig);
+
+		assertTrue(mode.isEnabled());
+		assertEquals(Paths.get("target/dry-run"), mode.getDirectory());
+		assertTrue(mode.getInputs().getResponses().containsKey("AWSKMS.encrypt"));
+	}
+
+	@Test
+	public void testConstructorWithInputs() throws IOException {
+		Path inputs = Files.createTempFile("dry-run-inputs", ".json");
+		try {
+			Files.write(inputs, ("{\"outputs\": {\"stack\": {\"key\": \"value\"}},"
+					+ " \"responses\": {\"AWSSecurityTokenService.getCallerIdentity\": {\"account\": \"123\"}}}")
+							.getBytes(StandardCharsets.UTF_8));
+			when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_DIRECTORY)).thenReturn("target/dry-run");
+			when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_INPUTS)).thenReturn(inputs.toString());
+
+			// call under test
+			DryRunMode mode = new DryRunMode(mockConfig);
+
+			assertEquals("value", mode.getInputs().getStackOutputs("stack").get("key"));
+			AWSSecurityTokenService sts = mode.createClientProxy(AWSSecurityTokenServiceClient.builder()
+					.withRegion("us-east-1").build());
+			// the recorded response replaces the default
+			assertEquals("123", sts.getCallerIdentity(new GetCallerIdentityRequest()).getAccount());
+			// the other defaults are kept
+			assertTrue(mode.getInputs().getResponses().containsKey("AWSKMS.encrypt"));
+		} finally {
+			Files.delete(inputs);
+		}
+	}
+
+	@Test
+	public void testConstructorWithMissingInputs() {
+		when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_DIRECTORY)).thenReturn("target/dry-run");
+		when(mockConfig.getProperty(PROPERTY_KEY_DRY_RUN_INPUTS)).thenReturn("does-not-exist.json");
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			new DryRunMode(mockConfig);
+		}).getMessage();
+
+		assertEquals("Failed to load the dry run inputs: does-not-exist.json", message);
+	}
+
+	@Test
+	public void testCreateClientProxyWithDefaults() {
+		DryRunMode mode = new DryRunMode(Paths.get("target/dry-run"), DryRunInputs.loadDefaults());
+
+		AWSElasticBeanstalk beanstalk = mode.createClientProxy(AWSElasticBeanstalkClient.builder()
+				.withRegion("us-east-1").build());
+		AWSKMS kms = mode.createClientProxy(AWSKMSClient.builder().withRegion("us-east-1").build());
+		AWSSecretsManager secrets = mode.createClientProxy(AWSSecretsManagerClient.builder()
+				.withRegion("us-east-1").build());
+		AmazonS3 s3 = mode.createClientProxy(AmazonS3Client.builder().withRegion("us-east-1").build());
+
+		// calls under test
+		List<PlatformSummary> summaries = beanstalk.listPlatformVersions(new ListPlatformVersionsRequest())
+				.getPlatformSummaryList();
+		String solutionStackName = beanstalk.describePlatformVersion(new DescribePlatformVersionRequest())
+				.getPlatformDescription().getSolutionStackName();
+
+		assertEquals(1, summaries.size());
+		assertEquals("arn:aws:elasticbeanstalk:us-east-1::platform/dry-run", summaries.get(0).getPlatformArn());
+		assertEquals("dry-run solution stack", solutionStackName);
+		assertEquals(7, kms.encrypt(new EncryptRequest()).getCiphertextBlob().remaining());
+		assertEquals(32, kms.generateDataKey(new GenerateDataKeyRequest()).getPlaintext().remaining());
+		assertEquals("dry-run", secrets.getSecretValue(new GetSecretValueRequest()).getSecretString());
+		assertTrue(s3.doesObjectExist("bucket", "key"));
+		assertNotNull(s3.toString());
+	}
+
+	@Test
+	public void testCreateClientProxyWithoutResponse() {
+		DryRunMode mode = new DryRunMode(Paths.get("target/dry-run"), new DryRunInputs());
+		AmazonRoute53 route53 = mode.createClientProxy(AmazonRoute53Client.builder().withRegion("us-east-1").build());
+		AmazonS3 s3 = mode.createClientProxy(AmazonS3Client.builder().withRegion("us-east-1").build());
+
+		// calls under test
+		assertEquals(Collections.emptyList(), route53.listResourceRecordSets(new ListResourceRecordSetsRequest())
+				.getResourceRecordSets());
+		assertFalse(s3.doesObjectExist("bucket", "key"));
+		assertEquals(Collections.emptyList(), s3.listBuckets());
+		assertEquals("", s3.getObjectAsString("bucket", "key"));
+		s3.deleteObject("bucket", "key");
+	}
+
+	@Test
+	public void testCreateClientProxyWithMismatchedResponse() throws IOException {
+		DryRunInputs inputs = DryRunInputs.OBJECT_MAPPER
+				.readValue("{\"responses\": {\"AmazonS3.doesObjectExist\": {\"a\": 1}}}", DryRunInputs.class);
+		AmazonS3 s3 = new DryRunMode(Paths.get("target/dry-run"), inputs)
+				.createClientProxy(AmazonS3Client.builder().withRegion("us-east-1").build());
+
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			s3.doesObjectExist("bucket", "key");
+		}).getMessage();
+
+		assertEquals("The recorded response of: AmazonS3.doesObjectExist does not match boolean", message);
+	}
+
+}
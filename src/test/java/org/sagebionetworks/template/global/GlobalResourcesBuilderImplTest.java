@@ -34,7 +34,9 @@ import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.SesClientImpl;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
 import org.sagebionetworks.template.TemplateUtils;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
 
 import com.amazonaws.services.cloudformation.model.Tag;
@@ -74,7 +76,7 @@ public class GlobalResourcesBuilderImplTest {
         Tag t = new Tag().withKey("aKey").withValue("aValue");
         expectedTags.add(t);
 
-        builder = new GlobalResourcesBuilderImpl(mockCloudFormationClient, velocityEngine, mockConfig, mockLoggerFactory, mockStackTagsProvider, mockSesClient);
+        builder = new GlobalResourcesBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), mockConfig, mockLoggerFactory, mockStackTagsProvider, mockSesClient);
 
     }
 
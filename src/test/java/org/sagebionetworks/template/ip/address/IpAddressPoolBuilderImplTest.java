@@ -28,6 +28,8 @@ import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
 
 @ExtendWith(MockitoExtension.class)
@@ -54,7 +56,7 @@ public class IpAddressPoolBuilderImplTest {
 	@BeforeEach
 	public void before() {
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
-		builder = new IpAddressPoolBuilderImpl(mockCloudFormationClient, velocityEngine, mockConfig, mockLoggerFactory,
+		builder = new IpAddressPoolBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), mockConfig, mockLoggerFactory,
 				mockStackTagsProvider);
 	}
 
@@ -20,6 +20,7 @@ import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
 import java.io.File;
 import java.io.StringWriter;
@@ -31,6 +32,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -87,7 +89,7 @@ public class MarkDownItLambdaBuilderImplTest {
                 velocityEngine);
 
 
-        when(mockDownloader.downloadFile(any())).thenReturn(mockFile);
+        when(mockDownloader.getCachedFile(any())).thenReturn(new CachedArtifact(mockFile));
 
         when(mockTagsProvider.getStackTags()).thenReturn(Collections.emptyList());
 
@@ -101,10 +103,10 @@ public class MarkDownItLambdaBuilderImplTest {
         // call under test
         builder.buildMarkDownItLambda();
 
-        verify(mockDownloader).downloadFile("https://sagebionetworks.jfrog.io/lambda/org/sagebase/markdownit/markdownit.zip");
+        verify(mockDownloader).getCachedFile("https://sagebionetworks.jfrog.io/lambda/org/sagebase/markdownit/markdownit.zip");
         verify(mockS3Client).putObject(expectedBucket, expectedKey, mockFile);
 
-        verify(mockFile).delete();
+        verify(mockFile, never()).delete();
 
         ArgumentCaptor<CreateOrUpdateStackRequest> argCaptorCreateOrUpdateStack = ArgumentCaptor.forClass(CreateOrUpdateStackRequest.class);
         ArgumentCaptor<String> argCaptorWaitForStack = ArgumentCaptor.forClass(String.class);
@@ -28,6 +28,8 @@ import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
 
 @ExtendWith(MockitoExtension.class)
@@ -55,7 +57,7 @@ public class NetworkLoadBalancerBuilderImplTest {
 	@BeforeEach
 	public void before() {
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
-		builder = new NetworkLoadBalancerBuilderImpl(mockCloudFormationClient, velocityEngine, mockConfig,
+		builder = new NetworkLoadBalancerBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), mockConfig,
 				mockLoggerFactory, mockStackTagsProvider);
 	}
 
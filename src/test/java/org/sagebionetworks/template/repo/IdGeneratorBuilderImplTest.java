@@ -21,6 +21,8 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sagebionetworks.template.CloudFormationClient;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
@@ -61,7 +63,7 @@ public class IdGeneratorBuilderImplTest {
 		when(mockSecretBuilder.getIdGeneratorPassword()).thenReturn("somePassword");
 		when(config.getProperty(PROPERTY_KEY_ID_GENERATOR_HOSTED_ZONE_ID)).thenReturn("hostedZoneId");
 
-		builder = new IdGeneratorBuilderImpl(mockCloudFormationClient, velocityEngine, config, mockLoggerFactory, mockSecretBuilder);
+		builder = new IdGeneratorBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), config, mockLoggerFactory, mockSecretBuilder);
 	}
 
 	@Test
@@ -69,7 +71,7 @@ public class IdGeneratorBuilderImplTest {
 		when(config.getProperty(PROPERTY_KEY_STACK)).thenReturn("prod");
 		when(config.getProperty(PROPERTY_KEY_VPC_SUBNET_COLOR)).thenReturn("Green");
 		when(mockSecretBuilder.getIdGeneratorPassword()).thenReturn("somePassword");
-		builder = new IdGeneratorBuilderImpl(mockCloudFormationClient, velocityEngine, config, mockLoggerFactory, mockSecretBuilder);
+		builder = new IdGeneratorBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), config, mockLoggerFactory, mockSecretBuilder);
 
 		// call under test
 		builder.buildAndDeploy();
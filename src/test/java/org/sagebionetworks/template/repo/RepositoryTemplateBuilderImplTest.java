@@ -3,19 +3,23 @@ package org.sagebionetworks.template.repo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.template.Constants.ADMIN_RULE_ACTION;
 import static org.sagebionetworks.template.Constants.BEANSTALK_INSTANCES_SUBNETS;
+import static org.sagebionetworks.template.Constants.CLOUDWATCH_LOGS_DESCRIPTORS;
 import static org.sagebionetworks.template.Constants.CTXT_KEY_DATA_CDN_DOMAIN_NAME;
 import static org.sagebionetworks.template.Constants.CTXT_KEY_DATA_CDN_KEYPAIR_ID;
 import static org.sagebionetworks.template.Constants.DATABASE_DESCRIPTORS;
@@ -100,8 +104,12 @@ import org.sagebionetworks.template.Ec2Client;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.config.TimeToLive;
+import org.sagebionetworks.template.deploy.StackDeployment;
+import org.sagebionetworks.template.deploy.StackDeploymentScheduler;
 import org.sagebionetworks.template.repo.agent.BedrockAgentContextProvider;
 import org.sagebionetworks.template.repo.beanstalk.ArtifactCopy;
 import org.sagebionetworks.template.repo.beanstalk.ElasticBeanstalkSolutionStackNameProvider;
@@ -157,6 +165,8 @@ public class RepositoryTemplateBuilderImplTest {
 	private CloudwatchLogsVelocityContextProvider mockCwlContextProvider;
 	@Mock
 	private TimeToLive mockTimeToLive;
+	@Mock
+	private StackDeploymentScheduler mockDeploymentScheduler;
 	@Captor
 	private ArgumentCaptor<CreateOrUpdateStackRequest> requestCaptor;
 
@@ -179,7 +189,7 @@ public class RepositoryTemplateBuilderImplTest {
 	private List<Tag> expectedTags;
 
 	@BeforeEach
-	public void before() throws InterruptedException {
+	public void before() throws Exception {
 		// use a real velocity engine
 		velocityEngine = new TemplateGuiceModule().velocityEngineProvider();
 
@@ -188,12 +198,21 @@ public class RepositoryTemplateBuilderImplTest {
 		expectedTags.add(t);
 
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
-		builder = new RepositoryTemplateBuilderImpl(mockCloudFormationClient, velocityEngine, config, mockLoggerFactory,
+		builder = new RepositoryTemplateBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), config, mockLoggerFactory,
 				mockArtifactCopy, mockSecretBuilder, Sets.newHashSet(mockContextProvider1, mockContextProvider2, new BedrockAgentContextProvider(config)),
 				mockElasticBeanstalkSolutionStackNameProvider, mockStackTagsProvider, mockCwlContextProvider,
-				mockEc2Client, mockBeanstalkClient, mockTimeToLive);
+				mockEc2Client, mockBeanstalkClient, mockTimeToLive, mockDeploymentScheduler);
 		builderSpy = Mockito.spy(builder);
 
+		// run each deployment in order
+		lenient().doAnswer(invocation -> {
+			List<StackDeployment> deployments = invocation.getArgument(0);
+			for (StackDeployment deployment : deployments) {
+				deployment.getAction().deploy();
+			}
+			return null;
+		}).when(mockDeploymentScheduler).deploy(any());
+
 		stack = "dev";
 		instance = "101";
 		vpcSubnetColor = Color.Green.name();
@@ -324,6 +343,10 @@ public class RepositoryTemplateBuilderImplTest {
 		verify(mockCwlContextProvider).getLogDescriptors(EnvironmentType.REPOSITORY_SERVICES);
 		verify(mockCwlContextProvider).getLogDescriptors(EnvironmentType.REPOSITORY_WORKERS);
 		verify(mockCwlContextProvider).getLogDescriptors(EnvironmentType.PORTAL);
+		// the remote lookups are shared by the three environments
+		verify(mockBeanstalkClient).listPlatformVersions(any());
+		verify(mockElasticBeanstalkSolutionStackNameProvider).getSolutionStackName(anyString(), anyString(), anyString());
+		verify(mockEc2Client).getAvailableSubnetsForInstanceType(anyString(), any());
 
 		// prod should have alarms.
 		assertTrue(resources.has("prod101Table1RepositoryDBAlarmSwapUsage"));
@@ -916,7 +939,7 @@ public class RepositoryTemplateBuilderImplTest {
 		assertEquals("dev-101-shared-resources", context.get(SHARED_RESOUCES_STACK_NAME));
 		assertEquals("us-east-1-synapse-dev-vpc-2", context.get(VPC_EXPORT_PREFIX));
 		
-		assertEquals("Count:{}", context.get(ADMIN_RULE_ACTION));
+		assertEquals("Count", context.get(ADMIN_RULE_ACTION));
 		assertEquals("Delete", context.get(DELETION_POLICY));
 
 		DatabaseDescriptor[] descriptors = (DatabaseDescriptor[]) context.get(DATABASE_DESCRIPTORS);
@@ -999,7 +1022,7 @@ public class RepositoryTemplateBuilderImplTest {
 		assertEquals("prod-101-shared-resources", context.get(SHARED_RESOUCES_STACK_NAME));
 		assertEquals("us-east-1-synapse-prod-vpc-2", context.get(VPC_EXPORT_PREFIX));
 		
-		assertEquals("Block:{}", context.get(ADMIN_RULE_ACTION));
+		assertEquals("Block", context.get(ADMIN_RULE_ACTION));
 		assertEquals("Retain", context.get(DELETION_POLICY));
 	}
 
@@ -1157,7 +1180,8 @@ public class RepositoryTemplateBuilderImplTest {
 		EnvironmentDescriptor environment = new EnvironmentDescriptor().withType(EnvironmentType.REPOSITORY_SERVICES);
 
 		// call under test
-		VelocityContext context = builder.createEnvironmentContext(sharedResouces, environment);
+		VelocityContext sharedContext = builder.createEnvironmentSharedContext(sharedResouces);
+		VelocityContext context = builder.createEnvironmentContext(sharedContext, environment);
 
 		assertNotNull(context);
 		assertEquals("dev", context.get(STACK));
@@ -1174,6 +1198,32 @@ public class RepositoryTemplateBuilderImplTest {
 		assertEquals(String.join(",", EXPECTED_SUBNETS), context.get(BEANSTALK_INSTANCES_SUBNETS));
 		assertEquals("data.dev.sagebase.org", context.get(CTXT_KEY_DATA_CDN_DOMAIN_NAME));
 		assertEquals("dataCdnKeyPairId", context.get(CTXT_KEY_DATA_CDN_KEYPAIR_ID));
+		assertEquals(logDescriptors, context.get(CLOUDWATCH_LOGS_DESCRIPTORS));
+		// the environment is not added to the shared context
+		assertNull(sharedContext.get(ENVIRONMENT));
+		assertNull(sharedContext.get(CLOUDWATCH_LOGS_DESCRIPTORS));
+	}
+
+	@Test
+	public void testCreateEnvironmentContextWithSharedContext() {
+		when(mockCwlContextProvider.getLogDescriptors(any(EnvironmentType.class))).thenReturn(logDescriptors);
+		VelocityContext sharedContext = new VelocityContext();
+		sharedContext.put(STACK, stack);
+
+		EnvironmentDescriptor repo = new EnvironmentDescriptor().withType(EnvironmentType.REPOSITORY_SERVICES);
+		EnvironmentDescriptor portal = new EnvironmentDescriptor().withType(EnvironmentType.PORTAL);
+
+		// call under test
+		VelocityContext repoContext = builder.createEnvironmentContext(sharedContext, repo);
+		VelocityContext portalContext = builder.createEnvironmentContext(sharedContext, portal);
+
+		assertEquals(stack, repoContext.get(STACK));
+		assertEquals(stack, portalContext.get(STACK));
+		assertEquals(repo, repoContext.get(ENVIRONMENT));
+		assertEquals(portal, portalContext.get(ENVIRONMENT));
+		assertNull(sharedContext.get(ENVIRONMENT));
+		verify(mockCwlContextProvider).getLogDescriptors(EnvironmentType.REPOSITORY_SERVICES);
+		verify(mockCwlContextProvider).getLogDescriptors(EnvironmentType.PORTAL);
 	}
 
 	@Test
@@ -1402,7 +1452,7 @@ public class RepositoryTemplateBuilderImplTest {
 	}
 	
 	@Test
-	public void testBuildEnvironmentsWithoutTTL() {
+	public void testBuildEnvironmentsWithoutTTL() throws InterruptedException {
 
 		when(mockSecretBuilder.createSecrets()).thenReturn(secretsSouce);
 		when(mockTimeToLive.createTimeToLiveParameter()).thenReturn(Optional.empty());
@@ -1411,6 +1461,8 @@ public class RepositoryTemplateBuilderImplTest {
 		EnvironmentDescriptor e2 = new EnvironmentDescriptor().withName("portal");
 		doReturn(List.of(e1, e2)).when(builderSpy).createEnvironments(any());
 
+		VelocityContext mockSharedContext = Mockito.mock(VelocityContext.class);
+		doReturn(mockSharedContext).when(builderSpy).createEnvironmentSharedContext(any());
 		VelocityContext mockContext = Mockito.mock(VelocityContext.class);
 		doReturn(mockContext).when(builderSpy).createEnvironmentContext(any(), any());
 
@@ -1422,13 +1474,25 @@ public class RepositoryTemplateBuilderImplTest {
 		verify(mockSecretBuilder).createSecrets();
 		verify(mockTimeToLive).createTimeToLiveParameter();
 		verify(builderSpy).createEnvironments(secretsSouce);
+		verify(builderSpy).createEnvironmentSharedContext(sharedResouces);
+		verify(builderSpy).createEnvironmentContext(mockSharedContext, e1);
+		verify(builderSpy).createEnvironmentContext(mockSharedContext, e2);
 		verify(builderSpy, times(2)).buildAndDeployStack(any(), any(), any(), any());
 		verify(builderSpy).buildAndDeployStack(mockContext, e1.getName(), TEMPALTE_BEAN_STALK_ENVIRONMENT, null);
 		verify(builderSpy).buildAndDeployStack(mockContext, e2.getName(), TEMPALTE_BEAN_STALK_ENVIRONMENT, null);
+		// the environment stacks are not waited on
+		verify(mockCloudFormationClient, never()).waitForStackToCompleteAsync(any());
+
+		ArgumentCaptor<List> deploymentsCaptor = ArgumentCaptor.forClass(List.class);
+		verify(mockDeploymentScheduler).deploy(deploymentsCaptor.capture());
+		List<StackDeployment> deployments = deploymentsCaptor.getValue();
+		assertEquals(List.of(e1.getName(), e2.getName()),
+				deployments.stream().map(StackDeployment::getStackName).collect(Collectors.toList()));
+		assertTrue(deployments.stream().allMatch(d -> d.getDependsOn().isEmpty()));
 	}
 	
 	@Test
-	public void testBuildEnvironmentsWithTTL() {
+	public void testBuildEnvironmentsWithTTL() throws InterruptedException {
 
 		when(mockSecretBuilder.createSecrets()).thenReturn(secretsSouce);
 		Parameter ttl = new Parameter().withParameterKey("ttl").withParameterValue("value");
@@ -1438,6 +1502,8 @@ public class RepositoryTemplateBuilderImplTest {
 		EnvironmentDescriptor e2 = new EnvironmentDescriptor().withName("portal");
 		doReturn(List.of(e1, e2)).when(builderSpy).createEnvironments(any());
 
+		VelocityContext mockSharedContext = Mockito.mock(VelocityContext.class);
+		doReturn(mockSharedContext).when(builderSpy).createEnvironmentSharedContext(any());
 		VelocityContext mockContext = Mockito.mock(VelocityContext.class);
 		doReturn(mockContext).when(builderSpy).createEnvironmentContext(any(), any());
 
@@ -1449,6 +1515,9 @@ public class RepositoryTemplateBuilderImplTest {
 		verify(mockSecretBuilder).createSecrets();
 		verify(mockTimeToLive).createTimeToLiveParameter();
 		verify(builderSpy).createEnvironments(secretsSouce);
+		verify(builderSpy).createEnvironmentSharedContext(sharedResouces);
+		verify(builderSpy).createEnvironmentContext(mockSharedContext, e1);
+		verify(builderSpy).createEnvironmentContext(mockSharedContext, e2);
 		verify(builderSpy, times(2)).buildAndDeployStack(any(), any(), any(), any());
 		verify(builderSpy).buildAndDeployStack(mockContext, e1.getName(), TEMPALTE_BEAN_STALK_ENVIRONMENT, ttl);
 		verify(builderSpy).buildAndDeployStack(mockContext, e2.getName(), TEMPALTE_BEAN_STALK_ENVIRONMENT, ttl);
@@ -1,5 +1,7 @@
 package org.sagebionetworks.template.repo.athena;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.template.Constants.ATHENA_QUERY_DESCRIPTORS;
@@ -135,4 +137,29 @@ public class RecurrentAthenaQueryContextProviderTest {
 		
 	}
 
+	@Test
+	public void testAddToContextDoesNotModifyConfig() {
+		
+		RecurrentAthenaQuery query = query("id", "query.sql", "* * * * *", "QUEUE", "bucket");
+		
+		when(mockConfig.getQueries()).thenReturn(Arrays.asList(
+			query
+		));
+		
+		// Call under test
+		provider.addToContext(mockContext);
+		provider.addToContext(mockContext);
+		
+		assertEquals(query("id", "query.sql", "* * * * *", "QUEUE", "bucket"), query);
+		
+		RecurrentAthenaQuery expected = query("id", "query.sql", "* * * * *", "QUEUE", "bucket");
+		expected.setQueryString("SELECT * FROM ${stack}${instance}table");
+		expected.setDatabase(RecurrentAthenaQueryContextProvider.DEFAULT_DATABASE);
+		
+		verify(mockContext, times(2)).put(ATHENA_QUERY_DESCRIPTORS, Arrays.asList(
+			expected
+		));
+		
+	}
+
 }
@@ -4,6 +4,7 @@ package org.sagebionetworks.template.repo.beanstalk;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
@@ -12,6 +13,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
 
 import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,9 +23,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
 import org.sagebionetworks.template.repo.beanstalk.ssl.ElasticBeanstalkExtentionBuilder;
+import org.sagebionetworks.template.report.RunReportImpl;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
@@ -47,6 +55,7 @@ public class ArtifactCopyImplTest {
 	@Mock
 	ElasticBeanstalkExtentionBuilder mockEbBuilder;
 	
+	RunReportImpl runReport;
 	ArtifactCopyImpl copier;
 	
 	String stack;
@@ -69,16 +78,20 @@ public class ArtifactCopyImplTest {
 		s3Key = environment.createS3Key(version, beanstalkNumber);
 		artifactoryUrl = environment.createArtifactoryUrl(version);
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
-		copier = new ArtifactCopyImpl(mockS3Client, mockPropertyProvider, mockDownloader, mockLoggerFactory, mockEbBuilder);
+		runReport = new RunReportImpl(new ThreadProviderImp(), null, (Path) null, mockLoggerFactory);
+		copier = new ArtifactCopyImpl(mockS3Client, mockPropertyProvider, mockDownloader, mockLoggerFactory, mockEbBuilder,
+				runReport);
 	}
 	
 	@Test
 	public void testCopyArtifactIfNeededDoesNotExist() {
-		when(mockDownloader.downloadFile(any(String.class))).thenReturn(mockFile);
+		when(mockDownloader.getCachedFile(any(String.class))).thenReturn(new CachedArtifact(mockFile));
 		when(mockEbBuilder.copyWarWithExtensions(eq(mockFile), any(EnvironmentType.class))).thenReturn(mockCopy);
 		when(mockPropertyProvider.getConfigurationBucket()).thenReturn(bucket);
 		// setup object does not exist
 		when(mockS3Client.doesObjectExist(any(), any())).thenReturn(false);
+		when(mockFile.length()).thenReturn(100L);
+		when(mockCopy.length()).thenReturn(120L);
 		
 		// call under test
 		SourceBundle result = copier.copyArtifactIfNeeded(environment, version, beanstalkNumber);
@@ -87,18 +100,27 @@ public class ArtifactCopyImplTest {
 		assertEquals(s3Key, result.getKey());
 		
 		verify(mockS3Client).doesObjectExist(bucket, s3Key);
-		verify(mockDownloader).downloadFile(artifactoryUrl);
+		verify(mockDownloader).getCachedFile(artifactoryUrl);
 		verify(mockEbBuilder).copyWarWithExtensions(eq(mockFile), any(EnvironmentType.class));
 		verify(mockS3Client).putObject(bucket, s3Key, mockCopy);
 		verify(mockLogger, times(3)).info(any(String.class));
-		// the temp file should get deleted.
-		verify(mockFile).delete();
+		// the temp file should get deleted, the download belongs to the cache.
+		verify(mockFile, never()).delete();
 		verify(mockCopy).delete();
+		List<Span> spans = runReport.getSpans();
+		assertEquals(2, spans.size());
+		assertEquals(SpanCategory.DOWNLOAD, spans.get(0).getCategory());
+		assertEquals(artifactoryUrl, spans.get(0).getName());
+		assertEquals(100L, spans.get(0).getBytes());
+		assertEquals(SpanCategory.UPLOAD, spans.get(1).getCategory());
+		assertEquals(s3Key, spans.get(1).getName());
+		assertEquals(120L, spans.get(1).getBytes());
+		assertTrue(spans.get(1).isClosed());
 	}
 	
 	@Test
 	public void testCopyArtifactIfNeededUplodFails() {
-		when(mockDownloader.downloadFile(any(String.class))).thenReturn(mockFile);
+		when(mockDownloader.getCachedFile(any(String.class))).thenReturn(new CachedArtifact(mockFile));
 		when(mockEbBuilder.copyWarWithExtensions(eq(mockFile), any(EnvironmentType.class))).thenReturn(mockCopy);
 		when(mockPropertyProvider.getConfigurationBucket()).thenReturn(bucket);
 		
@@ -113,7 +135,10 @@ public class ArtifactCopyImplTest {
 			copier.copyArtifactIfNeeded(environment, version, beanstalkNumber);
 		});
 		// file should be deleted even for a failure.
-		verify(mockFile).delete();
+		verify(mockCopy).delete();
+		verify(mockFile, never()).delete();
+		// the failed upload is still timed
+		assertTrue(runReport.getSpans().stream().allMatch(Span::isClosed));
 	}
 	
 	@Test
@@ -129,7 +154,7 @@ public class ArtifactCopyImplTest {
 		assertEquals(s3Key, result.getKey());
 		
 		verify(mockS3Client).doesObjectExist(bucket, s3Key);
-		verify(mockDownloader, never()).downloadFile(artifactoryUrl);
+		verify(mockDownloader, never()).getCachedFile(artifactoryUrl);
 		verify(mockEbBuilder, never()).copyWarWithExtensions(eq(mockFile), any(EnvironmentType.class));
 		verify(mockS3Client, never()).putObject(bucket, s3Key, mockFile);
 		verify(mockFile, never()).delete();
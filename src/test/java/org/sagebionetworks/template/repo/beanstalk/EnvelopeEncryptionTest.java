@@ -0,0 +1,64 @@
+package org.sagebionetworks.template.repo.beanstalk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Base64;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class EnvelopeEncryptionTest {
+
+	byte[] dataKey;
+	EnvelopeEncryption encryption;
+
+	@BeforeEach
+	public void before() {
+		dataKey = new byte[32];
+		for (int i = 0; i < dataKey.length; i++) {
+			dataKey[i] = (byte) i;
+		}
+		encryption = new EnvelopeEncryption(dataKey);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		// call under test
+		String encrypted = encryption.encrypt("org.sagebionetworks.some.key", "super secret");
+		assertEquals("super secret", new EnvelopeEncryption(dataKey).decrypt("org.sagebionetworks.some.key", encrypted));
+	}
+
+	@Test
+	public void testEncryptRandomIv() {
+		assertNotEquals(encryption.encrypt("key", "value"), encryption.encrypt("key", "value"));
+	}
+
+	@Test
+	public void testDecryptWithOtherKey() {
+		String encrypted = encryption.encrypt("one", "value");
+		// the value is bound to its property key
+		assertThrows(RuntimeException.class, () -> {
+			encryption.decrypt("two", encrypted);
+		});
+	}
+
+	@Test
+	public void testDecryptTampered() {
+		byte[] bytes = Base64.getDecoder().decode(encryption.encrypt("key", "value"));
+		bytes[bytes.length - 1] ^= 1;
+		assertThrows(RuntimeException.class, () -> {
+			encryption.decrypt("key", Base64.getEncoder().encodeToString(bytes));
+		});
+	}
+
+	@Test
+	public void testDecryptTooShort() {
+		String message = assertThrows(IllegalArgumentException.class, () -> {
+			encryption.decrypt("key", Base64.getEncoder().encodeToString(new byte[4]));
+		}).getMessage();
+		assertEquals("Encrypted value of: 'key' is too short", message);
+	}
+
+}
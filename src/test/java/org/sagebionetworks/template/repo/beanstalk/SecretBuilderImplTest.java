@@ -1,17 +1,32 @@
 package org.sagebionetworks.template.repo.beanstalk;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_INSTANCE;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_ENVELOPE_ENCRYPTION;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_MAX_PARALLELISM;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRETS_MAX_REQUESTS_PER_SECOND;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_SECRET_KEYS_CSV;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.io.StringReader;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.junit.Before;
@@ -21,12 +36,25 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactoryImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
+import org.sagebionetworks.template.report.RunReportImpl;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 
 import com.amazonaws.services.kms.AWSKMS;
 import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.DataKeySpec;
+import com.amazonaws.services.kms.model.DescribeKeyRequest;
+import com.amazonaws.services.kms.model.DescribeKeyResult;
 import com.amazonaws.services.kms.model.EncryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import com.amazonaws.services.kms.model.KeyMetadata;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
@@ -54,6 +82,7 @@ public class SecretBuilderImplTest {
 	
 	String stack;
 	String instance;
+	RunReportImpl runReport;
 	SecretBuilderImpl builder;
 	
 	String key;
@@ -63,6 +92,9 @@ public class SecretBuilderImplTest {
 	
 	String s3Bucket;
 	String expectedS3Key;
+	String hashKeySecretId;
+	byte[] hashKey;
+	String keyArn;
 	
 	@Before
 	public void before() {
@@ -73,19 +105,33 @@ public class SecretBuilderImplTest {
 		when(mockConfig.getProperty(PROPERTY_KEY_STACK)).thenReturn(stack);
 		when(mockConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(instance);
 		when(mockConfig.getComaSeparatedProperty(PROPERTY_KEY_SECRET_KEYS_CSV)).thenReturn(new String[] {key});
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_SECRETS_MAX_PARALLELISM)).thenReturn(4);
+		when(mockConfig.getProperty(PROPERTY_KEY_SECRETS_MAX_REQUESTS_PER_SECOND)).thenReturn("100");
 		
 		
-		builder = new SecretBuilderImpl(mockConfig, mockSecretManager, mockKeyManager, mockS3Client);
+		runReport = new RunReportImpl(new ThreadProviderImp(), null, (Path) null, new LoggerFactoryImpl());
+		builder = new SecretBuilderImpl(mockConfig, mockSecretManager, mockKeyManager, mockS3Client, runReport);
 		
 		secretString = "super secret";
 		when(mockSecretManager.getSecretValue(any(GetSecretValueRequest.class))).thenReturn(new GetSecretValueResult().withSecretString(secretString));
 		encryptedSecretValue = "pretend this is encrypted";
 		secretBuffer = SecretBuilderImpl.stringToByteBuffer(encryptedSecretValue);
 		when(mockKeyManager.encrypt(any(EncryptRequest.class))).thenReturn(new EncryptResult().withCiphertextBlob(secretBuffer));
+		keyArn = "arn:aws:kms:us-east-1:123456789012:key/first";
+		when(mockKeyManager.describeKey(any(DescribeKeyRequest.class)))
+				.thenAnswer(invocation -> new DescribeKeyResult().withKeyMetadata(new KeyMetadata().withArn(keyArn)));
 		
 		s3Bucket = "the-bucket";
 		when(mockConfig.getConfigurationBucket()).thenReturn(s3Bucket);
 		expectedS3Key = "Stack/dev-299-secrets.properties";
+		hashKeySecretId = "dev.secrets.hash.key";
+		hashKey = secretString.getBytes(StandardCharsets.UTF_8);
+		when(mockConfig.getProperty(PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID));
+	}
+
+	void configureHashKey() {
+		doReturn(hashKeySecretId).when(mockConfig).getProperty(PROPERTY_KEY_SECRETS_HASH_KEY_SECRET_ID);
 	}
 	
 	@Test
@@ -153,7 +199,7 @@ public class SecretBuilderImplTest {
 		toUpload.put("keyOne", "cipherOne");
 		byte[] propertyBytes = SecretBuilderImpl.getPropertiesBytes(toUpload);
 		// call under test
-		SourceBundle bundle = builder.uploadSecretsToS3(toUpload);
+		SourceBundle bundle = builder.uploadSecretsToS3(toUpload, "theHash");
 		assertNotNull(bundle);
 		assertEquals(s3Bucket, bundle.getBucket());
 		assertEquals(expectedS3Key, bundle.getKey());
@@ -164,6 +210,7 @@ public class SecretBuilderImplTest {
 		assertEquals(expectedS3Key, request.getKey());
 		assertNotNull(request.getMetadata());
 		assertEquals(propertyBytes.length, request.getMetadata().getContentLength());
+		assertEquals("theHash", request.getMetadata().getUserMetaDataOf(SecretBuilderImpl.PLAINTEXT_HASH_METADATA));
 	}
 	
 	@Test
@@ -173,8 +220,222 @@ public class SecretBuilderImplTest {
 		assertNotNull(bundle);
 		assertEquals(s3Bucket, bundle.getBucket());
 		assertEquals(expectedS3Key, bundle.getKey());
+		assertEquals(1, runReport.getSpans().size());
+		Span span = runReport.getSpans().get(0);
+		assertEquals(SpanCategory.SECRETS, span.getCategory());
+		assertTrue(span.isClosed());
+		verify(mockS3Client).putObject(putObjectRequsetCaptor.capture());
+		assertEquals(putObjectRequsetCaptor.getValue().getMetadata().getContentLength(), span.getBytes());
 	}
 	
+	@Test
+	public void testCreateSecretsMultiple() throws Exception {
+		configureHashKey();
+		String[] keys = new String[] { "org.sagebionetworks.one", "org.sagebionetworks.two", "org.sagebionetworks.three" };
+		when(mockConfig.getComaSeparatedProperty(PROPERTY_KEY_SECRET_KEYS_CSV)).thenReturn(keys);
+		// each call needs its own buffer since encoding consumes it
+		when(mockKeyManager.encrypt(any(EncryptRequest.class))).thenAnswer(invocation -> new EncryptResult()
+				.withCiphertextBlob(SecretBuilderImpl.stringToByteBuffer(encryptedSecretValue)));
+		// call under test
+		SourceBundle bundle = builder.createSecrets();
+		assertEquals(expectedS3Key, bundle.getKey());
+		// one for each secret and one for the hash key
+		verify(mockSecretManager, times(4)).getSecretValue(any(GetSecretValueRequest.class));
+		verify(mockKeyManager, times(3)).encrypt(any(EncryptRequest.class));
+		verify(mockS3Client).putObject(putObjectRequsetCaptor.capture());
+		PutObjectRequest request = putObjectRequsetCaptor.getValue();
+		Properties uploaded = new Properties();
+		uploaded.load(new StringReader(new String(request.getInputStream().readAllBytes(), "UTF-8")));
+		assertEquals(3, uploaded.size());
+		for (String secretKey : keys) {
+			assertEquals(encryptedSecretValue, base64Decode(uploaded.getProperty(secretKey)));
+		}
+		Map<String, String> plaintext = new LinkedHashMap<>();
+		for (String secretKey : keys) {
+			plaintext.put(secretKey, secretString);
+		}
+		assertEquals(builder.calculatePlaintextHash(hashKey, plaintext),
+				request.getMetadata().getUserMetaDataOf(SecretBuilderImpl.PLAINTEXT_HASH_METADATA));
+	}
+
+	@Test
+	public void testCreateSecretsExistingSamePlaintext() {
+		configureHashKey();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.addUserMetadata(SecretBuilderImpl.PLAINTEXT_HASH_METADATA,
+				builder.calculatePlaintextHash(hashKey, Map.of(key, secretString)));
+		when(mockS3Client.doesObjectExist(s3Bucket, expectedS3Key)).thenReturn(true);
+		when(mockS3Client.getObjectMetadata(s3Bucket, expectedS3Key)).thenReturn(metadata);
+		// call under test
+		SourceBundle bundle = builder.createSecrets();
+		assertEquals(s3Bucket, bundle.getBucket());
+		assertEquals(expectedS3Key, bundle.getKey());
+		// the existing file is reused
+		verify(mockKeyManager, never()).encrypt(any(EncryptRequest.class));
+		verify(mockS3Client, never()).putObject(any(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testCreateSecretsExistingChangedPlaintext() {
+		configureHashKey();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.addUserMetadata(SecretBuilderImpl.PLAINTEXT_HASH_METADATA,
+				builder.calculatePlaintextHash(hashKey, Map.of(key, "old secret")));
+		when(mockS3Client.doesObjectExist(s3Bucket, expectedS3Key)).thenReturn(true);
+		when(mockS3Client.getObjectMetadata(s3Bucket, expectedS3Key)).thenReturn(metadata);
+		// call under test
+		builder.createSecrets();
+		verify(mockKeyManager).encrypt(any(EncryptRequest.class));
+		verify(mockS3Client).putObject(any(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testCreateSecretsExistingChangedKey() {
+		configureHashKey();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.addUserMetadata(SecretBuilderImpl.PLAINTEXT_HASH_METADATA,
+				builder.calculatePlaintextHash(hashKey, Map.of(key, secretString)));
+		when(mockS3Client.doesObjectExist(s3Bucket, expectedS3Key)).thenReturn(true);
+		when(mockS3Client.getObjectMetadata(s3Bucket, expectedS3Key)).thenReturn(metadata);
+		// the alias now points to a new key that cannot decrypt the existing file
+		keyArn = "arn:aws:kms:us-east-1:123456789012:key/second";
+		// call under test
+		builder.createSecrets();
+		verify(mockKeyManager).encrypt(any(EncryptRequest.class));
+		verify(mockS3Client).putObject(any(PutObjectRequest.class));
+	}
+
+	@Test
+	public void testCreateSecretsWithoutHashKey() {
+		// call under test
+		builder.createSecrets();
+		// without a key the file is never reused and carries no hash
+		verify(mockS3Client, never()).doesObjectExist(any(String.class), any(String.class));
+		verify(mockKeyManager).encrypt(any(EncryptRequest.class));
+		verify(mockS3Client).putObject(putObjectRequsetCaptor.capture());
+		assertNull(putObjectRequsetCaptor.getValue().getMetadata().getUserMetaDataOf(SecretBuilderImpl.PLAINTEXT_HASH_METADATA));
+	}
+
+	@Test
+	public void testGetHashKey() {
+		configureHashKey();
+		// call under test
+		assertEquals(secretString, new String(builder.getHashKey(), StandardCharsets.UTF_8));
+		verify(mockSecretManager).getSecretValue(secretRequestCaptor.capture());
+		assertEquals(hashKeySecretId, secretRequestCaptor.getValue().getSecretId());
+	}
+
+	@Test
+	public void testGetHashKeyNotConfigured() {
+		// call under test
+		assertNull(builder.getHashKey());
+		verify(mockSecretManager, never()).getSecretValue(any(GetSecretValueRequest.class));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetHashKeyEmptySecret() {
+		configureHashKey();
+		when(mockSecretManager.getSecretValue(any(GetSecretValueRequest.class))).thenReturn(new GetSecretValueResult());
+		// call under test
+		builder.getHashKey();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateSecretsNullSecretString() {
+		when(mockSecretManager.getSecretValue(any(GetSecretValueRequest.class))).thenReturn(new GetSecretValueResult());
+		// call under test
+		builder.createSecrets();
+	}
+
+	@Test
+	public void testCreateSecretsEnvelope() throws Exception {
+		configureHashKey();
+		String[] keys = new String[] { "org.sagebionetworks.one", "org.sagebionetworks.two" };
+		when(mockConfig.getComaSeparatedProperty(PROPERTY_KEY_SECRET_KEYS_CSV)).thenReturn(keys);
+		when(mockConfig.getBooleanProperty(PROPERTY_KEY_SECRETS_ENVELOPE_ENCRYPTION)).thenReturn(true);
+		byte[] dataKey = new byte[32];
+		dataKey[0] = 7;
+		String wrappedKey = "wrapped data key";
+		when(mockKeyManager.generateDataKey(any(GenerateDataKeyRequest.class)))
+				.thenReturn(new GenerateDataKeyResult().withPlaintext(ByteBuffer.wrap(dataKey.clone()))
+						.withCiphertextBlob(SecretBuilderImpl.stringToByteBuffer(wrappedKey)));
+		// call under test
+		SourceBundle bundle = builder.createSecrets();
+		assertEquals(expectedS3Key, bundle.getKey());
+		// a single call to KMS
+		ArgumentCaptor<GenerateDataKeyRequest> keyRequestCaptor = ArgumentCaptor.forClass(GenerateDataKeyRequest.class);
+		verify(mockKeyManager).generateDataKey(keyRequestCaptor.capture());
+		assertEquals("alias/synapse/dev/299/cmk", keyRequestCaptor.getValue().getKeyId());
+		assertEquals(DataKeySpec.AES_256.toString(), keyRequestCaptor.getValue().getKeySpec());
+		verify(mockKeyManager, never()).encrypt(any(EncryptRequest.class));
+		verify(mockS3Client).putObject(putObjectRequsetCaptor.capture());
+		PutObjectRequest request = putObjectRequsetCaptor.getValue();
+		// same key and properties layout as the individually encrypted secrets
+		assertEquals(expectedS3Key, request.getKey());
+		Properties uploaded = new Properties();
+		uploaded.load(new StringReader(new String(request.getInputStream().readAllBytes(), "UTF-8")));
+		assertEquals(SecretBuilderImpl.ENVELOPE_FORMAT, uploaded.getProperty(SecretBuilderImpl.ENVELOPE_FORMAT_KEY));
+		assertEquals(wrappedKey, base64Decode(uploaded.getProperty(SecretBuilderImpl.ENVELOPE_DATA_KEY)));
+		EnvelopeEncryption encryption = new EnvelopeEncryption(dataKey);
+		for (String secretKey : keys) {
+			assertEquals(secretString, encryption.decrypt(secretKey, uploaded.getProperty(secretKey)));
+		}
+		// the format is part of the hash so switching formats replaces the file
+		Map<String, String> plaintext = new LinkedHashMap<>();
+		for (String secretKey : keys) {
+			plaintext.put(secretKey, secretString);
+		}
+		assertNotEquals(builder.calculatePlaintextHash(hashKey, plaintext),
+				request.getMetadata().getUserMetaDataOf(SecretBuilderImpl.PLAINTEXT_HASH_METADATA));
+	}
+
+	@Test
+	public void testCalculatePlaintextHash() {
+		Map<String, String> one = new LinkedHashMap<>();
+		one.put("a", "1");
+		one.put("b", "2");
+		Map<String, String> two = new LinkedHashMap<>();
+		two.put("b", "2");
+		two.put("a", "1");
+		// the order of the keys does not matter
+		assertEquals(builder.calculatePlaintextHash(hashKey, one), builder.calculatePlaintextHash(hashKey, two));
+		two.put("a", "changed");
+		assertNotEquals(builder.calculatePlaintextHash(hashKey, one), builder.calculatePlaintextHash(hashKey, two));
+	}
+
+	@Test
+	public void testCalculatePlaintextHashFieldBoundaries() {
+		Map<String, String> one = new LinkedHashMap<>();
+		one.put("a", "1\nb=2");
+		Map<String, String> two = new LinkedHashMap<>();
+		two.put("a", "1");
+		two.put("b", "2");
+		// call under test
+		assertNotEquals(builder.calculatePlaintextHash(hashKey, one), builder.calculatePlaintextHash(hashKey, two));
+	}
+
+	@Test
+	public void testGetCMKArn() {
+		// call under test
+		assertEquals(keyArn, builder.getCMKArn());
+		verify(mockKeyManager).describeKey(new DescribeKeyRequest().withKeyId("alias/synapse/dev/299/cmk"));
+	}
+
+	@Test
+	public void testCalculatePlaintextHashKeyed() {
+		Map<String, String> plaintext = Map.of(key, secretString);
+		// call under test
+		assertNotEquals(builder.calculatePlaintextHash(hashKey, plaintext),
+				builder.calculatePlaintextHash("another key".getBytes(StandardCharsets.UTF_8), plaintext));
+	}
+
+	@Test
+	public void testGetMaxParallelismDefault() {
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_SECRETS_MAX_PARALLELISM))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_SECRETS_MAX_PARALLELISM));
+		assertEquals(SecretBuilderImpl.DEFAULT_MAX_PARALLELISM, builder.getMaxParallelism());
+	}
+
 	/**
 	 * Convert a byte buffer to a string.
 	 * @param byteBuffer
@@ -1,10 +1,11 @@
 package org.sagebionetworks.template.repo.kinesis;
 
-import com.google.common.collect.ImmutableSet;
 import org.apache.velocity.VelocityContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -16,9 +17,12 @@ import org.sagebionetworks.template.repo.kinesis.firehose.KinesisFirehoseStreamD
 import org.sagebionetworks.template.repo.kinesis.firehose.KinesisFirehoseVelocityContextProvider;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.template.Constants.GLUE_DATABASE_NAME;
@@ -40,30 +44,46 @@ public class KinesisFirehoseVelocityContextProviderTest {
 	@Mock
 	KinesisFirehoseConfig mockConfig;
 
-	@Mock
-	KinesisFirehoseStreamDescriptor mockStream;
-
-	@Mock
-	KinesisFirehoseStreamDescriptor mockStream2;
-
-	@Mock
-	GlueTableDescriptor mockTable;
+	@Captor
+	ArgumentCaptor<Set<KinesisFirehoseStreamDescriptor>> streamsCaptor;
 
 	@InjectMocks
 	KinesisFirehoseVelocityContextProvider contextProvider;
 
 	private String testStack = "TestStack";
 	private String testInstance = "TestInstance";
-	private Set<KinesisFirehoseStreamDescriptor> testStreams;
+	private String originalTableName = "TestTable";
+	private KinesisFirehoseStreamDescriptor stream;
+	private KinesisFirehoseStreamDescriptor stream2;
 
 	@BeforeEach
 	public void before() {
-		testStreams = Collections.singleton(mockStream);
-		when(mockStream.getBucket()).thenReturn(KinesisFirehoseStreamDescriptor.DEFAULT_BUCKET);
+		stream = stream("stream");
+		stream2 = stream("stream2");
 		when(mockRepoConfig.getProperty(PROPERTY_KEY_STACK)).thenReturn(testStack);
 		when(mockRepoConfig.getProperty(PROPERTY_KEY_INSTANCE)).thenReturn(testInstance);
-		when(mockStream.getTableDescriptor()).thenReturn(mockTable);
-		when(mockConfig.getStreamDescriptors()).thenReturn(testStreams);
+		when(mockConfig.getStreamDescriptors()).thenReturn(Collections.singleton(stream));
+	}
+
+	private KinesisFirehoseStreamDescriptor stream(String name) {
+		GlueTableDescriptor table = new GlueTableDescriptor();
+		table.setName(originalTableName);
+		KinesisFirehoseStreamDescriptor stream = new KinesisFirehoseStreamDescriptor();
+		stream.setName(name);
+		stream.setTableDescriptor(table);
+		return stream;
+	}
+
+	private KinesisFirehoseStreamDescriptor expected(KinesisFirehoseStreamDescriptor stream, String stack) {
+		KinesisFirehoseStreamDescriptor expected = new KinesisFirehoseStreamDescriptor(stream);
+		expected.setBucket(TemplateUtils.replaceStackVariable(stream.getBucket(), stack));
+		expected.getTableDescriptor().setName(stack + testInstance + originalTableName);
+		return expected;
+	}
+
+	private Set<KinesisFirehoseStreamDescriptor> captureStreams() {
+		verify(mockContext).put(eq(KINESIS_FIREHOSE_STREAM_DESCRIPTORS), streamsCaptor.capture());
+		return streamsCaptor.getValue();
 	}
 
 	@Test
@@ -71,9 +91,11 @@ public class KinesisFirehoseVelocityContextProviderTest {
 
 		contextProvider.addToContext(mockContext);
 
+		KinesisFirehoseStreamDescriptor expected = expected(stream, testStack);
+
 		verify(mockContext).put(GLUE_DATABASE_NAME, (testStack + testInstance + GLUE_DB_SUFFIX));
-		verify(mockContext).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, testStreams);
-		verify(mockContext).put(KINESIS_FIREHOSE_BUCKETS, testStreams.stream().map(KinesisFirehoseStreamDescriptor::getBucket).collect(Collectors.toSet()));
+		verify(mockContext).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, Collections.singleton(expected));
+		verify(mockContext).put(KINESIS_FIREHOSE_BUCKETS, Collections.singleton(expected.getBucket()));
 	}
 
 	@Test
@@ -81,7 +103,7 @@ public class KinesisFirehoseVelocityContextProviderTest {
 		String prodStack = "Prod";
 
 		when(mockRepoConfig.getProperty(PROPERTY_KEY_STACK)).thenReturn(prodStack);
-		when(mockStream.isDevOnly()).thenReturn(true);
+		stream.setDevOnly(true);
 
 		// Call under test
 		contextProvider.addToContext(mockContext);
@@ -96,11 +118,12 @@ public class KinesisFirehoseVelocityContextProviderTest {
 		String devStack = "someOtherStack";
 
 		when(mockRepoConfig.getProperty(PROPERTY_KEY_STACK)).thenReturn(devStack);
+		stream.setDevOnly(true);
 
 		// Call under test
 		contextProvider.addToContext(mockContext);
 
-		verify(mockContext).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, Collections.singleton(mockStream));
+		verify(mockContext).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, Collections.singleton(expected(stream, devStack)));
 	}
 
 	@Test
@@ -109,72 +132,72 @@ public class KinesisFirehoseVelocityContextProviderTest {
 		String prodStack = "prod";
 
 		// Second stream is dev only
-		when(mockStream2.isDevOnly()).thenReturn(true);
-
-		Set<KinesisFirehoseStreamDescriptor> streams = ImmutableSet.of(mockStream, mockStream2);
+		stream2.setDevOnly(true);
 
-		when(mockConfig.getStreamDescriptors()).thenReturn(streams);
+		when(mockConfig.getStreamDescriptors()).thenReturn(new HashSet<>(Set.of(stream, stream2)));
 		when(mockRepoConfig.getProperty(PROPERTY_KEY_STACK)).thenReturn(prodStack);
 
 		// Call under test
 		contextProvider.addToContext(mockContext);
 
-		verify(mockContext).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, Collections.singleton(mockStream));
+		verify(mockContext).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, Collections.singleton(expected(stream, prodStack)));
 	}
 
 	@Test
 	public void testAddToContextWithParameterizedTableName() {
 
-		String originalTableName = "TestTable";
-
-		when(mockTable.getName()).thenReturn(originalTableName);
-
 		// Call under test
 		contextProvider.addToContext(mockContext);
 
-		verify(mockTable).setName((testStack + testInstance + originalTableName));
+		assertEquals(testStack + testInstance + originalTableName, captureStreams().iterator().next().getTableDescriptor().getName());
 	}
 
 	@Test
 	public void testAddToContextWithDefaultBucket() {
 
-		String originalTableName = "TestTable";
-
-		when(mockTable.getName()).thenReturn(originalTableName);
-
 		// Call under test
 		contextProvider.addToContext(mockContext);
 
-		verify(mockStream).setBucket(TemplateUtils.replaceStackVariable(KinesisFirehoseStreamDescriptor.DEFAULT_BUCKET, testStack));
+		assertEquals(TemplateUtils.replaceStackVariable(KinesisFirehoseStreamDescriptor.DEFAULT_BUCKET, testStack),
+				captureStreams().iterator().next().getBucket());
 	}
 
 	@Test
 	public void testAddToContextWithCustomBucket() {
 
-		String originalTableName = "TestTable";
 		String customBucket = "customBucket";
 
-		when(mockStream.getBucket()).thenReturn(customBucket);
-		when(mockTable.getName()).thenReturn(originalTableName);
+		stream.setBucket(customBucket);
 
 		// Call under test
 		contextProvider.addToContext(mockContext);
 
-		verify(mockStream).setBucket(customBucket);
+		assertEquals(customBucket, captureStreams().iterator().next().getBucket());
 	}
 
 	@Test
 	public void testAddToContextWithCustomStackBucket() {
 
-		String originalTableName = "TestTable";
 		String customBucket = "${stack}.customBucket";
 
-		when(mockStream.getBucket()).thenReturn(customBucket);
-		when(mockTable.getName()).thenReturn(originalTableName);
+		stream.setBucket(customBucket);
 
 		// Call under test
 		contextProvider.addToContext(mockContext);
 
-		verify(mockStream).setBucket(TemplateUtils.replaceStackVariable(customBucket, testStack));
+		assertEquals(TemplateUtils.replaceStackVariable(customBucket, testStack), captureStreams().iterator().next().getBucket());
+	}
+
+	@Test
+	public void testAddToContextDoesNotModifyConfig() {
+
+		KinesisFirehoseStreamDescriptor original = new KinesisFirehoseStreamDescriptor(stream);
+
+		// Call under test
+		contextProvider.addToContext(mockContext);
+		contextProvider.addToContext(mockContext);
+
+		assertEquals(original, stream);
+		verify(mockContext, times(2)).put(KINESIS_FIREHOSE_STREAM_DESCRIPTORS, Collections.singleton(expected(stream, testStack)));
 	}
 }
\ No newline at end of file
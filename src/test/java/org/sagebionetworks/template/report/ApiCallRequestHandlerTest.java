@@ -0,0 +1,29 @@
+package org.sagebionetworks.template.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+@ExtendWith(MockitoExtension.class)
+public class ApiCallRequestHandlerTest {
+
+	@Mock
+	RunReport mockRunReport;
+
+	@Test
+	public void testBeforeExecution() {
+		ApiCallRequestHandler handler = new ApiCallRequestHandler(mockRunReport, "AmazonS3");
+		AmazonWebServiceRequest request = new PutObjectRequest("bucket", "key", "redirect");
+		// call under test
+		assertEquals(request, handler.beforeExecution(request));
+		verify(mockRunReport).recordApiCall("AmazonS3.PutObject");
+	}
+
+}
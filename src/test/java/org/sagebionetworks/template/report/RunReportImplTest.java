@@ -0,0 +1,206 @@
+package org.sagebionetworks.template.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.TemplateRenderMetric;
+import org.sagebionetworks.template.TemplateRenderer;
+import org.sagebionetworks.template.ThreadProvider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(MockitoExtension.class)
+public class RunReportImplTest {
+
+	@Mock
+	ThreadProvider mockThreadProvider;
+	@Mock
+	TemplateRenderer mockTemplateRenderer;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	@TempDir
+	Path tempDir;
+
+	Path reportFile;
+	RunReportImpl report;
+
+	@BeforeEach
+	public void before() {
+		reportFile = tempDir.resolve("report.json");
+	}
+
+	@Test
+	public void testStartSpan() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 1100L, 1300L, 1600L, 2000L);
+		report = createReport();
+		// call under test
+		try (Span outer = report.startSpan(SpanCategory.BUILD, "repo")) {
+			try (Span inner = report.startSpan(SpanCategory.UPLOAD, "file").addBytes(10).addBytes(5)) {
+				report.recordApiCall("AmazonS3.PutObject");
+			}
+			report.recordApiCall("AmazonS3.GetObject");
+		}
+		List<Span> spans = report.getSpans();
+		assertEquals(2, spans.size());
+		Span outer = spans.get(0);
+		assertEquals(SpanCategory.BUILD, outer.getCategory());
+		assertEquals(1100L, outer.getStartTimeMS());
+		assertEquals(2000L, outer.getEndTimeMS());
+		assertEquals(900L, outer.getDurationMS());
+		assertEquals(1, outer.getApiCalls());
+		assertEquals(Thread.currentThread().getName(), outer.getThread());
+		Span inner = spans.get(1);
+		assertEquals(300L, inner.getDurationMS());
+		assertEquals(15L, inner.getBytes());
+		// the call is attributed to the innermost span only
+		assertEquals(1, inner.getApiCalls());
+	}
+
+	@Test
+	public void testCloseIdempotent() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L, 10L, 20L);
+		report = createReport();
+		Span span = report.startSpan(SpanCategory.WAR, "war");
+		assertFalse(span.isClosed());
+		assertEquals(0L, span.getDurationMS());
+		// call under test
+		span.close();
+		span.close();
+		assertTrue(span.isClosed());
+		assertEquals(10L, span.getDurationMS());
+		// no longer open so calls are not attributed to it
+		report.recordApiCall("AmazonS3.PutObject");
+		assertEquals(0, span.getApiCalls());
+	}
+
+	@Test
+	public void testRecordApiCallOnOtherThread() throws InterruptedException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L);
+		report = createReport();
+		Span span = report.startSpan(SpanCategory.STACK_WAIT, "stack");
+		Thread thread = new Thread(() -> report.recordApiCall("AmazonCloudFormation.DescribeStacks"));
+		thread.start();
+		thread.join();
+		// calls on other threads are only counted
+		assertEquals(0, span.getApiCalls());
+	}
+
+	@Test
+	public void testStartDetachedSpan() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(0L, 10L, 20L, 30L);
+		report = createReport();
+		try (Span outer = report.startSpan(SpanCategory.BUILD, "repo")) {
+			// call under test
+			Span detached = report.startDetachedSpan(SpanCategory.STACK_WAIT, "stack");
+			report.recordApiCall("AmazonS3.PutObject");
+			// the calls of this thread still go to its own span
+			assertEquals(1, outer.getApiCalls());
+			assertEquals(0, detached.getApiCalls());
+			detached.close();
+			assertTrue(detached.isClosed());
+			assertEquals(List.of(outer, detached), report.getSpans());
+		}
+	}
+
+	@Test
+	public void testFindCriticalPath() {
+		Span a = closedSpan(SpanCategory.DOWNLOAD, "a", 0, 100);
+		Span b = closedSpan(SpanCategory.WAR, "b", 10, 50);
+		Span c = closedSpan(SpanCategory.UPLOAD, "c", 120, 200);
+		Span d = closedSpan(SpanCategory.STACK_UPDATE, "d", 150, 400);
+		Span nested = closedSpan(SpanCategory.STACK_WAIT, "nested", 300, 400);
+		// call under test
+		List<Span> path = RunReportImpl.findCriticalPath(List.of(a, b, c, d, nested));
+		// the outer span is used for the time before the nested span started
+		assertEquals(List.of(a, d), path);
+	}
+
+	@Test
+	public void testFindCriticalPathEmpty() {
+		assertEquals(List.of(), RunReportImpl.findCriticalPath(List.of()));
+	}
+
+	@Test
+	public void testWriteReport() throws Exception {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 1500L, 3000L, 4000L, 6500L);
+		when(mockTemplateRenderer.getMetrics()).thenReturn(List.of(new TemplateRenderMetric("a.json.vpt", 20L, 300),
+				new TemplateRenderMetric("b.json.vpt", 30L, 700)));
+		report = createReport();
+		try (Span span = report.startSpan(SpanCategory.UPLOAD, "file")) {
+			span.addBytes(123);
+			report.recordApiCall("AmazonS3.PutObject");
+		}
+		try (Span span = report.startSpan(SpanCategory.STACK_UPDATE, "stack")) {
+			report.recordApiCall("AmazonCloudFormation.UpdateStack");
+			report.recordApiCall("AmazonCloudFormation.DescribeStacks");
+			report.recordApiCall("AmazonCloudFormation.DescribeStacks");
+		}
+		// call under test
+		report.writeReport();
+
+		JsonNode json = new ObjectMapper().readTree(reportFile.toFile());
+		assertEquals(1000L, json.get("startTimeMS").asLong());
+		assertEquals(5500L, json.get("durationMS").asLong());
+		assertEquals(2, json.get("spans").size());
+		JsonNode upload = json.get("spans").get(0);
+		assertEquals("UPLOAD", upload.get("category").asText());
+		assertEquals(500L, upload.get("startMS").asLong());
+		assertEquals(1500L, upload.get("durationMS").asLong());
+		assertEquals(123L, upload.get("bytes").asLong());
+		assertEquals(1, upload.get("apiCalls").asInt());
+		assertEquals(2, json.get("totals").get("RENDER").get("count").asInt());
+		assertEquals(50L, json.get("totals").get("RENDER").get("durationMS").asLong());
+		assertEquals(1000L, json.get("totals").get("RENDER").get("bytes").asLong());
+		assertEquals(3, json.get("totals").get("STACK_UPDATE").get("apiCalls").asInt());
+		assertEquals(2, json.get("apiCalls").get("AmazonCloudFormation.DescribeStacks").asInt());
+		assertEquals(1, json.get("apiCalls").get("AmazonS3.PutObject").asInt());
+		assertEquals(2, json.get("criticalPath").size());
+
+		verify(mockLogger).info("Run took 5.5s, report written to: " + reportFile);
+		verify(mockLogger).info("       0.0s      0.5s  (untracked)");
+		verify(mockLogger).info("       0.5s      1.5s  UPLOAD       file");
+		verify(mockLogger).info("       2.0s      1.0s  (untracked)");
+		verify(mockLogger).info("       3.0s      2.5s  STACK_UPDATE stack");
+	}
+
+	@Test
+	public void testWriteReportNoSpans() {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L);
+		report = createReport();
+		// call under test
+		report.writeReport();
+		assertFalse(reportFile.toFile().exists());
+	}
+
+	RunReportImpl createReport() {
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		return new RunReportImpl(mockThreadProvider, mockTemplateRenderer, reportFile, mockLoggerFactory);
+	}
+
+	Span closedSpan(SpanCategory category, String name, long start, long end) {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(start, end);
+		Span span = new Span(category, name, mockThreadProvider::currentTimeMillis, new ArrayDeque<>());
+		span.close();
+		return span;
+	}
+}
@@ -16,10 +16,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.template.Constants.CAPABILITY_NAMED_IAM;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_S3_BUCKETS_MAX_PARALLELISM;
 import static org.sagebionetworks.template.Constants.PROPERTY_KEY_STACK;
 
 import java.io.File;
-import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -28,9 +28,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
-import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -43,8 +41,10 @@ import org.sagebionetworks.template.CloudFormationClient;
 import org.sagebionetworks.template.Constants;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.StackTagsProvider;
+import org.sagebionetworks.template.TemplateRenderer;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.utils.ArtifactDownload;
+import org.sagebionetworks.template.utils.CachedArtifact;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cloudformation.model.Output;
@@ -59,6 +59,7 @@ import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration.Rule;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration.Transition;
 import com.amazonaws.services.s3.model.BucketNotificationConfiguration;
+import com.amazonaws.services.s3.model.GetBucketEncryptionResult;
 import com.amazonaws.services.s3.model.GetBucketIntelligentTieringConfigurationResult;
 import com.amazonaws.services.s3.model.GetBucketInventoryConfigurationResult;
 import com.amazonaws.services.s3.model.QueueConfiguration;
@@ -77,6 +78,7 @@ import com.amazonaws.services.s3.model.inventory.InventoryConfiguration;
 import com.amazonaws.services.s3.model.inventory.InventoryFrequency;
 import com.amazonaws.services.s3.model.inventory.InventoryS3BucketDestination;
 import com.amazonaws.services.s3.model.lifecycle.LifecycleFilter;
+import com.amazonaws.services.s3.model.lifecycle.LifecyclePrefixPredicate;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
 
@@ -99,7 +101,7 @@ public class S3BucketBuilderImplTest {
 	private AWSLambda mockLambdaClient;
 
 	@Mock
-	private VelocityEngine mockVelocity;
+	private TemplateRenderer mockTemplateRenderer;
 	
 	@Mock
 	private CloudFormationClient mockCloudFormationClient;
@@ -116,9 +118,6 @@ public class S3BucketBuilderImplTest {
 	@Mock
 	private GetCallerIdentityResult mockGetCallerIdentityResult;
 	
-	@Mock
-	private Template mockTemplate;
-
 	@Mock
 	private File mockFile;
 
@@ -159,12 +158,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -178,7 +172,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client).getBucketEncryption(expectedBucketName);
 		verify(mockS3Client).getBucketLifecycleConfiguration(expectedBucketName);
 		verify(mockS3Client).setBucketLifecycleConfiguration(eq(expectedBucketName), bucketLifeCycleConfigurationCaptor.capture());
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -211,6 +205,9 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).setBucketInventoryConfiguration(any(), any());
 		verify(mockS3Client, never()).deleteBucketInventoryConfiguration(any(), any());
 		verify(mockS3Client, never()).setBucketPolicy(any(), any());
+		
+		// the shared config is not modified
+		assertEquals("${stack}.bucket", bucket.getName());
 
 	}
 	
@@ -223,12 +220,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -254,7 +246,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).setBucketPolicy(any(), any());
 		verify(mockS3Client, never()).setBucketLifecycleConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -280,12 +272,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -325,7 +312,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).deleteBucketInventoryConfiguration(any(), any());
 		verify(mockS3Client, never()).setBucketPolicy(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -348,12 +335,7 @@ public class S3BucketBuilderImplTest {
 		bucket.setName("${stack}.bucket");
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -390,7 +372,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).deleteBucketInventoryConfiguration(any(), any());
 		verify(mockS3Client, never()).setBucketPolicy(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -451,12 +433,7 @@ public class S3BucketBuilderImplTest {
 		// No inventory configuration set
 		doThrow(notFound).when(mockS3Client).getBucketInventoryConfiguration(anyString(), anyString());
 
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -494,7 +471,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(S3BucketBuilderImpl.INVENTORY_FORMAT, destination.getFormat());
 		verify(mockS3Client, never()).deleteBucketInventoryConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 		VelocityContext context = velocityContextCaptor.getValue();
 		assertEquals(context.get(Constants.STACK), stack);
 		String expectedStackName = stack + "-synapse-bucket-policies";
@@ -533,12 +510,7 @@ public class S3BucketBuilderImplTest {
 						.withEnabled(true))
 		);
 		
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -574,7 +546,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(S3BucketBuilderImpl.INVENTORY_FORMAT, destination.getFormat());
 		verify(mockS3Client, never()).deleteBucketInventoryConfiguration(expectedBucketName, S3BucketBuilderImpl.INVENTORY_ID);
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 		VelocityContext context = velocityContextCaptor.getValue();
 		assertEquals(context.get(Constants.STACK), stack);
 		String expectedStackName = stack + "-synapse-bucket-policies";
@@ -612,12 +584,7 @@ public class S3BucketBuilderImplTest {
 		// No inventory configuration set
 		doThrow(notFound).when(mockS3Client).getBucketInventoryConfiguration(anyString(), anyString());
 
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -638,7 +605,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).setBucketEncryption(any());
 		verify(mockS3Client, never()).setBucketInventoryConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 		VelocityContext context = velocityContextCaptor.getValue();
 		assertEquals(context.get(Constants.STACK), stack);
 		String expectedStackName = stack + "-synapse-bucket-policies";
@@ -678,12 +645,7 @@ public class S3BucketBuilderImplTest {
 						.withEnabled(true))
 		);
 
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -705,7 +667,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).setBucketInventoryConfiguration(any(), any());
 		verify(mockS3Client).deleteBucketInventoryConfiguration(expectedBucketName, S3BucketBuilderImpl.INVENTORY_ID);
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 		VelocityContext context = velocityContextCaptor.getValue();
 		assertEquals(context.get(Constants.STACK), stack);
 		String expectedStackName = stack + "-synapse-bucket-policies";
@@ -729,12 +691,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -766,7 +723,7 @@ public class S3BucketBuilderImplTest {
 		assertNotNull(rule.getFilter());
 		assertNull(rule.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -793,12 +750,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -826,7 +778,7 @@ public class S3BucketBuilderImplTest {
 		
 		verify(mockS3Client, never()).setBucketLifecycleConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -853,12 +805,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -898,7 +845,7 @@ public class S3BucketBuilderImplTest {
 		assertNotNull(rule.getFilter());
 		assertNull(rule.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -915,6 +862,66 @@ public class S3BucketBuilderImplTest {
 		verify(mockCloudFormationClient).describeStack(expectedStackName);
 	}
 	
+	@Test
+	public void testBuildAllBucketsWithRetentionPrefix() throws InterruptedException {
+
+		S3BucketDescriptor bucket = new S3BucketDescriptor();
+		bucket.setName("${stack}.bucket");
+		bucket.setRetentionDays(30);
+		bucket.setRetentionPrefix("templates/");
+		
+		String expectedBucketName = stack + ".bucket";
+		
+		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
+		when(mockCloudFormationClient.describeStack(any())).thenReturn(Optional.of(new Stack()));
+		
+		// Call under test
+		builder.buildAllBuckets();
+		
+		verify(mockS3Client).setBucketLifecycleConfiguration(eq(expectedBucketName), bucketLifeCycleConfigurationCaptor.capture());
+		
+		Rule rule = bucketLifeCycleConfigurationCaptor.getValue().getRules().get(0);
+		
+		assertEquals(S3BucketBuilderImpl.RULE_ID_RETENTION, rule.getId());
+		assertEquals(bucket.getRetentionDays(), rule.getExpirationInDays());
+		assertNull(rule.getPrefix());
+		assertEquals("templates/", ((LifecyclePrefixPredicate) rule.getFilter().getPredicate()).getPrefix());
+	}
+	
+	@Test
+	public void testBuildAllBucketsWithRetentionPrefixAndExistingAllBucketRule() throws InterruptedException {
+
+		S3BucketDescriptor bucket = new S3BucketDescriptor();
+		bucket.setName("${stack}.bucket");
+		bucket.setRetentionDays(30);
+		bucket.setRetentionPrefix("templates/");
+		
+		String expectedBucketName = stack + ".bucket";
+		
+		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
+		when(mockCloudFormationClient.describeStack(any())).thenReturn(Optional.of(new Stack()));
+		
+		// The retention rule expires the whole bucket
+		when(mockS3Client.getBucketLifecycleConfiguration(anyString())).thenReturn(new BucketLifecycleConfiguration()
+			.withRules(
+				allBucketRule(S3BucketBuilderImpl.RULE_ID_ABORT_MULTIPART_UPLOADS).withAbortIncompleteMultipartUpload(new AbortIncompleteMultipartUpload().withDaysAfterInitiation(S3BucketBuilderImpl.ABORT_MULTIPART_UPLOAD_DAYS)),
+				allBucketRule(S3BucketBuilderImpl.RULE_ID_RETENTION).withExpirationInDays(30)
+			)
+		);
+		
+		// Call under test
+		builder.buildAllBuckets();
+		
+		verify(mockS3Client).setBucketLifecycleConfiguration(eq(expectedBucketName), bucketLifeCycleConfigurationCaptor.capture());
+		
+		Rule rule = bucketLifeCycleConfigurationCaptor.getValue().getRules().get(1);
+		
+		assertEquals(S3BucketBuilderImpl.RULE_ID_RETENTION, rule.getId());
+		assertEquals("templates/", ((LifecyclePrefixPredicate) rule.getFilter().getPredicate()).getPrefix());
+	}
+	
 	@Test
 	public void testBuildAllBucketsWithTransitionRule() throws InterruptedException {
 
@@ -929,12 +936,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -969,7 +971,7 @@ public class S3BucketBuilderImplTest {
 		assertNotNull(rule.getFilter());
 		assertNull(rule.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1000,12 +1002,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1031,7 +1028,7 @@ public class S3BucketBuilderImplTest {
 		
 		verify(mockS3Client, never()).setBucketLifecycleConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1062,12 +1059,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1106,7 +1098,7 @@ public class S3BucketBuilderImplTest {
 		assertNotNull(intRule.getFilter());
 		assertNull(intRule.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1144,12 +1136,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1211,7 +1198,7 @@ public class S3BucketBuilderImplTest {
 		assertNotNull(iaRule.getFilter());
 		assertNull(iaRule.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1246,12 +1233,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1294,7 +1276,7 @@ public class S3BucketBuilderImplTest {
 		assertNotNull(arcRule.getFilter());
 		assertNull(arcRule.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1325,12 +1307,7 @@ public class S3BucketBuilderImplTest {
 		String expectedBucketName = stack + ".bucket";
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1349,7 +1326,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client, never()).deleteBucketInventoryConfiguration(any(), any());
 		verify(mockS3Client, never()).setBucketPolicy(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1379,12 +1356,7 @@ public class S3BucketBuilderImplTest {
 		bucket.setDevOnly(true);
 
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1396,7 +1368,7 @@ public class S3BucketBuilderImplTest {
 		
 		verifyNoMoreInteractions(mockS3Client);
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1434,12 +1406,7 @@ public class S3BucketBuilderImplTest {
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		doThrow(notFound).when(mockS3Client).getBucketIntelligentTieringConfiguration(any(), any());
 
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1465,7 +1432,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals("test",  tag.getKey());
 		assertEquals("tag",  tag.getValue());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1565,12 +1532,7 @@ public class S3BucketBuilderImplTest {
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		doThrow(notFound).when(mockS3Client).getBucketIntelligentTieringConfiguration(any(), any());
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1593,7 +1555,7 @@ public class S3BucketBuilderImplTest {
 		
 		assertNull(config.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1627,12 +1589,7 @@ public class S3BucketBuilderImplTest {
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		doThrow(notFound).when(mockS3Client).getBucketIntelligentTieringConfiguration(any(), any());
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1654,7 +1611,7 @@ public class S3BucketBuilderImplTest {
 		
 		assertNull(config.getFilter().getPredicate());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1687,12 +1644,7 @@ public class S3BucketBuilderImplTest {
 		
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockS3Client.getBucketIntelligentTieringConfiguration(any(), any())).thenReturn(new GetBucketIntelligentTieringConfigurationResult().withIntelligentTieringConfiguration(new IntelligentTieringConfiguration()));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1705,7 +1657,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client).getBucketIntelligentTieringConfiguration(expectedBucketName, S3BucketBuilderImpl.INT_ARCHIVE_ID);
 		verify(mockS3Client, never()).setBucketIntelligentTieringConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1742,12 +1694,7 @@ public class S3BucketBuilderImplTest {
 
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockCloudFormationClient.getOutput(any(), any())).thenReturn(expectedTopicArn);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1773,7 +1720,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(expectedTopicArn, snsConfig.getTopicARN());
 		assertEquals(events, snsConfig.getEvents());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1814,12 +1761,7 @@ public class S3BucketBuilderImplTest {
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockCloudFormationClient.getOutput(any(), any())).thenReturn(expectedTopicArn);
 		when(mockS3Client.getBucketNotificationConfiguration(anyString())).thenReturn(existingConfig);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1845,7 +1787,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(expectedTopicArn, snsConfig.getTopicARN());
 		assertEquals(events, snsConfig.getEvents());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1888,12 +1830,7 @@ public class S3BucketBuilderImplTest {
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockCloudFormationClient.getOutput(any(), any())).thenReturn(expectedTopicArn);
 		when(mockS3Client.getBucketNotificationConfiguration(anyString())).thenReturn(existingConfig);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1919,7 +1856,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(expectedTopicArn, snsConfig.getTopicARN());
 		assertEquals(events, snsConfig.getEvents());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -1962,12 +1899,7 @@ public class S3BucketBuilderImplTest {
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockCloudFormationClient.getOutput(any(), any())).thenReturn(expectedTopicArn);
 		when(mockS3Client.getBucketNotificationConfiguration(anyString())).thenReturn(existingConfig);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -1993,7 +1925,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(expectedTopicArn, snsConfig.getTopicARN());
 		assertEquals(events, snsConfig.getEvents());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -2036,12 +1968,7 @@ public class S3BucketBuilderImplTest {
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockCloudFormationClient.getOutput(any(), any())).thenReturn(expectedTopicArn);
 		when(mockS3Client.getBucketNotificationConfiguration(anyString())).thenReturn(existingConfig);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -2067,7 +1994,7 @@ public class S3BucketBuilderImplTest {
 		assertEquals(expectedTopicArn, snsConfig.getTopicARN());
 		assertEquals(events, snsConfig.getEvents());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -2110,12 +2037,7 @@ public class S3BucketBuilderImplTest {
 		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
 		when(mockCloudFormationClient.getOutput(any(), any())).thenReturn(expectedTopicArn);
 		when(mockS3Client.getBucketNotificationConfiguration(anyString())).thenReturn(existingConfig);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -2129,7 +2051,7 @@ public class S3BucketBuilderImplTest {
 		verify(mockS3Client).getBucketNotificationConfiguration(expectedBucketName);
 		verify(mockS3Client, never()).setBucketNotificationConfiguration(any(), any());
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -2200,13 +2122,8 @@ public class S3BucketBuilderImplTest {
 		virusScannerConfig.setNotificationEmail("notification@sagebase.org");
 		
 		when(mockS3Config.getVirusScannerConfig()).thenReturn(virusScannerConfig);
-		when(mockDownloader.downloadFile(any())).thenReturn(mockFile);
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-		
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockDownloader.getCachedFile(any())).thenReturn(new CachedArtifact(mockFile));
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 		
 		Stack virusScannerStack = new Stack().withOutputs(
 			new Output().withOutputKey(S3BucketBuilderImpl.CF_OUTPUT_VIRUS_TRIGGER_TOPIC).withOutputValue("snsTopicArn"),
@@ -2222,10 +2139,10 @@ public class S3BucketBuilderImplTest {
 		// Call under test
 		builder.buildAllBuckets();
 		
-		verify(mockDownloader).downloadFile("https://some-url/lambda-name.zip");
+		verify(mockDownloader).getCachedFile("https://some-url/lambda-name.zip");
 		verify(mockS3Client).putObject(expectedBucket, expectedKey, mockFile);
-		verify(mockFile).delete();
-		verify(mockTemplate, times(2)).merge(velocityContextCaptor.capture(), any());
+		verify(mockFile, never()).delete();
+		verify(mockTemplateRenderer, times(2)).renderJson(any(), velocityContextCaptor.capture());
 		
 		List<VelocityContext> contexts = velocityContextCaptor.getAllValues();
 		VelocityContext virusScannerBuilderContext = contexts.get(0);
@@ -2306,13 +2223,8 @@ public class S3BucketBuilderImplTest {
 		virusScannerConfig.setNotificationEmail("notification@sagebase.org");
 		
 		when(mockS3Config.getVirusScannerConfig()).thenReturn(virusScannerConfig);
-		when(mockDownloader.downloadFile(any())).thenReturn(new File("tmpFile"));
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-		
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockDownloader.getCachedFile(any())).thenReturn(new CachedArtifact(new File("tmpFile")));
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -2350,7 +2262,7 @@ public class S3BucketBuilderImplTest {
 		// Make sure the config was removed
 		assertTrue(configuration.getConfigurations().isEmpty());
 
-		verify(mockTemplate, times(2)).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer, times(2)).renderJson(any(), velocityContextCaptor.capture());
 		List<VelocityContext> contexts = velocityContextCaptor.getAllValues();
 		VelocityContext virusScannerBuilderContext = contexts.get(0);
 		VelocityContext bucketPolicyBuilderContext = contexts.get(1);
@@ -2405,12 +2317,7 @@ public class S3BucketBuilderImplTest {
 		
 		when(mockS3Config.getVirusScannerConfig()).thenReturn(virusScannerConfig);
 
-		when(mockVelocity.getTemplate(any())).thenReturn(mockTemplate);
-
-		doAnswer(invocation -> {
-			((StringWriter) invocation.getArgument(1)).append("{}");
-			return null;
-		}).when(mockTemplate).merge(any(), any());
+		when(mockTemplateRenderer.renderJson(any(), any())).thenReturn("{}");
 
 		Stack bucketPolicyStack = new Stack();
 
@@ -2420,7 +2327,7 @@ public class S3BucketBuilderImplTest {
 		// Call under test
 		builder.buildAllBuckets();
 
-		verify(mockTemplate).merge(velocityContextCaptor.capture(), any());
+		verify(mockTemplateRenderer).renderJson(eq(Constants.TEMPLATE_S3_BUCKET_POLICY), velocityContextCaptor.capture());
 
 		VelocityContext context = velocityContextCaptor.getValue();
 
@@ -2439,6 +2346,94 @@ public class S3BucketBuilderImplTest {
 
 	}
 	
+	@Test
+	public void testBuildAllBucketsWithFailedBucket() throws InterruptedException {
+		S3BucketDescriptor failing = new S3BucketDescriptor();
+		failing.setName("${stack}.failing");
+		S3BucketDescriptor other = new S3BucketDescriptor();
+		other.setName("${stack}.other");
+		
+		AmazonServiceException error = new AmazonServiceException("Something went wrong");
+		error.setStatusCode(500);
+		
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_S3_BUCKETS_MAX_PARALLELISM)).thenReturn(2);
+		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(failing, other));
+		doThrow(error).when(mockS3Client).getBucketEncryption(stack + ".failing");
+		// Both buckets are stubbed, the strict stubs would fail the other bucket if it was configured first
+		when(mockS3Client.getBucketEncryption(stack + ".other")).thenReturn(new GetBucketEncryptionResult());
+		
+		AmazonServiceException ex = assertThrows(AmazonServiceException.class, () -> {
+			// Call under test
+			builder.buildAllBuckets();
+		});
+		
+		assertEquals(error, ex);
+		
+		// The other bucket is still configured
+		verify(mockS3Client).createBucket(stack + ".failing");
+		verify(mockS3Client).createBucket(stack + ".other");
+		verify(mockS3Client, never()).getBucketLifecycleConfiguration(stack + ".failing");
+		verify(mockS3Client).setBucketLifecycleConfiguration(eq(stack + ".other"), any());
+		// The stacks are not built after a failure
+		verify(mockCloudFormationClient, never()).createOrUpdateStack(any());
+	}
+	
+	@Test
+	public void testBuildAllBucketsWithFailedBucketAndFailedVirusScanner() throws InterruptedException {
+		S3BucketDescriptor bucket = new S3BucketDescriptor();
+		bucket.setName("${stack}.bucket");
+		bucket.setVirusScanEnabled(true);
+		
+		S3VirusScannerConfig virusScannerConfig = new S3VirusScannerConfig();
+		virusScannerConfig.setLambdaArtifactBucket("${stack}-lambda-bucket");
+		
+		AmazonServiceException error = new AmazonServiceException("Something went wrong");
+		error.setStatusCode(500);
+		IllegalStateException stackError = new IllegalStateException("Download failed");
+		
+		when(mockConfig.getProperty(Constants.PROPERTY_KEY_LAMBDA_VIRUS_SCANNER_ARTIFACT_URL)).thenReturn("https://some-url/lambda-name.zip");
+		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
+		when(mockS3Config.getVirusScannerConfig()).thenReturn(virusScannerConfig);
+		doThrow(error).when(mockS3Client).getBucketEncryption(stack + ".bucket");
+		when(mockDownloader.getCachedFile(any())).thenThrow(stackError);
+		
+		IllegalStateException ex = assertThrows(IllegalStateException.class, () -> {
+			// Call under test
+			builder.buildAllBuckets();
+		});
+		
+		assertEquals(stackError, ex);
+		// The bucket failure is not lost
+		assertEquals(Arrays.asList(error), Arrays.asList(ex.getSuppressed()));
+		
+		verify(mockS3Client).getBucketEncryption(stack + ".bucket");
+		verify(mockCloudFormationClient, never()).createOrUpdateStack(any());
+	}
+	
+	@Test
+	public void testBuildAllBucketsWithFailedCreate() throws InterruptedException {
+		S3BucketDescriptor bucket = new S3BucketDescriptor();
+		bucket.setName("${stack}.bucket");
+		bucket.setVirusScanEnabled(true);
+		
+		AmazonServiceException error = new AmazonServiceException("Something went wrong");
+		
+		when(mockS3Config.getBuckets()).thenReturn(Arrays.asList(bucket));
+		doThrow(error).when(mockS3Client).createBucket(stack + ".bucket");
+		
+		AmazonServiceException ex = assertThrows(AmazonServiceException.class, () -> {
+			// Call under test
+			builder.buildAllBuckets();
+		});
+		
+		assertEquals(error, ex);
+		
+		verify(mockS3Client, never()).getBucketEncryption(anyString());
+		// The virus scanner is not built without its buckets
+		verify(mockDownloader, never()).getCachedFile(any());
+		verify(mockCloudFormationClient, never()).createOrUpdateStack(any());
+	}
+	
 	private Rule allBucketRule(String ruleName) {
 		return new Rule().withId(ruleName).withFilter(new LifecycleFilter(null)).withStatus(BucketLifecycleConfiguration.ENABLED);
 	}
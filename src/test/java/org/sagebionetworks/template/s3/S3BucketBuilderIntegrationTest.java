@@ -1,5 +1,6 @@
 package org.sagebionetworks.template.s3;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -11,16 +12,20 @@ import java.util.Optional;
 
 import com.amazonaws.services.cloudformation.model.Stack;
 import org.apache.velocity.app.VelocityEngine;
-import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.sagebionetworks.template.CloudFormationClient;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRenderer;
+import org.sagebionetworks.template.TemplateRendererImpl;
 import org.sagebionetworks.template.TemplateUtils;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.RepoConfiguration;
 import org.sagebionetworks.template.utils.ArtifactDownload;
 import org.sagebionetworks.template.CreateOrUpdateStackRequest;
@@ -29,6 +34,7 @@ import com.amazonaws.services.lambda.AWSLambda;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
@@ -62,6 +68,9 @@ public class S3BucketBuilderIntegrationTest {
     @Mock
     private ArtifactDownload mockDownloader;
 
+    @Captor
+    private ArgumentCaptor<CreateOrUpdateStackRequest> requestCaptor;
+
     private S3BucketBuilderImpl builder;
     private String stack;
     private String accountId;
@@ -70,11 +79,12 @@ public class S3BucketBuilderIntegrationTest {
     public void before() {
         Injector injector = Guice.createInjector(new TemplateGuiceModule());
         VelocityEngine velocityEngine = injector.getInstance(VelocityEngine.class);
+        TemplateRenderer templateRenderer = new TemplateRendererImpl(velocityEngine, new ThreadProviderImp());
 
         // Validate the real S3Config
         injector.getInstance(S3Config.class);
 
-        builder = new S3BucketBuilderImpl(mockS3Client, mockStsClient, mockLambdaClient, mockConfig, mockS3Config, velocityEngine, mockCloudFormationClient, mockTagsProvider, mockDownloader);
+        builder = new S3BucketBuilderImpl(mockS3Client, mockStsClient, mockLambdaClient, mockConfig, mockS3Config, templateRenderer, mockCloudFormationClient, mockTagsProvider, mockDownloader);
 
         stack = "dev";
         accountId = "12345";
@@ -85,7 +95,7 @@ public class S3BucketBuilderIntegrationTest {
     }
 
     @Test
-    public void testBuildS3BucketPolicyStack() throws InterruptedException {
+    public void testBuildS3BucketPolicyStack() throws Exception {
 
         S3BucketDescriptor bucket = new S3BucketDescriptor();
 
@@ -100,12 +110,15 @@ public class S3BucketBuilderIntegrationTest {
         builder.buildAllBuckets();
 
         String expectedStackName = stack + "-synapse-bucket-policies";
-        String expectedBucketPolicyTemplate = new JSONObject(TemplateUtils.loadContentFromFile("s3/s3-bucket-policy-test.json")).toString(5);
+        String expectedBucketPolicyTemplate = TemplateUtils.loadContentFromFile("s3/s3-bucket-policy-test.json");
+
+        verify(mockCloudFormationClient).createOrUpdateStack(requestCaptor.capture());
 
-        verify(mockCloudFormationClient).createOrUpdateStack(new CreateOrUpdateStackRequest()
-                .withStackName("dev-synapse-bucket-policies")
-                .withTemplateBody(expectedBucketPolicyTemplate)
-                .withTags(Collections.emptyList()));
+        CreateOrUpdateStackRequest request = requestCaptor.getValue();
+        assertEquals("dev-synapse-bucket-policies", request.getStackName());
+        assertEquals(Collections.emptyList(), request.getTags());
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(mapper.readTree(expectedBucketPolicyTemplate), mapper.readTree(request.getTemplateBody()));
 
         verify(mockCloudFormationClient).waitForStackToComplete(expectedStackName);
         verify(mockCloudFormationClient).describeStack(expectedStackName);
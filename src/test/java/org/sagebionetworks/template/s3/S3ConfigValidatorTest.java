@@ -45,6 +45,22 @@ public class S3ConfigValidatorTest {
 		validator.validate();
 	}
 
+	@Test
+	public void testValidateWithRetentionPrefixAndNoRetentionDays() {
+		S3BucketDescriptor bucket = new S3BucketDescriptor();
+		bucket.setName("bucket");
+		bucket.setRetentionPrefix("templates/");
+
+		when(mockConfig.getBuckets()).thenReturn(Arrays.asList(bucket));
+
+		String errorMessage = assertThrows(IllegalArgumentException.class, () -> {
+			// Call under test
+			validator.validate();
+		}).getMessage();
+
+		assertEquals("The retentionDays are required with the retentionPrefix for bucket bucket", errorMessage);
+	}
+
 	@Test
 	public void testValidateWithNoInventoryDefinedAndInventoryEnabled() {
 		S3InventoryConfig inventoryConfig = null;
@@ -0,0 +1,207 @@
+package org.sagebionetworks.template.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY;
+import static org.sagebionetworks.template.Constants.PROPERTY_KEY_ARTIFACT_CACHE_MAX_SIZE_MB;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.template.ConfigurationPropertyNotFound;
+import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.ThreadProvider;
+import org.sagebionetworks.template.config.Configuration;
+
+@ExtendWith(MockitoExtension.class)
+public class ArtifactCacheImplTest {
+
+	@Mock
+	ThreadProvider mockThreadProvider;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+	@Mock
+	Configuration mockConfig;
+
+	File directory;
+	ArtifactCacheImpl cache;
+
+	@BeforeEach
+	public void before() throws IOException {
+		directory = Files.createTempDirectory("artifact-cache").toFile();
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		// room for two entries of four bytes
+		cache = new ArtifactCacheImpl(directory, 10, mockThreadProvider, mockLoggerFactory);
+	}
+
+	@AfterEach
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	File createFile(String content) throws IOException {
+		File file = File.createTempFile("download", ".tmp");
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 2000L);
+		File download = createFile("abcd");
+
+		// call under test
+		File cached;
+		try (CachedArtifact artifact = cache.put("key", download)) {
+			cached = artifact.getFile();
+		}
+
+		assertFalse(download.exists());
+		assertEquals(new File(directory, "key" + ArtifactCacheImpl.ENTRY_SUFFIX), cached);
+		assertEquals(1000L, cached.lastModified());
+
+		// call under test
+		try (CachedArtifact result = cache.get("key")) {
+			assertEquals(cached, result.getFile());
+			assertEquals("abcd", new String(Files.readAllBytes(result.getFile().toPath()), StandardCharsets.UTF_8));
+			// the access is recorded for the LRU eviction.
+			assertEquals(2000L, result.getFile().lastModified());
+		}
+		assertTrue(new File(directory, ArtifactCacheImpl.LOCK_FILE_NAME).exists());
+	}
+
+	@Test
+	public void testGetWithMissingKey() {
+		// call under test
+		assertNull(cache.get("key"));
+	}
+
+	@Test
+	public void testPutWithExistingKey() throws IOException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 2000L);
+		cache.put("key", createFile("abcd")).close();
+		File download = createFile("abcd");
+
+		// call under test
+		try (CachedArtifact cached = cache.put("key", download)) {
+			// the existing entry is kept since it might be in use
+			assertEquals("abcd", new String(Files.readAllBytes(cached.getFile().toPath()), StandardCharsets.UTF_8));
+		}
+		assertFalse(download.exists());
+	}
+
+	@Test
+	public void testPutEvictsLeastRecentlyUsed() throws IOException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 2000L, 3000L, 4000L);
+		File one = close(cache.put("one", createFile("abcd")));
+		File two = close(cache.put("two", createFile("efgh")));
+		// one is now more recently used than two
+		close(cache.get("one"));
+
+		// call under test
+		File three = close(cache.put("three", createFile("ijkl")));
+
+		assertTrue(one.exists());
+		assertFalse(two.exists());
+		assertTrue(three.exists());
+		assertNull(cache.get("two"));
+	}
+
+	@Test
+	public void testPutNeverEvictsNewEntry() throws IOException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 2000L);
+		File one = close(cache.put("one", createFile("abcd")));
+
+		// call under test
+		File large = close(cache.put("large", createFile("larger than the cache")));
+
+		assertFalse(one.exists());
+		assertTrue(large.exists());
+	}
+
+	@Test
+	public void testPutNeverEvictsEntryInUse() throws IOException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L, 2000L, 3000L, 4000L);
+		File one = close(cache.put("one", createFile("abcd")));
+		CachedArtifact inUse = cache.get("one");
+		// a second user of the same entry
+		CachedArtifact again = cache.get("one");
+		again.close();
+
+		// call under test
+		File large = close(cache.put("large", createFile("larger than the cache")));
+
+		assertTrue(one.exists());
+		assertTrue(large.exists());
+		inUse.close();
+		// closing twice has no effect
+		inUse.close();
+
+		// call under test
+		close(cache.put("other", createFile("efgh")));
+
+		// once released the entry can be evicted
+		assertFalse(one.exists());
+	}
+
+	@Test
+	public void testIsPinnedByAnotherLock() throws IOException {
+		when(mockThreadProvider.currentTimeMillis()).thenReturn(1000L);
+		File one = close(cache.put("one", createFile("abcd")));
+		// another holder of a lock on the entry, such as a second process
+		try (FileChannel channel = FileChannel.open(one.toPath(), StandardOpenOption.READ)) {
+			channel.lock(0, Long.MAX_VALUE, true);
+			// call under test
+			assertTrue(cache.isPinned(one));
+		}
+		// call under test
+		assertFalse(cache.isPinned(one));
+	}
+
+	static File close(CachedArtifact artifact) {
+		artifact.close();
+		return artifact.getFile();
+	}
+
+	@Test
+	public void testGetDirectory() {
+		when(mockConfig.getProperty(PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY)).thenReturn("/some/dir");
+		// call under test
+		assertEquals(new File("/some/dir"), ArtifactCacheImpl.getDirectory(mockConfig));
+	}
+
+	@Test
+	public void testGetDirectoryWithDefault() {
+		when(mockConfig.getProperty(PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_ARTIFACT_CACHE_DIRECTORY));
+		// call under test
+		assertEquals(new File(System.getProperty("user.home"), ".synapse-stack-builder/artifacts"),
+				ArtifactCacheImpl.getDirectory(mockConfig));
+	}
+
+	@Test
+	public void testGetMaxSizeMBWithDefault() {
+		when(mockConfig.getIntegerProperty(PROPERTY_KEY_ARTIFACT_CACHE_MAX_SIZE_MB))
+				.thenThrow(new ConfigurationPropertyNotFound(PROPERTY_KEY_ARTIFACT_CACHE_MAX_SIZE_MB));
+		// call under test
+		assertEquals(ArtifactCacheImpl.DEFAULT_MAX_SIZE_MB, ArtifactCacheImpl.getMaxSizeMB(mockConfig));
+	}
+}
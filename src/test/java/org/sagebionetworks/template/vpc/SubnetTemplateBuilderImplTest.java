@@ -1,5 +1,6 @@
 package org.sagebionetworks.template.vpc;
 
+import com.amazonaws.services.cloudformation.model.Stack;
 import com.amazonaws.services.cloudformation.model.Tag;
 import org.apache.logging.log4j.Logger;
 import org.apache.velocity.VelocityContext;
@@ -17,13 +18,19 @@ import org.sagebionetworks.template.CreateOrUpdateStackRequest;
 import org.sagebionetworks.template.LoggerFactory;
 import org.sagebionetworks.template.StackTagsProvider;
 import org.sagebionetworks.template.TemplateGuiceModule;
+import org.sagebionetworks.template.TemplateRendererImpl;
+import org.sagebionetworks.template.ThreadProviderImp;
 import org.sagebionetworks.template.config.Configuration;
+import org.sagebionetworks.template.deploy.StackDeployment;
+import org.sagebionetworks.template.deploy.StackDeploymentScheduler;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -43,6 +50,8 @@ public class SubnetTemplateBuilderImplTest {
     Logger mockLogger;
     @Mock
     StackTagsProvider mockStackTagsProvider;
+    @Mock
+    StackDeploymentScheduler mockDeploymentScheduler;
 
     @Captor
     ArgumentCaptor<CreateOrUpdateStackRequest> requestCaptor;
@@ -63,7 +72,7 @@ public class SubnetTemplateBuilderImplTest {
     List<Tag> expectedTags;
 
     @Before
-    public void before() {
+    public void before() throws Exception {
         // use a real velocity engine
         velocityEngine = new TemplateGuiceModule().velocityEngineProvider();
 
@@ -73,7 +82,16 @@ public class SubnetTemplateBuilderImplTest {
         Tag t = new Tag().withKey("aKey").withValue("aValue");
         when(mockStackTagsProvider.getStackTags()).thenReturn(expectedTags);
 
-        builder = new SubnetTemplateBuilderImpl(mockCloudFormationClient, velocityEngine, mockConfig, mockLoggerFactory, mockStackTagsProvider);
+        // run each deployment in order
+        doAnswer(invocation -> {
+            List<StackDeployment> deployments = invocation.getArgument(0);
+            for (StackDeployment deployment : deployments) {
+                deployment.getAction().deploy();
+            }
+            return null;
+        }).when(mockDeploymentScheduler).deploy(any());
+
+        builder = new SubnetTemplateBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), mockConfig, mockLoggerFactory, mockStackTagsProvider, mockDeploymentScheduler);
 
         colors = new String[] {"Red", "Green"};
         subnetPrefix = "10.24";
@@ -136,6 +154,7 @@ public class SubnetTemplateBuilderImplTest {
 
     @Test
     public void testBuildAndDeployPrivateSubnets() throws Exception {
+        when(mockCloudFormationClient.waitForStackToCompleteAsync(any())).thenReturn(CompletableFuture.completedFuture(new Stack()));
         // call under test
         builder.buildAndDeployPrivateSubnets();
 
@@ -149,6 +168,21 @@ public class SubnetTemplateBuilderImplTest {
         assertEquals("synapse-dev-vpc-2-private-subnets-Green", requests.get(1).getStackName());
         assertNull(requests.get(1).getParameters());
         assertEquals(expectedTags, requests.get(1).getTags());
+        verify(mockCloudFormationClient).waitForStackToCompleteAsync("synapse-dev-vpc-2-private-subnets-Red");
+        verify(mockCloudFormationClient).waitForStackToCompleteAsync("synapse-dev-vpc-2-private-subnets-Green");
+
+        // Each color is rendered with its own subnet index
+        JSONObject redTemplate = new JSONObject(requests.get(0).getTemplateBody());
+        JSONObject greenTemplate = new JSONObject(requests.get(1).getTemplateBody());
+        assertNotEquals(redTemplate.getJSONObject("Resources").keySet(), greenTemplate.getJSONObject("Resources").keySet());
+
+        // Both colors are scheduled together without dependencies
+        ArgumentCaptor<List> deploymentsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockDeploymentScheduler).deploy(deploymentsCaptor.capture());
+        List<StackDeployment> deployments = deploymentsCaptor.getValue();
+        assertEquals(2, deployments.size());
+        assertTrue(deployments.get(0).getDependsOn().isEmpty());
+        assertTrue(deployments.get(1).getDependsOn().isEmpty());
 
         JSONObject templateJson = new JSONObject(requests.get(0).getTemplateBody());
         System.out.println(templateJson.toString(JSON_INDENT));
@@ -88,7 +88,7 @@ public class VpcTemplateBuilderImplTest {
 		Tag t = new Tag().withKey("aKey").withValue("aValue");
 		when(mockStackTagsProvider.getStackTags()).thenReturn(expectedTags);
 
-		builder = new VpcTemplateBuilderImpl(mockCloudFormationClient, velocityEngine, mockConfig, mockLoggerFactory, mockStackTagsProvider);
+		builder = new VpcTemplateBuilderImpl(mockCloudFormationClient, new TemplateRendererImpl(velocityEngine, new ThreadProviderImp()), mockConfig, mockLoggerFactory, mockStackTagsProvider);
 		subnetPrefix = "10.21";
 		avialabilityZones = new String[] {"us-east-1a","us-east-1b"};
 		vpnCider = "10.1.0.0/16";
@@ -1,5 +1,6 @@
 package org.sagebionetworks.war;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -10,9 +11,19 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
 
 import org.apache.logging.log4j.core.Logger;
 import org.junit.Before;
@@ -23,6 +34,10 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sagebionetworks.template.LoggerFactory;
+import org.sagebionetworks.template.ThreadProviderImp;
+import org.sagebionetworks.template.report.RunReportImpl;
+import org.sagebionetworks.template.report.Span;
+import org.sagebionetworks.template.report.SpanCategory;
 
 @RunWith(MockitoJUnitRunner.class)
 public class WarAppenderImplTest {
@@ -36,6 +51,7 @@ public class WarAppenderImplTest {
 	@Mock
 	Logger mockLogger;
 	
+	RunReportImpl runReport;
 	WarAppenderImpl appender;
 	
 	@Captor
@@ -46,7 +62,8 @@ public class WarAppenderImplTest {
 	@Before
 	public void before() throws URISyntaxException {
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
-		appender = new WarAppenderImpl(mockLoggerFactory);
+		runReport = new RunReportImpl(new ThreadProviderImp(), null, (Path) null, mockLoggerFactory);
+		appender = new WarAppenderImpl(mockLoggerFactory, runReport);
 		
 		String testWarFileName = "test.war";
 		URL url = WarAppenderImplTest.class.getClassLoader().getResource(testWarFileName);
@@ -66,6 +83,12 @@ public class WarAppenderImplTest {
 			assertNotNull(tempDir);
 			assertFalse("The temp directory should no longer exist", tempDir.exists());
 			verify(mockLogger, atLeast(2)).info(anyString());
+			assertEquals(1, runReport.getSpans().size());
+			Span span = runReport.getSpans().get(0);
+			assertEquals(SpanCategory.WAR, span.getCategory());
+			assertEquals(testWar.getName(), span.getName());
+			assertTrue(span.isClosed());
+			assertEquals(copy.length(), span.getBytes());
 		}finally {
 			if (copy != null) {
 				copy.delete();
@@ -73,4 +96,36 @@ public class WarAppenderImplTest {
 		}
 	}
 
+	@Test
+	public void testAppendFilesCopyOfWarWithNewFile() throws IOException {
+		// call under test
+		File copy = appender.appendFilesCopyOfWar(testWar, (File directory) -> {
+			File ebextensions = new File(directory, ".ebextensions");
+			ebextensions.mkdirs();
+			try {
+				Files.write(new File(ebextensions, "new.config").toPath(), "new content".getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		try (ZipFile original = new ZipFile(testWar); ZipFile result = new ZipFile(copy)) {
+			// the existing entries are copied without being compressed again
+			for (ZipEntry entry : Collections.list(original.entries())) {
+				ZipEntry copied = result.getEntry(entry.getName());
+				assertNotNull(entry.getName(), copied);
+				assertEquals(entry.getMethod(), copied.getMethod());
+				assertEquals(entry.getCompressedSize(), copied.getCompressedSize());
+				assertEquals(entry.getCrc(), copied.getCrc());
+			}
+			ZipEntry added = result.getEntry(".ebextensions/new.config");
+			assertNotNull(added);
+			try (InputStream in = result.getInputStream(added)) {
+				assertEquals("new content", IOUtils.toString(in, StandardCharsets.UTF_8));
+			}
+			assertEquals(original.size() + 1, result.size());
+		} finally {
+			copy.delete();
+		}
+	}
+
 }
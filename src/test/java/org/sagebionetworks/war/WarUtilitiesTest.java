@@ -1,11 +1,14 @@
 package org.sagebionetworks.war;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -52,6 +55,55 @@ public class WarUtilitiesTest {
 		}
 	}
 
+	@Test
+	public void testAddDirectoryToWar() throws IOException {
+		File tempDir = null;
+		File newDir = null;
+		File tempWar = null;
+		File copyWar = null;
+		try {
+			tempDir = Files.createTempDirectory("start-war").toFile();
+			writeTestFilesToDirectory(tempDir);
+			tempWar = File.createTempFile("TestWar", ".war");
+			WarUtilities.zipDirectoryToWar(tempDir, tempWar);
+			byte[] originalBytes = Files.readAllBytes(tempWar.toPath());
+			copyWar = File.createTempFile("CopyWar", ".war");
+			newDir = Files.createTempDirectory("new-files").toFile();
+			File newFile = new File(newDir, ".ebextensions/new.config");
+			newFile.getParentFile().mkdirs();
+			Files.write(newFile.toPath(), "new".getBytes("UTF-8"));
+			// replaces an existing file
+			Files.write(new File(newDir, "index.html").toPath(), "replaced".getBytes("UTF-8"));
+			// call under test
+			WarUtilities.addDirectoryToWar(newDir, tempWar, copyWar);
+			// the original is left unchanged
+			assertArrayEquals(originalBytes, Files.readAllBytes(tempWar.toPath()));
+			FileUtils.deleteDirectory(tempDir);
+			tempDir = Files.createTempDirectory("end-war").toFile();
+			WarUtilities.unzipWarToDirectory(copyWar, tempDir);
+			assertEquals("new", new String(Files.readAllBytes(new File(tempDir, ".ebextensions/new.config").toPath()), "UTF-8"));
+			assertEquals("replaced", new String(Files.readAllBytes(new File(tempDir, "index.html").toPath()), "UTF-8"));
+			assertTrue(new File(tempDir, "WEB-INF/web.xml").exists());
+			try (ZipFile copy = new ZipFile(copyWar)) {
+				// the replaced file is only written once
+				assertEquals(files.length + 1, Collections.list(copy.entries()).stream().filter(e -> !e.isDirectory()).count());
+			}
+		} finally {
+			if (tempDir != null) {
+				FileUtils.deleteDirectory(tempDir);
+			}
+			if (newDir != null) {
+				FileUtils.deleteDirectory(newDir);
+			}
+			if (tempWar != null) {
+				tempWar.delete();
+			}
+			if (copyWar != null) {
+				copyWar.delete();
+			}
+		}
+	}
+
 	public void validateFiles(File directory) throws IOException {
 		for(String fileName: files) {
 			File file = new File(directory, fileName);